@@ -35,7 +35,7 @@ public class ObjectNativeGenerator implements Generator, DependencyPlugin {
     public void generate(GeneratorContext context, SourceWriter writer, MethodReference methodRef) throws IOException {
         switch (methodRef.getDescriptor().getName()) {
             case "<init>":
-                generateInit(context, writer);
+                // Identity hash codes are assigned on first use, see $rt_objectHashCode
                 break;
             case "getClass":
                 generateGetClass(context, writer);
@@ -67,10 +67,6 @@ public class ObjectNativeGenerator implements Generator, DependencyPlugin {
         }
     }
 
-    private void generateInit(GeneratorContext context, SourceWriter writer) throws IOException {
-        writer.append(context.getParameterName(0)).append(".$id = $rt_nextId();").softNewLine();
-    }
-
     private void generateGetClass(GeneratorContext context, SourceWriter writer) throws IOException {
         String thisArg = context.getParameterName(0);
         writer.append("return $rt_cls(").append(thisArg).append(".constructor);").softNewLine();
@@ -78,22 +74,25 @@ public class ObjectNativeGenerator implements Generator, DependencyPlugin {
 
     private void achieveGetClass(DependencyChecker checker, MethodReference method) {
         String classClass = "java.lang.Class";
-        MethodReference initMethod = new MethodReference(classClass, new MethodDescriptor("createNew",
+        MethodReference initMethod = MethodReference.get(classClass, MethodDescriptor.get("createNew",
                 ValueType.object(classClass)));
         checker.addEntryPoint(initMethod);
         checker.attachMethodGraph(method).getResultNode().propagate("java.lang.Class");
     }
 
     private void generateHashCode(GeneratorContext context, SourceWriter writer) throws IOException {
-        writer.append("return ").append(context.getParameterName(0)).append(".$id;").softNewLine();
+        writer.append("return $rt_objectHashCode(").append(context.getParameterName(0)).append(");").softNewLine();
     }
 
     private void generateClone(GeneratorContext context, SourceWriter writer) throws IOException {
-        writer.append("var copy = new ").append(context.getParameterName(0)).append(".constructor();").softNewLine();
-        writer.append("for (var field in obj) {").softNewLine().indent();
-        writer.append("if (!obj.hasOwnProperty(field)) {").softNewLine().indent();
+        String obj = context.getParameterName(0);
+        writer.append("if (" + obj + ".constructor.$meta.item !== undefined) {").softNewLine().indent();
+        writer.append("return $rt_cloneArray(" + obj + ");").softNewLine().outdent().append("}").softNewLine();
+        writer.append("var copy = new " + obj + ".constructor();").softNewLine();
+        writer.append("for (var field in " + obj + ") {").softNewLine().indent();
+        writer.append("if (!" + obj + ".hasOwnProperty(field) || field === \"$id\") {").softNewLine().indent();
         writer.append("continue;").softNewLine().outdent().append("}").softNewLine();
-        writer.append("copy[field] = obj[field];").softNewLine().outdent().append("}").softNewLine();
+        writer.append("copy[field] = " + obj + "[field];").softNewLine().outdent().append("}").softNewLine();
         writer.append("return copy;").softNewLine();
     }
 
@@ -54,9 +54,8 @@ public class SystemNativeGenerator implements Generator, DependencyPlugin {
         String dest = context.getParameterName(3);
         String destPos = context.getParameterName(4);
         String length = context.getParameterName(5);
-        writer.append("for (var i = 0; i < " + length + "; i = (i + 1) | 0) {").indent().softNewLine();
-        writer.append(dest + ".data[" + srcPos + "++] = " + src + ".data[" + destPos + "++];").softNewLine();
-        writer.outdent().append("}").softNewLine();
+        writer.append("$rt_arraycopy(" + src + ", " + srcPos + ", " + dest + ", " + destPos + ", " + length + ");")
+                .softNewLine();
     }
 
     private void achieveArrayCopy(DependencyChecker checker, MethodReference method) {
@@ -53,7 +53,7 @@ public class ArrayNativeGenerator implements Generator, DependencyPlugin {
         writer.append("if (" + array + " === null || " + array + ".constructor.$meta.item === undefined) {")
                 .softNewLine().indent();
         String clsName = "java.lang.IllegalArgumentException";
-        MethodReference cons = new MethodReference(clsName, new MethodDescriptor("<init>", ValueType.VOID));
+        MethodReference cons = MethodReference.get(clsName, MethodDescriptor.get("<init>", ValueType.VOID));
         writer.append("$rt_throw(").appendClass(clsName).append(".").appendMethod(cons).append("());").softNewLine();
         writer.outdent().append("}").softNewLine();
         writer.append("return " + array + ".data.length;").softNewLine();
@@ -64,8 +64,8 @@ public class ArrayNativeGenerator implements Generator, DependencyPlugin {
         graph.getVariableNode(1).addConsumer(new DependencyConsumer() {
             @Override public void consume(String type) {
                 if (!type.startsWith("[")) {
-                    MethodReference cons = new MethodReference("java.lang.IllegalArgumentException",
-                            new MethodDescriptor("<init>", ValueType.VOID));
+                    MethodReference cons = MethodReference.get("java.lang.IllegalArgumentException",
+                            MethodDescriptor.get("<init>", ValueType.VOID));
                     checker.addEntryPoint(cons);
                 }
             }
@@ -60,4 +60,42 @@ public class ObjectTest {
     public void properInstanceDetected() {
         assertTrue(Object.class.isInstance(new Object()));
     }
+
+    @Test
+    public void inheritedFieldsInitialized() {
+        Derived a = new Derived();
+        assertEquals(1, a.first);
+        assertNull(a.name);
+        assertEquals(2, a.second);
+        assertEquals(0, a.wide);
+        assertTrue(a.real == 0);
+        assertFalse(a.flag);
+    }
+
+    @Test
+    public void inheritedFieldsNotShared() {
+        Derived a = new Derived();
+        Derived b = new Derived();
+        a.first = 3;
+        a.name = "foo";
+        a.wide = 1L << 40;
+        assertEquals(1, b.first);
+        assertNull(b.name);
+        assertEquals(0, b.wide);
+        assertEquals(1L << 40, a.wide);
+        Base c = new Base();
+        assertEquals(1, c.first);
+    }
+
+    static class Base {
+        int first = 1;
+        String name;
+    }
+
+    static class Derived extends Base {
+        int second = 2;
+        long wide;
+        double real;
+        boolean flag;
+    }
 }
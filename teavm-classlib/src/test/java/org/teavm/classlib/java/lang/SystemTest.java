@@ -35,6 +35,34 @@ public class SystemTest {
         assertSame(a, dest[2]);
     }
 
+    @Test
+    public void copiesLongArray() {
+        long[] src = { 1, Long.MIN_VALUE, 0x123456789ABCDEFL, -1 };
+        long[] dest = new long[5];
+        System.arraycopy(src, 1, dest, 2, 3);
+        assertEquals(0, dest[0]);
+        assertEquals(0, dest[1]);
+        assertEquals(Long.MIN_VALUE, dest[2]);
+        assertEquals(0x123456789ABCDEFL, dest[3]);
+        assertEquals(-1, dest[4]);
+    }
+
+    @Test
+    public void copiesLongArrayOntoItself() {
+        long[] array = { 1L << 33, 2L << 33, 3L << 33, 4L << 33, 5L << 33 };
+        System.arraycopy(array, 0, array, 1, 3);
+        assertEquals(1L << 33, array[0]);
+        assertEquals(1L << 33, array[1]);
+        assertEquals(2L << 33, array[2]);
+        assertEquals(3L << 33, array[3]);
+        assertEquals(5L << 33, array[4]);
+        System.arraycopy(array, 2, array, 0, 3);
+        assertEquals(2L << 33, array[0]);
+        assertEquals(3L << 33, array[1]);
+        assertEquals(5L << 33, array[2]);
+        assertEquals(3L << 33, array[3]);
+    }
+
     @Test(expected = IndexOutOfBoundsException.class)
     public void failsToCopyArraysWithInvalidIndexes() {
         System.arraycopy(new Object[0], 0, new Object[0], 0, 1);
@@ -16,6 +16,10 @@
 package org.teavm.classlib.java.lang;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import org.junit.Test;
 
 /**
@@ -23,6 +27,19 @@ import org.junit.Test;
  * @author Alexey Andreev
  */
 public class VMTest {
+    private int narrowedValue = 200;
+    private Object lastItem;
+    private float tenth = 0.1f;
+    private float fifth = 0.2f;
+    private float three = 3;
+    private float largeFloat = 16777216f;
+    private double widenedValue = 1.1;
+    private int arraySize = 2;
+    private int allBits = -1;
+    private int noShift;
+    private double negativeValue = -1.5;
+    private long wideValue = 5000000000L;
+
     @Test
     public void multiArrayCreated() {
         int[][] array = new int[2][3];
@@ -58,4 +75,314 @@ public class VMTest {
         long b = 1836311903;
         assertEquals(2971215073L, a + b);
     }
+
+    @Test
+    public void constantNarrowingCastsFolded() {
+        int a = 200;
+        int b = 40000;
+        int c = -129;
+        assertEquals(-56, (byte)a);
+        assertEquals(-25536, (short)b);
+        assertEquals(40000, (char)b);
+        assertEquals(127, (byte)c);
+        assertEquals(65407, (char)c);
+    }
+
+    @Test
+    public void narrowingCastsPerformed() {
+        int a = narrowedValue;
+        assertEquals(-56, (byte)a);
+        assertEquals(200, (short)a);
+        assertEquals(200, (char)a);
+        a = narrowedValue * 200;
+        assertEquals(-25536, (short)a);
+        assertEquals(40000, (char)a);
+        a = -narrowedValue;
+        assertEquals(56, (byte)a);
+        assertEquals(65336, (char)a);
+    }
+
+    @Test
+    public void floatArithmeticRounded() {
+        float a = tenth;
+        float b = fifth;
+        assertTrue(a + b == 0.3f);
+        assertTrue((double)(a + b) == 0.30000001192092896);
+        assertTrue((double)(a * b) == 0.020000001415610313);
+        assertTrue((double)(a / three) == 0.03333333507180214);
+        assertTrue((double)(a / three * three) == 0.10000000894069672);
+        assertTrue(largeFloat + 1 == largeFloat);
+        assertTrue(largeFloat - 0.5f == largeFloat);
+        assertTrue((double)(float)widenedValue == 1.100000023841858);
+    }
+
+    @Test
+    public void unsignedShiftByZeroMasked() {
+        int shifted = allBits >>> noShift;
+        int masked = shifted & Integer.MIN_VALUE;
+        assertEquals(Integer.MIN_VALUE, masked);
+        assertEquals(2147483643, masked - 5);
+        assertEquals(-1, (allBits >>> noShift) - 0);
+    }
+
+    @Test
+    public void doublesConvertedToLong() {
+        double a = negativeValue;
+        assertEquals(-1, (long)a);
+        assertEquals(-1, (long)(a + 0.5));
+        assertEquals(-5000000000L, (long)(a * 1e10 / 3));
+        assertEquals(Long.MAX_VALUE, (long)(-a * 1e19));
+        assertEquals(Long.MIN_VALUE, (long)(a * 1e19));
+        assertEquals(0, (long)(a / 0 * 0));
+        assertEquals(-1, (int)a);
+    }
+
+    @Test
+    public void constantDoublesConvertedToLong() {
+        double a = -1.5;
+        assertEquals(-1, (long)a);
+        assertEquals(-5000000000L, (long)(a * 1e10 / 3));
+        assertEquals(Long.MAX_VALUE, (long)(-a * 1e19));
+        assertEquals(-1, (int)a);
+    }
+
+    @Test
+    public void longsConvertedToInt() {
+        long a = wideValue;
+        assertEquals(705032704, (int)a);
+        assertEquals(-705032704, (int)-a);
+        assertEquals(1, (int)(a * 0x40000000L + 1));
+        long b = 5000000000L;
+        assertEquals(705032704, (int)b);
+    }
+
+    @Test
+    public void longArrayStoresValues() {
+        long[] array = new long[4];
+        assertEquals(0, array[0]);
+        assertEquals(0, array[3]);
+        array[0] = Long.MIN_VALUE;
+        array[1] = 0x123456789ABCDEFL;
+        array[2] = -1;
+        assertEquals(Long.MIN_VALUE, array[0]);
+        assertEquals(0x123456789ABCDEFL, array[1]);
+        assertEquals(-1, array[2]);
+        assertEquals(0, array[3]);
+        array[1] += array[2];
+        assertEquals(0x123456789ABCDEEL, array[1]);
+    }
+
+    @Test
+    public void longArrayCloned() {
+        long[] array = { 1, Long.MAX_VALUE, -0x100000000L };
+        long[] copy = array.clone();
+        assertEquals(3, copy.length);
+        assertEquals(long[].class, copy.getClass());
+        assertEquals(Long.MAX_VALUE, copy[1]);
+        assertEquals(-0x100000000L, copy[2]);
+        copy[0] = 2;
+        array[1] = 3;
+        assertEquals(1, array[0]);
+        assertEquals(Long.MAX_VALUE, copy[1]);
+    }
+
+    @Test
+    public void floatingPointComparisonsComputed() {
+        double a = widenedValue;
+        float b = tenth;
+        assertTrue(a > 1);
+        assertTrue(a >= 1.1);
+        assertFalse(a < 1.1);
+        assertTrue(a <= 1.1);
+        assertFalse(a == 1);
+        assertTrue(b < a);
+        assertFalse(b * 20 < a);
+        assertTrue(a + b > b * 11);
+        assertTrue(-0.0 == zero());
+        boolean less = a < 2;
+        boolean greater = a > 2;
+        assertTrue(less);
+        assertFalse(greater);
+    }
+
+    @Test
+    public void primitiveArraysCreated() {
+        int size = arraySize;
+        assertEquals(boolean[].class, new boolean[size].getClass());
+        assertEquals(byte[].class, new byte[size].getClass());
+        assertEquals(short[].class, new short[size].getClass());
+        assertEquals(char[].class, new char[size].getClass());
+        assertEquals(int[].class, new int[size].getClass());
+        assertEquals(long[].class, new long[size].getClass());
+        assertEquals(float[].class, new float[size].getClass());
+        assertEquals(double[].class, new double[size].getClass());
+        assertFalse((new boolean[size])[1]);
+        assertEquals(0, (new byte[size])[1]);
+        assertEquals(0, (new char[size])[1]);
+        assertTrue((new double[size])[1] == 0);
+        int[][] nested = new int[size][];
+        assertEquals(int[][].class, nested.getClass());
+        assertNull(nested[1]);
+    }
+
+    @Test
+    public void classLiteralsCached() {
+        Class<?> first = null;
+        for (int i = 0; i < 3; ++i) {
+            Class<?> cls = int[].class;
+            if (first == null) {
+                first = cls;
+            }
+            assertSame(first, cls);
+        }
+        assertSame(int[].class, new int[0].getClass());
+        assertSame(Object[].class, new Object[0].getClass());
+        assertSame(VMTest.class, getClass());
+    }
+
+    @Test
+    public void recursiveMethodsCalled() {
+        assertEquals(3628800, factorial(arraySize + 8));
+        assertFalse(isEven(arraySize + 9));
+        assertTrue(isOdd(arraySize + 9));
+    }
+
+    @Test
+    public void deepCallChainCalled() {
+        assertEquals(arraySize * 32, twice(twice(twice(twice(twice(arraySize))))));
+        assertEquals(arraySize * 16, quadruple(quadruple(arraySize)));
+    }
+
+    @Test
+    public void methodInlinedIntoTryBlock() {
+        int result;
+        try {
+            result = positive(arraySize);
+        } finally {
+            lastItem = null;
+        }
+        assertEquals(2, result);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void exceptionThrownFromInlinedMethod() {
+        positive(-arraySize);
+    }
+
+    @Test
+    public void fieldWrittenThroughSubclassReadInLoop() {
+        SubItem sub = new SubItem();
+        lastItem = sub;
+        BaseItem base = sub;
+        int sum = 0;
+        int i = 0;
+        while (true) {
+            sum += base.value;
+            if (i == 2) {
+                break;
+            }
+            sub.value = ++i;
+        }
+        assertEquals(3, sum);
+    }
+
+    @Test
+    public void intKernelComputed() {
+        int[] data = { 3, -7, 100000, 46341, -46341 };
+        assertEquals(1410074732, dotProduct(data, data));
+        short[] shorts = { 1, -2, 30000, -30000, 12345 };
+        assertEquals(927042966, checksum(shorts, 31));
+    }
+
+    @Test
+    public void floatKernelComputed() {
+        float[] data = { 0.1f, 0.2f, 0.3f, 1e7f, -1e7f, 3.3f };
+        assertTrue(weightedSum(data, 0.7f) == 2.81f);
+    }
+
+    @Test
+    public void doubleKernelComputed() {
+        double[] coefficients = { 1.5, -2.25, 0.125, 3 };
+        assertTrue(horner(coefficients, 1.1) == 3.169250000000001);
+        assertTrue(mixedSum(7, 2.5f, 0.1) == 11.717856955528259);
+    }
+
+    private static int factorial(int n) {
+        return n > 1 ? n * factorial(n - 1) : 1;
+    }
+
+    private static boolean isEven(int n) {
+        return n == 0 || isOdd(n - 1);
+    }
+
+    private static boolean isOdd(int n) {
+        return n != 0 && isEven(n - 1);
+    }
+
+    private static int twice(int n) {
+        return n * 2;
+    }
+
+    private static int quadruple(int n) {
+        return twice(twice(n));
+    }
+
+    private static int positive(int n) {
+        if (n < 0) {
+            throw new IllegalArgumentException();
+        }
+        return n;
+    }
+
+    private double zero() {
+        return widenedValue - widenedValue;
+    }
+
+    private static int dotProduct(int[] a, int[] b) {
+        int result = 0;
+        for (int i = 0; i < a.length; ++i) {
+            result += a[i] * b[i];
+        }
+        return result;
+    }
+
+    private static int checksum(short[] data, int seed) {
+        int hash = seed;
+        for (int i = 0; i < data.length; ++i) {
+            hash = hash * 31 + data[i];
+            hash ^= hash >>> 7;
+        }
+        return hash;
+    }
+
+    private static float weightedSum(float[] data, float weight) {
+        float sum = 0;
+        for (int i = 0; i < data.length; ++i) {
+            sum += data[i] * weight;
+        }
+        return sum;
+    }
+
+    private static double horner(double[] coefficients, double x) {
+        double result = 0;
+        for (int i = coefficients.length - 1; i >= 0; --i) {
+            result = result * x + coefficients[i];
+        }
+        return result;
+    }
+
+    private static double mixedSum(int n, float f, double d) {
+        double result = 0;
+        for (int i = 0; i < n; ++i) {
+            result += (f * i) / (i + 1) + d;
+        }
+        return result;
+    }
+
+    static class BaseItem {
+        int value;
+    }
+
+    static class SubItem extends BaseItem {
+    }
 }
@@ -0,0 +1,163 @@
+/*
+ *  Copyright 2014 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.cache;
+
+import java.io.*;
+import java.util.*;
+import java.util.zip.CRC32;
+import org.teavm.model.ClassHolder;
+
+/**
+ * <p>A set of parsed classes stored in a compact binary form. The archive is read in a single
+ * pass, while each class is decoded on request, so that loading an archive costs a bulk read
+ * and classes that are never requested are never decoded.</p>
+ *
+ * <p>The class library ships an archive of its substitutes, already renamed to their
+ * <code>java.*</code> names, as {@link #RESOURCE_NAME} resource.</p>
+ *
+ * <p>Each class is stored along with the {@link #checksum(InputStream) checksum} of the bytecode it
+ * was produced from, so that readers can tell when the archive is older than the class files.</p>
+ *
+ * @author Alexey Andreev <konsoletyper@gmail.com>
+ */
+public class ClassArchive {
+    public static final String RESOURCE_NAME = "META-INF/teavm-classes.bin";
+    private static final int MAGIC = 0x54454176;
+    private static final int VERSION = 3;
+    private SymbolTable symbolTable;
+    private Map<String, Entry> entries = new HashMap<>();
+    private byte[] data;
+
+    private static class Entry {
+        int offset;
+        int length;
+        long checksum;
+    }
+
+    private ClassArchive() {
+    }
+
+    public Set<String> getClassNames() {
+        return Collections.unmodifiableSet(entries.keySet());
+    }
+
+    public boolean contains(String name) {
+        return entries.containsKey(name);
+    }
+
+    /**
+     * <p>Returns checksum of the bytecode the given class was produced from, or <code>-1</code>
+     * if the archive does not contain the class.</p>
+     */
+    public long getChecksum(String name) {
+        Entry entry = entries.get(name);
+        return entry != null ? entry.checksum : -1;
+    }
+
+    public ClassHolder getClassHolder(String name) {
+        Entry entry = entries.get(name);
+        if (entry == null) {
+            return null;
+        }
+        DataInput input = new DataInputStream(new ByteArrayInputStream(data, entry.offset, entry.length));
+        try {
+            return new ClassIO(symbolTable).read(input);
+        } catch (IOException e) {
+            throw new RuntimeException("Error reading class " + name + " from archive", e);
+        }
+    }
+
+    public static ClassArchive read(InputStream input) throws IOException {
+        DataInputStream dataInput = new DataInputStream(new BufferedInputStream(input));
+        if (dataInput.readInt() != MAGIC) {
+            throw new IOException("Not a class archive");
+        }
+        int version = dataInput.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported class archive version: " + version);
+        }
+        ClassArchive archive = new ClassArchive();
+        archive.symbolTable = SymbolTable.read(dataInput);
+        int classCount = dataInput.readInt();
+        for (int i = 0; i < classCount; ++i) {
+            String name = archive.symbolTable.at(dataInput.readInt());
+            Entry entry = new Entry();
+            entry.offset = dataInput.readInt();
+            entry.length = dataInput.readInt();
+            entry.checksum = dataInput.readLong();
+            archive.entries.put(name, entry);
+        }
+        archive.data = new byte[dataInput.readInt()];
+        dataInput.readFully(archive.data);
+        return archive;
+    }
+
+    /**
+     * <p>Writes classes to an archive.</p>
+     *
+     * @param classes classes to write.
+     * @param checksums checksums of the bytecode of each class, by class name.
+     * @param output stream to write archive to.
+     */
+    public static void write(Collection<ClassHolder> classes, Map<String, Long> checksums, OutputStream output)
+            throws IOException {
+        SymbolTable symbolTable = new SymbolTable();
+        ClassIO classIO = new ClassIO(symbolTable);
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        DataOutputStream dataOutput = new DataOutputStream(data);
+        int[] names = new int[classes.size()];
+        int[] offsets = new int[classes.size()];
+        long[] classChecksums = new long[classes.size()];
+        int index = 0;
+        for (ClassHolder cls : classes) {
+            Long checksum = checksums.get(cls.getName());
+            classChecksums[index] = checksum != null ? checksum : -1;
+            names[index] = symbolTable.lookup(cls.getName());
+            offsets[index++] = dataOutput.size();
+            classIO.write(cls, dataOutput);
+        }
+        dataOutput.flush();
+
+        DataOutputStream archiveOutput = new DataOutputStream(new BufferedOutputStream(output));
+        archiveOutput.writeInt(MAGIC);
+        archiveOutput.writeInt(VERSION);
+        symbolTable.write(archiveOutput);
+        archiveOutput.writeInt(names.length);
+        for (int i = 0; i < names.length; ++i) {
+            int end = i + 1 < names.length ? offsets[i + 1] : data.size();
+            archiveOutput.writeInt(names[i]);
+            archiveOutput.writeInt(offsets[i]);
+            archiveOutput.writeInt(end - offsets[i]);
+            archiveOutput.writeLong(classChecksums[i]);
+        }
+        archiveOutput.writeInt(data.size());
+        data.writeTo(archiveOutput);
+        archiveOutput.flush();
+    }
+
+    public static long checksum(InputStream input) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[4096];
+        while (true) {
+            int bytesRead = input.read(buffer);
+            if (bytesRead < 0) {
+                break;
+            }
+            crc.update(buffer, 0, bytesRead);
+        }
+        return crc.getValue();
+    }
+}
@@ -0,0 +1,282 @@
+/*
+ *  Copyright 2014 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.cache;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import org.teavm.model.*;
+
+/**
+ * <p>Writes class holders, including annotations and method programs, to a binary stream
+ * and reads them back.</p>
+ *
+ * @author Alexey Andreev <konsoletyper@gmail.com>
+ */
+public class ClassIO {
+    private static final ElementModifier[] modifiers = ElementModifier.values();
+    private static final AccessLevel[] accessLevels = AccessLevel.values();
+    private SymbolTable symbolTable;
+    private ProgramIO programIO;
+
+    public ClassIO(SymbolTable symbolTable) {
+        this.symbolTable = symbolTable;
+        this.programIO = new ProgramIO(symbolTable);
+    }
+
+    public void write(ClassHolder cls, DataOutput output) throws IOException {
+        output.writeInt(symbolTable.lookup(cls.getName()));
+        output.writeInt(cls.getParent() != null ? symbolTable.lookup(cls.getParent()) : -1);
+        writeElement(cls, output);
+        output.writeInt(cls.getInterfaces().size());
+        for (String iface : cls.getInterfaces()) {
+            output.writeInt(symbolTable.lookup(iface));
+        }
+        output.writeInt(cls.getFields().size());
+        for (FieldHolder field : cls.getFields()) {
+            output.writeInt(symbolTable.lookup(field.getName()));
+            output.writeInt(symbolTable.lookup(field.getType().toString()));
+            writeElement(field, output);
+            writeInitialValue(field.getInitialValue(), output);
+        }
+        output.writeInt(cls.getMethods().size());
+        for (MethodHolder method : cls.getMethods()) {
+            output.writeInt(symbolTable.lookup(method.getDescriptor().toString()));
+            writeElement(method, output);
+            output.writeBoolean(method.getProgram() != null);
+            if (method.getProgram() != null) {
+                programIO.write(method.getProgram(), output);
+            }
+        }
+    }
+
+    public ClassHolder read(DataInput input) throws IOException {
+        ClassHolder cls = new ClassHolder(symbolTable.at(input.readInt()));
+        int parent = input.readInt();
+        cls.setParent(parent >= 0 ? symbolTable.at(parent) : null);
+        readElement(cls, input);
+        int interfaceCount = input.readInt();
+        for (int i = 0; i < interfaceCount; ++i) {
+            cls.getInterfaces().add(symbolTable.at(input.readInt()));
+        }
+        int fieldCount = input.readInt();
+        for (int i = 0; i < fieldCount; ++i) {
+            FieldHolder field = new FieldHolder(symbolTable.at(input.readInt()));
+            field.setType(ValueType.parse(symbolTable.at(input.readInt())));
+            readElement(field, input);
+            field.setInitialValue(readInitialValue(input));
+            cls.addField(field);
+        }
+        int methodCount = input.readInt();
+        for (int i = 0; i < methodCount; ++i) {
+            MethodHolder method = new MethodHolder(MethodDescriptor.parse(symbolTable.at(input.readInt())));
+            readElement(method, input);
+            if (input.readBoolean()) {
+                method.setProgram(programIO.read(input));
+            }
+            cls.addMethod(method);
+        }
+        return cls;
+    }
+
+    private void writeElement(ElementHolder element, DataOutput output) throws IOException {
+        output.writeByte(element.getLevel().ordinal());
+        int modifierBits = 0;
+        for (ElementModifier modifier : element.getModifiers()) {
+            modifierBits |= 1 << modifier.ordinal();
+        }
+        output.writeInt(modifierBits);
+        List<AnnotationHolder> annotations = new ArrayList<>();
+        for (AnnotationHolder annot : element.getAnnotations().all()) {
+            annotations.add(annot);
+        }
+        output.writeInt(annotations.size());
+        for (AnnotationHolder annot : annotations) {
+            writeAnnotation(annot, output);
+        }
+    }
+
+    private void readElement(ElementHolder element, DataInput input) throws IOException {
+        element.setLevel(accessLevels[input.readByte()]);
+        int modifierBits = input.readInt();
+        EnumSet<ElementModifier> elementModifiers = element.getModifiers();
+        for (int i = 0; i < modifiers.length; ++i) {
+            if ((modifierBits & (1 << i)) != 0) {
+                elementModifiers.add(modifiers[i]);
+            }
+        }
+        int annotationCount = input.readInt();
+        for (int i = 0; i < annotationCount; ++i) {
+            element.getAnnotations().add(readAnnotation(input));
+        }
+    }
+
+    private void writeAnnotation(AnnotationHolder annot, DataOutput output) throws IOException {
+        output.writeInt(symbolTable.lookup(annot.getType()));
+        output.writeInt(annot.getValues().size());
+        for (Map.Entry<String, AnnotationValue> entry : annot.getValues().entrySet()) {
+            output.writeInt(symbolTable.lookup(entry.getKey()));
+            writeAnnotationValue(entry.getValue(), output);
+        }
+    }
+
+    private AnnotationHolder readAnnotation(DataInput input) throws IOException {
+        AnnotationHolder annot = new AnnotationHolder(symbolTable.at(input.readInt()));
+        int valueCount = input.readInt();
+        for (int i = 0; i < valueCount; ++i) {
+            String name = symbolTable.at(input.readInt());
+            annot.getValues().put(name, readAnnotationValue(input));
+        }
+        return annot;
+    }
+
+    private void writeAnnotationValue(AnnotationValue value, DataOutput output) throws IOException {
+        output.writeByte(value.getType());
+        switch (value.getType()) {
+            case AnnotationValue.BOOLEAN:
+                output.writeBoolean(value.getBoolean());
+                break;
+            case AnnotationValue.BYTE:
+                output.writeByte(value.getByte());
+                break;
+            case AnnotationValue.SHORT:
+                output.writeShort(value.getShort());
+                break;
+            case AnnotationValue.INT:
+                output.writeInt(value.getInt());
+                break;
+            case AnnotationValue.LONG:
+                output.writeLong(value.getLong());
+                break;
+            case AnnotationValue.FLOAT:
+                output.writeFloat(value.getFloat());
+                break;
+            case AnnotationValue.DOUBLE:
+                output.writeDouble(value.getDouble());
+                break;
+            case AnnotationValue.STRING:
+                output.writeInt(symbolTable.lookup(value.getString()));
+                break;
+            case AnnotationValue.CLASS:
+                output.writeInt(symbolTable.lookup(value.getJavaClass().toString()));
+                break;
+            case AnnotationValue.LIST: {
+                List<AnnotationValue> list = value.getList();
+                output.writeInt(list.size());
+                for (AnnotationValue item : list) {
+                    writeAnnotationValue(item, output);
+                }
+                break;
+            }
+            case AnnotationValue.ENUM:
+                output.writeInt(symbolTable.lookup(value.getEnumValue().getClassName()));
+                output.writeInt(symbolTable.lookup(value.getEnumValue().getFieldName()));
+                break;
+            case AnnotationValue.ANNOTATION:
+                writeAnnotation(value.getAnnotation(), output);
+                break;
+            default:
+                throw new IOException("Unknown annotation value type: " + value.getType());
+        }
+    }
+
+    private AnnotationValue readAnnotationValue(DataInput input) throws IOException {
+        byte type = input.readByte();
+        switch (type) {
+            case AnnotationValue.BOOLEAN:
+                return new AnnotationValue(input.readBoolean());
+            case AnnotationValue.BYTE:
+                return new AnnotationValue(input.readByte());
+            case AnnotationValue.SHORT:
+                return new AnnotationValue(input.readShort());
+            case AnnotationValue.INT:
+                return new AnnotationValue(input.readInt());
+            case AnnotationValue.LONG:
+                return new AnnotationValue(input.readLong());
+            case AnnotationValue.FLOAT:
+                return new AnnotationValue(input.readFloat());
+            case AnnotationValue.DOUBLE:
+                return new AnnotationValue(input.readDouble());
+            case AnnotationValue.STRING:
+                return new AnnotationValue(symbolTable.at(input.readInt()));
+            case AnnotationValue.CLASS:
+                return new AnnotationValue(ValueType.parse(symbolTable.at(input.readInt())));
+            case AnnotationValue.LIST: {
+                int size = input.readInt();
+                List<AnnotationValue> list = new ArrayList<>(size);
+                for (int i = 0; i < size; ++i) {
+                    list.add(readAnnotationValue(input));
+                }
+                return new AnnotationValue(list);
+            }
+            case AnnotationValue.ENUM: {
+                String className = symbolTable.at(input.readInt());
+                return new AnnotationValue(FieldReference.get(className, symbolTable.at(input.readInt())));
+            }
+            case AnnotationValue.ANNOTATION:
+                return new AnnotationValue(readAnnotation(input));
+            default:
+                throw new IOException("Unknown annotation value type: " + type);
+        }
+    }
+
+    private void writeInitialValue(Object value, DataOutput output) throws IOException {
+        if (value == null) {
+            output.writeByte(0);
+        } else if (value instanceof Integer) {
+            output.writeByte(1);
+            output.writeInt((Integer)value);
+        } else if (value instanceof Long) {
+            output.writeByte(2);
+            output.writeLong((Long)value);
+        } else if (value instanceof Float) {
+            output.writeByte(3);
+            output.writeFloat((Float)value);
+        } else if (value instanceof Double) {
+            output.writeByte(4);
+            output.writeDouble((Double)value);
+        } else if (value instanceof String) {
+            output.writeByte(5);
+            output.writeInt(symbolTable.lookup((String)value));
+        } else {
+            throw new IOException("Unsupported initial value: " + value);
+        }
+    }
+
+    private Object readInitialValue(DataInput input) throws IOException {
+        byte type = input.readByte();
+        switch (type) {
+            case 0:
+                return null;
+            case 1:
+                return input.readInt();
+            case 2:
+                return input.readLong();
+            case 3:
+                return input.readFloat();
+            case 4:
+                return input.readDouble();
+            case 5:
+                return symbolTable.at(input.readInt());
+            default:
+                throw new IOException("Unknown initial value type: " + type);
+        }
+    }
+}
@@ -0,0 +1,820 @@
+/*
+ *  Copyright 2014 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.cache;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.List;
+import org.teavm.model.*;
+import org.teavm.model.instructions.*;
+
+/**
+ * <p>Writes programs to a binary stream and reads them back. Strings, types and member
+ * references are stored as indexes in a {@link SymbolTable}, variables and basic blocks
+ * as their indexes in the program.</p>
+ *
+ * @author Alexey Andreev <konsoletyper@gmail.com>
+ */
+public class ProgramIO {
+    private static final int EMPTY = 0;
+    private static final int CLASS_CONSTANT = 1;
+    private static final int NULL_CONSTANT = 2;
+    private static final int INTEGER_CONSTANT = 3;
+    private static final int LONG_CONSTANT = 4;
+    private static final int FLOAT_CONSTANT = 5;
+    private static final int DOUBLE_CONSTANT = 6;
+    private static final int STRING_CONSTANT = 7;
+    private static final int BINARY = 8;
+    private static final int NEGATE = 9;
+    private static final int ASSIGN = 10;
+    private static final int CAST = 11;
+    private static final int CAST_NUMBER = 12;
+    private static final int CAST_INTEGER = 13;
+    private static final int BRANCH = 14;
+    private static final int BINARY_BRANCH = 15;
+    private static final int JUMP = 16;
+    private static final int SWITCH = 17;
+    private static final int EXIT = 18;
+    private static final int RAISE = 19;
+    private static final int CONSTRUCT_ARRAY = 20;
+    private static final int CONSTRUCT = 21;
+    private static final int CONSTRUCT_MULTI_ARRAY = 22;
+    private static final int GET_FIELD = 23;
+    private static final int PUT_FIELD = 24;
+    private static final int ARRAY_LENGTH = 25;
+    private static final int CLONE_ARRAY = 26;
+    private static final int UNWRAP_ARRAY = 27;
+    private static final int GET_ELEMENT = 28;
+    private static final int PUT_ELEMENT = 29;
+    private static final int INVOKE = 30;
+    private static final int IS_INSTANCE = 31;
+    private static final int INIT_CLASS = 32;
+    private SymbolTable symbolTable;
+
+    public ProgramIO(SymbolTable symbolTable) {
+        this.symbolTable = symbolTable;
+    }
+
+    public void write(Program program, DataOutput output) throws IOException {
+        int[] blockIndexes = new int[program.basicBlockCount()];
+        int blockCount = 0;
+        for (int i = 0; i < program.basicBlockCount(); ++i) {
+            blockIndexes[i] = program.basicBlockAt(i) != null ? blockCount++ : -1;
+        }
+        int[] variableIndexes = new int[program.variableCount()];
+        int variableCount = 0;
+        for (int i = 0; i < program.variableCount(); ++i) {
+            variableIndexes[i] = program.variableAt(i) != null ? variableCount++ : -1;
+        }
+        output.writeInt(variableCount);
+        output.writeInt(blockCount);
+        InstructionWriter insnWriter = new InstructionWriter(output, blockIndexes, variableIndexes);
+        try {
+            for (int i = 0; i < program.basicBlockCount(); ++i) {
+                BasicBlock block = program.basicBlockAt(i);
+                if (block == null) {
+                    continue;
+                }
+                output.writeInt(block.getPhis().size());
+                for (Phi phi : block.getPhis()) {
+                    insnWriter.writeVariable(phi.getReceiver());
+                    output.writeInt(phi.getIncomings().size());
+                    for (Incoming incoming : phi.getIncomings()) {
+                        insnWriter.writeBlock(incoming.getSource());
+                        insnWriter.writeVariable(incoming.getValue());
+                    }
+                }
+                output.writeInt(block.getInstructions().size());
+                for (Instruction insn : block.getInstructions()) {
+                    insn.acceptVisitor(insnWriter);
+                }
+            }
+        } catch (IOExceptionWrapper e) {
+            throw (IOException)e.getCause();
+        }
+    }
+
+    public Program read(DataInput input) throws IOException {
+        Program program = new Program();
+        int variableCount = input.readInt();
+        int blockCount = input.readInt();
+        for (int i = 0; i < variableCount; ++i) {
+            program.createVariable();
+        }
+        for (int i = 0; i < blockCount; ++i) {
+            program.createBasicBlock();
+        }
+        for (int i = 0; i < blockCount; ++i) {
+            BasicBlock block = program.basicBlockAt(i);
+            int phiCount = input.readInt();
+            for (int j = 0; j < phiCount; ++j) {
+                Phi phi = new Phi();
+                phi.setReceiver(readVariable(program, input));
+                int incomingCount = input.readInt();
+                for (int k = 0; k < incomingCount; ++k) {
+                    Incoming incoming = new Incoming();
+                    incoming.setSource(program.basicBlockAt(input.readInt()));
+                    incoming.setValue(readVariable(program, input));
+                    phi.getIncomings().add(incoming);
+                }
+                block.getPhis().add(phi);
+            }
+            int insnCount = input.readInt();
+            for (int j = 0; j < insnCount; ++j) {
+                block.getInstructions().add(readInstruction(program, input));
+            }
+        }
+        return program;
+    }
+
+    private ValueType readType(DataInput input) throws IOException {
+        int index = input.readInt();
+        return index >= 0 ? ValueType.parse(symbolTable.at(index)) : null;
+    }
+
+    private Variable readVariable(Program program, DataInput input) throws IOException {
+        int index = input.readInt();
+        return index >= 0 ? program.variableAt(index) : null;
+    }
+
+    private FieldReference readField(DataInput input) throws IOException {
+        String className = symbolTable.at(input.readInt());
+        return FieldReference.get(className, symbolTable.at(input.readInt()));
+    }
+
+    private Instruction readInstruction(Program program, DataInput input) throws IOException {
+        int type = input.readByte();
+        switch (type) {
+            case EMPTY:
+                return new EmptyInstruction();
+            case CLASS_CONSTANT: {
+                ClassConstantInstruction insn = new ClassConstantInstruction();
+                insn.setReceiver(readVariable(program, input));
+                insn.setConstant(readType(input));
+                return insn;
+            }
+            case NULL_CONSTANT: {
+                NullConstantInstruction insn = new NullConstantInstruction();
+                insn.setReceiver(readVariable(program, input));
+                return insn;
+            }
+            case INTEGER_CONSTANT: {
+                IntegerConstantInstruction insn = new IntegerConstantInstruction();
+                insn.setReceiver(readVariable(program, input));
+                insn.setConstant(input.readInt());
+                return insn;
+            }
+            case LONG_CONSTANT: {
+                LongConstantInstruction insn = new LongConstantInstruction();
+                insn.setReceiver(readVariable(program, input));
+                insn.setConstant(input.readLong());
+                return insn;
+            }
+            case FLOAT_CONSTANT: {
+                FloatConstantInstruction insn = new FloatConstantInstruction();
+                insn.setReceiver(readVariable(program, input));
+                insn.setConstant(input.readFloat());
+                return insn;
+            }
+            case DOUBLE_CONSTANT: {
+                DoubleConstantInstruction insn = new DoubleConstantInstruction();
+                insn.setReceiver(readVariable(program, input));
+                insn.setConstant(input.readDouble());
+                return insn;
+            }
+            case STRING_CONSTANT: {
+                StringConstantInstruction insn = new StringConstantInstruction();
+                insn.setReceiver(readVariable(program, input));
+                insn.setConstant(symbolTable.at(input.readInt()));
+                return insn;
+            }
+            case BINARY: {
+                BinaryOperation operation = BinaryOperation.values()[input.readByte()];
+                NumericOperandType operandType = NumericOperandType.values()[input.readByte()];
+                BinaryInstruction insn = new BinaryInstruction(operation, operandType);
+                insn.setReceiver(readVariable(program, input));
+                insn.setFirstOperand(readVariable(program, input));
+                insn.setSecondOperand(readVariable(program, input));
+                return insn;
+            }
+            case NEGATE: {
+                NegateInstruction insn = new NegateInstruction(NumericOperandType.values()[input.readByte()]);
+                insn.setReceiver(readVariable(program, input));
+                insn.setOperand(readVariable(program, input));
+                return insn;
+            }
+            case ASSIGN: {
+                AssignInstruction insn = new AssignInstruction();
+                insn.setReceiver(readVariable(program, input));
+                insn.setAssignee(readVariable(program, input));
+                return insn;
+            }
+            case CAST: {
+                CastInstruction insn = new CastInstruction();
+                insn.setReceiver(readVariable(program, input));
+                insn.setValue(readVariable(program, input));
+                insn.setTargetType(readType(input));
+                return insn;
+            }
+            case CAST_NUMBER: {
+                NumericOperandType sourceType = NumericOperandType.values()[input.readByte()];
+                NumericOperandType targetType = NumericOperandType.values()[input.readByte()];
+                CastNumberInstruction insn = new CastNumberInstruction(sourceType, targetType);
+                insn.setReceiver(readVariable(program, input));
+                insn.setValue(readVariable(program, input));
+                return insn;
+            }
+            case CAST_INTEGER: {
+                IntegerSubtype targetType = IntegerSubtype.values()[input.readByte()];
+                CastIntegerDirection direction = CastIntegerDirection.values()[input.readByte()];
+                CastIntegerInstruction insn = new CastIntegerInstruction(targetType, direction);
+                insn.setReceiver(readVariable(program, input));
+                insn.setValue(readVariable(program, input));
+                return insn;
+            }
+            case BRANCH: {
+                BranchingInstruction insn = new BranchingInstruction(BranchingCondition.values()[input.readByte()]);
+                insn.setOperand(readVariable(program, input));
+                insn.setConsequent(program.basicBlockAt(input.readInt()));
+                insn.setAlternative(program.basicBlockAt(input.readInt()));
+                return insn;
+            }
+            case BINARY_BRANCH: {
+                BinaryBranchingInstruction insn = new BinaryBranchingInstruction(
+                        BinaryBranchingCondition.values()[input.readByte()]);
+                insn.setFirstOperand(readVariable(program, input));
+                insn.setSecondOperand(readVariable(program, input));
+                insn.setConsequent(program.basicBlockAt(input.readInt()));
+                insn.setAlternative(program.basicBlockAt(input.readInt()));
+                return insn;
+            }
+            case JUMP: {
+                JumpInstruction insn = new JumpInstruction();
+                insn.setTarget(program.basicBlockAt(input.readInt()));
+                return insn;
+            }
+            case SWITCH: {
+                SwitchInstruction insn = new SwitchInstruction();
+                insn.setCondition(readVariable(program, input));
+                insn.setDefaultTarget(program.basicBlockAt(input.readInt()));
+                int entryCount = input.readInt();
+                for (int i = 0; i < entryCount; ++i) {
+                    SwitchTableEntry entry = new SwitchTableEntry();
+                    entry.setCondition(input.readInt());
+                    entry.setTarget(program.basicBlockAt(input.readInt()));
+                    insn.getEntries().add(entry);
+                }
+                return insn;
+            }
+            case EXIT: {
+                ExitInstruction insn = new ExitInstruction();
+                insn.setValueToReturn(readVariable(program, input));
+                return insn;
+            }
+            case RAISE: {
+                RaiseInstruction insn = new RaiseInstruction();
+                insn.setException(readVariable(program, input));
+                return insn;
+            }
+            case CONSTRUCT_ARRAY: {
+                ConstructArrayInstruction insn = new ConstructArrayInstruction();
+                insn.setReceiver(readVariable(program, input));
+                insn.setSize(readVariable(program, input));
+                insn.setItemType(readType(input));
+                return insn;
+            }
+            case CONSTRUCT: {
+                ConstructInstruction insn = new ConstructInstruction();
+                insn.setReceiver(readVariable(program, input));
+                insn.setType(symbolTable.at(input.readInt()));
+                return insn;
+            }
+            case CONSTRUCT_MULTI_ARRAY: {
+                ConstructMultiArrayInstruction insn = new ConstructMultiArrayInstruction();
+                insn.setReceiver(readVariable(program, input));
+                insn.setItemType(readType(input));
+                int dimensionCount = input.readInt();
+                for (int i = 0; i < dimensionCount; ++i) {
+                    insn.getDimensions().add(readVariable(program, input));
+                }
+                return insn;
+            }
+            case GET_FIELD: {
+                GetFieldInstruction insn = new GetFieldInstruction();
+                insn.setReceiver(readVariable(program, input));
+                insn.setInstance(readVariable(program, input));
+                insn.setField(readField(input));
+                insn.setFieldType(readType(input));
+                return insn;
+            }
+            case PUT_FIELD: {
+                PutFieldInstruction insn = new PutFieldInstruction();
+                insn.setInstance(readVariable(program, input));
+                insn.setValue(readVariable(program, input));
+                insn.setField(readField(input));
+                return insn;
+            }
+            case ARRAY_LENGTH: {
+                ArrayLengthInstruction insn = new ArrayLengthInstruction();
+                insn.setReceiver(readVariable(program, input));
+                insn.setArray(readVariable(program, input));
+                return insn;
+            }
+            case CLONE_ARRAY: {
+                CloneArrayInstruction insn = new CloneArrayInstruction();
+                insn.setReceiver(readVariable(program, input));
+                insn.setArray(readVariable(program, input));
+                return insn;
+            }
+            case UNWRAP_ARRAY: {
+                UnwrapArrayInstruction insn = new UnwrapArrayInstruction(
+                        ArrayElementType.values()[input.readByte()]);
+                insn.setReceiver(readVariable(program, input));
+                insn.setArray(readVariable(program, input));
+                return insn;
+            }
+            case GET_ELEMENT: {
+                GetElementInstruction insn = new GetElementInstruction(
+                        ArrayElementType.values()[input.readByte()]);
+                insn.setReceiver(readVariable(program, input));
+                insn.setArray(readVariable(program, input));
+                insn.setIndex(readVariable(program, input));
+                return insn;
+            }
+            case PUT_ELEMENT: {
+                PutElementInstruction insn = new PutElementInstruction(
+                        ArrayElementType.values()[input.readByte()]);
+                insn.setArray(readVariable(program, input));
+                insn.setIndex(readVariable(program, input));
+                insn.setValue(readVariable(program, input));
+                return insn;
+            }
+            case INVOKE: {
+                InvokeInstruction insn = new InvokeInstruction();
+                byte invocationType = input.readByte();
+                insn.setType(invocationType >= 0 ? InvocationType.values()[invocationType] : null);
+                insn.setReceiver(readVariable(program, input));
+                insn.setInstance(readVariable(program, input));
+                String className = symbolTable.at(input.readInt());
+                MethodDescriptor descriptor = MethodDescriptor.parse(symbolTable.at(input.readInt()));
+                insn.setMethod(MethodReference.get(className, descriptor));
+                int argumentCount = input.readInt();
+                for (int i = 0; i < argumentCount; ++i) {
+                    insn.getArguments().add(readVariable(program, input));
+                }
+                return insn;
+            }
+            case IS_INSTANCE: {
+                IsInstanceInstruction insn = new IsInstanceInstruction();
+                insn.setReceiver(readVariable(program, input));
+                insn.setValue(readVariable(program, input));
+                insn.setType(readType(input));
+                return insn;
+            }
+            case INIT_CLASS: {
+                InitClassInstruction insn = new InitClassInstruction();
+                insn.setClassName(symbolTable.at(input.readInt()));
+                return insn;
+            }
+            default:
+                throw new IOException("Unknown instruction type: " + type);
+        }
+    }
+
+    private static class IOExceptionWrapper extends RuntimeException {
+        private static final long serialVersionUID = -1765050162629001951L;
+
+        public IOExceptionWrapper(IOException cause) {
+            super(cause);
+        }
+    }
+
+    private class InstructionWriter implements InstructionVisitor {
+        private DataOutput output;
+        private int[] blockIndexes;
+        private int[] variableIndexes;
+
+        public InstructionWriter(DataOutput output, int[] blockIndexes, int[] variableIndexes) {
+            this.output = output;
+            this.blockIndexes = blockIndexes;
+            this.variableIndexes = variableIndexes;
+        }
+
+        void writeVariable(Variable var) throws IOException {
+            output.writeInt(var != null ? variableIndexes[var.getIndex()] : -1);
+        }
+
+        void writeBlock(BasicBlock block) throws IOException {
+            output.writeInt(blockIndexes[block.getIndex()]);
+        }
+
+        private void writeType(ValueType type) throws IOException {
+            output.writeInt(type != null ? symbolTable.lookup(type.toString()) : -1);
+        }
+
+        private void writeField(FieldReference field) throws IOException {
+            output.writeInt(symbolTable.lookup(field.getClassName()));
+            output.writeInt(symbolTable.lookup(field.getFieldName()));
+        }
+
+        private void writeReceiver(int type, Variable receiver) {
+            try {
+                output.writeByte(type);
+                writeVariable(receiver);
+            } catch (IOException e) {
+                throw new IOExceptionWrapper(e);
+            }
+        }
+
+        @Override
+        public void visit(EmptyInstruction insn) {
+            try {
+                output.writeByte(EMPTY);
+            } catch (IOException e) {
+                throw new IOExceptionWrapper(e);
+            }
+        }
+
+        @Override
+        public void visit(ClassConstantInstruction insn) {
+            writeReceiver(CLASS_CONSTANT, insn.getReceiver());
+            try {
+                writeType(insn.getConstant());
+            } catch (IOException e) {
+                throw new IOExceptionWrapper(e);
+            }
+        }
+
+        @Override
+        public void visit(NullConstantInstruction insn) {
+            writeReceiver(NULL_CONSTANT, insn.getReceiver());
+        }
+
+        @Override
+        public void visit(IntegerConstantInstruction insn) {
+            writeReceiver(INTEGER_CONSTANT, insn.getReceiver());
+            try {
+                output.writeInt(insn.getConstant());
+            } catch (IOException e) {
+                throw new IOExceptionWrapper(e);
+            }
+        }
+
+        @Override
+        public void visit(LongConstantInstruction insn) {
+            writeReceiver(LONG_CONSTANT, insn.getReceiver());
+            try {
+                output.writeLong(insn.getConstant());
+            } catch (IOException e) {
+                throw new IOExceptionWrapper(e);
+            }
+        }
+
+        @Override
+        public void visit(FloatConstantInstruction insn) {
+            writeReceiver(FLOAT_CONSTANT, insn.getReceiver());
+            try {
+                output.writeFloat(insn.getConstant());
+            } catch (IOException e) {
+                throw new IOExceptionWrapper(e);
+            }
+        }
+
+        @Override
+        public void visit(DoubleConstantInstruction insn) {
+            writeReceiver(DOUBLE_CONSTANT, insn.getReceiver());
+            try {
+                output.writeDouble(insn.getConstant());
+            } catch (IOException e) {
+                throw new IOExceptionWrapper(e);
+            }
+        }
+
+        @Override
+        public void visit(StringConstantInstruction insn) {
+            writeReceiver(STRING_CONSTANT, insn.getReceiver());
+            try {
+                output.writeInt(symbolTable.lookup(insn.getConstant()));
+            } catch (IOException e) {
+                throw new IOExceptionWrapper(e);
+            }
+        }
+
+        @Override
+        public void visit(BinaryInstruction insn) {
+            try {
+                output.writeByte(BINARY);
+                output.writeByte(insn.getOperation().ordinal());
+                output.writeByte(insn.getOperandType().ordinal());
+                writeVariable(insn.getReceiver());
+                writeVariable(insn.getFirstOperand());
+                writeVariable(insn.getSecondOperand());
+            } catch (IOException e) {
+                throw new IOExceptionWrapper(e);
+            }
+        }
+
+        @Override
+        public void visit(NegateInstruction insn) {
+            try {
+                output.writeByte(NEGATE);
+                output.writeByte(insn.getOperandType().ordinal());
+                writeVariable(insn.getReceiver());
+                writeVariable(insn.getOperand());
+            } catch (IOException e) {
+                throw new IOExceptionWrapper(e);
+            }
+        }
+
+        @Override
+        public void visit(AssignInstruction insn) {
+            writeReceiver(ASSIGN, insn.getReceiver());
+            try {
+                writeVariable(insn.getAssignee());
+            } catch (IOException e) {
+                throw new IOExceptionWrapper(e);
+            }
+        }
+
+        @Override
+        public void visit(CastInstruction insn) {
+            writeReceiver(CAST, insn.getReceiver());
+            try {
+                writeVariable(insn.getValue());
+                writeType(insn.getTargetType());
+            } catch (IOException e) {
+                throw new IOExceptionWrapper(e);
+            }
+        }
+
+        @Override
+        public void visit(CastNumberInstruction insn) {
+            try {
+                output.writeByte(CAST_NUMBER);
+                output.writeByte(insn.getSourceType().ordinal());
+                output.writeByte(insn.getTargetType().ordinal());
+                writeVariable(insn.getReceiver());
+                writeVariable(insn.getValue());
+            } catch (IOException e) {
+                throw new IOExceptionWrapper(e);
+            }
+        }
+
+        @Override
+        public void visit(CastIntegerInstruction insn) {
+            try {
+                output.writeByte(CAST_INTEGER);
+                output.writeByte(insn.getTargetType().ordinal());
+                output.writeByte(insn.getDirection().ordinal());
+                writeVariable(insn.getReceiver());
+                writeVariable(insn.getValue());
+            } catch (IOException e) {
+                throw new IOExceptionWrapper(e);
+            }
+        }
+
+        @Override
+        public void visit(BranchingInstruction insn) {
+            try {
+                output.writeByte(BRANCH);
+                output.writeByte(insn.getCondition().ordinal());
+                writeVariable(insn.getOperand());
+                writeBlock(insn.getConsequent());
+                writeBlock(insn.getAlternative());
+            } catch (IOException e) {
+                throw new IOExceptionWrapper(e);
+            }
+        }
+
+        @Override
+        public void visit(BinaryBranchingInstruction insn) {
+            try {
+                output.writeByte(BINARY_BRANCH);
+                output.writeByte(insn.getCondition().ordinal());
+                writeVariable(insn.getFirstOperand());
+                writeVariable(insn.getSecondOperand());
+                writeBlock(insn.getConsequent());
+                writeBlock(insn.getAlternative());
+            } catch (IOException e) {
+                throw new IOExceptionWrapper(e);
+            }
+        }
+
+        @Override
+        public void visit(JumpInstruction insn) {
+            try {
+                output.writeByte(JUMP);
+                writeBlock(insn.getTarget());
+            } catch (IOException e) {
+                throw new IOExceptionWrapper(e);
+            }
+        }
+
+        @Override
+        public void visit(SwitchInstruction insn) {
+            try {
+                output.writeByte(SWITCH);
+                writeVariable(insn.getCondition());
+                writeBlock(insn.getDefaultTarget());
+                output.writeInt(insn.getEntries().size());
+                for (SwitchTableEntry entry : insn.getEntries()) {
+                    output.writeInt(entry.getCondition());
+                    writeBlock(entry.getTarget());
+                }
+            } catch (IOException e) {
+                throw new IOExceptionWrapper(e);
+            }
+        }
+
+        @Override
+        public void visit(ExitInstruction insn) {
+            try {
+                output.writeByte(EXIT);
+                writeVariable(insn.getValueToReturn());
+            } catch (IOException e) {
+                throw new IOExceptionWrapper(e);
+            }
+        }
+
+        @Override
+        public void visit(RaiseInstruction insn) {
+            try {
+                output.writeByte(RAISE);
+                writeVariable(insn.getException());
+            } catch (IOException e) {
+                throw new IOExceptionWrapper(e);
+            }
+        }
+
+        @Override
+        public void visit(ConstructArrayInstruction insn) {
+            writeReceiver(CONSTRUCT_ARRAY, insn.getReceiver());
+            try {
+                writeVariable(insn.getSize());
+                writeType(insn.getItemType());
+            } catch (IOException e) {
+                throw new IOExceptionWrapper(e);
+            }
+        }
+
+        @Override
+        public void visit(ConstructInstruction insn) {
+            writeReceiver(CONSTRUCT, insn.getReceiver());
+            try {
+                output.writeInt(symbolTable.lookup(insn.getType()));
+            } catch (IOException e) {
+                throw new IOExceptionWrapper(e);
+            }
+        }
+
+        @Override
+        public void visit(ConstructMultiArrayInstruction insn) {
+            writeReceiver(CONSTRUCT_MULTI_ARRAY, insn.getReceiver());
+            try {
+                writeType(insn.getItemType());
+                List<Variable> dimensions = insn.getDimensions();
+                output.writeInt(dimensions.size());
+                for (Variable dimension : dimensions) {
+                    writeVariable(dimension);
+                }
+            } catch (IOException e) {
+                throw new IOExceptionWrapper(e);
+            }
+        }
+
+        @Override
+        public void visit(GetFieldInstruction insn) {
+            writeReceiver(GET_FIELD, insn.getReceiver());
+            try {
+                writeVariable(insn.getInstance());
+                writeField(insn.getField());
+                writeType(insn.getFieldType());
+            } catch (IOException e) {
+                throw new IOExceptionWrapper(e);
+            }
+        }
+
+        @Override
+        public void visit(PutFieldInstruction insn) {
+            try {
+                output.writeByte(PUT_FIELD);
+                writeVariable(insn.getInstance());
+                writeVariable(insn.getValue());
+                writeField(insn.getField());
+            } catch (IOException e) {
+                throw new IOExceptionWrapper(e);
+            }
+        }
+
+        @Override
+        public void visit(ArrayLengthInstruction insn) {
+            writeReceiver(ARRAY_LENGTH, insn.getReceiver());
+            try {
+                writeVariable(insn.getArray());
+            } catch (IOException e) {
+                throw new IOExceptionWrapper(e);
+            }
+        }
+
+        @Override
+        public void visit(CloneArrayInstruction insn) {
+            writeReceiver(CLONE_ARRAY, insn.getReceiver());
+            try {
+                writeVariable(insn.getArray());
+            } catch (IOException e) {
+                throw new IOExceptionWrapper(e);
+            }
+        }
+
+        @Override
+        public void visit(UnwrapArrayInstruction insn) {
+            try {
+                output.writeByte(UNWRAP_ARRAY);
+                output.writeByte(insn.getElementType().ordinal());
+                writeVariable(insn.getReceiver());
+                writeVariable(insn.getArray());
+            } catch (IOException e) {
+                throw new IOExceptionWrapper(e);
+            }
+        }
+
+        @Override
+        public void visit(GetElementInstruction insn) {
+            try {
+                output.writeByte(GET_ELEMENT);
+                output.writeByte(insn.getElementType().ordinal());
+                writeVariable(insn.getReceiver());
+                writeVariable(insn.getArray());
+                writeVariable(insn.getIndex());
+            } catch (IOException e) {
+                throw new IOExceptionWrapper(e);
+            }
+        }
+
+        @Override
+        public void visit(PutElementInstruction insn) {
+            try {
+                output.writeByte(PUT_ELEMENT);
+                output.writeByte(insn.getElementType().ordinal());
+                writeVariable(insn.getArray());
+                writeVariable(insn.getIndex());
+                writeVariable(insn.getValue());
+            } catch (IOException e) {
+                throw new IOExceptionWrapper(e);
+            }
+        }
+
+        @Override
+        public void visit(InvokeInstruction insn) {
+            try {
+                output.writeByte(INVOKE);
+                output.writeByte(insn.getType() != null ? insn.getType().ordinal() : -1);
+                writeVariable(insn.getReceiver());
+                writeVariable(insn.getInstance());
+                output.writeInt(symbolTable.lookup(insn.getMethod().getClassName()));
+                output.writeInt(symbolTable.lookup(insn.getMethod().getDescriptor().toString()));
+                output.writeInt(insn.getArguments().size());
+                for (Variable arg : insn.getArguments()) {
+                    writeVariable(arg);
+                }
+            } catch (IOException e) {
+                throw new IOExceptionWrapper(e);
+            }
+        }
+
+        @Override
+        public void visit(IsInstanceInstruction insn) {
+            writeReceiver(IS_INSTANCE, insn.getReceiver());
+            try {
+                writeVariable(insn.getValue());
+                writeType(insn.getType());
+            } catch (IOException e) {
+                throw new IOExceptionWrapper(e);
+            }
+        }
+
+        @Override
+        public void visit(InitClassInstruction insn) {
+            try {
+                output.writeByte(INIT_CLASS);
+                output.writeInt(symbolTable.lookup(insn.getClassName()));
+            } catch (IOException e) {
+                throw new IOExceptionWrapper(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ *  Copyright 2014 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.cache;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>Numbers strings written to a class archive, so that each class name, member name
+ * or descriptor is stored only once and is referenced by its index.</p>
+ *
+ * @author Alexey Andreev <konsoletyper@gmail.com>
+ */
+public class SymbolTable {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private List<String> symbols = new ArrayList<>();
+    private Map<String, Integer> indexes = new HashMap<>();
+
+    public int lookup(String symbol) {
+        Integer index = indexes.get(symbol);
+        if (index == null) {
+            index = symbols.size();
+            symbols.add(symbol);
+            indexes.put(symbol, index);
+        }
+        return index;
+    }
+
+    public String at(int index) {
+        return symbols.get(index);
+    }
+
+    public int size() {
+        return symbols.size();
+    }
+
+    public void write(DataOutput output) throws IOException {
+        output.writeInt(symbols.size());
+        for (String symbol : symbols) {
+            byte[] bytes = symbol.getBytes(UTF8);
+            output.writeInt(bytes.length);
+            output.write(bytes);
+        }
+    }
+
+    public static SymbolTable read(DataInput input) throws IOException {
+        SymbolTable table = new SymbolTable();
+        int size = input.readInt();
+        for (int i = 0; i < size; ++i) {
+            byte[] bytes = new byte[input.readInt()];
+            input.readFully(bytes);
+            table.symbols.add(new String(bytes, UTF8));
+        }
+        return table;
+    }
+}
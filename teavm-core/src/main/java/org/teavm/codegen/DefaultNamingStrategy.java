@@ -26,10 +26,10 @@ import org.teavm.model.*;
 public class DefaultNamingStrategy implements NamingStrategy {
     private AliasProvider aliasProvider;
     private ClassHolderSource classSource;
-    private Map<String, String> aliases = new HashMap<>();
-    private Map<String, String> privateAliases = new HashMap<>();
+    private Map<MethodDescriptor, String> aliases = new HashMap<>();
+    private Map<MethodReference, String> privateAliases = new HashMap<>();
     private Map<String, String> classAliases = new HashMap<>();
-    private Map<String, String> fieldAliases = new HashMap<>();
+    private Map<FieldReference, String> fieldAliases = new HashMap<>();
     private boolean minifying;
 
     public DefaultNamingStrategy(AliasProvider aliasProvider, ClassHolderSource classSource) {
@@ -66,19 +66,17 @@ public class DefaultNamingStrategy implements NamingStrategy {
         if (methodHolder.getModifiers().contains(ElementModifier.STATIC) ||
                 method.getDescriptor().getName().equals("<init>") ||
                 methodHolder.getLevel() == AccessLevel.PRIVATE) {
-            String key = method.toString();
-            String alias = privateAliases.get(key);
+            String alias = privateAliases.get(method);
             if (alias == null) {
                 alias = aliasProvider.getAlias(method);
-                privateAliases.put(key, alias);
+                privateAliases.put(method, alias);
             }
             return alias;
         } else {
-            String key = method.getDescriptor().toString();
-            String alias = aliases.get(key);
+            String alias = aliases.get(method.getDescriptor());
             if (alias == null) {
                 alias = aliasProvider.getAlias(method);
-                aliases.put(key, alias);
+                aliases.put(method.getDescriptor(), alias);
             }
             return alias;
         }
@@ -93,31 +91,27 @@ public class DefaultNamingStrategy implements NamingStrategy {
         if (method == null) {
             throw new NamingException("Can't provide name for method as it was not found: " + method);
         }
-        String key = method.toString();
-        String alias = privateAliases.get(key);
+        String alias = privateAliases.get(method);
         if (alias == null) {
             alias = aliasProvider.getAlias(method);
-            privateAliases.put(key, alias);
+            privateAliases.put(method, alias);
         }
         return alias;
     }
 
     @Override
     public String getNameFor(FieldReference field) {
-        String realCls = getRealFieldOwner(field.getClassName(), field.getFieldName());
-        if (!realCls.equals(field.getClassName())) {
-            String alias = getNameFor(new FieldReference(realCls, field.getFieldName()));
-            fieldAliases.put(field.getClassName() + "#" + field, alias);
-            return alias;
-        } else {
-            String key = realCls + "#" + field;
-            String alias = fieldAliases.get(key);
-            if (alias == null) {
+        String alias = fieldAliases.get(field);
+        if (alias == null) {
+            String realCls = getRealFieldOwner(field.getClassName(), field.getFieldName());
+            if (!realCls.equals(field.getClassName())) {
+                alias = getNameFor(FieldReference.get(realCls, field.getFieldName()));
+            } else {
                 alias = aliasProvider.getAlias(field);
-                fieldAliases.put(key, alias);
             }
-            return alias;
+            fieldAliases.put(field, alias);
         }
+        return alias;
     }
 
     private MethodReference getRealMethod(MethodReference methodRef) {
@@ -132,7 +126,7 @@ public class DefaultNamingStrategy implements NamingStrategy {
                 if (method.getLevel() == AccessLevel.PRIVATE && !className.equals(methodRef.getClassName())) {
                     return null;
                 }
-                return new MethodReference(className, method.getDescriptor());
+                return MethodReference.get(className, method.getDescriptor());
             }
             className = cls.getParent();
         }
@@ -0,0 +1,253 @@
+/*
+ *  Copyright 2014 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.common;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.*;
+
+/**
+ * <p>Thread-safe cache that keeps at most <code>capacity</code> values strongly reachable. When this
+ * number is exceeded, the least recently used value is evicted to a softly referenced part of the cache,
+ * where it stays until the garbage collector needs memory. So a long-lived process does not keep
+ * every value forever, yet it does not lose values while there is enough memory.</p>
+ *
+ * <p>Values that are read or added through a {@link Session} are pinned and are neither evicted nor
+ * reclaimed until the session ends, so the session gets the same instance for the whole time.
+ * Sessions may overlap, a value stays pinned while any session that touched it is open.</p>
+ *
+ * @author Alexey Andreev <konsoletyper@gmail.com>
+ */
+public class BoundedCache<K, V> {
+    private int capacity;
+    private LinkedHashMap<K, V> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private Map<K, SoftEntry<K, V>> softEntries = new HashMap<>();
+    private ReferenceQueue<V> referenceQueue = new ReferenceQueue<>();
+    private Map<K, Pin<V>> pinnedEntries = new HashMap<>();
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long reclaims;
+
+    private static class SoftEntry<K, V> extends SoftReference<V> {
+        K key;
+
+        public SoftEntry(K key, V value, ReferenceQueue<? super V> queue) {
+            super(value, queue);
+            this.key = key;
+        }
+    }
+
+    private static class Pin<V> {
+        V value;
+        int sessionCount;
+
+        public Pin(V value) {
+            this.value = value;
+        }
+    }
+
+    /**
+     * <p>A set of values pinned by one user of the cache.</p>
+     */
+    public class Session {
+        private Set<K> pinnedKeys = new HashSet<>();
+        private boolean ended;
+
+        private Session() {
+        }
+
+        /**
+         * <p>Same as {@link BoundedCache#get(Object)}, but pins the value until the session ends.</p>
+         */
+        public V get(K key) {
+            return BoundedCache.this.get(key, this);
+        }
+
+        /**
+         * <p>Same as {@link BoundedCache#putIfAbsent(Object, Object)}, but pins the value
+         * until the session ends.</p>
+         */
+        public V putIfAbsent(K key, V value) {
+            return BoundedCache.this.putIfAbsent(key, value, this);
+        }
+
+        /**
+         * <p>Releases values pinned by this session. Values pinned by other sessions stay pinned.</p>
+         */
+        public void end() {
+            endSession(this);
+        }
+    }
+
+    public BoundedCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+    }
+
+    public V get(K key) {
+        return get(key, null);
+    }
+
+    private synchronized V get(K key, Session session) {
+        expungeReclaimed();
+        Pin<V> pin = pinnedEntries.get(key);
+        V value = pin != null ? pin.value : null;
+        if (value == null) {
+            value = entries.get(key);
+            if (value == null) {
+                SoftEntry<K, V> softEntry = softEntries.get(key);
+                if (softEntry != null) {
+                    value = softEntry.get();
+                    if (value != null) {
+                        softEntries.remove(key);
+                        store(key, value, session);
+                    }
+                }
+            } else if (session != null) {
+                pin(key, value, session);
+            }
+        } else if (session != null) {
+            pin(key, value, session);
+        }
+        if (value != null) {
+            ++hits;
+        } else {
+            ++misses;
+        }
+        return value;
+    }
+
+    /**
+     * <p>Adds a value unless the cache already has one for the given key.</p>
+     *
+     * @return the value that was already in the cache, or <code>null</code> if the given value was added.
+     */
+    public V putIfAbsent(K key, V value) {
+        return putIfAbsent(key, value, null);
+    }
+
+    private synchronized V putIfAbsent(K key, V value, Session session) {
+        if (value == null) {
+            throw new IllegalArgumentException("Can't cache null value");
+        }
+        expungeReclaimed();
+        Pin<V> pin = pinnedEntries.get(key);
+        V existing = pin != null ? pin.value : null;
+        if (existing == null) {
+            existing = entries.get(key);
+        }
+        if (existing == null) {
+            SoftEntry<K, V> softEntry = softEntries.remove(key);
+            existing = softEntry != null ? softEntry.get() : null;
+            if (existing != null) {
+                store(key, existing, session);
+            }
+        } else if (session != null) {
+            pin(key, existing, session);
+        }
+        if (existing != null) {
+            return existing;
+        }
+        store(key, value, session);
+        return null;
+    }
+
+    private void store(K key, V value, Session session) {
+        if (session != null) {
+            pin(key, value, session);
+            return;
+        }
+        entries.put(key, value);
+        trim();
+    }
+
+    private void pin(K key, V value, Session session) {
+        if (session.ended) {
+            throw new IllegalStateException("Pinning session has already ended");
+        }
+        if (!session.pinnedKeys.add(key)) {
+            return;
+        }
+        Pin<V> pin = pinnedEntries.get(key);
+        if (pin == null) {
+            entries.remove(key);
+            pin = new Pin<>(value);
+            pinnedEntries.put(key, pin);
+        }
+        ++pin.sessionCount;
+    }
+
+    private void trim() {
+        Iterator<Map.Entry<K, V>> iter = entries.entrySet().iterator();
+        while (entries.size() > capacity) {
+            Map.Entry<K, V> eldest = iter.next();
+            iter.remove();
+            softEntries.put(eldest.getKey(), new SoftEntry<>(eldest.getKey(), eldest.getValue(), referenceQueue));
+            ++evictions;
+        }
+    }
+
+    private void expungeReclaimed() {
+        while (true) {
+            @SuppressWarnings("unchecked")
+            SoftEntry<K, V> softEntry = (SoftEntry<K, V>)referenceQueue.poll();
+            if (softEntry == null) {
+                break;
+            }
+            if (softEntries.get(softEntry.key) == softEntry) {
+                softEntries.remove(softEntry.key);
+                ++reclaims;
+            }
+        }
+    }
+
+    public synchronized Session beginPinning() {
+        return new Session();
+    }
+
+    private synchronized void endSession(Session session) {
+        if (session.ended) {
+            throw new IllegalStateException("Pinning session has already ended");
+        }
+        session.ended = true;
+        for (K key : session.pinnedKeys) {
+            Pin<V> pin = pinnedEntries.get(key);
+            if (pin != null && --pin.sessionCount == 0) {
+                pinnedEntries.remove(key);
+                entries.put(key, pin.value);
+            }
+        }
+        session.pinnedKeys.clear();
+        trim();
+    }
+
+    /**
+     * <p>Removes all values, except for pinned ones.</p>
+     */
+    public synchronized void clear() {
+        entries.clear();
+        softEntries.clear();
+    }
+
+    public synchronized CacheStatistics getStatistics() {
+        expungeReclaimed();
+        return new CacheStatistics(hits, misses, evictions, reclaims, entries.size() + pinnedEntries.size() +
+                softEntries.size(), pinnedEntries.size());
+    }
+}
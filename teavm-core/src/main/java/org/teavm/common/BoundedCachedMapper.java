@@ -0,0 +1,116 @@
+/*
+ *  Copyright 2014 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.common;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * <p>Same as {@link ConcurrentCachedMapper}, but keeps results in a {@link BoundedCache}, so that
+ * they may be evicted and computed again later. A user that needs the same instance for the same
+ * preimage for a while should map through a {@link Session}.</p>
+ *
+ * @author Alexey Andreev <konsoletyper@gmail.com>
+ */
+public class BoundedCachedMapper<T, R> implements Mapper<T, R> {
+    private static final Object NULL = new Object();
+    private Mapper<T, R> innerMapper;
+    private BoundedCache<T, Object> cache;
+    private Map<T, CountDownLatch> pending = new HashMap<>();
+
+    /**
+     * <p>Maps preimages like the mapper it was started from, pinning results until it ends.</p>
+     */
+    public class Session implements Mapper<T, R> {
+        private BoundedCache<T, Object>.Session cacheSession;
+
+        private Session(BoundedCache<T, Object>.Session cacheSession) {
+            this.cacheSession = cacheSession;
+        }
+
+        @Override
+        public R map(T preimage) {
+            return BoundedCachedMapper.this.map(preimage, cacheSession);
+        }
+
+        public void end() {
+            cacheSession.end();
+        }
+    }
+
+    public BoundedCachedMapper(Mapper<T, R> innerMapper, int capacity) {
+        this.innerMapper = innerMapper;
+        this.cache = new BoundedCache<>(capacity);
+    }
+
+    @Override
+    public R map(T preimage) {
+        return map(preimage, null);
+    }
+
+    private R map(T preimage, BoundedCache<T, Object>.Session session) {
+        while (true) {
+            Object value = session != null ? session.get(preimage) : cache.get(preimage);
+            if (value != null) {
+                return unwrap(value);
+            }
+            CountDownLatch latch;
+            boolean computing = false;
+            synchronized (pending) {
+                latch = pending.get(preimage);
+                if (latch == null) {
+                    latch = new CountDownLatch(1);
+                    pending.put(preimage, latch);
+                    computing = true;
+                }
+            }
+            if (computing) {
+                try {
+                    R result = innerMapper.map(preimage);
+                    value = result != null ? result : NULL;
+                    Object existing = session != null ? session.putIfAbsent(preimage, value) :
+                            cache.putIfAbsent(preimage, value);
+                    return unwrap(existing != null ? existing : value);
+                } finally {
+                    synchronized (pending) {
+                        pending.remove(preimage);
+                    }
+                    latch.countDown();
+                }
+            }
+            try {
+                latch.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private R unwrap(Object value) {
+        return value != NULL ? (R)value : null;
+    }
+
+    public Session beginPinning() {
+        return new Session(cache.beginPinning());
+    }
+
+    public CacheStatistics getStatistics() {
+        return cache.getStatistics();
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ *  Copyright 2014 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.common;
+
+/**
+ * <p>Snapshot of the counters of a {@link BoundedCache}.</p>
+ *
+ * @author Alexey Andreev <konsoletyper@gmail.com>
+ */
+public class CacheStatistics {
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long reclaims;
+    private int size;
+    private int pinnedSize;
+
+    public CacheStatistics(long hits, long misses, long evictions, long reclaims, int size, int pinnedSize) {
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.reclaims = reclaims;
+        this.size = size;
+        this.pinnedSize = pinnedSize;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * <p>Gets the number of entries that were moved out of the strongly referenced part of the cache.</p>
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * <p>Gets the number of evicted entries that were then reclaimed by the garbage collector.</p>
+     */
+    public long getReclaims() {
+        return reclaims;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getPinnedSize() {
+        return pinnedSize;
+    }
+
+    @Override
+    public String toString() {
+        return "hits: " + hits + ", misses: " + misses + ", evictions: " + evictions + ", reclaims: " + reclaims +
+                ", size: " + size + ", pinned: " + pinnedSize;
+    }
+}
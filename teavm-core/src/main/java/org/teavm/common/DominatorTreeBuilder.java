@@ -56,8 +56,9 @@ class DominatorTreeBuilder {
             if (parents[w] < 0) {
                 continue;
             }
-            for (int v : graph.incomingEdges(w)) {
-                int u = eval(v);
+            int predecessorCount = graph.incomingEdgesCount(w);
+            for (int j = 0; j < predecessorCount; ++j) {
+                int u = eval(graph.incomingEdge(w, j));
                 semidominators[w] = Math.min(semidominators[w], semidominators[u]);
             }
             addToBucket(vertices[semidominators[w]], w);
@@ -141,7 +142,9 @@ class DominatorTreeBuilder {
             // We don't need vertex index after its dominator has computed.
             semidominators[v] = i;
             vertices[i++] = v;
-            for (int w : graph.outgoingEdges(v)) {
+            int successorCount = graph.outgoingEdgesCount(v);
+            for (int j = 0; j < successorCount; ++j) {
+                int w = graph.outgoingEdge(v, j);
                 if (semidominators[w] < 0) {
                     parents[w] = v;
                     stack[size++] = w;
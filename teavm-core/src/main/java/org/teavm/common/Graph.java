@@ -16,6 +16,10 @@
 package org.teavm.common;
 
 /**
+ * <p>Directed graph with nodes numbered from zero. Methods returning arrays of edges allocate
+ * a new array on each call. Algorithms that visit edges in loops should rather iterate
+ * from zero to {@link #outgoingEdgesCount(int)} and call {@link #outgoingEdge(int, int)},
+ * which never allocates.</p>
  *
  * @author Alexey Andreev
  */
@@ -26,10 +30,14 @@ public interface Graph {
 
     int copyIncomingEdges(int node, int[] target);
 
+    int incomingEdge(int node, int index);
+
     int[] outgoingEdges(int node);
 
     int copyOutgoingEdges(int node, int[] target);
 
+    int outgoingEdge(int node, int index);
+
     int incomingEdgesCount(int node);
 
     int outgoingEdgesCount(int node);
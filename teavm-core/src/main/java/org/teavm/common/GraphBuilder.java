@@ -15,31 +15,34 @@
  */
 package org.teavm.common;
 
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.List;
 
 /**
+ * <p>Builds immutable graphs. Edges are accumulated in two flat arrays of sources and targets,
+ * and then laid out in compressed sparse row form: for each node, its edges occupy a contiguous
+ * range of a single array, so that {@link Graph#outgoingEdge(int, int)} and
+ * {@link Graph#incomingEdge(int, int)} do not allocate.</p>
  *
  * @author Alexey Andreev
  */
 public class GraphBuilder {
     private GraphImpl builtGraph;
-    private List<IntegerArray> addedEdges = new ArrayList<>();
+    private IntegerArray sources = new IntegerArray(16);
+    private IntegerArray targets = new IntegerArray(16);
     private int sz = 0;
 
     public GraphBuilder() {
     }
 
     public GraphBuilder(int sz) {
-        addedEdges.addAll(Collections.<IntegerArray>nCopies(sz, null));
         this.sz = sz;
     }
 
     public void clear() {
-        addedEdges.clear();
+        sources.clear();
+        targets.clear();
         sz = 0;
+        builtGraph = null;
     }
 
     public void addEdge(int from, int to) {
@@ -48,95 +51,107 @@ public class GraphBuilder {
         }
         sz = Math.max(sz, Math.max(from, to) + 1);
         builtGraph = null;
-        if (addedEdges.size() == from) {
-            addedEdges.add(IntegerArray.of(to));
-        } else if (addedEdges.size() <= from) {
-            addedEdges.addAll(Collections.<IntegerArray>nCopies(from - addedEdges.size(), null));
-            addedEdges.add(IntegerArray.of(to));
-        } else {
-            IntegerArray set = addedEdges.get(from);
-            if (set == null) {
-                addedEdges.set(from, IntegerArray.of(to));
-            } else {
-                set.add(to);
-            }
-        }
+        sources.add(from);
+        targets.add(to);
     }
 
     public Graph build() {
         if (builtGraph == null) {
-            IntegerArray[] incomingEdges = new IntegerArray[sz];
-            for (int i = 0; i < sz; ++i) {
-                incomingEdges[i] = new IntegerArray(1);
+            int edgeCount = sources.size();
+
+            // First pass: count edges of each node
+            int[] outgoingOffsets = new int[sz + 1];
+            int[] incomingOffsets = new int[sz + 1];
+            for (int i = 0; i < edgeCount; ++i) {
+                outgoingOffsets[sources.get(i) + 1]++;
+                incomingOffsets[targets.get(i) + 1]++;
             }
-            int[][] outgoingEdgeList = new int[sz][];
-            for (int i = 0; i < addedEdges.size(); ++i) {
-                IntegerArray edgeList = addedEdges.get(i);
-                outgoingEdgeList[i] = edgeList != null ? edgeList.getAll() : new int[0];
-                for (int j : outgoingEdgeList[i]) {
-                    incomingEdges[j].add(i);
-                }
+            for (int i = 0; i < sz; ++i) {
+                outgoingOffsets[i + 1] += outgoingOffsets[i];
+                incomingOffsets[i + 1] += incomingOffsets[i];
             }
-            for (int i = addedEdges.size(); i < sz; ++i) {
-                outgoingEdgeList[i] = new int[0];
+
+            // Second pass: place edges. Outgoing edges keep the order they were added in,
+            // incoming edges are ordered by their sources
+            int[] outgoingEdges = new int[edgeCount];
+            int[] positions = Arrays.copyOf(outgoingOffsets, sz);
+            for (int i = 0; i < edgeCount; ++i) {
+                outgoingEdges[positions[sources.get(i)]++] = targets.get(i);
             }
-            int[][] incomingEdgeList = new int[sz][];
-            for (int i = 0; i < sz; ++i) {
-                incomingEdgeList[i] = incomingEdges[i].getAll();
+            int[] incomingEdges = new int[edgeCount];
+            positions = Arrays.copyOf(incomingOffsets, sz);
+            for (int node = 0; node < sz; ++node) {
+                for (int i = outgoingOffsets[node]; i < outgoingOffsets[node + 1]; ++i) {
+                    incomingEdges[positions[outgoingEdges[i]]++] = node;
+                }
             }
-            builtGraph = new GraphImpl(incomingEdgeList, outgoingEdgeList);
+            builtGraph = new GraphImpl(incomingOffsets, incomingEdges, outgoingOffsets, outgoingEdges);
         }
         return builtGraph;
     }
 
     private static class GraphImpl implements Graph {
-        private final int[][] incomingEdgeList;
-        private final int[][] outgoingEdgeList;
-
-        public GraphImpl(int[][] incomingEdgeList, int[][] outgoingEdgeList) {
-            this.incomingEdgeList = incomingEdgeList;
-            this.outgoingEdgeList = outgoingEdgeList;
+        private final int[] incomingOffsets;
+        private final int[] incomingEdges;
+        private final int[] outgoingOffsets;
+        private final int[] outgoingEdges;
+
+        public GraphImpl(int[] incomingOffsets, int[] incomingEdges, int[] outgoingOffsets, int[] outgoingEdges) {
+            this.incomingOffsets = incomingOffsets;
+            this.incomingEdges = incomingEdges;
+            this.outgoingOffsets = outgoingOffsets;
+            this.outgoingEdges = outgoingEdges;
         }
 
         @Override
         public int size() {
-            return incomingEdgeList.length;
+            return incomingOffsets.length - 1;
         }
 
         @Override
         public int[] incomingEdges(int node) {
-            int[] result = incomingEdgeList[node];
-            return Arrays.copyOf(result, result.length);
+            return Arrays.copyOfRange(incomingEdges, incomingOffsets[node], incomingOffsets[node + 1]);
         }
 
         @Override
         public int copyIncomingEdges(int node, int[] target) {
-            int[] result = incomingEdgeList[node];
-            System.arraycopy(result, 0, target, 0, result.length);
-            return result.length;
+            int start = incomingOffsets[node];
+            int count = incomingOffsets[node + 1] - start;
+            System.arraycopy(incomingEdges, start, target, 0, count);
+            return count;
+        }
+
+        @Override
+        public int incomingEdge(int node, int index) {
+            return incomingEdges[incomingOffsets[node] + index];
         }
 
         @Override
         public int[] outgoingEdges(int node) {
-            int[] result = outgoingEdgeList[node];
-            return Arrays.copyOf(result, result.length);
+            return Arrays.copyOfRange(outgoingEdges, outgoingOffsets[node], outgoingOffsets[node + 1]);
         }
 
         @Override
         public int copyOutgoingEdges(int node, int[] target) {
-            int[] result = outgoingEdgeList[node];
-            System.arraycopy(result, 0, target, 0, result.length);
-            return result.length;
+            int start = outgoingOffsets[node];
+            int count = outgoingOffsets[node + 1] - start;
+            System.arraycopy(outgoingEdges, start, target, 0, count);
+            return count;
+        }
+
+        @Override
+        public int outgoingEdge(int node, int index) {
+            return outgoingEdges[outgoingOffsets[node] + index];
         }
 
         @Override
         public int incomingEdgesCount(int node) {
-            return incomingEdgeList[node].length;
+            return incomingOffsets[node + 1] - incomingOffsets[node];
         }
 
         @Override
         public int outgoingEdgesCount(int node) {
-            return outgoingEdgeList[node].length;
+            return outgoingOffsets[node + 1] - outgoingOffsets[node];
         }
     }
 }
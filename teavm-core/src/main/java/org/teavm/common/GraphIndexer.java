@@ -28,7 +28,11 @@ public class GraphIndexer {
     private Graph graph;
 
     public GraphIndexer(Graph graph) {
-        sort(graph);
+        this(graph, new LoopGraph(graph));
+    }
+
+    public GraphIndexer(Graph graph, LoopGraph loopGraph) {
+        sort(graph, loopGraph);
     }
 
     private static class LoopEntrance {
@@ -36,11 +40,10 @@ public class GraphIndexer {
         int follower;
     }
 
-    private int sort(Graph graph) {
+    private int sort(Graph graph, LoopGraph loopGraph) {
         final byte NONE = 0;
         final byte VISITING = 1;
         final byte VISITED = 2;
-        LoopGraph loopGraph = new LoopGraph(graph);
         int sz = graph.size();
         int[] indexToNode = new int[sz + 1];
         int[] nodeToIndex = new int[sz + 1];
@@ -66,10 +69,9 @@ public class GraphIndexer {
                     visitIndex[node] = lastVisitIndex++;
                     state[node] = VISITING;
                     stack[stackSize++] = node;
-                    int[] successors = graph.outgoingEdges(node);
-                    LoopEntrance[] edges = new LoopEntrance[successors.length];
+                    LoopEntrance[] edges = new LoopEntrance[graph.outgoingEdgesCount(node)];
                     for (int i = 0; i < edges.length; ++i) {
-                        int successor = successors[i];
+                        int successor = graph.outgoingEdge(node, i);
                         Loop successorLoop = loopGraph.loopAt(successor);
                         LoopEntrance edge = new LoopEntrance();
                         edge.head = successorLoop != null ?
@@ -109,8 +111,10 @@ public class GraphIndexer {
         nodeToIndex[sz] = sz;
         GraphBuilder sorted = new GraphBuilder(lastIndex + 2);
         for (int i = 0; i <= lastIndex; ++i) {
-            for (int next : graph.outgoingEdges(indexToNode[i])) {
-                sorted.addEdge(i, nodeToIndex[next]);
+            int node = indexToNode[i];
+            int nextCount = graph.outgoingEdgesCount(node);
+            for (int j = 0; j < nextCount; ++j) {
+                sorted.addEdge(i, nodeToIndex[graph.outgoingEdge(node, j)]);
             }
         }
         this.graph = sorted.build();
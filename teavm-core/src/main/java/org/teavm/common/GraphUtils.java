@@ -15,7 +15,9 @@
  */
 package org.teavm.common;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 
 /**
@@ -26,12 +28,10 @@ public class GraphUtils {
     public static Graph invert(Graph graph) {
         int sz = graph.size();
         GraphBuilder result = new GraphBuilder();
-        int[] sourceEdges = new int[sz];
         for (int node = 0; node < sz; ++node) {
-            int sourceCount = graph.copyIncomingEdges(node, sourceEdges);
+            int sourceCount = graph.incomingEdgesCount(node);
             for (int i = 0; i < sourceCount; ++i) {
-                int source = sourceEdges[i];
-                result.addEdge(node, source);
+                result.addEdge(node, graph.incomingEdge(node, i));
             }
         }
         return result.build();
@@ -40,11 +40,11 @@ public class GraphUtils {
     public static Graph close(Graph graph) {
         GraphBuilder result = new GraphBuilder();
         for (int node = 0; node < graph.size(); ++node) {
-            int[] next = graph.outgoingEdges(node);
-            for (int target : next) {
-                result.addEdge(node, target);
+            int targetCount = graph.outgoingEdgesCount(node);
+            for (int i = 0; i < targetCount; ++i) {
+                result.addEdge(node, graph.outgoingEdge(node, i));
             }
-            if (next.length == 0) {
+            if (targetCount == 0) {
                 result.addEdge(node, graph.size());
             }
         }
@@ -71,7 +71,9 @@ public class GraphUtils {
                 case NONE:
                     state[node] = VISITING;
                     stack[stackSize++] = node;
-                    for (int next : graph.outgoingEdges(node)) {
+                    int nextCount = graph.outgoingEdgesCount(node);
+                    for (int i = 0; i < nextCount; ++i) {
+                        int next = graph.outgoingEdge(node, i);
                         switch (state[next]) {
                             case NONE:
                                 result.addEdge(node, next);
@@ -100,6 +102,65 @@ public class GraphUtils {
         return cnt;
     }
 
+    /**
+     * <p>Finds strongly connected components of the graph using Tarjan's algorithm. Components are
+     * returned in reverse topological order, i.e. every component comes after all components
+     * reachable from it. Nodes of each component are listed in the order they were visited.</p>
+     */
+    public static int[][] findStronglyConnectedComponents(Graph graph) {
+        int sz = graph.size();
+        int[] index = new int[sz];
+        int[] lowLink = new int[sz];
+        boolean[] onStack = new boolean[sz];
+        int[] edgePos = new int[sz];
+        int[] dfsStack = new int[sz];
+        int[] sccStack = new int[sz];
+        int dfsTop = 0;
+        int sccTop = 0;
+        int lastIndex = 0;
+        List<int[]> components = new ArrayList<>();
+        for (int start = 0; start < sz; ++start) {
+            if (index[start] != 0) {
+                continue;
+            }
+            index[start] = ++lastIndex;
+            lowLink[start] = lastIndex;
+            onStack[start] = true;
+            sccStack[sccTop++] = start;
+            dfsStack[dfsTop++] = start;
+            while (dfsTop > 0) {
+                int node = dfsStack[dfsTop - 1];
+                if (edgePos[node] < graph.outgoingEdgesCount(node)) {
+                    int next = graph.outgoingEdge(node, edgePos[node]++);
+                    if (index[next] == 0) {
+                        index[next] = ++lastIndex;
+                        lowLink[next] = lastIndex;
+                        onStack[next] = true;
+                        sccStack[sccTop++] = next;
+                        dfsStack[dfsTop++] = next;
+                    } else if (onStack[next]) {
+                        lowLink[node] = Math.min(lowLink[node], index[next]);
+                    }
+                    continue;
+                }
+                --dfsTop;
+                if (dfsTop > 0) {
+                    int parent = dfsStack[dfsTop - 1];
+                    lowLink[parent] = Math.min(lowLink[parent], lowLink[node]);
+                }
+                if (lowLink[node] == index[node]) {
+                    int bottom = sccTop;
+                    do {
+                        onStack[sccStack[--bottom]] = false;
+                    } while (sccStack[bottom] != node);
+                    components.add(Arrays.copyOfRange(sccStack, bottom, sccTop));
+                    sccTop = bottom;
+                }
+            }
+        }
+        return components.toArray(new int[components.size()][]);
+    }
+
     public static DominatorTree buildDominatorTree(Graph graph) {
         DominatorTreeBuilder builder = new DominatorTreeBuilder(graph);
         builder.build();
@@ -147,7 +208,9 @@ public class GraphUtils {
                 frontier = new IntegerArray(1);
             }
             int idom = domTree.immediateDominatorOf(node);
-            for (int successor : cfg.outgoingEdges(node)) {
+            int successorCount = cfg.outgoingEdgesCount(node);
+            for (int i = 0; i < successorCount; ++i) {
+                int successor = cfg.outgoingEdge(node, i);
                 // If successor's immediate dominator is not the node,
                 // then add successor to node's dominance frontiers
                 if (domTree.immediateDominatorOf(successor) != node) {
@@ -66,6 +66,11 @@ public class GraphWithIndexedEdges implements Graph {
         return edges.length;
     }
 
+    @Override
+    public int incomingEdge(int node, int index) {
+        return incoming[node][index];
+    }
+
     @Override
     public int[] outgoingEdges(int node) {
         int[] edges = outgoing[node];
@@ -79,6 +84,11 @@ public class GraphWithIndexedEdges implements Graph {
         return edges.length;
     }
 
+    @Override
+    public int outgoingEdge(int node, int index) {
+        return outgoing[node][index];
+    }
+
     @Override
     public int incomingEdgesCount(int node) {
         return incoming[node].length;
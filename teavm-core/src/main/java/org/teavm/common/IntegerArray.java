@@ -77,6 +77,10 @@ public class IntegerArray {
         return sz;
     }
 
+    public void clear() {
+        sz = 0;
+    }
+
     public void addAll(int[] items) {
         int target = sz;
         sz += items.length;
@@ -86,7 +86,6 @@ public class LoopGraph implements Graph {
         LoopFrame rootFrame = new LoopFrame();
         stack[stackSize++] = rootFrame;
         int walkIndex = 0;
-        int[] targetEdges = new int[sz];
         int lastSortIndex = sz - 1;
         int loopSetSize = 0;
         while (stackSize > 0) {
@@ -95,9 +94,9 @@ public class LoopGraph implements Graph {
                 frames[frame.index] = frame;
                 frame.walkIndex = walkIndex++;
                 stack[stackSize++] = frame;
-                int targetEdgesCount = graph.copyOutgoingEdges(frame.index, targetEdges);
+                int targetEdgesCount = graph.outgoingEdgesCount(frame.index);
                 for (int i = 0; i < targetEdgesCount; ++i) {
-                    int next = targetEdges[i];
+                    int next = graph.outgoingEdge(frame.index, i);
                     LoopFrame nextFrame = frames[next];
                     if (nextFrame == null) {
                         nextFrame = new LoopFrame();
@@ -109,9 +108,9 @@ public class LoopGraph implements Graph {
                 frame.sortIndex = lastSortIndex--;
                 frame.done = true;
                 LoopImpl bestLoop = null;
-                int targetEdgesCount = graph.copyOutgoingEdges(frame.index, targetEdges);
+                int targetEdgesCount = graph.outgoingEdgesCount(frame.index);
                 for (int i = 0; i < targetEdgesCount; ++i) {
-                    int next = targetEdges[i];
+                    int next = graph.outgoingEdge(frame.index, i);
                     LoopFrame nextFrame = frames[next];
                     LoopImpl loop = nextFrame.loop;
                     if (!nextFrame.done) {
@@ -220,6 +219,11 @@ public class LoopGraph implements Graph {
         return graph.copyIncomingEdges(node, target);
     }
 
+    @Override
+    public int incomingEdge(int node, int index) {
+        return graph.incomingEdge(node, index);
+    }
+
     @Override
     public int[] outgoingEdges(int node) {
         return graph.outgoingEdges(node);
@@ -230,6 +234,11 @@ public class LoopGraph implements Graph {
         return graph.copyOutgoingEdges(node, target);
     }
 
+    @Override
+    public int outgoingEdge(int node, int index) {
+        return graph.outgoingEdge(node, index);
+    }
+
     @Override
     public int incomingEdgesCount(int node) {
         return graph.incomingEdgesCount(node);
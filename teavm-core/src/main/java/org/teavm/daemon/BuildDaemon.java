@@ -0,0 +1,270 @@
+/*
+ *  Copyright 2014 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.daemon;
+
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermission;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Properties;
+import org.teavm.common.BoundedCache;
+import org.teavm.common.FiniteExecutor;
+import org.teavm.common.SimpleFiniteExecutor;
+import org.teavm.common.ThreadPoolFiniteExecutor;
+import org.teavm.javascript.JavascriptBuilder;
+import org.teavm.javascript.JavascriptBuilderFactory;
+import org.teavm.model.ClassHolder;
+import org.teavm.model.MethodDescriptor;
+import org.teavm.model.MethodReference;
+import org.teavm.model.ValueType;
+import org.teavm.parsing.ClasspathClassHolderSource;
+
+/**
+ * <p>Long-running build process that keeps parsed classes and worker threads between builds,
+ * so that repeated builds of the same project do not pay for JVM startup, JIT warm-up and
+ * class parsing again. Parsed classes are keyed by the hash of their class files, so a class
+ * is parsed again only when it changes. The cache of parsed classes is bounded, so the daemon
+ * does not grow when it builds many projects.</p>
+ *
+ * <p>The daemon only listens on the loopback interface. It publishes its port along with a random
+ * token in a descriptor file in the user's home directory, and rejects connections that do not
+ * present this token. Builds are performed one at a time, and a client that does not send its request
+ * within {@link #READ_TIMEOUT} milliseconds is disconnected, so that it can't hold up other clients.</p>
+ *
+ * <p>Clients also present the {@link #getBuildId() fingerprint} of their TeaVM classes. The daemon
+ * refuses to build for a client of another TeaVM build, since the code it generates may not work
+ * with the <code>runtime.js</code> the client ships.</p>
+ *
+ * @author Alexey Andreev <konsoletyper@gmail.com>
+ */
+public class BuildDaemon {
+    static final int PROTOCOL_VERSION = 6;
+    public static final int DEFAULT_CACHE_CAPACITY = 20000;
+    public static final int READ_TIMEOUT = 10000;
+    private static final int MAX_MESSAGE_LENGTH = 8192;
+    private ServerSocket serverSocket;
+    private String token;
+    private FiniteExecutor executor;
+    private BoundedCache<String, ClassHolder> parsedClasses;
+    private boolean statisticsPrinted;
+    private static String buildId;
+
+    public BuildDaemon(int port, FiniteExecutor executor, int cacheCapacity) throws IOException {
+        this.executor = executor;
+        parsedClasses = new BoundedCache<>(cacheCapacity);
+        serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        byte[] tokenBytes = new byte[16];
+        new SecureRandom().nextBytes(tokenBytes);
+        token = toHex(tokenBytes);
+    }
+
+    /**
+     * <p>Returns SHA-1 hash of the jar or the directory TeaVM classes are loaded from, or an empty string
+     * if it can't be computed.</p>
+     */
+    public static synchronized String getBuildId() {
+        if (buildId == null) {
+            buildId = computeBuildId();
+        }
+        return buildId;
+    }
+
+    private static String computeBuildId() {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            URL location = BuildDaemon.class.getProtectionDomain().getCodeSource().getLocation();
+            digestFile(digest, new File(location.toURI()), "");
+            return toHex(digest.digest());
+        } catch (IOException | URISyntaxException | NoSuchAlgorithmException | RuntimeException e) {
+            return "";
+        }
+    }
+
+    private static void digestFile(MessageDigest digest, File file, String path) throws IOException {
+        if (file.isDirectory()) {
+            File[] children = file.listFiles();
+            Arrays.sort(children);
+            for (File child : children) {
+                digestFile(digest, child, path + "/" + child.getName());
+            }
+            return;
+        }
+        digest.update(path.getBytes(StandardCharsets.UTF_8));
+        try (InputStream input = new FileInputStream(file)) {
+            byte[] buffer = new byte[4096];
+            while (true) {
+                int bytesRead = input.read(buffer);
+                if (bytesRead < 0) {
+                    break;
+                }
+                digest.update(buffer, 0, bytesRead);
+            }
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    public static File getDescriptorFile() {
+        return new File(new File(System.getProperty("user.home"), ".teavm"), "daemon.properties");
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public boolean isStatisticsPrinted() {
+        return statisticsPrinted;
+    }
+
+    /**
+     * <p>Makes the daemon print statistics of its class cache after each build.</p>
+     */
+    public void setStatisticsPrinted(boolean statisticsPrinted) {
+        this.statisticsPrinted = statisticsPrinted;
+    }
+
+    /**
+     * <p>Starts the daemon. Optional arguments are the port, the number of threads, the capacity of the class
+     * cache and <code>true</code> to print cache statistics after each build.</p>
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 0;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int cacheCapacity = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_CACHE_CAPACITY;
+        FiniteExecutor executor = threads > 1 ? new ThreadPoolFiniteExecutor(threads) : new SimpleFiniteExecutor();
+        final BuildDaemon daemon = new BuildDaemon(port, executor, cacheCapacity);
+        daemon.setStatisticsPrinted(args.length > 3 && Boolean.parseBoolean(args[3]));
+        daemon.publish();
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override public void run() {
+                getDescriptorFile().delete();
+            }
+        });
+        System.out.println("TeaVM build daemon is listening on port " + daemon.getPort());
+        daemon.run();
+    }
+
+    public void publish() throws IOException {
+        File file = getDescriptorFile();
+        file.getParentFile().mkdirs();
+        file.delete();
+        file.createNewFile();
+        try {
+            Files.setPosixFilePermissions(file.toPath(), EnumSet.of(PosixFilePermission.OWNER_READ,
+                    PosixFilePermission.OWNER_WRITE));
+        } catch (UnsupportedOperationException e) {
+            file.setReadable(false, false);
+            file.setReadable(true, true);
+        }
+        Properties properties = new Properties();
+        properties.setProperty("port", String.valueOf(getPort()));
+        properties.setProperty("token", token);
+        try (OutputStream output = new FileOutputStream(file)) {
+            properties.store(output, "TeaVM build daemon");
+        }
+    }
+
+    public void run() throws IOException {
+        while (true) {
+            try (Socket socket = serverSocket.accept()) {
+                socket.setSoTimeout(READ_TIMEOUT);
+                serve(socket);
+            } catch (IOException e) {
+                System.err.println("Error communicating with client: " + e.getMessage());
+            }
+            if (statisticsPrinted) {
+                System.out.println("Parsed class cache: " + parsedClasses.getStatistics());
+            }
+        }
+    }
+
+    private void serve(Socket socket) throws IOException {
+        DataInputStream input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        BuildResponse response;
+        if (input.readInt() != PROTOCOL_VERSION) {
+            response = new BuildResponse(false, false, "Unsupported protocol version");
+        } else if (!token.equals(input.readUTF())) {
+            response = new BuildResponse(false, false, "Wrong token");
+        } else if (!isSameBuild(input.readUTF())) {
+            response = new BuildResponse(false, false, "Client uses another build of TeaVM");
+        } else {
+            response = build(BuildRequest.read(input));
+        }
+        response.write(output);
+        output.flush();
+    }
+
+    private boolean isSameBuild(String clientBuildId) {
+        return !clientBuildId.isEmpty() && clientBuildId.equals(getBuildId());
+    }
+
+    private BuildResponse build(BuildRequest request) {
+        URL[] urls = new URL[request.getClassPath().size()];
+        try {
+            for (int i = 0; i < urls.length; ++i) {
+                urls[i] = new File(request.getClassPath().get(i)).toURI().toURL();
+            }
+        } catch (MalformedURLException e) {
+            return new BuildResponse(true, false, "Wrong class path: " + e.getMessage());
+        }
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        try (URLClassLoader classLoader = new URLClassLoader(urls, BuildDaemon.class.getClassLoader())) {
+            JavascriptBuilderFactory builderFactory = new JavascriptBuilderFactory();
+            builderFactory.setClassLoader(classLoader);
+            builderFactory.setClassSource(new ClasspathClassHolderSource(classLoader, parsedClasses));
+            builderFactory.setExecutor(executor);
+            builderFactory.setDependencyAnalysisStrategy(request.getDependencyAnalysisStrategy());
+            JavascriptBuilder builder = builderFactory.create();
+            builder.setMinifying(request.isMinifying());
+            builder.setBytecodeLogging(request.isBytecodeLogging());
+            builder.setLogStream(log);
+            builder.setPipelined(request.isPipelined());
+            builder.setClosureScoped(request.isClosureScoped());
+            builder.setRuntimeEmbedded(request.isRuntimeEmbedded());
+            builder.setTypedEmission(request.isTypedEmission());
+            MethodDescriptor mainMethodDesc = MethodDescriptor.get("main", ValueType.arrayOf(
+                    ValueType.object("java.lang.String")), ValueType.VOID);
+            builder.entryPoint("main", MethodReference.get(request.getMainClass(), mainMethodDesc))
+                    .withValue(1, "java.lang.String");
+            File targetFile = new File(request.getTargetFile());
+            targetFile.getParentFile().mkdirs();
+            builder.build(targetFile);
+            return new BuildResponse(true, true, "JavaScript file successfully built",
+                    new String(log.toByteArray(), StandardCharsets.UTF_8));
+        } catch (IOException | RuntimeException e) {
+            StringWriter message = new StringWriter();
+            e.printStackTrace(new PrintWriter(message));
+            String text = message.toString();
+            if (text.length() > MAX_MESSAGE_LENGTH) {
+                text = text.substring(0, MAX_MESSAGE_LENGTH);
+            }
+            return new BuildResponse(true, false, text, new String(log.toByteArray(), StandardCharsets.UTF_8));
+        }
+    }
+}
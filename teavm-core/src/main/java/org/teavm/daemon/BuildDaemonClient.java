@@ -0,0 +1,76 @@
+/*
+ *  Copyright 2014 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.daemon;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Properties;
+
+/**
+ * <p>Sends build requests to a running {@link BuildDaemon}.</p>
+ *
+ * @author Alexey Andreev <konsoletyper@gmail.com>
+ */
+public class BuildDaemonClient {
+    private static final int CONNECT_TIMEOUT = 1000;
+    private File descriptorFile;
+
+    public BuildDaemonClient() {
+        this(BuildDaemon.getDescriptorFile());
+    }
+
+    public BuildDaemonClient(File descriptorFile) {
+        this.descriptorFile = descriptorFile;
+    }
+
+    /**
+     * <p>Performs the given build in the daemon.</p>
+     *
+     * @return the response of the daemon, or <code>null</code> if there is no daemon running
+     * or the daemon refused to perform the build, for example because it runs another build of TeaVM,
+     * so that the caller should build by itself.
+     */
+    public BuildResponse build(BuildRequest request) {
+        if (!descriptorFile.exists()) {
+            return null;
+        }
+        Properties properties = new Properties();
+        int port;
+        try (InputStream input = new FileInputStream(descriptorFile)) {
+            properties.load(input);
+            port = Integer.parseInt(properties.getProperty("port"));
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+        String token = properties.getProperty("token", "");
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), CONNECT_TIMEOUT);
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            output.writeInt(BuildDaemon.PROTOCOL_VERSION);
+            output.writeUTF(token);
+            output.writeUTF(BuildDaemon.getBuildId());
+            request.write(output);
+            output.flush();
+            BuildResponse response = BuildResponse.read(new DataInputStream(new BufferedInputStream(
+                    socket.getInputStream())));
+            return response.isAccepted() ? response : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
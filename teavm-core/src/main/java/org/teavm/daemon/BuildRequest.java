@@ -0,0 +1,155 @@
+/*
+ *  Copyright 2014 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.daemon;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.teavm.dependency.DependencyAnalysisStrategy;
+
+/**
+ * <p>Describes a single build that a client asks {@link BuildDaemon} to perform.</p>
+ *
+ * @author Alexey Andreev <konsoletyper@gmail.com>
+ */
+public class BuildRequest {
+    private List<String> classPath = new ArrayList<>();
+    private String mainClass;
+    private String targetFile;
+    private boolean minifying = true;
+    private boolean pipelined;
+    private boolean closureScoped;
+    private boolean runtimeEmbedded;
+    private boolean typedEmission;
+    private boolean bytecodeLogging;
+    private DependencyAnalysisStrategy dependencyAnalysisStrategy = DependencyAnalysisStrategy.TYPE_PROPAGATION;
+
+    public List<String> getClassPath() {
+        return classPath;
+    }
+
+    public String getMainClass() {
+        return mainClass;
+    }
+
+    public void setMainClass(String mainClass) {
+        this.mainClass = mainClass;
+    }
+
+    public String getTargetFile() {
+        return targetFile;
+    }
+
+    public void setTargetFile(String targetFile) {
+        this.targetFile = targetFile;
+    }
+
+    public boolean isMinifying() {
+        return minifying;
+    }
+
+    public void setMinifying(boolean minifying) {
+        this.minifying = minifying;
+    }
+
+    public boolean isPipelined() {
+        return pipelined;
+    }
+
+    public void setPipelined(boolean pipelined) {
+        this.pipelined = pipelined;
+    }
+
+    public boolean isClosureScoped() {
+        return closureScoped;
+    }
+
+    public void setClosureScoped(boolean closureScoped) {
+        this.closureScoped = closureScoped;
+    }
+
+    public boolean isRuntimeEmbedded() {
+        return runtimeEmbedded;
+    }
+
+    public void setRuntimeEmbedded(boolean runtimeEmbedded) {
+        this.runtimeEmbedded = runtimeEmbedded;
+    }
+
+    public boolean isTypedEmission() {
+        return typedEmission;
+    }
+
+    public void setTypedEmission(boolean typedEmission) {
+        this.typedEmission = typedEmission;
+    }
+
+    public boolean isBytecodeLogging() {
+        return bytecodeLogging;
+    }
+
+    public void setBytecodeLogging(boolean bytecodeLogging) {
+        this.bytecodeLogging = bytecodeLogging;
+    }
+
+    public DependencyAnalysisStrategy getDependencyAnalysisStrategy() {
+        return dependencyAnalysisStrategy;
+    }
+
+    public void setDependencyAnalysisStrategy(DependencyAnalysisStrategy dependencyAnalysisStrategy) {
+        this.dependencyAnalysisStrategy = dependencyAnalysisStrategy;
+    }
+
+    public void write(DataOutput output) throws IOException {
+        output.writeInt(classPath.size());
+        for (String entry : classPath) {
+            output.writeUTF(entry);
+        }
+        output.writeUTF(mainClass);
+        output.writeUTF(targetFile);
+        output.writeBoolean(minifying);
+        output.writeBoolean(pipelined);
+        output.writeBoolean(closureScoped);
+        output.writeBoolean(runtimeEmbedded);
+        output.writeBoolean(typedEmission);
+        output.writeBoolean(bytecodeLogging);
+        output.writeUTF(dependencyAnalysisStrategy.name());
+    }
+
+    public static BuildRequest read(DataInput input) throws IOException {
+        BuildRequest request = new BuildRequest();
+        int classPathSize = input.readInt();
+        for (int i = 0; i < classPathSize; ++i) {
+            request.classPath.add(input.readUTF());
+        }
+        request.mainClass = input.readUTF();
+        request.targetFile = input.readUTF();
+        request.minifying = input.readBoolean();
+        request.pipelined = input.readBoolean();
+        request.closureScoped = input.readBoolean();
+        request.runtimeEmbedded = input.readBoolean();
+        request.typedEmission = input.readBoolean();
+        request.bytecodeLogging = input.readBoolean();
+        try {
+            request.dependencyAnalysisStrategy = DependencyAnalysisStrategy.valueOf(input.readUTF());
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Unknown dependency analysis strategy", e);
+        }
+        return request;
+    }
+}
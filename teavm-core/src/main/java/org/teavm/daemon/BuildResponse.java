@@ -0,0 +1,80 @@
+/*
+ *  Copyright 2014 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.daemon;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * <p>Outcome of a {@link BuildRequest}. A request that was not accepted, for example because
+ * the client speaks another protocol version or uses another build of TeaVM, was never built and
+ * may be built elsewhere. A response also carries the bytecode log, if the request asked for it.</p>
+ *
+ * @author Alexey Andreev <konsoletyper@gmail.com>
+ */
+public class BuildResponse {
+    private boolean accepted;
+    private boolean successful;
+    private String message;
+    private String log = "";
+
+    public BuildResponse(boolean accepted, boolean successful, String message) {
+        this.accepted = accepted;
+        this.successful = successful;
+        this.message = message;
+    }
+
+    public BuildResponse(boolean accepted, boolean successful, String message, String log) {
+        this(accepted, successful, message);
+        this.log = log;
+    }
+
+    public boolean isAccepted() {
+        return accepted;
+    }
+
+    public boolean isSuccessful() {
+        return successful;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public String getLog() {
+        return log;
+    }
+
+    public void write(DataOutput output) throws IOException {
+        output.writeBoolean(accepted);
+        output.writeBoolean(successful);
+        output.writeUTF(message != null ? message : "");
+        byte[] logBytes = (log != null ? log : "").getBytes(StandardCharsets.UTF_8);
+        output.writeInt(logBytes.length);
+        output.write(logBytes);
+    }
+
+    public static BuildResponse read(DataInput input) throws IOException {
+        boolean accepted = input.readBoolean();
+        boolean successful = input.readBoolean();
+        String message = input.readUTF();
+        byte[] logBytes = new byte[input.readInt()];
+        input.readFully(logBytes);
+        return new BuildResponse(accepted, successful, message, new String(logBytes, StandardCharsets.UTF_8));
+    }
+}
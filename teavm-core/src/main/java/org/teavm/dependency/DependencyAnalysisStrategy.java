@@ -0,0 +1,37 @@
+/*
+ *  Copyright 2014 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.dependency;
+
+/**
+ * <p>Chooses how {@link DependencyChecker} finds reachable methods.</p>
+ *
+ * @author Alexey Andreev <konsoletyper@gmail.com>
+ */
+public enum DependencyAnalysisStrategy {
+    /**
+     * <p>Propagates types along the data flow of every method, field and array, so that a virtual
+     * call only reaches the implementations in classes that may actually flow into its receiver.
+     * Produces the smallest output.</p>
+     */
+    TYPE_PROPAGATION,
+
+    /**
+     * <p>Rapid type analysis. All values share a single set of instantiated types, and a virtual call
+     * reaches its implementations in every instantiated subclass of the class it is declared in.
+     * Much faster than type propagation, but keeps more methods, so it suits development builds.</p>
+     */
+    RAPID_TYPE_ANALYSIS
+}
@@ -0,0 +1,43 @@
+/*
+ *  Copyright 2014 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.dependency;
+
+/**
+ * <p>Tells why {@link DependencyChecker} first reached a method, a field or a class.
+ * The source is the element that caused it: a {@link org.teavm.model.MethodReference} for
+ * instructions and plugins, a {@link org.teavm.model.FieldReference} or a {@link org.teavm.model.MethodReference}
+ * for classes that own a reached member, a class name for supertypes and class initializers.
+ * Entry points have no source.</p>
+ *
+ * @author Alexey Andreev <konsoletyper@gmail.com>
+ */
+public class DependencyCause {
+    private DependencyCauseKind kind;
+    private Object source;
+
+    public DependencyCause(DependencyCauseKind kind, Object source) {
+        this.kind = kind;
+        this.source = source;
+    }
+
+    public DependencyCauseKind getKind() {
+        return kind;
+    }
+
+    public Object getSource() {
+        return source;
+    }
+}
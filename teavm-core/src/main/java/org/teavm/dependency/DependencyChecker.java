@@ -15,8 +15,7 @@
  */
 package org.teavm.dependency;
 
-import java.util.Collection;
-import java.util.HashSet;
+import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import org.teavm.common.*;
@@ -38,15 +37,34 @@ public class DependencyChecker {
     private ConcurrentCachedMapper<FieldReference, DependencyNode> fieldCache;
     private ConcurrentMap<String, Object> achievableClasses = new ConcurrentHashMap<>();
     private ConcurrentMap<String, Object> initializedClasses = new ConcurrentHashMap<>();
+    private ConcurrentMap<MethodReference, ConcurrentMap<MethodReference, Object>> calls =
+            new ConcurrentHashMap<>();
+    private DependencyAnalysisStrategy strategy;
+    private DependencyNode sharedNode;
+    private ConcurrentMap<String, Set<String>> supertypes = new ConcurrentHashMap<>();
+    private ConcurrentMap<MethodReference, DependencyCause> methodCauses;
+    private ConcurrentMap<FieldReference, DependencyCause> fieldCauses;
+    private ConcurrentMap<String, DependencyCause> classCauses;
+    private ThreadLocal<MethodReference> pluginMethod;
 
     public DependencyChecker(ClassHolderSource classSource, ClassLoader classLoader) {
         this(classSource, classLoader, new SimpleFiniteExecutor());
     }
 
     public DependencyChecker(ClassHolderSource classSource, ClassLoader classLoader, FiniteExecutor executor) {
+        this(classSource, classLoader, executor, DependencyAnalysisStrategy.TYPE_PROPAGATION);
+    }
+
+    public DependencyChecker(ClassHolderSource classSource, ClassLoader classLoader, FiniteExecutor executor,
+            DependencyAnalysisStrategy strategy) {
         this.classSource = classSource;
         this.classLoader = classLoader;
         this.executor = executor;
+        this.strategy = strategy;
+        if (strategy == DependencyAnalysisStrategy.RAPID_TYPE_ANALYSIS) {
+            sharedNode = new DependencyNode(this);
+            sharedNode.setArrayItemNode(sharedNode);
+        }
         methodCache = new ConcurrentCachedMapper<>(new Mapper<MethodReference, MethodGraph>() {
             @Override public MethodGraph map(MethodReference preimage) {
                 return createMethodGraph(preimage);
@@ -64,8 +82,54 @@ public class DependencyChecker {
         });
     }
 
+    /**
+     * <p>Creates a node. Under rapid type analysis all nodes are the same node, that holds
+     * all instantiated types.</p>
+     */
     public DependencyNode createNode() {
-        return new DependencyNode(this);
+        return sharedNode != null ? sharedNode : new DependencyNode(this);
+    }
+
+    public DependencyAnalysisStrategy getStrategy() {
+        return strategy;
+    }
+
+    public boolean isRecordingCauses() {
+        return methodCauses != null;
+    }
+
+    /**
+     * <p>Makes the checker remember the first cause of every method, field and class it reaches,
+     * see {@link DependencyCause}. Should be called before any entry point is added.</p>
+     */
+    public void setRecordingCauses(boolean recordingCauses) {
+        if (recordingCauses) {
+            methodCauses = new ConcurrentHashMap<>();
+            fieldCauses = new ConcurrentHashMap<>();
+            classCauses = new ConcurrentHashMap<>();
+            pluginMethod = new ThreadLocal<>();
+        } else {
+            methodCauses = null;
+            fieldCauses = null;
+            classCauses = null;
+            pluginMethod = null;
+        }
+    }
+
+    private static <T> void recordCause(ConcurrentMap<T, DependencyCause> causes, T element,
+            DependencyCauseKind kind, Object source) {
+        if (causes != null && !causes.containsKey(element)) {
+            causes.putIfAbsent(element, new DependencyCause(kind, source));
+        }
+    }
+
+    private DependencyCauseKind getExternalCauseKind() {
+        return pluginMethod != null && pluginMethod.get() != null ? DependencyCauseKind.PLUGIN :
+                DependencyCauseKind.ENTRY_POINT;
+    }
+
+    private MethodReference getExternalCauseSource() {
+        return pluginMethod != null ? pluginMethod.get() : null;
     }
 
     public ClassHolderSource getClassSource() {
@@ -97,29 +161,49 @@ public class DependencyChecker {
         return executor;
     }
 
-    boolean achieveClass(String className) {
+    boolean achieveClass(String className, DependencyCauseKind causeKind, Object causeSource) {
+        recordCause(classCauses, className, causeKind, causeSource);
         return achievableClasses.putIfAbsent(className, dummyValue) == null;
     }
 
     public MethodGraph attachMethodGraph(MethodReference methodRef) {
+        if (methodCauses != null) {
+            recordCause(methodCauses, methodRef, getExternalCauseKind(), getExternalCauseSource());
+        }
+        return methodCache.map(methodRef);
+    }
+
+    MethodGraph attachMethodGraph(MethodReference methodRef, DependencyCauseKind causeKind, Object causeSource) {
+        recordCause(methodCauses, methodRef, causeKind, causeSource);
         return methodCache.map(methodRef);
     }
 
     public void initClass(String className) {
-        MethodDescriptor clinitDesc = new MethodDescriptor("<clinit>", ValueType.VOID);
+        if (classCauses != null) {
+            initClass(className, getExternalCauseKind(), getExternalCauseSource());
+        } else {
+            initClass(className, null, null);
+        }
+    }
+
+    void initClass(String className, DependencyCauseKind causeKind, Object causeSource) {
+        MethodDescriptor clinitDesc = MethodDescriptor.get("<clinit>", ValueType.VOID);
         while (className != null) {
             if (initializedClasses.putIfAbsent(className, clinitDesc) != null) {
                 break;
             }
-            achieveClass(className);
+            achieveClass(className, causeKind, causeSource);
             achieveInterfaces(className);
             ClassHolder cls = classSource.getClassHolder(className);
             if (cls == null) {
                 throw new RuntimeException("Class not found: " + className);
             }
             if (cls.getMethod(clinitDesc) != null) {
-                attachMethodGraph(new MethodReference(className, clinitDesc));
+                attachMethodGraph(MethodReference.get(className, clinitDesc),
+                        DependencyCauseKind.CLASS_INITIALIZATION, className);
             }
+            causeKind = DependencyCauseKind.SUPERCLASS;
+            causeSource = className;
             className = cls.getParent();
         }
     }
@@ -130,21 +214,22 @@ public class DependencyChecker {
             throw new RuntimeException("Class not found: " + className);
         }
         for (String iface : cls.getInterfaces()) {
-            if (achieveClass(iface)) {
+            if (achieveClass(iface, DependencyCauseKind.INTERFACE, className)) {
                 achieveInterfaces(iface);
             }
         }
     }
 
     private MethodGraph createMethodGraph(final MethodReference methodRef) {
-        initClass(methodRef.getClassName());
+        initClass(methodRef.getClassName(), DependencyCauseKind.MEMBER, methodRef);
         ClassHolder cls = classSource.getClassHolder(methodRef.getClassName());
         MethodHolder method = cls.getMethod(methodRef.getDescriptor());
         if (method == null) {
             while (cls != null) {
                 method = cls.getMethod(methodRef.getDescriptor());
                 if (method != null) {
-                    return methodCache.map(new MethodReference(cls.getName(), methodRef.getDescriptor()));
+                    return attachMethodGraph(MethodReference.get(cls.getName(), methodRef.getDescriptor()),
+                            DependencyCauseKind.RESOLUTION, methodRef);
                 }
                 cls = cls.getParent() != null ? classSource.getClassHolder(cls.getParent()) : null;
             }
@@ -155,8 +240,8 @@ public class DependencyChecker {
         int varCount = Math.max(paramCount, method.getProgram().variableCount());
         DependencyNode[] parameterNodes = new DependencyNode[varCount];
         for (int i = 0; i < varCount; ++i) {
-            parameterNodes[i] = new DependencyNode(this);
-            if (shouldLog) {
+            parameterNodes[i] = createNode();
+            if (shouldLog && sharedNode == null) {
                 parameterNodes[i].setTag(method.getOwnerName() + "#" + method.getDescriptor() + ":" + i);
             }
         }
@@ -164,8 +249,8 @@ public class DependencyChecker {
         if (method.getResultType() == ValueType.VOID) {
             resultNode = null;
         } else {
-            resultNode = new DependencyNode(this);
-            if (shouldLog) {
+            resultNode = createNode();
+            if (shouldLog && sharedNode == null) {
                 resultNode.setTag(method.getOwnerName() + "#" + method.getDescriptor() + ":RESULT");
             }
         }
@@ -201,11 +286,19 @@ public class DependencyChecker {
     }
 
     public DependencyNode getFieldNode(FieldReference fieldRef) {
+        if (fieldCauses != null) {
+            recordCause(fieldCauses, fieldRef, getExternalCauseKind(), getExternalCauseSource());
+        }
+        return fieldCache.map(fieldRef);
+    }
+
+    DependencyNode getFieldNode(FieldReference fieldRef, DependencyCauseKind causeKind, Object causeSource) {
+        recordCause(fieldCauses, fieldRef, causeKind, causeSource);
         return fieldCache.map(fieldRef);
     }
 
     private DependencyNode createFieldNode(FieldReference fieldRef) {
-        initClass(fieldRef.getClassName());
+        initClass(fieldRef.getClassName(), DependencyCauseKind.MEMBER, fieldRef);
         ClassHolder cls = classSource.getClassHolder(fieldRef.getClassName());
         if (cls == null) {
             throw new RuntimeException("Class not found: " + fieldRef.getClassName());
@@ -215,14 +308,15 @@ public class DependencyChecker {
             while (cls != null) {
                 field = cls.getField(fieldRef.getFieldName());
                 if (field != null) {
-                    return fieldCache.map(new FieldReference(cls.getName(), fieldRef.getFieldName()));
+                    return getFieldNode(FieldReference.get(cls.getName(), fieldRef.getFieldName()),
+                            DependencyCauseKind.RESOLUTION, fieldRef);
                 }
                 cls = cls.getParent() != null ? classSource.getClassHolder(cls.getParent()) : null;
             }
             throw new RuntimeException("Field not found: " + fieldRef);
         }
-        DependencyNode node = new DependencyNode(this);
-        if (shouldLog) {
+        DependencyNode node = createNode();
+        if (shouldLog && sharedNode == null) {
             node.setTag(fieldRef.getClassName() + "#" + fieldRef.getFieldName());
         }
         return node;
@@ -252,7 +346,56 @@ public class DependencyChecker {
         } catch (IllegalAccessException | InstantiationException e) {
             throw new RuntimeException("Can't instantiate dependency plugin " + depClassName, e);
         }
-        plugin.methodAchieved(this, methodRef);
+        if (pluginMethod == null) {
+            plugin.methodAchieved(this, methodRef);
+            return;
+        }
+        MethodReference outerPluginMethod = pluginMethod.get();
+        pluginMethod.set(methodRef);
+        try {
+            plugin.methodAchieved(this, methodRef);
+        } finally {
+            pluginMethod.set(outerPluginMethod);
+        }
+    }
+
+    boolean isSubtype(String className, String superClass) {
+        if (className.startsWith("[")) {
+            return superClass.equals("java.lang.Object");
+        }
+        return getSupertypes(className).contains(superClass);
+    }
+
+    private Set<String> getSupertypes(String className) {
+        Set<String> result = supertypes.get(className);
+        if (result != null) {
+            return result;
+        }
+        result = new HashSet<>();
+        result.add(className);
+        ClassHolder cls = classSource.getClassHolder(className);
+        if (cls != null) {
+            if (cls.getParent() != null) {
+                result.addAll(getSupertypes(cls.getParent()));
+            }
+            for (String iface : cls.getInterfaces()) {
+                result.addAll(getSupertypes(iface));
+            }
+        }
+        Set<String> oldResult = supertypes.putIfAbsent(className, result);
+        return oldResult != null ? oldResult : result;
+    }
+
+    void addCall(MethodReference caller, MethodReference callee) {
+        ConcurrentMap<MethodReference, Object> callees = calls.get(caller);
+        if (callees == null) {
+            callees = new ConcurrentHashMap<>();
+            ConcurrentMap<MethodReference, Object> oldCallees = calls.putIfAbsent(caller, callees);
+            if (oldCallees != null) {
+                callees = oldCallees;
+            }
+        }
+        callees.putIfAbsent(callee, dummyValue);
     }
 
     public void addAbstractMethod(MethodReference methodRef) {
@@ -273,15 +416,77 @@ public class DependencyChecker {
         }
     }
 
+    public DependencyResult buildResult() {
+        Set<MethodReference> methods = new HashSet<>(methodCache.getCachedPreimages());
+        Set<FieldReference> fields = new HashSet<>(fieldCache.getCachedPreimages());
+        Map<MethodReference, String[][]> variableTypes = new HashMap<>();
+        Map<MethodReference, String[]> resultTypes = new HashMap<>();
+        Map<DependencyNode, String[]> nodeTypes = new IdentityHashMap<>();
+        for (MethodReference methodRef : methods) {
+            MethodGraph graph = methodCache.map(methodRef);
+            if (graph == null) {
+                continue;
+            }
+            String[][] types = new String[graph.getVariableNodesCount()][];
+            for (int i = 0; i < types.length; ++i) {
+                types[i] = getTypes(graph.getVariableNode(i), nodeTypes);
+            }
+            variableTypes.put(methodRef, types);
+            if (graph.getResultNode() != null) {
+                resultTypes.put(methodRef, getTypes(graph.getResultNode(), nodeTypes));
+            }
+        }
+        Map<FieldReference, String[]> fieldTypes = new HashMap<>();
+        for (FieldReference fieldRef : fields) {
+            fieldTypes.put(fieldRef, getTypes(fieldCache.map(fieldRef), nodeTypes));
+        }
+        Map<MethodReference, MethodReference[]> callees = new HashMap<>();
+        Map<MethodReference, List<MethodReference>> callerLists = new HashMap<>();
+        for (Map.Entry<MethodReference, ConcurrentMap<MethodReference, Object>> entry : calls.entrySet()) {
+            Set<MethodReference> targets = entry.getValue().keySet();
+            callees.put(entry.getKey(), targets.toArray(new MethodReference[targets.size()]));
+            for (MethodReference target : targets) {
+                List<MethodReference> callerList = callerLists.get(target);
+                if (callerList == null) {
+                    callerList = new ArrayList<>();
+                    callerLists.put(target, callerList);
+                }
+                callerList.add(entry.getKey());
+            }
+        }
+        Map<MethodReference, MethodReference[]> callers = new HashMap<>();
+        for (Map.Entry<MethodReference, List<MethodReference>> entry : callerLists.entrySet()) {
+            callers.put(entry.getKey(), entry.getValue().toArray(new MethodReference[entry.getValue().size()]));
+        }
+        return new DependencyResult(new HashSet<>(achievableClasses.keySet()), methods,
+                new HashSet<>(abstractMethods.keySet()), fields, variableTypes, resultTypes, fieldTypes,
+                callees, callers, methodCauses != null ? new HashMap<>(methodCauses) : null,
+                fieldCauses != null ? new HashMap<>(fieldCauses) : null,
+                classCauses != null ? new HashMap<>(classCauses) : null);
+    }
+
+    private static String[] getTypes(DependencyNode node, Map<DependencyNode, String[]> cache) {
+        String[] types = cache.get(node);
+        if (types == null) {
+            types = node.getTypes();
+            cache.put(node, types);
+        }
+        return types;
+    }
+
     public ListableClassHolderSource cutUnachievableClasses() {
+        return cutUnachievableClasses(buildResult());
+    }
+
+    public ListableClassHolderSource cutUnachievableClasses(DependencyResult result) {
         MutableClassHolderSource cutClasses = new MutableClassHolderSource();
-        for (String className : achievableClasses.keySet()) {
+        for (String className : result.getReachableClasses()) {
             ClassHolder classHolder = classSource.getClassHolder(className);
             cutClasses.putClassHolder(classHolder);
             for (MethodHolder method : classHolder.getMethods().toArray(new MethodHolder[0])) {
-                MethodReference methodRef = new MethodReference(className, method.getDescriptor());
-                if (!methodCache.getCachedPreimages().contains(methodRef)) {
-                    if (abstractMethods.containsKey(methodRef)) {
+                MethodReference methodRef = MethodReference.get(className, method.getDescriptor());
+                if (!result.isMethodReachable(methodRef)) {
+                    if (result.isAbstractMethodReachable(methodRef)) {
                         method.getModifiers().add(ElementModifier.ABSTRACT);
                         method.setProgram(null);
                     } else {
@@ -290,8 +495,8 @@ public class DependencyChecker {
                 }
             }
             for (FieldHolder field : classHolder.getFields().toArray(new FieldHolder[0])) {
-                FieldReference fieldRef = new FieldReference(className, field.getName());
-                if (!fieldCache.getCachedPreimages().contains(fieldRef)) {
+                FieldReference fieldRef = FieldReference.get(className, field.getName());
+                if (!result.isFieldReachable(fieldRef)) {
                     classHolder.removeField(field);
                 }
             }
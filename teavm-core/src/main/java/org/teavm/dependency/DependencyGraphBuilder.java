@@ -28,6 +28,7 @@ class DependencyGraphBuilder {
     private DependencyNode[] nodes;
     private DependencyNode resultNode;
     private Program program;
+    private MethodReference caller;
 
     public DependencyGraphBuilder(DependencyChecker dependencyChecker) {
         this.dependencyChecker = dependencyChecker;
@@ -38,6 +39,7 @@ class DependencyGraphBuilder {
             return;
         }
         program = method.getProgram();
+        caller = method.getReference();
         resultNode = graph.getResultNode();
         nodes = graph.getVariableNodes();
         for (int i = 0; i < program.basicBlockCount(); ++i) {
@@ -59,18 +61,26 @@ class DependencyGraphBuilder {
         private final DependencyChecker checker;
         private final DependencyNode[] parameters;
         private final DependencyNode result;
+        private final MethodReference caller;
+        private final DependencyTypeFilter filter;
 
         public VirtualCallPropagationListener(DependencyNode node, MethodDescriptor methodDesc,
-                DependencyChecker checker, DependencyNode[] parameters, DependencyNode result) {
+                DependencyChecker checker, DependencyNode[] parameters, DependencyNode result,
+                MethodReference caller, DependencyTypeFilter filter) {
             this.node = node;
             this.methodDesc = methodDesc;
             this.checker = checker;
             this.parameters = parameters;
             this.result = result;
+            this.caller = caller;
+            this.filter = filter;
         }
 
         @Override
         public void consume(String className) {
+            if (filter != null && !filter.match(className)) {
+                return;
+            }
             if (DependencyChecker.shouldLog) {
                 System.out.println("Virtual call of " + methodDesc + " detected on " + node.getTag() + ". " +
                         "Target class is " + className);
@@ -78,15 +88,17 @@ class DependencyGraphBuilder {
             if (className.startsWith("[")) {
                 className = "java.lang.Object";
             }
-            MethodReference methodRef = new MethodReference(className, methodDesc);
+            MethodReference methodRef = MethodReference.get(className, methodDesc);
             MethodHolder method = findMethod(methodRef, checker.getClassSource());
             if (method == null) {
                 return;
             }
-            MethodGraph targetGraph = checker.attachMethodGraph(methodRef);
+            MethodGraph targetGraph = checker.attachMethodGraph(methodRef, DependencyCauseKind.VIRTUAL_INVOCATION,
+                    caller);
             if (targetGraph == null) {
                 throw new RuntimeException("Method not found: " + methodRef);
             }
+            checker.addCall(caller, method.getReference());
             DependencyNode[] targetParams = targetGraph.getVariableNodes();
             for (int i = 0; i < parameters.length; ++i) {
                 parameters[i].connect(targetParams[i]);
@@ -135,7 +147,10 @@ class DependencyGraphBuilder {
         }
 
         private void invokeSpecial(InvokeInstruction insn) {
-            MethodGraph targetGraph = dependencyChecker.attachMethodGraph(insn.getMethod());
+            MethodGraph targetGraph = dependencyChecker.attachMethodGraph(insn.getMethod(),
+                    DependencyCauseKind.INVOCATION, caller);
+            MethodHolder callee = findMethod(insn.getMethod(), dependencyChecker.getClassSource());
+            dependencyChecker.addCall(caller, callee != null ? callee.getReference() : insn.getMethod());
             DependencyNode[] targetParams = targetGraph.getVariableNodes();
             List<Variable> arguments = insn.getArguments();
             for (int i = 0; i < arguments.size(); ++i) {
@@ -156,9 +171,19 @@ class DependencyGraphBuilder {
                 actualArgs[i + 1] = nodes[arguments.get(i).getIndex()];
             }
             actualArgs[0] = nodes[insn.getInstance().getIndex()];
+            DependencyTypeFilter filter = null;
+            if (dependencyChecker.getStrategy() == DependencyAnalysisStrategy.RAPID_TYPE_ANALYSIS) {
+                // All instantiated types reach the receiver, so only take subtypes of the declaring class
+                final String declaringClass = insn.getMethod().getClassName();
+                filter = new DependencyTypeFilter() {
+                    @Override public boolean match(String type) {
+                        return dependencyChecker.isSubtype(type, declaringClass);
+                    }
+                };
+            }
             DependencyConsumer listener = new VirtualCallPropagationListener(nodes[insn.getInstance().getIndex()],
                     insn.getMethod().getDescriptor(), dependencyChecker, actualArgs,
-                    insn.getReceiver() != null ? nodes[insn.getReceiver().getIndex()] : null);
+                    insn.getReceiver() != null ? nodes[insn.getReceiver().getIndex()] : null, caller, filter);
             dependencyChecker.addAbstractMethod(insn.getMethod());
             nodes[insn.getInstance().getIndex()].addConsumer(listener);
         }
@@ -195,6 +220,12 @@ class DependencyGraphBuilder {
                 }
             });
             arrayNode.getArrayItemNode().connect(receiverNode.getArrayItemNode());
+            MethodReference cloneMethod = MethodReference.get("java.lang.Object", MethodDescriptor.get("clone",
+                    ValueType.object("java.lang.Object")));
+            MethodGraph cloneGraph = dependencyChecker.attachMethodGraph(cloneMethod,
+                    DependencyCauseKind.INVOCATION, caller);
+            dependencyChecker.addCall(caller, cloneMethod);
+            arrayNode.connect(cloneGraph.getVariableNode(0));
         }
 
         @Override
@@ -203,14 +234,16 @@ class DependencyGraphBuilder {
 
         @Override
         public void visit(PutFieldInstruction insn) {
-            DependencyNode fieldNode = dependencyChecker.getFieldNode(insn.getField());
+            DependencyNode fieldNode = dependencyChecker.getFieldNode(insn.getField(),
+                    DependencyCauseKind.FIELD_ACCESS, caller);
             DependencyNode valueNode = nodes[insn.getValue().getIndex()];
             valueNode.connect(fieldNode);
         }
 
         @Override
         public void visit(GetFieldInstruction insn) {
-            DependencyNode fieldNode = dependencyChecker.getFieldNode(insn.getField());
+            DependencyNode fieldNode = dependencyChecker.getFieldNode(insn.getField(),
+                    DependencyCauseKind.FIELD_ACCESS, caller);
             DependencyNode receiverNode = nodes[insn.getReceiver().getIndex()];
             fieldNode.connect(receiverNode);
         }
@@ -295,8 +328,9 @@ class DependencyGraphBuilder {
         @Override
         public void visit(StringConstantInstruction insn) {
             nodes[insn.getReceiver().getIndex()].propagate("java.lang.String");
-            dependencyChecker.attachMethodGraph(new MethodReference("java.lang.String", new MethodDescriptor(
-                    "<init>", ValueType.arrayOf(ValueType.CHARACTER), ValueType.VOID)));
+            dependencyChecker.attachMethodGraph(MethodReference.get("java.lang.String", MethodDescriptor.get(
+                    "<init>", ValueType.arrayOf(ValueType.CHARACTER), ValueType.VOID)),
+                    DependencyCauseKind.STRING_CONSTANT, caller);
         }
 
         @Override
@@ -327,7 +361,8 @@ class DependencyGraphBuilder {
                 type = ((ValueType.Array)type).getItemType();
             }
             if (type instanceof ValueType.Object) {
-                dependencyChecker.achieveClass(((ValueType.Object)type).getClassName());
+                dependencyChecker.achieveClass(((ValueType.Object)type).getClassName(),
+                        DependencyCauseKind.CLASS_CONSTANT, caller);
             }
         }
 
@@ -337,7 +372,7 @@ class DependencyGraphBuilder {
 
         @Override
         public void visit(InitClassInstruction insn) {
-            dependencyChecker.initClass(insn.getClassName());
+            dependencyChecker.initClass(insn.getClassName(), DependencyCauseKind.CLASS_INITIALIZATION, caller);
         }
     };
 }
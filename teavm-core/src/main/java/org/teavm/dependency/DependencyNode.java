@@ -91,6 +91,12 @@ public class DependencyNode {
         return result;
     }
 
+    void setArrayItemNode(DependencyNode node) {
+        arrayItemNode.set(node);
+        arrayItemNodeLatch.countDown();
+        arrayItemNodeLatch = null;
+    }
+
     public boolean hasArrayType() {
         return arrayItemNode.get() != null && !arrayItemNode.get().types.isEmpty();
     }
@@ -0,0 +1,144 @@
+/*
+ *  Copyright 2014 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.dependency;
+
+import java.util.*;
+import org.teavm.model.FieldReference;
+import org.teavm.model.MethodReference;
+
+/**
+ * <p>An immutable snapshot of what {@link DependencyChecker} has found, taken once the analysis
+ * is complete. Unlike the checker, reachability queries are answered by hash lookups instead
+ * of copying collections, so that later phases can query it for each class, method or field.</p>
+ *
+ * <p>Type sets are kept for every variable and the result of each reachable method, and for
+ * every reachable field. The call graph contains calls found in method bodies, virtual calls
+ * are resolved to each implementation that was found to be reachable.</p>
+ *
+ * <p>Causes are only known when the checker was recording them.</p>
+ *
+ * @author Alexey Andreev <konsoletyper@gmail.com>
+ */
+public class DependencyResult {
+    private static final String[] emptyTypes = new String[0];
+    private static final MethodReference[] emptyMethods = new MethodReference[0];
+    private Set<String> classes;
+    private Set<MethodReference> methods;
+    private Set<MethodReference> abstractMethods;
+    private Set<FieldReference> fields;
+    private Map<MethodReference, String[][]> variableTypes;
+    private Map<MethodReference, String[]> resultTypes;
+    private Map<FieldReference, String[]> fieldTypes;
+    private Map<MethodReference, MethodReference[]> callees;
+    private Map<MethodReference, MethodReference[]> callers;
+    private Map<MethodReference, DependencyCause> methodCauses;
+    private Map<FieldReference, DependencyCause> fieldCauses;
+    private Map<String, DependencyCause> classCauses;
+
+    DependencyResult(Set<String> classes, Set<MethodReference> methods, Set<MethodReference> abstractMethods,
+            Set<FieldReference> fields, Map<MethodReference, String[][]> variableTypes,
+            Map<MethodReference, String[]> resultTypes, Map<FieldReference, String[]> fieldTypes,
+            Map<MethodReference, MethodReference[]> callees, Map<MethodReference, MethodReference[]> callers,
+            Map<MethodReference, DependencyCause> methodCauses, Map<FieldReference, DependencyCause> fieldCauses,
+            Map<String, DependencyCause> classCauses) {
+        this.classes = Collections.unmodifiableSet(classes);
+        this.methods = Collections.unmodifiableSet(methods);
+        this.abstractMethods = Collections.unmodifiableSet(abstractMethods);
+        this.fields = Collections.unmodifiableSet(fields);
+        this.variableTypes = variableTypes;
+        this.resultTypes = resultTypes;
+        this.fieldTypes = fieldTypes;
+        this.callees = callees;
+        this.callers = callers;
+        this.methodCauses = methodCauses;
+        this.fieldCauses = fieldCauses;
+        this.classCauses = classCauses;
+    }
+
+    public Set<String> getReachableClasses() {
+        return classes;
+    }
+
+    public boolean isClassReachable(String className) {
+        return classes.contains(className);
+    }
+
+    public Set<MethodReference> getReachableMethods() {
+        return methods;
+    }
+
+    public boolean isMethodReachable(MethodReference methodRef) {
+        return methods.contains(methodRef);
+    }
+
+    public boolean isAbstractMethodReachable(MethodReference methodRef) {
+        return abstractMethods.contains(methodRef);
+    }
+
+    public Set<FieldReference> getReachableFields() {
+        return fields;
+    }
+
+    public boolean isFieldReachable(FieldReference fieldRef) {
+        return fields.contains(fieldRef);
+    }
+
+    public int getVariableCount(MethodReference methodRef) {
+        String[][] types = variableTypes.get(methodRef);
+        return types != null ? types.length : 0;
+    }
+
+    public String[] getVariableTypes(MethodReference methodRef, int index) {
+        String[][] types = variableTypes.get(methodRef);
+        return types != null && index < types.length ? types[index].clone() : emptyTypes;
+    }
+
+    public String[] getResultTypes(MethodReference methodRef) {
+        String[] types = resultTypes.get(methodRef);
+        return types != null ? types.clone() : emptyTypes;
+    }
+
+    public String[] getFieldTypes(FieldReference fieldRef) {
+        String[] types = fieldTypes.get(fieldRef);
+        return types != null ? types.clone() : emptyTypes;
+    }
+
+    public MethodReference[] getCallees(MethodReference methodRef) {
+        MethodReference[] result = callees.get(methodRef);
+        return result != null ? result.clone() : emptyMethods;
+    }
+
+    public MethodReference[] getCallers(MethodReference methodRef) {
+        MethodReference[] result = callers.get(methodRef);
+        return result != null ? result.clone() : emptyMethods;
+    }
+
+    public boolean hasCauses() {
+        return methodCauses != null;
+    }
+
+    public DependencyCause getMethodCause(MethodReference methodRef) {
+        return methodCauses != null ? methodCauses.get(methodRef) : null;
+    }
+
+    public DependencyCause getFieldCause(FieldReference fieldRef) {
+        return fieldCauses != null ? fieldCauses.get(fieldRef) : null;
+    }
+
+    public DependencyCause getClassCause(String className) {
+        return classCauses != null ? classCauses.get(className) : null;
+    }
+}
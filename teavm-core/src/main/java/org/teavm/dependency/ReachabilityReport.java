@@ -0,0 +1,137 @@
+/*
+ *  Copyright 2014 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.dependency;
+
+import java.io.IOException;
+import java.util.*;
+import org.teavm.model.FieldReference;
+import org.teavm.model.MethodReference;
+
+/**
+ * <p>Writes a report that explains why each class, method and field was kept. Classes are listed
+ * from the largest emitted code to the smallest, each reached element is followed by the chain
+ * of causes that leads to an entry point. The chain consists of first causes, i.e. the way
+ * the element was discovered, which with single-threaded analysis is a shortest one, since
+ * methods are analyzed in the order they were reached.</p>
+ *
+ * @author Alexey Andreev <konsoletyper@gmail.com>
+ */
+public class ReachabilityReport {
+    private DependencyResult result;
+    private Map<String, Integer> classSizes;
+
+    public ReachabilityReport(DependencyResult result, Map<String, Integer> classSizes) {
+        this.result = result;
+        this.classSizes = classSizes;
+    }
+
+    public void write(Appendable writer) throws IOException {
+        Map<String, List<MethodReference>> methods = new HashMap<>();
+        for (MethodReference method : result.getReachableMethods()) {
+            getMembers(methods, method.getClassName()).add(method);
+        }
+        Map<String, List<FieldReference>> fields = new HashMap<>();
+        for (FieldReference field : result.getReachableFields()) {
+            getMembers(fields, field.getClassName()).add(field);
+        }
+        List<String> classes = new ArrayList<>(result.getReachableClasses());
+        Collections.sort(classes, new Comparator<String>() {
+            @Override public int compare(String o1, String o2) {
+                int cmp = Integer.compare(getSize(o2), getSize(o1));
+                return cmp != 0 ? cmp : o1.compareTo(o2);
+            }
+        });
+        long totalSize = 0;
+        for (String className : classes) {
+            totalSize += getSize(className);
+        }
+        writer.append("Total size of classes: " + totalSize + " characters\n\n");
+        for (String className : classes) {
+            writer.append(className).append(" (" + getSize(className) + ")\n");
+            writeChain(writer, "    ", className);
+            List<MethodReference> classMethods = methods.get(className);
+            if (classMethods != null) {
+                Collections.sort(classMethods, new Comparator<MethodReference>() {
+                    @Override public int compare(MethodReference o1, MethodReference o2) {
+                        return o1.toString().compareTo(o2.toString());
+                    }
+                });
+                for (MethodReference method : classMethods) {
+                    writer.append("  method ").append(method.getDescriptor().toString()).append("\n");
+                    writeChain(writer, "      ", method);
+                }
+            }
+            List<FieldReference> classFields = fields.get(className);
+            if (classFields != null) {
+                Collections.sort(classFields, new Comparator<FieldReference>() {
+                    @Override public int compare(FieldReference o1, FieldReference o2) {
+                        return o1.getFieldName().compareTo(o2.getFieldName());
+                    }
+                });
+                for (FieldReference field : classFields) {
+                    writer.append("  field ").append(field.getFieldName()).append("\n");
+                    writeChain(writer, "      ", field);
+                }
+            }
+        }
+    }
+
+    private static <T> List<T> getMembers(Map<String, List<T>> map, String className) {
+        List<T> members = map.get(className);
+        if (members == null) {
+            members = new ArrayList<>();
+            map.put(className, members);
+        }
+        return members;
+    }
+
+    private int getSize(String className) {
+        Integer size = classSizes.get(className);
+        return size != null ? size : 0;
+    }
+
+    private void writeChain(Appendable writer, String indent, Object element) throws IOException {
+        Set<Object> visited = new HashSet<>();
+        visited.add(element);
+        while (true) {
+            DependencyCause cause = getCause(element);
+            if (cause == null) {
+                writer.append(indent).append("<- unknown\n");
+                break;
+            }
+            writer.append(indent).append("<- ").append(cause.getKind().name().toLowerCase());
+            element = cause.getSource();
+            if (element == null) {
+                writer.append("\n");
+                break;
+            }
+            writer.append(" ").append(element.toString()).append("\n");
+            if (!visited.add(element)) {
+                break;
+            }
+        }
+    }
+
+    private DependencyCause getCause(Object element) {
+        if (element instanceof MethodReference) {
+            return result.getMethodCause((MethodReference)element);
+        } else if (element instanceof FieldReference) {
+            return result.getFieldCause((FieldReference)element);
+        } else {
+            return result.getClassCause((String)element);
+        }
+    }
+}
@@ -22,7 +22,6 @@ import org.teavm.javascript.ni.GeneratedBy;
 import org.teavm.javascript.ni.Generator;
 import org.teavm.javascript.ni.InjectedBy;
 import org.teavm.model.*;
-import org.teavm.model.util.ProgramUtils;
 
 /**
  *
@@ -42,6 +41,7 @@ public class Decompiler {
     private RangeTree.Node currentNode;
     private RangeTree.Node parentNode;
     private FiniteExecutor executor;
+    private boolean typedEmission;
 
     public Decompiler(ClassHolderSource classSource, ClassLoader classLoader, FiniteExecutor executor) {
         this.classSource = classSource;
@@ -49,6 +49,14 @@ public class Decompiler {
         this.executor = executor;
     }
 
+    public boolean isTypedEmission() {
+        return typedEmission;
+    }
+
+    public void setTypedEmission(boolean typedEmission) {
+        this.typedEmission = typedEmission;
+    }
+
     public int getGraphSize() {
         return this.graph.size();
     }
@@ -68,11 +76,7 @@ public class Decompiler {
     }
 
     public List<ClassNode> decompile(Collection<String> classNames) {
-        List<String> sequence = new ArrayList<>();
-        Set<String> visited = new HashSet<>();
-        for (String className : classNames) {
-            orderClasses(className, visited, sequence);
-        }
+        List<String> sequence = sortClasses(classNames);
         final List<ClassNode> result = new ArrayList<>();
         for (int i = 0; i < sequence.size(); ++i) {
             final String className = sequence.get(i);
@@ -81,6 +85,7 @@ public class Decompiler {
             executor.execute(new Runnable() {
                 @Override public void run() {
                     Decompiler copy = new Decompiler(classSource, classLoader, executor);
+                    copy.setTypedEmission(typedEmission);
                     result.set(index, copy.decompile(classSource.getClassHolder(className)));
                 }
             });
@@ -89,6 +94,15 @@ public class Decompiler {
         return result;
     }
 
+    public List<String> sortClasses(Collection<String> classNames) {
+        List<String> sequence = new ArrayList<>();
+        Set<String> visited = new HashSet<>();
+        for (String className : classNames) {
+            orderClasses(className, visited, sequence);
+        }
+        return sequence;
+    }
+
     private void orderClasses(String className, Set<String> visited, List<String> order) {
         if (!visited.add(className)) {
             return;
@@ -149,7 +163,7 @@ public class Decompiler {
             throw new DecompilationException("Error instantiating generator " + generatorClassName +
                     " for native method " + method.getOwnerName() + "." + method.getDescriptor());
         }
-        NativeMethodNode methodNode = new NativeMethodNode(new MethodReference(method.getOwnerName(),
+        NativeMethodNode methodNode = new NativeMethodNode(MethodReference.get(method.getOwnerName(),
                 method.getDescriptor()));
         methodNode.getModifiers().addAll(mapModifiers(method.getModifiers()));
         methodNode.setGenerator(generator);
@@ -158,7 +172,8 @@ public class Decompiler {
 
     public RegularMethodNode decompileRegular(MethodHolder method) {
         lastBlockId = 1;
-        indexer = new GraphIndexer(ProgramUtils.buildControlFlowGraph(method.getProgram()));
+        indexer = new GraphIndexer(method.getProgram().getAnalysisCache().getControlFlowGraph(),
+                method.getProgram().getAnalysisCache().getLoopGraph());
         graph = indexer.getGraph();
         loopGraph = new LoopGraph(this.graph);
         unflatCode();
@@ -209,7 +224,7 @@ public class Decompiler {
         }
         SequentialStatement result = new SequentialStatement();
         result.getSequence().addAll(rootStmt.getBody());
-        MethodReference reference = new MethodReference(method.getOwnerName(), method.getDescriptor());
+        MethodReference reference = MethodReference.get(method.getOwnerName(), method.getDescriptor());
         RegularMethodNode methodNode = new RegularMethodNode(reference);
         methodNode.getModifiers().addAll(mapModifiers(method.getModifiers()));
         methodNode.setBody(result);
@@ -217,6 +232,7 @@ public class Decompiler {
             methodNode.getVariables().add(program.variableAt(i).getRegister());
         }
         Optimizer optimizer = new Optimizer();
+        optimizer.setTypedEmission(typedEmission);
         optimizer.optimize(methodNode, method.getProgram());
         methodNode.getModifiers().addAll(mapModifiers(method.getModifiers()));
         return methodNode;
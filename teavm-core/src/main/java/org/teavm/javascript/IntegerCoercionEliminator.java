@@ -0,0 +1,439 @@
+/*
+ *  Copyright 2014 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.javascript;
+
+import java.util.List;
+import org.teavm.javascript.ast.*;
+import org.teavm.model.ValueType;
+import org.teavm.model.instructions.ArrayElementType;
+
+/**
+ * <p>Removes <code>|0</code> coercions that do not change the result. A coercion is removed either when
+ * its operand is known to fit in <code>int</code> range, or when the result is truncated to 32 bits
+ * later anyway, for example by an enclosing coercion or a bitwise operation. In the latter case
+ * the operand must stay small enough to be represented exactly by a JavaScript number, so
+ * the truncation gives the same result.</p>
+ *
+ * <p>Must be applied before variables are renumbered, as it relies on {@link IntegerRangeAnalysis}
+ * of the original program.</p>
+ *
+ * @author Alexey Andreev <konsoletyper@gmail.com>
+ */
+class IntegerCoercionEliminator implements ExprVisitor, StatementVisitor {
+    private static final long SAFE_BOUND = 1L << 52;
+    private IntegerRangeAnalysis ranges;
+    private boolean truncated;
+    private Expr resultExpr;
+
+    public IntegerCoercionEliminator(IntegerRangeAnalysis ranges) {
+        this.ranges = ranges;
+    }
+
+    private Expr transform(Expr expr, boolean truncated) {
+        if (expr == null) {
+            return null;
+        }
+        this.truncated = truncated;
+        expr.acceptVisitor(this);
+        return resultExpr;
+    }
+
+    private void transform(List<Expr> exprs) {
+        for (int i = 0; i < exprs.size(); ++i) {
+            exprs.set(i, transform(exprs.get(i), false));
+        }
+    }
+
+    private void visitSequence(List<Statement> statements) {
+        for (Statement statement : statements) {
+            statement.acceptVisitor(this);
+        }
+    }
+
+    private static boolean isCoercion(Expr expr) {
+        if (!(expr instanceof BinaryExpr)) {
+            return false;
+        }
+        BinaryExpr binary = (BinaryExpr)expr;
+        if (binary.getOperation() != BinaryOperation.BITWISE_OR ||
+                !(binary.getSecondOperand() instanceof ConstantExpr)) {
+            return false;
+        }
+        Object value = ((ConstantExpr)binary.getSecondOperand()).getValue();
+        return value instanceof Integer && (Integer)value == 0;
+    }
+
+    private Expr strip(Expr expr) {
+        if (!isCoercion(expr)) {
+            return expr;
+        }
+        Expr operand = ((BinaryExpr)expr).getFirstOperand();
+        Range range = rangeOf(operand);
+        return range != null && range.isSafe() ? operand : expr;
+    }
+
+    @Override
+    public void visit(BinaryExpr expr) {
+        boolean truncated = this.truncated;
+        if (isCoercion(expr)) {
+            Expr operand = transform(expr.getFirstOperand(), true);
+            Range range = rangeOf(operand);
+            if (range != null && (range.fitsInt() || truncated && range.isSafe())) {
+                resultExpr = operand;
+            } else {
+                expr.setFirstOperand(operand);
+                resultExpr = expr;
+            }
+            return;
+        }
+        switch (expr.getOperation()) {
+            case BITWISE_AND:
+            case BITWISE_OR:
+            case BITWISE_XOR:
+            case LEFT_SHIFT:
+            case RIGHT_SHIFT:
+            case UNSIGNED_RIGHT_SHIFT:
+                expr.setFirstOperand(transform(expr.getFirstOperand(), true));
+                expr.setSecondOperand(transform(expr.getSecondOperand(), true));
+                break;
+            case ADD:
+            case SUBTRACT: {
+                Expr first = transform(expr.getFirstOperand(), false);
+                Expr second = transform(expr.getSecondOperand(), false);
+                if (truncated && rangeOf(first) != null && rangeOf(second) != null) {
+                    first = strip(first);
+                    second = strip(second);
+                }
+                expr.setFirstOperand(first);
+                expr.setSecondOperand(second);
+                break;
+            }
+            default:
+                expr.setFirstOperand(transform(expr.getFirstOperand(), false));
+                expr.setSecondOperand(transform(expr.getSecondOperand(), false));
+                break;
+        }
+        resultExpr = expr;
+    }
+
+    @Override
+    public void visit(UnaryExpr expr) {
+        switch (expr.getOperation()) {
+            case BYTE_TO_INT:
+            case SHORT_TO_INT:
+                expr.setOperand(transform(expr.getOperand(), true));
+                break;
+            default:
+                expr.setOperand(transform(expr.getOperand(), false));
+                break;
+        }
+        resultExpr = expr;
+    }
+
+    @Override
+    public void visit(ConditionalExpr expr) {
+        boolean truncated = this.truncated;
+        expr.setCondition(transform(expr.getCondition(), false));
+        expr.setConsequent(transform(expr.getConsequent(), truncated));
+        expr.setAlternative(transform(expr.getAlternative(), truncated));
+        resultExpr = expr;
+    }
+
+    @Override
+    public void visit(ConstantExpr expr) {
+        resultExpr = expr;
+    }
+
+    @Override
+    public void visit(VariableExpr expr) {
+        resultExpr = expr;
+    }
+
+    @Override
+    public void visit(SubscriptExpr expr) {
+        expr.setArray(transform(expr.getArray(), false));
+        expr.setIndex(transform(expr.getIndex(), false));
+        resultExpr = expr;
+    }
+
+    @Override
+    public void visit(UnwrapArrayExpr expr) {
+        expr.setArray(transform(expr.getArray(), false));
+        resultExpr = expr;
+    }
+
+    @Override
+    public void visit(InvocationExpr expr) {
+        transform(expr.getArguments());
+        resultExpr = expr;
+    }
+
+    @Override
+    public void visit(QualificationExpr expr) {
+        expr.setQualified(transform(expr.getQualified(), false));
+        resultExpr = expr;
+    }
+
+    @Override
+    public void visit(NewExpr expr) {
+        resultExpr = expr;
+    }
+
+    @Override
+    public void visit(NewArrayExpr expr) {
+        expr.setLength(transform(expr.getLength(), false));
+        resultExpr = expr;
+    }
+
+    @Override
+    public void visit(NewMultiArrayExpr expr) {
+        transform(expr.getDimensions());
+        resultExpr = expr;
+    }
+
+    @Override
+    public void visit(InstanceOfExpr expr) {
+        expr.setExpr(transform(expr.getExpr(), false));
+        resultExpr = expr;
+    }
+
+    @Override
+    public void visit(StaticClassExpr expr) {
+        resultExpr = expr;
+    }
+
+    @Override
+    public void visit(AssignmentStatement statement) {
+        statement.setLeftValue(transform(statement.getLeftValue(), false));
+        statement.setRightValue(transform(statement.getRightValue(), false));
+    }
+
+    @Override
+    public void visit(SequentialStatement statement) {
+        visitSequence(statement.getSequence());
+    }
+
+    @Override
+    public void visit(ConditionalStatement statement) {
+        statement.setCondition(transform(statement.getCondition(), false));
+        visitSequence(statement.getConsequent());
+        visitSequence(statement.getAlternative());
+    }
+
+    @Override
+    public void visit(SwitchStatement statement) {
+        statement.setValue(transform(statement.getValue(), false));
+        for (SwitchClause clause : statement.getClauses()) {
+            visitSequence(clause.getBody());
+        }
+        visitSequence(statement.getDefaultClause());
+    }
+
+    @Override
+    public void visit(WhileStatement statement) {
+        statement.setCondition(transform(statement.getCondition(), false));
+        visitSequence(statement.getBody());
+    }
+
+    @Override
+    public void visit(BlockStatement statement) {
+        visitSequence(statement.getBody());
+    }
+
+    @Override
+    public void visit(ForStatement statement) {
+    }
+
+    @Override
+    public void visit(BreakStatement statement) {
+    }
+
+    @Override
+    public void visit(ContinueStatement statement) {
+    }
+
+    @Override
+    public void visit(ReturnStatement statement) {
+        statement.setResult(transform(statement.getResult(), false));
+    }
+
+    @Override
+    public void visit(ThrowStatement statement) {
+        statement.setException(transform(statement.getException(), false));
+    }
+
+    @Override
+    public void visit(IncrementStatement statement) {
+    }
+
+    @Override
+    public void visit(InitClassStatement statement) {
+    }
+
+    private Range rangeOf(Expr expr) {
+        if (expr instanceof ConstantExpr) {
+            Object value = ((ConstantExpr)expr).getValue();
+            return value instanceof Integer ? new Range((Integer)value, (Integer)value) : null;
+        } else if (expr instanceof VariableExpr) {
+            int index = ((VariableExpr)expr).getIndex();
+            return ranges.isInteger(index) ? new Range(ranges.getLower(index), ranges.getUpper(index)) : null;
+        } else if (expr instanceof SubscriptExpr) {
+            return rangeOf(((SubscriptExpr)expr).getElementType());
+        } else if (expr instanceof UnaryExpr) {
+            return rangeOf((UnaryExpr)expr);
+        } else if (expr instanceof BinaryExpr) {
+            return rangeOf((BinaryExpr)expr);
+        } else if (expr instanceof ConditionalExpr) {
+            ConditionalExpr conditional = (ConditionalExpr)expr;
+            Range consequent = rangeOf(conditional.getConsequent());
+            Range alternative = rangeOf(conditional.getAlternative());
+            if (consequent == null || alternative == null) {
+                return null;
+            }
+            return new Range(Math.min(consequent.lower, alternative.lower),
+                    Math.max(consequent.upper, alternative.upper));
+        } else if (expr instanceof InvocationExpr) {
+            return rangeOf(((InvocationExpr)expr).getMethod().getDescriptor().getResultType());
+        }
+        return null;
+    }
+
+    private static Range rangeOf(ArrayElementType type) {
+        switch (type) {
+            case BYTE:
+                return new Range(Byte.MIN_VALUE, Byte.MAX_VALUE);
+            case SHORT:
+                return new Range(Short.MIN_VALUE, Short.MAX_VALUE);
+            case CHAR:
+                return new Range(Character.MIN_VALUE, Character.MAX_VALUE);
+            case INT:
+                return Range.INT;
+            default:
+                return null;
+        }
+    }
+
+    private static Range rangeOf(ValueType type) {
+        if (!(type instanceof ValueType.Primitive)) {
+            return null;
+        }
+        switch (((ValueType.Primitive)type).getKind()) {
+            case BYTE:
+                return new Range(Byte.MIN_VALUE, Byte.MAX_VALUE);
+            case SHORT:
+                return new Range(Short.MIN_VALUE, Short.MAX_VALUE);
+            case CHARACTER:
+                return new Range(Character.MIN_VALUE, Character.MAX_VALUE);
+            case INTEGER:
+                return Range.INT;
+            default:
+                return null;
+        }
+    }
+
+    private Range rangeOf(UnaryExpr expr) {
+        switch (expr.getOperation()) {
+            case LENGTH:
+                return new Range(0, IntegerRangeAnalysis.INT_MAX);
+            case BYTE_TO_INT:
+                return new Range(Byte.MIN_VALUE, Byte.MAX_VALUE);
+            case SHORT_TO_INT:
+                return new Range(Short.MIN_VALUE, Short.MAX_VALUE);
+            default:
+                // Negation is not handled, since it may produce negative zero
+                return null;
+        }
+    }
+
+    private Range rangeOf(BinaryExpr expr) {
+        switch (expr.getOperation()) {
+            case ADD:
+            case SUBTRACT: {
+                Range first = rangeOf(expr.getFirstOperand());
+                Range second = rangeOf(expr.getSecondOperand());
+                if (first == null || second == null || !first.isSafe() || !second.isSafe()) {
+                    return null;
+                }
+                if (expr.getOperation() == BinaryOperation.ADD) {
+                    return new Range(first.lower + second.lower, first.upper + second.upper);
+                } else {
+                    return new Range(first.lower - second.upper, first.upper - second.lower);
+                }
+            }
+            case COMPARE:
+                return new Range(-1, 1);
+            case BITWISE_AND: {
+                Range first = rangeOf(expr.getFirstOperand());
+                Range second = rangeOf(expr.getSecondOperand());
+                if (first != null && first.fitsInt() && first.lower >= 0) {
+                    return new Range(0, first.upper);
+                } else if (second != null && second.fitsInt() && second.lower >= 0) {
+                    return new Range(0, second.upper);
+                }
+                return Range.INT;
+            }
+            case BITWISE_OR: {
+                if (isCoercion(expr)) {
+                    Range operand = rangeOf(expr.getFirstOperand());
+                    return operand != null && operand.fitsInt() ? operand : Range.INT;
+                }
+                return Range.INT;
+            }
+            case BITWISE_XOR:
+            case LEFT_SHIFT:
+                return Range.INT;
+            case RIGHT_SHIFT: {
+                Integer shift = constantShift(expr.getSecondOperand());
+                if (shift == null) {
+                    return Range.INT;
+                }
+                return new Range(IntegerRangeAnalysis.INT_MIN >> shift, IntegerRangeAnalysis.INT_MAX >> shift);
+            }
+            case UNSIGNED_RIGHT_SHIFT: {
+                Integer shift = constantShift(expr.getSecondOperand());
+                return new Range(0, 0xFFFFFFFFL >>> (shift != null ? shift : 0));
+            }
+            default:
+                return null;
+        }
+    }
+
+    private static Integer constantShift(Expr expr) {
+        if (!(expr instanceof ConstantExpr) || !(((ConstantExpr)expr).getValue() instanceof Integer)) {
+            return null;
+        }
+        return (Integer)((ConstantExpr)expr).getValue() & 31;
+    }
+
+    private static class Range {
+        static final Range INT = new Range(IntegerRangeAnalysis.INT_MIN, IntegerRangeAnalysis.INT_MAX);
+        final long lower;
+        final long upper;
+
+        public Range(long lower, long upper) {
+            this.lower = lower;
+            this.upper = upper;
+        }
+
+        public boolean fitsInt() {
+            return lower >= IntegerRangeAnalysis.INT_MIN && upper <= IntegerRangeAnalysis.INT_MAX;
+        }
+
+        public boolean isSafe() {
+            return lower >= -SAFE_BOUND && upper <= SAFE_BOUND;
+        }
+    }
+}
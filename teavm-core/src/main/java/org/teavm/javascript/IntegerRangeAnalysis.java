@@ -0,0 +1,413 @@
+/*
+ *  Copyright 2014 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.javascript;
+
+import org.teavm.model.*;
+import org.teavm.model.instructions.*;
+import org.teavm.model.util.DefinitionExtractor;
+
+/**
+ * <p>Computes ranges of integer variables of a program. A variable gets a range only if every definition
+ * of the variable is known to produce an integer number, otherwise it is considered to be of unknown
+ * type. Ranges are never narrower than the actual values, but may be wider, since loops are widened
+ * to the full <code>int</code> range after a few passes.</p>
+ *
+ * @author Alexey Andreev <konsoletyper@gmail.com>
+ */
+class IntegerRangeAnalysis implements InstructionVisitor {
+    static final long INT_MIN = Integer.MIN_VALUE;
+    static final long INT_MAX = Integer.MAX_VALUE;
+    private static final int WIDENING_PASS = 3;
+    private long[] lower;
+    private long[] upper;
+    private boolean[] defined;
+    private boolean[] unknown;
+    private boolean changed;
+    private boolean handled;
+    private int pass;
+    private DefinitionExtractor definitionExtractor = new DefinitionExtractor();
+
+    public IntegerRangeAnalysis(Program program, MethodReference method) {
+        int variableCount = program.variableCount();
+        lower = new long[variableCount];
+        upper = new long[variableCount];
+        defined = new boolean[variableCount];
+        unknown = new boolean[variableCount];
+        ValueType[] parameterTypes = method.getParameterTypes();
+        for (int i = 0; i < parameterTypes.length && i + 1 < variableCount; ++i) {
+            include(i + 1, parameterTypes[i]);
+        }
+        do {
+            changed = false;
+            ++pass;
+            for (int i = 0; i < program.basicBlockCount(); ++i) {
+                BasicBlock block = program.basicBlockAt(i);
+                for (Phi phi : block.getPhis()) {
+                    for (Incoming incoming : phi.getIncomings()) {
+                        copy(incoming.getValue().getIndex(), phi.getReceiver().getIndex());
+                    }
+                }
+                for (Instruction insn : block.getInstructions()) {
+                    handled = false;
+                    insn.acceptVisitor(this);
+                    if (!handled) {
+                        insn.acceptVisitor(definitionExtractor);
+                        for (Variable var : definitionExtractor.getDefinedVariables()) {
+                            exclude(var.getIndex());
+                        }
+                    }
+                }
+            }
+        } while (changed);
+    }
+
+    public boolean isInteger(int variable) {
+        return variable < defined.length && defined[variable] && !unknown[variable];
+    }
+
+    public long getLower(int variable) {
+        return lower[variable];
+    }
+
+    public long getUpper(int variable) {
+        return upper[variable];
+    }
+
+    private void include(int variable, long min, long max) {
+        if (unknown[variable]) {
+            return;
+        }
+        if (!defined[variable]) {
+            defined[variable] = true;
+            lower[variable] = min;
+            upper[variable] = max;
+            changed = true;
+            return;
+        }
+        if (min >= lower[variable] && max <= upper[variable]) {
+            return;
+        }
+        if (pass > WIDENING_PASS) {
+            min = Math.min(min, INT_MIN);
+            max = Math.max(max, INT_MAX);
+        }
+        lower[variable] = Math.min(lower[variable], min);
+        upper[variable] = Math.max(upper[variable], max);
+        changed = true;
+    }
+
+    private void include(int variable, ValueType type) {
+        if (!(type instanceof ValueType.Primitive)) {
+            exclude(variable);
+            return;
+        }
+        switch (((ValueType.Primitive)type).getKind()) {
+            case BYTE:
+                include(variable, Byte.MIN_VALUE, Byte.MAX_VALUE);
+                break;
+            case SHORT:
+                include(variable, Short.MIN_VALUE, Short.MAX_VALUE);
+                break;
+            case CHARACTER:
+                include(variable, Character.MIN_VALUE, Character.MAX_VALUE);
+                break;
+            case INTEGER:
+                include(variable, INT_MIN, INT_MAX);
+                break;
+            default:
+                exclude(variable);
+                break;
+        }
+    }
+
+    private void include(int variable, IntegerSubtype type) {
+        switch (type) {
+            case BYTE:
+                include(variable, Byte.MIN_VALUE, Byte.MAX_VALUE);
+                break;
+            case SHORT:
+                include(variable, Short.MIN_VALUE, Short.MAX_VALUE);
+                break;
+            case CHARACTER:
+                include(variable, Character.MIN_VALUE, Character.MAX_VALUE);
+                break;
+        }
+    }
+
+    private void exclude(int variable) {
+        if (!unknown[variable]) {
+            unknown[variable] = true;
+            changed = true;
+        }
+    }
+
+    private void copy(int source, int target) {
+        if (unknown[source]) {
+            exclude(target);
+        } else if (defined[source]) {
+            include(target, lower[source], upper[source]);
+        }
+    }
+
+    private boolean isNonNegativeInt(int variable) {
+        return isInteger(variable) && lower[variable] >= 0 && upper[variable] <= INT_MAX;
+    }
+
+    private boolean isConstant(int variable) {
+        return isInteger(variable) && lower[variable] == upper[variable];
+    }
+
+    @Override
+    public void visit(EmptyInstruction insn) {
+    }
+
+    @Override
+    public void visit(ClassConstantInstruction insn) {
+    }
+
+    @Override
+    public void visit(NullConstantInstruction insn) {
+    }
+
+    @Override
+    public void visit(IntegerConstantInstruction insn) {
+        handled = true;
+        include(insn.getReceiver().getIndex(), insn.getConstant(), insn.getConstant());
+    }
+
+    @Override
+    public void visit(LongConstantInstruction insn) {
+    }
+
+    @Override
+    public void visit(FloatConstantInstruction insn) {
+    }
+
+    @Override
+    public void visit(DoubleConstantInstruction insn) {
+    }
+
+    @Override
+    public void visit(StringConstantInstruction insn) {
+    }
+
+    @Override
+    public void visit(BinaryInstruction insn) {
+        int receiver = insn.getReceiver().getIndex();
+        if (insn.getOperation() == BinaryOperation.COMPARE) {
+            handled = true;
+            include(receiver, -1, 1);
+            return;
+        }
+        if (insn.getOperandType() != NumericOperandType.INT) {
+            return;
+        }
+        int first = insn.getFirstOperand().getIndex();
+        int second = insn.getSecondOperand().getIndex();
+        handled = true;
+        switch (insn.getOperation()) {
+            case ADD:
+            case SUBTRACT:
+                if (!isInteger(first) || !isInteger(second)) {
+                    include(receiver, INT_MIN, INT_MAX);
+                    break;
+                }
+                long min;
+                long max;
+                if (insn.getOperation() == BinaryOperation.ADD) {
+                    min = lower[first] + lower[second];
+                    max = upper[first] + upper[second];
+                } else {
+                    min = lower[first] - upper[second];
+                    max = upper[first] - lower[second];
+                }
+                if (min >= INT_MIN && max <= INT_MAX) {
+                    include(receiver, min, max);
+                } else {
+                    include(receiver, INT_MIN, INT_MAX);
+                }
+                break;
+            case MODULO:
+                // JavaScript produces negative zero for some operands, so the result may differ from
+                // the canonical integer representation
+                handled = false;
+                break;
+            case AND:
+                if (isNonNegativeInt(first)) {
+                    include(receiver, 0, upper[first]);
+                } else if (isNonNegativeInt(second)) {
+                    include(receiver, 0, upper[second]);
+                } else {
+                    include(receiver, INT_MIN, INT_MAX);
+                }
+                break;
+            case SHIFT_RIGHT:
+                if (isConstant(second)) {
+                    int shift = (int)lower[second] & 31;
+                    include(receiver, INT_MIN >> shift, INT_MAX >> shift);
+                } else {
+                    include(receiver, INT_MIN, INT_MAX);
+                }
+                break;
+            case SHIFT_RIGHT_UNSIGNED:
+                // Shifting by zero keeps the sign, so only a non-zero constant shift gives a non-negative value
+                if (isConstant(second) && ((int)lower[second] & 31) != 0) {
+                    include(receiver, 0, 0xFFFFFFFFL >>> ((int)lower[second] & 31));
+                } else {
+                    include(receiver, INT_MIN, INT_MAX);
+                }
+                break;
+            default:
+                include(receiver, INT_MIN, INT_MAX);
+                break;
+        }
+    }
+
+    @Override
+    public void visit(NegateInstruction insn) {
+        if (insn.getOperandType() == NumericOperandType.INT) {
+            handled = true;
+            include(insn.getReceiver().getIndex(), INT_MIN, INT_MAX);
+        }
+    }
+
+    @Override
+    public void visit(AssignInstruction insn) {
+        handled = true;
+        copy(insn.getAssignee().getIndex(), insn.getReceiver().getIndex());
+    }
+
+    @Override
+    public void visit(CastInstruction insn) {
+    }
+
+    @Override
+    public void visit(CastNumberInstruction insn) {
+        if (insn.getTargetType() == NumericOperandType.INT) {
+            handled = true;
+            include(insn.getReceiver().getIndex(), INT_MIN, INT_MAX);
+        }
+    }
+
+    @Override
+    public void visit(CastIntegerInstruction insn) {
+        handled = true;
+        include(insn.getReceiver().getIndex(), insn.getTargetType());
+    }
+
+    @Override
+    public void visit(BranchingInstruction insn) {
+    }
+
+    @Override
+    public void visit(BinaryBranchingInstruction insn) {
+    }
+
+    @Override
+    public void visit(JumpInstruction insn) {
+    }
+
+    @Override
+    public void visit(SwitchInstruction insn) {
+    }
+
+    @Override
+    public void visit(ExitInstruction insn) {
+    }
+
+    @Override
+    public void visit(RaiseInstruction insn) {
+    }
+
+    @Override
+    public void visit(ConstructArrayInstruction insn) {
+    }
+
+    @Override
+    public void visit(ConstructInstruction insn) {
+    }
+
+    @Override
+    public void visit(ConstructMultiArrayInstruction insn) {
+    }
+
+    @Override
+    public void visit(GetFieldInstruction insn) {
+        handled = true;
+        include(insn.getReceiver().getIndex(), insn.getFieldType());
+    }
+
+    @Override
+    public void visit(PutFieldInstruction insn) {
+    }
+
+    @Override
+    public void visit(ArrayLengthInstruction insn) {
+        handled = true;
+        include(insn.getReceiver().getIndex(), 0, INT_MAX);
+    }
+
+    @Override
+    public void visit(CloneArrayInstruction insn) {
+    }
+
+    @Override
+    public void visit(UnwrapArrayInstruction insn) {
+    }
+
+    @Override
+    public void visit(GetElementInstruction insn) {
+        int receiver = insn.getReceiver().getIndex();
+        handled = true;
+        switch (insn.getElementType()) {
+            case BYTE:
+                include(receiver, Byte.MIN_VALUE, Byte.MAX_VALUE);
+                break;
+            case SHORT:
+                include(receiver, Short.MIN_VALUE, Short.MAX_VALUE);
+                break;
+            case CHAR:
+                include(receiver, Character.MIN_VALUE, Character.MAX_VALUE);
+                break;
+            case INT:
+                include(receiver, INT_MIN, INT_MAX);
+                break;
+            default:
+                handled = false;
+                break;
+        }
+    }
+
+    @Override
+    public void visit(PutElementInstruction insn) {
+    }
+
+    @Override
+    public void visit(InvokeInstruction insn) {
+        if (insn.getReceiver() != null) {
+            handled = true;
+            include(insn.getReceiver().getIndex(), insn.getMethod().getDescriptor().getResultType());
+        }
+    }
+
+    @Override
+    public void visit(IsInstanceInstruction insn) {
+    }
+
+    @Override
+    public void visit(InitClassInstruction insn) {
+    }
+}
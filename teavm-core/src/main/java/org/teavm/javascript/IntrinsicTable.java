@@ -0,0 +1,40 @@
+/*
+ *  Copyright 2014 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.javascript;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.teavm.javascript.ni.Injector;
+import org.teavm.model.MethodReference;
+
+/**
+ * <p>Maps methods to injectors that render calls to these methods inline, the same way as methods
+ * marked with {@link org.teavm.javascript.ni.InjectedBy}. This allows to inline methods of classes that
+ * can't be annotated. An intrinsic takes precedence over the annotation.</p>
+ *
+ * @author Alexey Andreev <konsoletyper@gmail.com>
+ */
+public class IntrinsicTable {
+    private Map<MethodReference, Injector> injectors = new HashMap<>();
+
+    public void register(MethodReference method, Injector injector) {
+        injectors.put(method, injector);
+    }
+
+    public Injector get(MethodReference method) {
+        return injectors.get(method);
+    }
+}
@@ -16,13 +16,19 @@
 package org.teavm.javascript;
 
 import java.io.*;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.teavm.codegen.*;
 import org.teavm.common.FiniteExecutor;
+import org.teavm.dependency.DependencyAnalysisStrategy;
 import org.teavm.dependency.DependencyChecker;
+import org.teavm.dependency.DependencyResult;
+import org.teavm.dependency.ReachabilityReport;
 import org.teavm.javascript.ast.ClassNode;
 import org.teavm.model.*;
 import org.teavm.model.util.*;
@@ -35,18 +41,28 @@ import org.teavm.optimization.ClassSetOptimizer;
 public class JavascriptBuilder {
     private ClassHolderSource classSource;
     private DependencyChecker dependencyChecker;
+    private DependencyResult dependencyResult;
     private FiniteExecutor executor;
     private ClassLoader classLoader;
     private boolean minifying = true;
     private boolean bytecodeLogging;
+    private boolean pipelined;
+    private boolean closureScoped;
+    private boolean runtimeEmbedded;
+    private boolean typedEmission;
     private OutputStream logStream = System.out;
     private Map<String, JavascriptEntryPoint> entryPoints = new HashMap<>();
     private Map<String, String> exportedClasses = new HashMap<>();
+    private IntrinsicTable intrinsics = new IntrinsicTable();
+    private Map<String, Integer> classSizes;
+    private CountingAppendable countingWriter;
 
-    JavascriptBuilder(ClassHolderSource classSource, ClassLoader classLoader, FiniteExecutor executor) {
+    JavascriptBuilder(ClassHolderSource classSource, ClassLoader classLoader, FiniteExecutor executor,
+            DependencyAnalysisStrategy dependencyAnalysisStrategy) {
         this.classSource = new JavascriptProcessedClassSource(classSource);
         this.classLoader = classLoader;
-        dependencyChecker = new DependencyChecker(this.classSource, classLoader, executor);
+        dependencyChecker = new DependencyChecker(this.classSource, classLoader, executor,
+                dependencyAnalysisStrategy);
         this.executor = executor;
     }
 
@@ -66,6 +82,89 @@ public class JavascriptBuilder {
         this.bytecodeLogging = bytecodeLogging;
     }
 
+    public OutputStream getLogStream() {
+        return logStream;
+    }
+
+    /**
+     * <p>Sets the stream bytecode is logged to, when {@link #setBytecodeLogging(boolean) bytecode logging}
+     * is enabled. By default bytecode is logged to {@link System#out}.</p>
+     */
+    public void setLogStream(OutputStream logStream) {
+        this.logStream = logStream;
+    }
+
+    public boolean isPipelined() {
+        return pipelined;
+    }
+
+    /**
+     * <p>Enables pipelined build. Instead of waiting for all methods to pass optimization, then for all
+     * methods to get their registers allocated and then for all classes to be decompiled, each method is
+     * optimized and gets its registers allocated in a single task. A class is decompiled by the task
+     * that finishes its last method, and is rendered as soon as all classes preceding it are rendered.
+     * Dependency analysis and inlining still complete before any of this starts, since they decide
+     * which methods and classes exist. Bytecode logging falls back to the phased build.</p>
+     */
+    public void setPipelined(boolean pipelined) {
+        this.pipelined = pipelined;
+    }
+
+    public boolean isClosureScoped() {
+        return closureScoped;
+    }
+
+    /**
+     * <p>Wraps the whole program, including the functions it needs from <code>runtime.js</code>, into
+     * a single function, so that classes, methods and runtime functions are local variables rather than
+     * properties of the global object. Only entry points and exported types are put on the global object.
+     * The output does not need <code>runtime.js</code> to be loaded separately.</p>
+     */
+    public void setClosureScoped(boolean closureScoped) {
+        this.closureScoped = closureScoped;
+    }
+
+    public boolean isRuntimeEmbedded() {
+        return runtimeEmbedded || closureScoped;
+    }
+
+    /**
+     * <p>Puts functions from <code>runtime.js</code> into the output, so that the output does not
+     * need <code>runtime.js</code> to be loaded separately. Only the functions referred to by the program,
+     * by native generators and injectors, and by other such functions are put. Closure-scoped
+     * output always embeds the runtime.</p>
+     */
+    public void setRuntimeEmbedded(boolean runtimeEmbedded) {
+        this.runtimeEmbedded = runtimeEmbedded;
+    }
+
+    public boolean isTypedEmission() {
+        return typedEmission;
+    }
+
+    /**
+     * <p>Makes static methods that deal only with numbers and arrays of numbers render in the style of
+     * asm.js: parameters, call results and return values get coerced to their types, and variables get
+     * typed initial values. Such methods also keep variables of different types in different registers.
+     * Disabled by default.</p>
+     */
+    public void setTypedEmission(boolean typedEmission) {
+        this.typedEmission = typedEmission;
+    }
+
+    public boolean isRecordingCauses() {
+        return dependencyChecker.isRecordingCauses();
+    }
+
+    /**
+     * <p>Makes the builder remember why each class, method and field was kept, and how much code
+     * each class produced, so that {@link #writeReachabilityReport(Appendable)} can be called after
+     * the build. Should be called before any entry point is added.</p>
+     */
+    public void setRecordingCauses(boolean recordingCauses) {
+        dependencyChecker.setRecordingCauses(recordingCauses);
+    }
+
     public JavascriptEntryPoint entryPoint(String name, MethodReference ref) {
         if (entryPoints.containsKey(name)) {
             throw new IllegalArgumentException("Entry point with public name `" + name + "' already defined " +
@@ -85,56 +184,223 @@ public class JavascriptBuilder {
         exportedClasses.put(name, className);
     }
 
+    /**
+     * <p>Returns the table of injectors that render calls to given methods inline. Injectors should be
+     * registered before the build.</p>
+     */
+    public IntrinsicTable getIntrinsics() {
+        return intrinsics;
+    }
+
     public ClassHolderSource getClassSource() {
         return classSource;
     }
 
+    public DependencyResult getDependencyResult() {
+        return dependencyResult;
+    }
+
+    public Map<String, Integer> getClassSizes() {
+        return classSizes;
+    }
+
+    public void writeReachabilityReport(Appendable writer) throws IOException {
+        if (dependencyResult == null || !dependencyResult.hasCauses()) {
+            throw new IllegalStateException("Causes were not recorded or the build was not performed");
+        }
+        new ReachabilityReport(dependencyResult, classSizes).write(writer);
+    }
+
     public void build(Appendable writer) throws RenderingException {
         AliasProvider aliasProvider = minifying ? new MinifyingAliasProvider() : new DefaultAliasProvider();
         DefaultNamingStrategy naming = new DefaultNamingStrategy(aliasProvider, classSource);
         naming.setMinifying(minifying);
         SourceWriterBuilder builder = new SourceWriterBuilder(naming);
         builder.setMinified(minifying);
+        Appendable output = writer;
+        StringBuilder body = null;
+        if (isRuntimeEmbedded()) {
+            body = new StringBuilder();
+            writer = body;
+        }
+        if (dependencyChecker.isRecordingCauses()) {
+            classSizes = new HashMap<>();
+            countingWriter = new CountingAppendable(writer);
+            writer = countingWriter;
+        } else {
+            classSizes = null;
+            countingWriter = null;
+        }
         SourceWriter sourceWriter = builder.build(writer);
-        dependencyChecker.attachMethodGraph(new MethodReference("java.lang.Class", new MethodDescriptor("createNew",
+        dependencyChecker.attachMethodGraph(MethodReference.get("java.lang.Class", MethodDescriptor.get("createNew",
                 ValueType.object("java.lang.Class"))));
-        dependencyChecker.attachMethodGraph(new MethodReference("java.lang.String", new MethodDescriptor("<init>",
+        dependencyChecker.attachMethodGraph(MethodReference.get("java.lang.String", MethodDescriptor.get("<init>",
                 ValueType.arrayOf(ValueType.CHARACTER), ValueType.VOID)));
         executor.complete();
-        ListableClassHolderSource classSet = dependencyChecker.cutUnachievableClasses();
+        dependencyResult = dependencyChecker.buildResult();
+        ListableClassHolderSource classSet = dependencyChecker.cutUnachievableClasses(dependencyResult);
         Decompiler decompiler = new Decompiler(classSet, classLoader, executor);
+        decompiler.setTypedEmission(typedEmission);
         Renderer renderer = new Renderer(sourceWriter, classSet, classLoader);
+        renderer.setMinifying(minifying);
+        renderer.setTypedEmission(typedEmission);
+        renderer.setClosureScoped(closureScoped);
+        renderer.setIntrinsics(intrinsics);
         ClassSetOptimizer optimizer = new ClassSetOptimizer(executor);
-        optimizer.optimizeAll(classSet);
-        executor.complete();
-        allocateRegisters(classSet);
-        executor.complete();
-        if (bytecodeLogging) {
-            try {
-                logBytecode(new PrintWriter(new OutputStreamWriter(logStream, "UTF-8")), classSet);
-            } catch (IOException e) {
-                // Just don't do anything
+        if (pipelined && !bytecodeLogging) {
+            renderer.renderRuntime();
+            buildPipelined(classSet, decompiler, renderer, optimizer);
+        } else {
+            optimizer.optimizeAll(classSet);
+            executor.complete();
+            allocateRegisters(classSet);
+            executor.complete();
+            if (bytecodeLogging) {
+                try {
+                    logBytecode(new PrintWriter(new OutputStreamWriter(logStream, "UTF-8")), classSet);
+                } catch (IOException e) {
+                    // Just don't do anything
+                }
+            }
+            renderer.renderRuntime();
+            List<ClassNode> clsNodes = decompiler.decompile(classSet.getClassNames());
+            for (ClassNode clsNode : clsNodes) {
+                render(renderer, clsNode);
             }
         }
-        renderer.renderRuntime();
-        List<ClassNode> clsNodes = decompiler.decompile(classSet.getClassNames());
-        for (ClassNode clsNode : clsNodes) {
-            renderer.render(clsNode);
-        }
+        renderer.renderCacheVariables();
+        releaseAnalyses(classSet);
         try {
+            String exportPrefix = closureScoped ? "$rt_exports." : "";
             for (Map.Entry<String, JavascriptEntryPoint> entry : entryPoints.entrySet()) {
-                sourceWriter.append(entry.getKey()).ws().append("=").ws().appendMethodBody(entry.getValue().reference)
-                        .append(";").softNewLine();
+                sourceWriter.append(exportPrefix).append(entry.getKey()).ws().append("=").ws()
+                        .appendMethodBody(entry.getValue().reference).append(";").softNewLine();
             }
             for (Map.Entry<String, String> entry : exportedClasses.entrySet()) {
-                sourceWriter.append(entry.getKey()).ws().append("=").ws().appendClass(entry.getValue()).append(";")
-                        .softNewLine();
+                sourceWriter.append(exportPrefix).append(entry.getKey()).ws().append("=").ws()
+                        .appendClass(entry.getValue()).append(";").softNewLine();
+            }
+            if (body != null) {
+                SourceWriter outputWriter = builder.build(output);
+                if (closureScoped) {
+                    outputWriter.append("(function($rt_exports)").ws().append("{").newLine();
+                }
+                RuntimeLibrary runtime = RuntimeLibrary.getInstance();
+                Set<String> requiredRuntime = new HashSet<>(renderer.getRequiredRuntime());
+                runtime.collectReferences(body, requiredRuntime);
+                runtime.write(output, requiredRuntime);
+                output.append(body);
+                if (closureScoped) {
+                    outputWriter.append("})(this);").newLine();
+                }
             }
         } catch (IOException e) {
             throw new RenderingException("IO Error occured", e);
         }
     }
 
+    private void buildPipelined(final ListableClassHolderSource classSet, Decompiler decompiler,
+            Renderer renderer, final ClassSetOptimizer optimizer) {
+        optimizer.inlineAll(classSet);
+        List<String> classNames = decompiler.sortClasses(classSet.getClassNames());
+        final RenderQueue renderQueue = new RenderQueue(renderer, classNames.size());
+        for (int i = 0; i < classNames.size(); ++i) {
+            final ClassHolder cls = classSet.getClassHolder(classNames.get(i));
+            final int index = i;
+            List<MethodHolder> methods = new ArrayList<>();
+            for (MethodHolder method : cls.getMethods()) {
+                if (method.getProgram() != null && method.getProgram().basicBlockCount() > 0) {
+                    methods.add(method);
+                }
+            }
+            if (methods.isEmpty()) {
+                executor.execute(new Runnable() {
+                    @Override public void run() {
+                        Decompiler decompiler = new Decompiler(classSet, classLoader, executor);
+                        decompiler.setTypedEmission(typedEmission);
+                        renderQueue.put(index, decompiler.decompile(cls));
+                    }
+                });
+                continue;
+            }
+            final AtomicInteger remainingMethods = new AtomicInteger(methods.size());
+            for (final MethodHolder method : methods) {
+                executor.execute(new Runnable() {
+                    @Override public void run() {
+                        optimizer.optimize(method, classSet);
+                        allocateRegisters(method);
+                        if (remainingMethods.decrementAndGet() == 0) {
+                            Decompiler decompiler = new Decompiler(classSet, classLoader, executor);
+                            decompiler.setTypedEmission(typedEmission);
+                            renderQueue.put(index, decompiler.decompile(cls));
+                        }
+                    }
+                });
+            }
+        }
+        executor.complete();
+    }
+
+    private void render(Renderer renderer, ClassNode clsNode) {
+        if (countingWriter == null) {
+            renderer.render(clsNode);
+            return;
+        }
+        long start = countingWriter.count;
+        renderer.render(clsNode);
+        classSizes.put(clsNode.getName(), (int)(countingWriter.count - start));
+    }
+
+    private static class CountingAppendable implements Appendable {
+        private Appendable innerWriter;
+        long count;
+
+        public CountingAppendable(Appendable innerWriter) {
+            this.innerWriter = innerWriter;
+        }
+
+        @Override
+        public Appendable append(CharSequence csq) throws IOException {
+            CharSequence text = csq != null ? csq : "null";
+            count += text.length();
+            innerWriter.append(text);
+            return this;
+        }
+
+        @Override
+        public Appendable append(CharSequence csq, int start, int end) throws IOException {
+            count += end - start;
+            innerWriter.append(csq, start, end);
+            return this;
+        }
+
+        @Override
+        public Appendable append(char c) throws IOException {
+            ++count;
+            innerWriter.append(c);
+            return this;
+        }
+    }
+
+    private class RenderQueue {
+        private Renderer renderer;
+        private ClassNode[] classNodes;
+        private int next;
+
+        public RenderQueue(Renderer renderer, int size) {
+            this.renderer = renderer;
+            this.classNodes = new ClassNode[size];
+        }
+
+        public synchronized void put(int index, ClassNode clsNode) {
+            classNodes[index] = clsNode;
+            while (next < classNodes.length && classNodes[next] != null) {
+                render(renderer, classNodes[next]);
+                classNodes[next++] = null;
+            }
+        }
+    }
+
     private void allocateRegisters(ListableClassHolderSource classes) {
         for (String className : classes.getClassNames()) {
             ClassHolder cls = classes.getClassHolder(className);
@@ -142,10 +408,7 @@ public class JavascriptBuilder {
                 if (method.getProgram() != null && method.getProgram().basicBlockCount() > 0) {
                     executor.execute(new Runnable() {
                         @Override public void run() {
-                            RegisterAllocator allocator = new RegisterAllocator();
-                            Program program = ProgramUtils.copy(method.getProgram());
-                            allocator.allocateRegisters(method, program);
-                            method.setProgram(program);
+                            allocateRegisters(method);
                         }
                     });
                 }
@@ -153,6 +416,34 @@ public class JavascriptBuilder {
         }
     }
 
+    /**
+     * <p>Drops control flow analyses of built programs. Classes may come from a cache that outlives
+     * the build, and analyses are not needed once the code is rendered.</p>
+     */
+    private void releaseAnalyses(ListableClassHolderSource classes) {
+        for (String className : classes.getClassNames()) {
+            for (MethodHolder method : classes.getClassHolder(className).getMethods()) {
+                if (method.getProgram() != null) {
+                    method.getProgram().getAnalysisCache().invalidate();
+                }
+            }
+        }
+    }
+
+    private void allocateRegisters(MethodHolder method) {
+        RegisterAllocator allocator = new RegisterAllocator();
+        Program program = ProgramUtils.copy(method.getProgram());
+        int[] categories = null;
+        if (typedEmission && method.hasModifier(ElementModifier.STATIC)) {
+            PrimitiveMethodAnalysis primitives = new PrimitiveMethodAnalysis(program, method.getReference());
+            if (primitives.isPrimitive()) {
+                categories = primitives.getCategories();
+            }
+        }
+        allocator.allocateRegisters(method, program, categories);
+        method.setProgram(program);
+    }
+
     private void logBytecode(PrintWriter writer, ListableClassHolderSource classes) {
         for (String className : classes.getClassNames()) {
             ClassHolder classHolder = classes.getClassHolder(className);
@@ -17,6 +17,7 @@ package org.teavm.javascript;
 
 import org.teavm.common.FiniteExecutor;
 import org.teavm.common.SimpleFiniteExecutor;
+import org.teavm.dependency.DependencyAnalysisStrategy;
 import org.teavm.model.ClassHolderSource;
 
 /**
@@ -27,6 +28,7 @@ public class JavascriptBuilderFactory {
     ClassHolderSource classSource;
     ClassLoader classLoader;
     FiniteExecutor executor = new SimpleFiniteExecutor();
+    DependencyAnalysisStrategy dependencyAnalysisStrategy = DependencyAnalysisStrategy.TYPE_PROPAGATION;
 
     public ClassHolderSource getClassSource() {
         return classSource;
@@ -52,7 +54,15 @@ public class JavascriptBuilderFactory {
         this.executor = executor;
     }
 
+    public DependencyAnalysisStrategy getDependencyAnalysisStrategy() {
+        return dependencyAnalysisStrategy;
+    }
+
+    public void setDependencyAnalysisStrategy(DependencyAnalysisStrategy dependencyAnalysisStrategy) {
+        this.dependencyAnalysisStrategy = dependencyAnalysisStrategy;
+    }
+
     public JavascriptBuilder create() {
-        return new JavascriptBuilder(classSource, classLoader, executor);
+        return new JavascriptBuilder(classSource, classLoader, executor, dependencyAnalysisStrategy);
     }
 }
@@ -100,7 +100,7 @@ class JavascriptNativeProcessor {
                     InvokeInstruction newInvoke = new InvokeInstruction();
                     ValueType[] signature = new ValueType[method.parameterCount() + 3];
                     Arrays.fill(signature, ValueType.object(JSObject.class.getName()));
-                    newInvoke.setMethod(new MethodReference(JS.class.getName(), new MethodDescriptor("invoke",
+                    newInvoke.setMethod(MethodReference.get(JS.class.getName(), MethodDescriptor.get("invoke",
                             signature)));
                     newInvoke.setType(InvocationType.SPECIAL);
                     newInvoke.setReceiver(result);
@@ -126,7 +126,7 @@ class JavascriptNativeProcessor {
     private void addPropertyGet(String propertyName, Variable instance, Variable receiver) {
         Variable nameVar = addStringWrap(addString(propertyName));
         InvokeInstruction insn = new InvokeInstruction();
-        insn.setMethod(new MethodReference(JS.class.getName(), new MethodDescriptor("get",
+        insn.setMethod(MethodReference.get(JS.class.getName(), MethodDescriptor.get("get",
                 ValueType.object(JSObject.class.getName()), ValueType.object(JSObject.class.getName()),
                 ValueType.object(JSObject.class.getName()))));
         insn.setReceiver(receiver);
@@ -138,7 +138,7 @@ class JavascriptNativeProcessor {
     private void addPropertySet(String propertyName, Variable instance, Variable value) {
         Variable nameVar = addStringWrap(addString(propertyName));
         InvokeInstruction insn = new InvokeInstruction();
-        insn.setMethod(new MethodReference(JS.class.getName(), new MethodDescriptor("set",
+        insn.setMethod(MethodReference.get(JS.class.getName(), MethodDescriptor.get("set",
                 ValueType.object(JSObject.class.getName()), ValueType.object(JSObject.class.getName()),
                 ValueType.VOID)));
         insn.getArguments().add(instance);
@@ -149,7 +149,7 @@ class JavascriptNativeProcessor {
 
     private void addIndexerGet(Variable array, Variable index, Variable receiver) {
         InvokeInstruction insn = new InvokeInstruction();
-        insn.setMethod(new MethodReference(JS.class.getName(), new MethodDescriptor("get",
+        insn.setMethod(MethodReference.get(JS.class.getName(), MethodDescriptor.get("get",
                 ValueType.object(JSObject.class.getName()), ValueType.object(JSObject.class.getName()),
                 ValueType.object(JSObject.class.getName()))));
         insn.setReceiver(receiver);
@@ -160,7 +160,7 @@ class JavascriptNativeProcessor {
 
     private void addIndexerSet(Variable array, Variable index, Variable value) {
         InvokeInstruction insn = new InvokeInstruction();
-        insn.setMethod(new MethodReference(JS.class.getName(), new MethodDescriptor("set",
+        insn.setMethod(MethodReference.get(JS.class.getName(), MethodDescriptor.get("set",
                 ValueType.object(JSObject.class.getName()), ValueType.object(JSObject.class.getName()),
                 ValueType.object(JSObject.class.getName()), ValueType.VOID)));
         insn.getArguments().add(array);
@@ -231,7 +231,7 @@ class JavascriptNativeProcessor {
     private Variable unwrap(Variable var, String methodName, ValueType resultType) {
         Variable result = program.createVariable();
         InvokeInstruction insn = new InvokeInstruction();
-        insn.setMethod(new MethodReference(JS.class.getName(), new MethodDescriptor(methodName,
+        insn.setMethod(MethodReference.get(JS.class.getName(), MethodDescriptor.get(methodName,
                 resultType)));
         insn.getArguments().add(var);
         insn.setReceiver(result);
@@ -249,7 +249,7 @@ class JavascriptNativeProcessor {
         }
         Variable result = program.createVariable();
         InvokeInstruction insn = new InvokeInstruction();
-        insn.setMethod(new MethodReference(JS.class.getName(), new MethodDescriptor("wrap", type,
+        insn.setMethod(MethodReference.get(JS.class.getName(), MethodDescriptor.get("wrap", type,
                 ValueType.object(JSObject.class.getName()))));
         insn.getArguments().add(var);
         insn.setReceiver(result);
@@ -287,7 +287,7 @@ class JavascriptNativeProcessor {
             return method;
         }
         for (String iface : cls.getInterfaces()) {
-            method = getMethod(new MethodReference(iface, ref.getDescriptor()));
+            method = getMethod(MethodReference.get(iface, ref.getDescriptor()));
             if (method != null) {
                 return method;
             }
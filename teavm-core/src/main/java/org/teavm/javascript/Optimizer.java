@@ -15,8 +15,12 @@
  */
 package org.teavm.javascript;
 
+import java.util.ArrayList;
+import java.util.List;
+import org.teavm.javascript.ast.NodeModifier;
 import org.teavm.javascript.ast.RegularMethodNode;
 import org.teavm.model.Program;
+import org.teavm.model.ValueType;
 
 
 /**
@@ -24,6 +28,20 @@ import org.teavm.model.Program;
  * @author Alexey Andreev
  */
 public class Optimizer {
+    private boolean typedEmission;
+
+    public boolean isTypedEmission() {
+        return typedEmission;
+    }
+
+    /**
+     * <p>Makes the optimizer find out types of variables of static methods that only operate on numbers,
+     * so that the renderer could emit these methods in a typed style.</p>
+     */
+    public void setTypedEmission(boolean typedEmission) {
+        this.typedEmission = typedEmission;
+    }
+
     public void optimize(RegularMethodNode method, Program program) {
         ReadWriteStatsBuilder stats = new ReadWriteStatsBuilder(method.getVariables().size());
         stats.analyze(program);
@@ -33,9 +51,17 @@ public class Optimizer {
         optimizer.referencedStatements = refsCounter.refs;
         method.getBody().acceptVisitor(optimizer);
         method.setBody(optimizer.resultStmt);
+        IntegerRangeAnalysis ranges = new IntegerRangeAnalysis(program, method.getReference());
+        method.getBody().acceptVisitor(new IntegerCoercionEliminator(ranges));
         int paramCount = method.getReference().parameterCount();
         UnusedVariableEliminator unusedEliminator = new UnusedVariableEliminator(paramCount, method.getVariables());
         method.getBody().acceptVisitor(unusedEliminator);
+        if (typedEmission && method.getModifiers().contains(NodeModifier.STATIC)) {
+            PrimitiveMethodAnalysis primitives = new PrimitiveMethodAnalysis(program, method.getReference());
+            if (primitives.isPrimitive()) {
+                method.setVariableTypes(getVariableTypes(primitives, unusedEliminator));
+            }
+        }
         method.getVariables().subList(unusedEliminator.lastIndex, method.getVariables().size()).clear();
         RedundantLabelEliminator labelEliminator = new RedundantLabelEliminator();
         method.getBody().acceptVisitor(labelEliminator);
@@ -43,4 +69,47 @@ public class Optimizer {
             method.getVariables().set(i, i);
         }
     }
+
+    private List<ValueType> getVariableTypes(PrimitiveMethodAnalysis primitives,
+            UnusedVariableEliminator unusedEliminator) {
+        PrimitiveMethodAnalysis.Kind[] kinds = new PrimitiveMethodAnalysis.Kind[unusedEliminator.lastIndex];
+        for (int i = 0; i < unusedEliminator.variables.length; ++i) {
+            PrimitiveMethodAnalysis.Kind kind = primitives.getKind(i);
+            int register = unusedEliminator.variables[i];
+            if (kind == null || register < 0 || register >= unusedEliminator.indexes.length) {
+                continue;
+            }
+            int index = unusedEliminator.indexes[register];
+            if (index < 0) {
+                continue;
+            }
+            if (kinds[index] == null) {
+                kinds[index] = kind;
+            } else if (kinds[index] != kind) {
+                return null;
+            }
+        }
+        List<ValueType> types = new ArrayList<>();
+        for (PrimitiveMethodAnalysis.Kind kind : kinds) {
+            if (kind == null) {
+                types.add(null);
+                continue;
+            }
+            switch (kind) {
+                case INT:
+                    types.add(ValueType.INTEGER);
+                    break;
+                case FLOAT:
+                    types.add(ValueType.FLOAT);
+                    break;
+                case DOUBLE:
+                    types.add(ValueType.DOUBLE);
+                    break;
+                default:
+                    types.add(null);
+                    break;
+            }
+        }
+        return types;
+    }
 }
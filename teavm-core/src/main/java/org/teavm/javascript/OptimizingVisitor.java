@@ -84,10 +84,51 @@ class OptimizingVisitor implements StatementVisitor, ExprVisitor {
         resultExpr = expr;
     }
 
+    /**
+     * <p>Tells whether an expression is known to produce a value representable as <code>float</code>,
+     * so that rounding it to <code>float</code> has no effect.</p>
+     */
+    private static boolean isFloat(Expr expr) {
+        if (expr instanceof ConstantExpr) {
+            Object value = ((ConstantExpr)expr).getValue();
+            if (value instanceof Float) {
+                return true;
+            } else if (value instanceof Integer) {
+                int intValue = (Integer)value;
+                return intValue >= -(1 << 24) && intValue <= 1 << 24;
+            }
+            return false;
+        } else if (expr instanceof SubscriptExpr) {
+            switch (((SubscriptExpr)expr).getElementType()) {
+                case BYTE:
+                case SHORT:
+                case CHAR:
+                case FLOAT:
+                    return true;
+                default:
+                    return false;
+            }
+        } else if (expr instanceof UnaryExpr) {
+            switch (((UnaryExpr)expr).getOperation()) {
+                case NUM_TO_FLOAT:
+                case BYTE_TO_INT:
+                case SHORT_TO_INT:
+                    return true;
+                default:
+                    return false;
+            }
+        }
+        return false;
+    }
+
     @Override
     public void visit(UnaryExpr expr) {
         expr.getOperand().acceptVisitor(this);
         Expr operand = resultExpr;
+        if (expr.getOperation() == UnaryOperation.NUM_TO_FLOAT && isFloat(operand)) {
+            resultExpr = operand;
+            return;
+        }
         expr.setOperand(operand);
         resultExpr = expr;
     }
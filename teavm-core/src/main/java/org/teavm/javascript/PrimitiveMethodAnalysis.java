@@ -0,0 +1,394 @@
+/*
+ *  Copyright 2014 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.javascript;
+
+import org.teavm.model.*;
+import org.teavm.model.instructions.*;
+
+/**
+ * <p>Tells whether a method only operates on numbers and primitive arrays, and finds out which variables
+ * hold integers, floats and doubles. Such a method is static, takes and returns <code>int</code>,
+ * <code>float</code>, <code>double</code>, their narrower integer counterparts or arrays of them,
+ * allocates no objects, and calls nothing but other static methods of the same kind of signature.
+ * Methods dealing with <code>long</code>, <code>boolean</code> or objects are not considered primitive,
+ * since they are represented by objects or by values of several JavaScript types.</p>
+ *
+ * @author Alexey Andreev <konsoletyper@gmail.com>
+ */
+class PrimitiveMethodAnalysis implements InstructionVisitor {
+    enum Kind {
+        INT,
+        FLOAT,
+        DOUBLE,
+        REFERENCE
+    }
+
+    private Kind[] kinds;
+    private boolean primitive = true;
+    private boolean changed;
+
+    public PrimitiveMethodAnalysis(Program program, MethodReference method) {
+        kinds = new Kind[program.variableCount()];
+        ValueType[] parameterTypes = method.getParameterTypes();
+        if (!isPrimitive(method.getDescriptor().getResultType(), true)) {
+            primitive = false;
+            return;
+        }
+        for (int i = 0; i < parameterTypes.length; ++i) {
+            if (!isPrimitive(parameterTypes[i], false)) {
+                primitive = false;
+                return;
+            }
+            if (i + 1 < kinds.length) {
+                kinds[i + 1] = kindOf(parameterTypes[i]);
+            }
+        }
+        do {
+            changed = false;
+            for (int i = 0; i < program.basicBlockCount() && primitive; ++i) {
+                BasicBlock block = program.basicBlockAt(i);
+                for (Phi phi : block.getPhis()) {
+                    for (Incoming incoming : phi.getIncomings()) {
+                        copy(incoming.getValue(), phi.getReceiver());
+                    }
+                }
+                for (Instruction insn : block.getInstructions()) {
+                    insn.acceptVisitor(this);
+                }
+            }
+        } while (changed && primitive);
+    }
+
+    public boolean isPrimitive() {
+        return primitive;
+    }
+
+    /**
+     * <p>Returns the kind of value the given variable holds, or <code>null</code> if the variable is
+     * never defined.</p>
+     */
+    public Kind getKind(int variable) {
+        return kinds[variable];
+    }
+
+    /**
+     * <p>Returns kinds of all the variables as register allocation categories, so that variables of
+     * different kinds never share a register. Undefined variables get <code>-1</code>.</p>
+     */
+    public int[] getCategories() {
+        int[] categories = new int[kinds.length];
+        for (int i = 0; i < kinds.length; ++i) {
+            categories[i] = kinds[i] != null ? kinds[i].ordinal() : -1;
+        }
+        return categories;
+    }
+
+    private static boolean isPrimitive(ValueType type, boolean result) {
+        if (type instanceof ValueType.Void) {
+            return result;
+        } else if (type instanceof ValueType.Array) {
+            ValueType itemType = ((ValueType.Array)type).getItemType();
+            return itemType instanceof ValueType.Primitive && isNumeric((ValueType.Primitive)itemType);
+        } else if (type instanceof ValueType.Primitive) {
+            return isNumeric((ValueType.Primitive)type);
+        }
+        return false;
+    }
+
+    private static boolean isNumeric(ValueType.Primitive type) {
+        switch (type.getKind()) {
+            case BYTE:
+            case SHORT:
+            case CHARACTER:
+            case INTEGER:
+            case FLOAT:
+            case DOUBLE:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static Kind kindOf(ValueType type) {
+        if (!(type instanceof ValueType.Primitive)) {
+            return Kind.REFERENCE;
+        }
+        switch (((ValueType.Primitive)type).getKind()) {
+            case FLOAT:
+                return Kind.FLOAT;
+            case DOUBLE:
+                return Kind.DOUBLE;
+            default:
+                return Kind.INT;
+        }
+    }
+
+    private static Kind kindOf(NumericOperandType type) {
+        switch (type) {
+            case INT:
+                return Kind.INT;
+            case FLOAT:
+                return Kind.FLOAT;
+            case DOUBLE:
+                return Kind.DOUBLE;
+            default:
+                return null;
+        }
+    }
+
+    private void define(Variable variable, Kind kind) {
+        if (kind == null) {
+            primitive = false;
+            return;
+        }
+        Kind existing = kinds[variable.getIndex()];
+        if (existing == null) {
+            kinds[variable.getIndex()] = kind;
+            changed = true;
+        } else if (existing != kind) {
+            primitive = false;
+        }
+    }
+
+    private void copy(Variable source, Variable target) {
+        Kind kind = kinds[source.getIndex()];
+        if (kind != null) {
+            define(target, kind);
+        }
+    }
+
+    private void reject() {
+        primitive = false;
+    }
+
+    private void checkArray(ArrayElementType type) {
+        if (type == ArrayElementType.LONG || type == ArrayElementType.OBJECT) {
+            reject();
+        }
+    }
+
+    @Override
+    public void visit(EmptyInstruction insn) {
+    }
+
+    @Override
+    public void visit(ClassConstantInstruction insn) {
+        reject();
+    }
+
+    @Override
+    public void visit(NullConstantInstruction insn) {
+        reject();
+    }
+
+    @Override
+    public void visit(IntegerConstantInstruction insn) {
+        define(insn.getReceiver(), Kind.INT);
+    }
+
+    @Override
+    public void visit(LongConstantInstruction insn) {
+        reject();
+    }
+
+    @Override
+    public void visit(FloatConstantInstruction insn) {
+        define(insn.getReceiver(), Kind.FLOAT);
+    }
+
+    @Override
+    public void visit(DoubleConstantInstruction insn) {
+        define(insn.getReceiver(), Kind.DOUBLE);
+    }
+
+    @Override
+    public void visit(StringConstantInstruction insn) {
+        reject();
+    }
+
+    @Override
+    public void visit(BinaryInstruction insn) {
+        if (insn.getOperandType() == NumericOperandType.LONG) {
+            reject();
+        } else if (insn.getOperation() == BinaryOperation.COMPARE) {
+            define(insn.getReceiver(), Kind.INT);
+        } else {
+            define(insn.getReceiver(), kindOf(insn.getOperandType()));
+        }
+    }
+
+    @Override
+    public void visit(NegateInstruction insn) {
+        define(insn.getReceiver(), kindOf(insn.getOperandType()));
+    }
+
+    @Override
+    public void visit(AssignInstruction insn) {
+        copy(insn.getAssignee(), insn.getReceiver());
+    }
+
+    @Override
+    public void visit(CastInstruction insn) {
+        reject();
+    }
+
+    @Override
+    public void visit(CastNumberInstruction insn) {
+        if (insn.getSourceType() == NumericOperandType.LONG) {
+            reject();
+        } else {
+            define(insn.getReceiver(), kindOf(insn.getTargetType()));
+        }
+    }
+
+    @Override
+    public void visit(CastIntegerInstruction insn) {
+        define(insn.getReceiver(), Kind.INT);
+    }
+
+    @Override
+    public void visit(BranchingInstruction insn) {
+        switch (insn.getCondition()) {
+            case NULL:
+            case NOT_NULL:
+                reject();
+                break;
+            default:
+                break;
+        }
+    }
+
+    @Override
+    public void visit(BinaryBranchingInstruction insn) {
+        switch (insn.getCondition()) {
+            case REFERENCE_EQUAL:
+            case REFERENCE_NOT_EQUAL:
+                reject();
+                break;
+            default:
+                break;
+        }
+    }
+
+    @Override
+    public void visit(JumpInstruction insn) {
+    }
+
+    @Override
+    public void visit(SwitchInstruction insn) {
+    }
+
+    @Override
+    public void visit(ExitInstruction insn) {
+    }
+
+    @Override
+    public void visit(RaiseInstruction insn) {
+        reject();
+    }
+
+    @Override
+    public void visit(ConstructArrayInstruction insn) {
+        reject();
+    }
+
+    @Override
+    public void visit(ConstructInstruction insn) {
+        reject();
+    }
+
+    @Override
+    public void visit(ConstructMultiArrayInstruction insn) {
+        reject();
+    }
+
+    @Override
+    public void visit(GetFieldInstruction insn) {
+        reject();
+    }
+
+    @Override
+    public void visit(PutFieldInstruction insn) {
+        reject();
+    }
+
+    @Override
+    public void visit(ArrayLengthInstruction insn) {
+        define(insn.getReceiver(), Kind.INT);
+    }
+
+    @Override
+    public void visit(CloneArrayInstruction insn) {
+        reject();
+    }
+
+    @Override
+    public void visit(UnwrapArrayInstruction insn) {
+        // Array length is taken from an array unwrapped as an object array, whatever its type is.
+        // Arrays of objects and longs can't get here anyway, since neither parameters nor calls produce them,
+        // while element access checks the actual type.
+        define(insn.getReceiver(), Kind.REFERENCE);
+    }
+
+    @Override
+    public void visit(GetElementInstruction insn) {
+        checkArray(insn.getElementType());
+        switch (insn.getElementType()) {
+            case FLOAT:
+                define(insn.getReceiver(), Kind.FLOAT);
+                break;
+            case DOUBLE:
+                define(insn.getReceiver(), Kind.DOUBLE);
+                break;
+            default:
+                define(insn.getReceiver(), Kind.INT);
+                break;
+        }
+    }
+
+    @Override
+    public void visit(PutElementInstruction insn) {
+        checkArray(insn.getElementType());
+    }
+
+    @Override
+    public void visit(InvokeInstruction insn) {
+        MethodReference method = insn.getMethod();
+        if (insn.getInstance() != null || !isPrimitive(method.getDescriptor().getResultType(), true)) {
+            reject();
+            return;
+        }
+        for (ValueType parameterType : method.getParameterTypes()) {
+            if (!isPrimitive(parameterType, false)) {
+                reject();
+                return;
+            }
+        }
+        if (insn.getReceiver() != null) {
+            define(insn.getReceiver(), kindOf(method.getDescriptor().getResultType()));
+        }
+    }
+
+    @Override
+    public void visit(IsInstanceInstruction insn) {
+        reject();
+    }
+
+    @Override
+    public void visit(InitClassInstruction insn) {
+        reject();
+    }
+}
@@ -20,8 +20,10 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import org.teavm.codegen.NamingException;
 import org.teavm.codegen.NamingStrategy;
 import org.teavm.codegen.SourceWriter;
@@ -31,6 +33,7 @@ import org.teavm.javascript.ni.InjectedBy;
 import org.teavm.javascript.ni.Injector;
 import org.teavm.javascript.ni.InjectorContext;
 import org.teavm.model.*;
+import org.teavm.model.instructions.ArrayElementType;
 
 /**
  *
@@ -43,7 +46,17 @@ public class Renderer implements ExprVisitor, StatementVisitor {
     private ClassHolderSource classSource;
     private ClassLoader classLoader;
     private boolean minifying;
+    private boolean closureScoped;
     private Map<MethodReference, InjectorHolder> injectorMap = new HashMap<>();
+    private Set<String> requiredRuntime = new HashSet<>();
+    private Map<String, String> cachedValues = new HashMap<>();
+    private List<String> cacheVariables = new ArrayList<>();
+    private IntrinsicTable intrinsics = new IntrinsicTable();
+    private boolean typedEmission;
+    private List<ValueType> variableTypes;
+    private ValueType resultType;
+    private Expr coercedExpr;
+    private Expr discardedExpr;
 
     private static class InjectorHolder {
         public final Injector injector;
@@ -76,6 +89,97 @@ public class Renderer implements ExprVisitor, StatementVisitor {
         this.minifying = minifying;
     }
 
+    public boolean isClosureScoped() {
+        return closureScoped;
+    }
+
+    /**
+     * <p>Makes the renderer declare everything it defines with <code>var</code>, and bind method stubs
+     * to these variables instead of installing them on the global object. This is for output
+     * that is wrapped in a function.</p>
+     */
+    public void setClosureScoped(boolean closureScoped) {
+        this.closureScoped = closureScoped;
+    }
+
+    /**
+     * <p>Marks a variable defined in <code>runtime.js</code> as needed by the rendered code. This is only
+     * necessary for variables that are not mentioned in the output explicitly, since the output
+     * is scanned for references to the runtime as well.</p>
+     */
+    public void requireRuntime(String name) {
+        requiredRuntime.add(name);
+    }
+
+    public Set<String> getRequiredRuntime() {
+        return requiredRuntime;
+    }
+
+    public IntrinsicTable getIntrinsics() {
+        return intrinsics;
+    }
+
+    public boolean isTypedEmission() {
+        return typedEmission;
+    }
+
+    /**
+     * <p>Makes the renderer emit methods that only operate on numbers and primitive arrays in a typed style
+     * similar to asm.js: parameters, return values and call results are coerced explicitly, and local
+     * variables are initialized with values of their types. Disabled by default.</p>
+     */
+    public void setTypedEmission(boolean typedEmission) {
+        this.typedEmission = typedEmission;
+    }
+
+    public void setIntrinsics(IntrinsicTable intrinsics) {
+        this.intrinsics = intrinsics;
+    }
+
+    /**
+     * <p>Returns an expression that computes the given expression on first evaluation and takes it from
+     * a variable afterwards. Variables are declared by {@link #renderCacheVariables()}.</p>
+     */
+    private String cached(String expr) {
+        String variable = cachedValues.get(expr);
+        if (variable == null) {
+            variable = "$c" + cacheVariables.size();
+            cacheVariables.add(variable);
+            cachedValues.put(expr, variable);
+        }
+        String space = minifying ? "" : " ";
+        return "(" + variable + space + "||" + space + "(" + variable + space + "=" + space + expr + "))";
+    }
+
+    /**
+     * <p>Declares variables holding class literals and array classes. Should be called after all classes
+     * are rendered. Since these variables are only read from methods, and methods are not called while
+     * the output is being loaded, declaring them last is enough.</p>
+     */
+    public void renderCacheVariables() throws RenderingException {
+        if (cacheVariables.isEmpty()) {
+            return;
+        }
+        try {
+            writer.append("var ");
+            for (int i = 0; i < cacheVariables.size(); ++i) {
+                if (i > 0) {
+                    writer.append(",").ws();
+                }
+                writer.append(cacheVariables.get(i)).ws().append("=").ws().append("null");
+            }
+            writer.append(";").newLine();
+        } catch (IOException e) {
+            throw new RenderingException("IO error", e);
+        }
+    }
+
+    private void declare() throws IOException {
+        if (closureScoped) {
+            writer.append("var ");
+        }
+    }
+
     public void renderRuntime() throws RenderingException {
         try {
             renderRuntimeCls();
@@ -89,27 +193,28 @@ public class Renderer implements ExprVisitor, StatementVisitor {
     }
 
     private void renderRuntimeCls() throws IOException {
+        declare();
         writer.append("$rt_cls").ws().append("=").ws().append("function(clsProto)").ws().append("{")
                 .indent().softNewLine();
         String classClass = "java.lang.Class";
         writer.append("var cls").ws().append("=").ws().append("clsProto.classObject;").softNewLine();
         writer.append("if").ws().append("(cls").ws().append("===").ws().append("undefined)").ws()
                 .append("{").softNewLine().indent();
-        MethodReference createMethodRef = new MethodReference(classClass, new MethodDescriptor("createNew",
+        MethodReference createMethodRef = MethodReference.get(classClass, MethodDescriptor.get("createNew",
                 ValueType.object(classClass)));
         writer.append("cls").ws().append("=").ws().appendMethodBody(createMethodRef).append("();").softNewLine();
         writer.append("cls.$data = clsProto;").softNewLine();
         if (classSource.getClassHolder(classClass).getField("name") != null) {
-            writer.append("cls.").appendField(new FieldReference(classClass, "name")).ws().append("=").ws()
+            writer.append("cls.").appendField(FieldReference.get(classClass, "name")).ws().append("=").ws()
                     .append("clsProto.$meta.name").ws().append("!==").ws().append("undefined").ws().append("?").ws()
                     .append("$rt_str(clsProto.$meta.name)").ws().append(":").ws().append("null;").softNewLine();
         }
         if (classSource.getClassHolder(classClass).getField("primitive") != null) {
-            writer.append("cls.").appendField(new FieldReference(classClass, "primitive"))
+            writer.append("cls.").appendField(FieldReference.get(classClass, "primitive"))
                     .append(" = clsProto.$meta.primitive ? 1 : 0;").newLine();
         }
         if (classSource.getClassHolder(classClass).getField("array") != null) {
-            writer.append("cls.").appendField(new FieldReference(classClass, "array")).ws()
+            writer.append("cls.").appendField(FieldReference.get(classClass, "array")).ws()
                     .append("=").ws().append("clsProto.$meta.item").ws().append("?").ws()
                     .append("1").ws().append(":").ws().append("0;").softNewLine();
         }
@@ -121,8 +226,9 @@ public class Renderer implements ExprVisitor, StatementVisitor {
 
     private void renderRuntimeString() throws IOException {
         String stringClass = "java.lang.String";
-        MethodReference stringCons = new MethodReference(stringClass, new MethodDescriptor("<init>",
+        MethodReference stringCons = MethodReference.get(stringClass, MethodDescriptor.get("<init>",
                 ValueType.arrayOf(ValueType.CHARACTER), ValueType.VOID));
+        declare();
         writer.append("$rt_str = function(str) {").indent().softNewLine();
         writer.append("var characters = $rt_createCharArray(str.length);").softNewLine();
         writer.append("var charsBuffer = characters.data;").softNewLine();
@@ -135,13 +241,44 @@ public class Renderer implements ExprVisitor, StatementVisitor {
     }
 
     private void renderRuntimeObjcls() throws IOException {
+        declare();
         writer.append("$rt_objcls = function() { return ").appendClass("java.lang.Object").append("; }").newLine();
     }
 
+    /**
+     * <p>Writes initializers of instance fields declared by the given class and its superclasses,
+     * starting from the topmost one. Each constructor initializes the whole set of fields in the same
+     * order, so that all instances of a class share the same layout, and prototypes do not
+     * hold fields.</p>
+     */
+    private void renderInheritedFields(String className) throws IOException {
+        ClassHolder cls = classSource.getClassHolder(className);
+        if (cls == null) {
+            return;
+        }
+        if (cls.getParent() != null) {
+            renderInheritedFields(cls.getParent());
+        }
+        for (FieldHolder field : cls.getFields()) {
+            if (field.getModifiers().contains(ElementModifier.STATIC)) {
+                continue;
+            }
+            Object value = field.getInitialValue();
+            if (value == null) {
+                value = getDefaultValue(field.getType());
+            }
+            writer.append("this.").appendField(FieldReference.get(cls.getName(), field.getName())).ws()
+                    .append("=").ws().append(constantToString(value)).append(";").softNewLine();
+        }
+    }
+
     public void render(ClassNode cls) throws RenderingException {
         try {
             writer.append("function ").appendClass(cls.getName()).append("()").ws().append("{")
                     .indent().softNewLine();
+            if (cls.getParentName() != null) {
+                renderInheritedFields(cls.getParentName());
+            }
             for (FieldNode field : cls.getFields()) {
                 if (field.getModifiers().contains(NodeModifier.STATIC)) {
                     continue;
@@ -150,7 +287,7 @@ public class Renderer implements ExprVisitor, StatementVisitor {
                 if (value == null) {
                     value = getDefaultValue(field.getType());
                 }
-                writer.append("this.").appendField(new FieldReference(cls.getName(), field.getName())).ws()
+                writer.append("this.").appendField(FieldReference.get(cls.getName(), field.getName())).ws()
                         .append("=").ws().append(constantToString(value)).append(";").softNewLine();
             }
             writer.outdent().append("}").newLine();
@@ -164,14 +301,18 @@ public class Renderer implements ExprVisitor, StatementVisitor {
                     value = getDefaultValue(field.getType());
                 }
                 writer.appendClass(cls.getName()).append('.')
-                        .appendField(new FieldReference(cls.getName(), field.getName())).ws().append("=").ws()
+                        .appendField(FieldReference.get(cls.getName(), field.getName())).ws().append("=").ws()
                         .append(constantToString(value)).append(";").softNewLine();
             }
 
             if (!cls.getModifiers().contains(NodeModifier.INTERFACE)) {
-                writer.appendClass(cls.getName()).append(".prototype").ws().append("=").ws().append("new ")
-                        .append(cls.getParentName() != null ? naming.getNameFor(cls.getParentName()) :
-                        "Object").append("();").softNewLine();
+                writer.appendClass(cls.getName()).append(".prototype").ws().append("=").ws();
+                if (cls.getParentName() != null) {
+                    writer.append("Object.create(").appendClass(cls.getParentName()).append(".prototype);")
+                            .softNewLine();
+                } else {
+                    writer.append("new Object();").softNewLine();
+                }
                 writer.appendClass(cls.getName()).append(".prototype.constructor").ws().append("=").ws()
                         .appendClass(cls.getName()).append(';').softNewLine();
             }
@@ -194,6 +335,7 @@ public class Renderer implements ExprVisitor, StatementVisitor {
             writer.append("]");
             writer.ws().append("};").softNewLine();
             if (!cls.getModifiers().contains(NodeModifier.INTERFACE)) {
+                declare();
                 writer.appendClass(cls.getName()).append("_$clinit").ws().append("=").ws().append("function()").ws()
                         .append("{").softNewLine().indent();
                 writer.appendClass(cls.getName()).append("_$clinit").ws().append("=").ws()
@@ -204,9 +346,9 @@ public class Renderer implements ExprVisitor, StatementVisitor {
                     stubNames.add(naming.getFullNameFor(method.getReference()));
                 }
                 MethodHolder methodHolder = classSource.getClassHolder(cls.getName()).getMethod(
-                        new MethodDescriptor("<clinit>", ValueType.VOID));
+                        MethodDescriptor.get("<clinit>", ValueType.VOID));
                 if (methodHolder != null) {
-                    writer.appendMethodBody(new MethodReference(cls.getName(), methodHolder.getDescriptor()))
+                    writer.appendMethodBody(MethodReference.get(cls.getName(), methodHolder.getDescriptor()))
                             .append("();").softNewLine();
                 }
                 writer.outdent().append("}").newLine();
@@ -216,7 +358,14 @@ public class Renderer implements ExprVisitor, StatementVisitor {
                         renderDeclaration(method);
                     }
                 }
-                if (stubNames.size() > 0) {
+                if (closureScoped) {
+                    for (String stubName : stubNames) {
+                        writer.append("var ").append(stubName).ws().append("=").ws().append("function()").ws()
+                                .append("{").ws().appendClass(cls.getName()).append("_$clinit();").ws()
+                                .append("return ").append(stubName).append(".apply(this,").ws()
+                                .append("arguments);").ws().append("};").newLine();
+                    }
+                } else if (stubNames.size() > 0) {
                     writer.append("$rt_methodStubs(").appendClass(cls.getName()).append("_$clinit")
                             .append(",").ws().append("[");
                     for (int i = 0; i < stubNames.size(); ++i) {
@@ -356,10 +505,22 @@ public class Renderer implements ExprVisitor, StatementVisitor {
         public void visit(RegularMethodNode method) {
             try {
                 MethodReference ref = method.getReference();
+                variableTypes = typedEmission ? method.getVariableTypes() : null;
+                resultType = numericType(ref.getDescriptor().getResultType());
                 int variableCount = 0;
                 for (int var : method.getVariables()) {
                     variableCount = Math.max(variableCount, var + 1);
                 }
+                if (variableTypes != null) {
+                    for (int i = 1; i <= ref.parameterCount(); ++i) {
+                        ValueType type = variableTypes.get(i);
+                        if (type != null) {
+                            writer.append(variableName(i)).ws().append("=").ws();
+                            renderCoerced(Expr.var(i), type);
+                            writer.append(";").softNewLine();
+                        }
+                    }
+                }
                 boolean hasVars = variableCount > ref.parameterCount() + 1;
                 if (hasVars) {
                     writer.append("var ");
@@ -370,12 +531,18 @@ public class Renderer implements ExprVisitor, StatementVisitor {
                         }
                         first = false;
                         writer.append(variableName(i));
+                        if (variableTypes != null) {
+                            writer.ws().append("=").ws().append(initialValue(variableTypes.get(i)));
+                        }
                     }
                     writer.append(";").softNewLine();
                 }
                 method.getBody().acceptVisitor(Renderer.this);
             } catch (IOException e) {
                 throw new RenderingException("IO error occured", e);
+            } finally {
+                variableTypes = null;
+                resultType = null;
             }
         }
 
@@ -383,14 +550,34 @@ public class Renderer implements ExprVisitor, StatementVisitor {
         public String getParameterName(int index) {
             return variableName(index);
         }
+
+        @Override
+        public void requireRuntime(String name) {
+            Renderer.this.requireRuntime(name);
+        }
     }
 
     @Override
     public void visit(AssignmentStatement statement) throws RenderingException {
         try {
+            if (statement.getLeftValue() instanceof SubscriptExpr) {
+                SubscriptExpr subscript = (SubscriptExpr)statement.getLeftValue();
+                if (subscript.getElementType() == ArrayElementType.LONG) {
+                    writer.append("$rt_setLongElement(");
+                    subscript.getArray().acceptVisitor(this);
+                    writer.append(",").ws();
+                    subscript.getIndex().acceptVisitor(this);
+                    writer.append(",").ws();
+                    statement.getRightValue().acceptVisitor(this);
+                    writer.append(");").softNewLine();
+                    return;
+                }
+            }
             if (statement.getLeftValue() != null) {
                 statement.getLeftValue().acceptVisitor(this);
                 writer.ws().append("=").ws();
+            } else {
+                discardedExpr = statement.getRightValue();
             }
             statement.getRightValue().acceptVisitor(this);
             writer.append(";").softNewLine();
@@ -541,7 +728,11 @@ public class Renderer implements ExprVisitor, StatementVisitor {
             writer.append("return");
             if (statement.getResult() != null) {
                 writer.append(' ');
-                statement.getResult().acceptVisitor(this);
+                if (variableTypes != null && resultType != null) {
+                    renderCoerced(statement.getResult(), resultType);
+                } else {
+                    statement.getResult().acceptVisitor(this);
+                }
             }
             writer.append(";").softNewLine();
         } catch (IOException e) {
@@ -630,6 +821,125 @@ public class Renderer implements ExprVisitor, StatementVisitor {
         }
     }
 
+    private static ValueType numericType(ValueType type) {
+        if (!(type instanceof ValueType.Primitive)) {
+            return null;
+        }
+        switch (((ValueType.Primitive)type).getKind()) {
+            case BYTE:
+            case SHORT:
+            case CHARACTER:
+            case INTEGER:
+                return ValueType.INTEGER;
+            case FLOAT:
+                return ValueType.FLOAT;
+            case DOUBLE:
+                return ValueType.DOUBLE;
+            default:
+                return null;
+        }
+    }
+
+    private static String initialValue(ValueType type) {
+        if (type == ValueType.INTEGER) {
+            return "0";
+        } else if (type == ValueType.DOUBLE) {
+            return "0.0";
+        } else if (type == ValueType.FLOAT) {
+            return "$rt_fround(0)";
+        } else {
+            return "null";
+        }
+    }
+
+    /**
+     * <p>Renders an expression along with a coercion to the given numeric type, unless the expression
+     * produces a value of this type by itself.</p>
+     */
+    private void renderCoerced(Expr expr, ValueType type) throws IOException {
+        Expr coercedBackup = coercedExpr;
+        coercedExpr = expr;
+        if (type == ValueType.INTEGER && !isInteger(expr)) {
+            writer.append('(');
+            expr.acceptVisitor(this);
+            writer.ws().append('|').ws().append("0)");
+        } else if (type == ValueType.DOUBLE && !(expr instanceof ConstantExpr)) {
+            writer.append("(+");
+            expr.acceptVisitor(this);
+            writer.append(')');
+        } else if (type == ValueType.FLOAT && !(expr instanceof UnaryExpr &&
+                ((UnaryExpr)expr).getOperation() == UnaryOperation.NUM_TO_FLOAT)) {
+            writer.append("$rt_fround(");
+            expr.acceptVisitor(this);
+            writer.append(')');
+        } else {
+            expr.acceptVisitor(this);
+        }
+        coercedExpr = coercedBackup;
+    }
+
+    private static boolean isInteger(Expr expr) {
+        if (expr instanceof ConstantExpr) {
+            return ((ConstantExpr)expr).getValue() instanceof Integer;
+        } else if (expr instanceof UnaryExpr) {
+            switch (((UnaryExpr)expr).getOperation()) {
+                case BYTE_TO_INT:
+                case SHORT_TO_INT:
+                    return true;
+                default:
+                    return false;
+            }
+        } else if (expr instanceof BinaryExpr) {
+            switch (((BinaryExpr)expr).getOperation()) {
+                case BITWISE_AND:
+                case BITWISE_OR:
+                case BITWISE_XOR:
+                case LEFT_SHIFT:
+                case RIGHT_SHIFT:
+                    return true;
+                default:
+                    return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * <p>Tells whether an expression is cheap and has no side effects, so that it can be rendered
+     * more than once.</p>
+     */
+    private static boolean isTrivial(Expr expr) {
+        if (expr instanceof VariableExpr || expr instanceof ConstantExpr) {
+            return true;
+        } else if (expr instanceof SubscriptExpr) {
+            SubscriptExpr subscript = (SubscriptExpr)expr;
+            return subscript.getElementType() != ArrayElementType.LONG && isTrivial(subscript.getArray()) &&
+                    isTrivial(subscript.getIndex());
+        } else if (expr instanceof UnwrapArrayExpr) {
+            return isTrivial(((UnwrapArrayExpr)expr).getArray());
+        } else if (expr instanceof QualificationExpr) {
+            Expr qualified = ((QualificationExpr)expr).getQualified();
+            return qualified == null || isTrivial(qualified);
+        }
+        return false;
+    }
+
+    private void visitCompare(BinaryExpr expr) {
+        try {
+            writer.append('(');
+            expr.getFirstOperand().acceptVisitor(this);
+            writer.ws().append(">").ws();
+            expr.getSecondOperand().acceptVisitor(this);
+            writer.ws().append("?").ws().append("1").ws().append(":").ws();
+            expr.getFirstOperand().acceptVisitor(this);
+            writer.ws().append("<").ws();
+            expr.getSecondOperand().acceptVisitor(this);
+            writer.ws().append("?").ws().append("-1").ws().append(":").ws().append("0)");
+        } catch (IOException e) {
+            throw new RenderingException("IO error occured", e);
+        }
+    }
+
     @Override
     public void visit(BinaryExpr expr) {
         switch (expr.getOperation()) {
@@ -688,7 +998,11 @@ public class Renderer implements ExprVisitor, StatementVisitor {
                 visitBinary(expr, "!==");
                 break;
             case COMPARE:
-                visitBinaryFunction(expr, "$rt_compare");
+                if (isTrivial(expr.getFirstOperand()) && isTrivial(expr.getSecondOperand())) {
+                    visitCompare(expr);
+                } else {
+                    visitBinaryFunction(expr, "$rt_compare");
+                }
                 break;
             case COMPARE_LONG:
                 visitBinaryFunction(expr, "Long_compare");
@@ -766,11 +1080,21 @@ public class Renderer implements ExprVisitor, StatementVisitor {
                     expr.getOperand().acceptVisitor(this);
                     writer.append(')');
                     break;
+                case NUM_TO_FLOAT:
+                    writer.append("$rt_fround(");
+                    expr.getOperand().acceptVisitor(this);
+                    writer.append(')');
+                    break;
                 case LONG_TO_NUM:
                     writer.append("Long_toNumber(");
                     expr.getOperand().acceptVisitor(this);
                     writer.append(')');
                     break;
+                case LONG_TO_INT:
+                    writer.append("(");
+                    expr.getOperand().acceptVisitor(this);
+                    writer.append(").lo");
+                    break;
                 case NEGATE_LONG:
                     writer.append("Long_neg(");
                     expr.getOperand().acceptVisitor(this);
@@ -782,14 +1106,14 @@ public class Renderer implements ExprVisitor, StatementVisitor {
                     writer.append(')');
                     break;
                 case BYTE_TO_INT:
-                    writer.append("$rt_byteToInt(");
+                    writer.append("(");
                     expr.getOperand().acceptVisitor(this);
-                    writer.append(')');
+                    writer.ws().append("<<").ws().append("24").ws().append(">>").ws().append("24)");
                     break;
                 case SHORT_TO_INT:
-                    writer.append("$rt_shortToInt(");
+                    writer.append("(");
                     expr.getOperand().acceptVisitor(this);
-                    writer.append(')');
+                    writer.ws().append("<<").ws().append("16").ws().append(">>").ws().append("16)");
                     break;
             }
         } catch (IOException e) {
@@ -827,7 +1151,7 @@ public class Renderer implements ExprVisitor, StatementVisitor {
         }
         if (cst instanceof ValueType) {
             ValueType type = (ValueType)cst;
-            return "$rt_cls(" + typeToClsString(naming, type) + ")";
+            return cached("$rt_cls(" + typeToClsString(naming, type) + ")");
         } else if (cst instanceof String) {
             return "$rt_str(\"" + escapeString((String)cst) + "\")";
         } else if (cst instanceof Long) {
@@ -839,6 +1163,8 @@ public class Renderer implements ExprVisitor, StatementVisitor {
             } else {
                 return "new Long(" + (value & 0xFFFFFFFFL) + ", " + (value >>> 32) + ")";
             }
+        } else if (cst instanceof Float) {
+            return Double.toString((Float)cst);
         } else {
             return cst.toString();
         }
@@ -944,6 +1270,14 @@ public class Renderer implements ExprVisitor, StatementVisitor {
     @Override
     public void visit(SubscriptExpr expr) {
         try {
+            if (expr.getElementType() == ArrayElementType.LONG) {
+                writer.append("$rt_getLongElement(");
+                expr.getArray().acceptVisitor(this);
+                writer.append(",").ws();
+                expr.getIndex().acceptVisitor(this);
+                writer.append(")");
+                return;
+            }
             expr.getArray().acceptVisitor(this);
             writer.append('[');
             expr.getIndex().acceptVisitor(this);
@@ -966,6 +1300,13 @@ public class Renderer implements ExprVisitor, StatementVisitor {
     @Override
     public void visit(InvocationExpr expr) {
         try {
+            if (variableTypes != null && expr != coercedExpr && expr != discardedExpr) {
+                ValueType type = numericType(expr.getMethod().getDescriptor().getResultType());
+                if (type != null) {
+                    renderCoerced(expr, type);
+                    return;
+                }
+            }
             Injector injector = getInjector(expr.getMethod());
             if (injector != null) {
                 injector.generate(new InjectorContextImpl(expr.getArguments()), expr.getMethod());
@@ -1044,30 +1385,19 @@ public class Renderer implements ExprVisitor, StatementVisitor {
     public void visit(NewArrayExpr expr) {
         try {
             ValueType type = expr.getType();
-            while (type instanceof ValueType.Array) {
-                type = ((ValueType.Array)type).getItemType();
-            }
             if (type instanceof ValueType.Primitive) {
                 switch (((ValueType.Primitive)type).getKind()) {
                     case BOOLEAN:
-                        writer.append("$rt_createBooleanArray(");
-                        expr.getLength().acceptVisitor(this);
-                        writer.append(")");
+                        renderNumericArray(expr, "Int8Array", "$rt_booleancls()");
                         break;
                     case BYTE:
-                        writer.append("$rt_createByteArray(");
-                        expr.getLength().acceptVisitor(this);
-                        writer.append(")");
+                        renderNumericArray(expr, "Int8Array", "$rt_bytecls()");
                         break;
                     case SHORT:
-                        writer.append("$rt_createShortArray(");
-                        expr.getLength().acceptVisitor(this);
-                        writer.append(")");
+                        renderNumericArray(expr, "Int16Array", "$rt_shortcls()");
                         break;
                     case INTEGER:
-                        writer.append("$rt_createIntArray(");
-                        expr.getLength().acceptVisitor(this);
-                        writer.append(")");
+                        renderNumericArray(expr, "Int32Array", "$rt_intcls()");
                         break;
                     case LONG:
                         writer.append("$rt_createLongArray(");
@@ -1075,19 +1405,13 @@ public class Renderer implements ExprVisitor, StatementVisitor {
                         writer.append(")");
                         break;
                     case FLOAT:
-                        writer.append("$rt_createFloatArray(");
-                        expr.getLength().acceptVisitor(this);
-                        writer.append(")");
+                        renderNumericArray(expr, "Float32Array", "$rt_floatcls()");
                         break;
                     case DOUBLE:
-                        writer.append("$rt_createDoubleArray(");
-                        expr.getLength().acceptVisitor(this);
-                        writer.append(")");
+                        renderNumericArray(expr, "Float64Array", "$rt_doublecls()");
                         break;
                     case CHARACTER:
-                        writer.append("$rt_createCharArray(");
-                        expr.getLength().acceptVisitor(this);
-                        writer.append(")");
+                        renderNumericArray(expr, "Uint16Array", "$rt_charcls()");
                         break;
                 }
             } else {
@@ -1100,6 +1424,13 @@ public class Renderer implements ExprVisitor, StatementVisitor {
         }
     }
 
+    private void renderNumericArray(NewArrayExpr expr, String typedArray, String itemCls) throws IOException {
+        writer.append("new ").append(cached("$rt_arraycls(" + itemCls + ")")).append("(new ").append(typedArray)
+                .append("(");
+        expr.getLength().acceptVisitor(this);
+        writer.append("))");
+    }
+
     @Override
     public void visit(NewMultiArrayExpr expr) {
         try {
@@ -1152,9 +1483,13 @@ public class Renderer implements ExprVisitor, StatementVisitor {
     private Injector getInjector(MethodReference ref) {
         InjectorHolder holder = injectorMap.get(ref);
         if (holder == null) {
-            MethodHolder method = classSource.getClassHolder(ref.getClassName()).getMethod(ref.getDescriptor());
-            AnnotationHolder injectedByAnnot = method.getAnnotations().get(InjectedBy.class.getName());
-            if (injectedByAnnot != null) {
+            MethodHolder method = findMethod(ref);
+            AnnotationHolder injectedByAnnot = method != null ?
+                    method.getAnnotations().get(InjectedBy.class.getName()) : null;
+            Injector intrinsic = intrinsics.get(method != null ? method.getReference() : ref);
+            if (intrinsic != null) {
+                holder = new InjectorHolder(intrinsic);
+            } else if (injectedByAnnot != null) {
                 ValueType type = injectedByAnnot.getValues().get("value").getJavaClass();
                 holder = new InjectorHolder(instantiateInjector(((ValueType.Object)type).getClassName()));
             } else {
@@ -1165,6 +1500,22 @@ public class Renderer implements ExprVisitor, StatementVisitor {
         return holder.injector;
     }
 
+    private MethodHolder findMethod(MethodReference ref) {
+        String className = ref.getClassName();
+        while (className != null) {
+            ClassHolder cls = classSource.getClassHolder(className);
+            if (cls == null) {
+                return null;
+            }
+            MethodHolder method = cls.getMethod(ref.getDescriptor());
+            if (method != null) {
+                return method;
+            }
+            className = cls.getParent();
+        }
+        return null;
+    }
+
     private Injector instantiateInjector(String type) {
         try {
             Class<? extends Injector> cls = Class.forName(type, true, classLoader).asSubclass(Injector.class);
@@ -1220,5 +1571,10 @@ public class Renderer implements ExprVisitor, StatementVisitor {
         public int argumentCount() {
             return arguments.size();
         }
+
+        @Override
+        public void requireRuntime(String name) {
+            Renderer.this.requireRuntime(name);
+        }
     }
 }
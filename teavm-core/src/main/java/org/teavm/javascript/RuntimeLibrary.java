@@ -0,0 +1,364 @@
+/*
+ *  Copyright 2014 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.javascript;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.*;
+
+/**
+ * <p>Contents of <code>runtime.js</code> split into units, so that only the functions a program
+ * refers to are put into its output. Each top-level statement of <code>runtime.js</code>, along with
+ * the comments preceding it, forms a unit. A unit defines variables declared at its top level,
+ * including the ones declared directly in branches of a top-level <code>if</code> statement, and
+ * depends on units defining variables it refers to. A unit that declares no variable could never be
+ * written, so it is considered an error.</p>
+ *
+ * @author Alexey Andreev <konsoletyper@gmail.com>
+ */
+public class RuntimeLibrary {
+    private static final String RESOURCE = "org/teavm/javascript/runtime.js";
+    private static volatile RuntimeLibrary instance;
+    private String header;
+    private List<Unit> units = new ArrayList<>();
+    private Map<String, Unit> unitsByName = new HashMap<>();
+
+    private static class Unit {
+        int index;
+        String text;
+        List<String> names = new ArrayList<>();
+        Set<Unit> dependencies = new HashSet<>();
+    }
+
+    RuntimeLibrary(String text) {
+        parse(text);
+    }
+
+    public static RuntimeLibrary getInstance() {
+        RuntimeLibrary result = instance;
+        if (result == null) {
+            synchronized (RuntimeLibrary.class) {
+                result = instance;
+                if (result == null) {
+                    result = new RuntimeLibrary(load());
+                    instance = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    private static String load() {
+        ClassLoader resourceLoader = RuntimeLibrary.class.getClassLoader();
+        try (InputStream input = resourceLoader.getResourceAsStream(RESOURCE)) {
+            if (input == null) {
+                throw new RenderingException("Resource not found: " + RESOURCE);
+            }
+            Reader reader = new InputStreamReader(input, "UTF-8");
+            StringBuilder sb = new StringBuilder();
+            char[] buffer = new char[4096];
+            while (true) {
+                int charsRead = reader.read(buffer);
+                if (charsRead < 0) {
+                    break;
+                }
+                sb.append(buffer, 0, charsRead);
+            }
+            return sb.toString();
+        } catch (IOException e) {
+            throw new RenderingException("Error reading " + RESOURCE, e);
+        }
+    }
+
+    public Set<String> getNames() {
+        return Collections.unmodifiableSet(unitsByName.keySet());
+    }
+
+    /**
+     * <p>Adds to <code>names</code> each runtime variable referred to from the given code.
+     * Contents of string literals, comments and property names are ignored.</p>
+     */
+    public void collectReferences(CharSequence code, final Set<String> names) {
+        new IdentifierScanner() {
+            @Override protected void identifier(String name, int depth) {
+                if (unitsByName.containsKey(name)) {
+                    names.add(name);
+                }
+            }
+        }.scan(code);
+    }
+
+    /**
+     * <p>Writes the units defining the given variables, as well as units they depend on, in the order
+     * they appear in <code>runtime.js</code>.</p>
+     */
+    public void write(Appendable writer, Collection<String> names) throws IOException {
+        boolean[] reached = new boolean[units.size()];
+        Deque<Unit> stack = new ArrayDeque<>();
+        for (String name : names) {
+            Unit unit = unitsByName.get(name);
+            if (unit == null) {
+                throw new IllegalArgumentException("Runtime does not define " + name);
+            }
+            stack.push(unit);
+        }
+        while (!stack.isEmpty()) {
+            Unit unit = stack.pop();
+            if (reached[unit.index]) {
+                continue;
+            }
+            reached[unit.index] = true;
+            for (Unit dependency : unit.dependencies) {
+                stack.push(dependency);
+            }
+        }
+        writer.append(header);
+        for (Unit unit : units) {
+            if (reached[unit.index]) {
+                writer.append(unit.text);
+            }
+        }
+    }
+
+    private void parse(String text) {
+        int pos = 0;
+        if (text.startsWith("/*")) {
+            int end = text.indexOf("*/");
+            pos = text.indexOf('\n', end) + 1;
+            if (end < 0 || pos == 0) {
+                throw new RenderingException("Unterminated comment in " + RESOURCE);
+            }
+        }
+        header = text.substring(0, pos);
+
+        List<StringBuilder> unitTexts = new ArrayList<>();
+        StringBuilder comments = new StringBuilder();
+        StringBuilder current = null;
+        while (pos < text.length()) {
+            int next = text.indexOf('\n', pos) + 1;
+            if (next == 0) {
+                next = text.length();
+            }
+            String line = text.substring(pos, next);
+            pos = next;
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            char c = line.charAt(0);
+            if (line.startsWith("//")) {
+                comments.append(line);
+            } else if (current == null || !Character.isWhitespace(c) && c != '}') {
+                current = new StringBuilder();
+                current.append(comments).append(line);
+                comments.setLength(0);
+                Unit unit = new Unit();
+                unit.index = units.size();
+                units.add(unit);
+                unitTexts.add(current);
+            } else {
+                current.append(line);
+            }
+        }
+        for (int i = 0; i < units.size(); ++i) {
+            Unit unit = units.get(i);
+            unit.text = unitTexts.get(i).toString();
+            if (!unit.text.endsWith("\n")) {
+                unit.text += "\n";
+            }
+            declareNames(unit);
+        }
+        for (final Unit unit : units) {
+            new IdentifierScanner() {
+                @Override protected void identifier(String name, int depth) {
+                    Unit dependency = unitsByName.get(name);
+                    if (dependency != null && dependency != unit) {
+                        unit.dependencies.add(dependency);
+                    }
+                }
+            }.scan(unit.text);
+        }
+    }
+
+    private void declareNames(final Unit unit) {
+        new IdentifierScanner() {
+            boolean first = true;
+            boolean conditional;
+            boolean declaration;
+            boolean expectingName;
+            int declarationDepth;
+            int nesting;
+            @Override protected void identifier(String name, int depth) {
+                if (first) {
+                    conditional = name.equals("if");
+                    first = false;
+                }
+                if (expectingName) {
+                    expectingName = false;
+                    declare(unit, name);
+                } else if (name.equals("var") && (depth == 0 || conditional && depth == 1)) {
+                    declaration = true;
+                    expectingName = true;
+                    declarationDepth = depth;
+                    nesting = 0;
+                }
+            }
+            @Override protected void symbol(char c, int depth) {
+                if (!declaration || depth > declarationDepth) {
+                    return;
+                }
+                if (depth < declarationDepth) {
+                    declaration = false;
+                    return;
+                }
+                switch (c) {
+                    case '(':
+                    case '[':
+                        ++nesting;
+                        break;
+                    case ')':
+                    case ']':
+                        --nesting;
+                        break;
+                    case ',':
+                        expectingName = nesting == 0;
+                        break;
+                    case ';':
+                        declaration = nesting != 0;
+                        break;
+                }
+            }
+        }.scan(unit.text);
+        if (unit.names.isEmpty()) {
+            throw new RenderingException("Top-level statement of " + RESOURCE + " declares no variable: " +
+                    unit.text.trim());
+        }
+    }
+
+    private void declare(Unit unit, String name) {
+        Unit previous = unitsByName.put(name, unit);
+        if (previous == null) {
+            unit.names.add(name);
+        } else if (previous != unit) {
+            throw new RenderingException("Variable " + name + " is defined twice in " + RESOURCE);
+        }
+    }
+
+    /**
+     * <p>Reports identifiers and punctuation of JavaScript code, skipping string and regular expression
+     * literals, comments and property names. A slash starts a regular expression unless it follows
+     * an operand, that is a name, a number or a closing parenthesis or bracket.</p>
+     */
+    private static abstract class IdentifierScanner {
+        private static final Set<String> keywordsBeforeOperand = new HashSet<>(Arrays.asList("return",
+                "typeof", "instanceof", "in", "new", "delete", "void", "throw", "case", "do", "else"));
+
+        protected abstract void identifier(String name, int depth);
+
+        protected void symbol(char c, int depth) {
+        }
+
+        public void scan(CharSequence text) {
+            int depth = 0;
+            int length = text.length();
+            boolean operandExpected = true;
+            int i = 0;
+            while (i < length) {
+                char c = text.charAt(i);
+                if (c == '"' || c == '\'') {
+                    ++i;
+                    while (i < length && text.charAt(i) != c) {
+                        if (text.charAt(i) == '\\') {
+                            ++i;
+                        }
+                        ++i;
+                    }
+                    ++i;
+                    operandExpected = false;
+                } else if (c == '/' && i + 1 < length && text.charAt(i + 1) == '/') {
+                    while (i < length && text.charAt(i) != '\n') {
+                        ++i;
+                    }
+                } else if (c == '/' && i + 1 < length && text.charAt(i + 1) == '*') {
+                    i += 2;
+                    while (i + 1 < length && (text.charAt(i) != '*' || text.charAt(i + 1) != '/')) {
+                        ++i;
+                    }
+                    i += 2;
+                } else if (c == '/' && operandExpected) {
+                    i = skipRegularExpression(text, i + 1);
+                    operandExpected = false;
+                } else if (Character.isJavaIdentifierStart(c)) {
+                    int start = i++;
+                    while (i < length && Character.isJavaIdentifierPart(text.charAt(i))) {
+                        ++i;
+                    }
+                    String name = text.subSequence(start, i).toString();
+                    if (!isPropertyName(text, start)) {
+                        identifier(name, depth);
+                    }
+                    operandExpected = keywordsBeforeOperand.contains(name);
+                } else if (Character.isDigit(c)) {
+                    while (i < length && Character.isJavaIdentifierPart(text.charAt(i))) {
+                        ++i;
+                    }
+                    operandExpected = false;
+                } else if (Character.isWhitespace(c)) {
+                    ++i;
+                } else {
+                    if (c == '{') {
+                        ++depth;
+                    } else if (c == '}') {
+                        --depth;
+                    }
+                    symbol(c, depth);
+                    operandExpected = c != ')' && c != ']';
+                    ++i;
+                }
+            }
+        }
+
+        private static int skipRegularExpression(CharSequence text, int i) {
+            int length = text.length();
+            boolean characterClass = false;
+            while (i < length) {
+                char c = text.charAt(i++);
+                if (c == '\\') {
+                    ++i;
+                } else if (c == '[') {
+                    characterClass = true;
+                } else if (c == ']') {
+                    characterClass = false;
+                } else if (c == '/' && !characterClass || c == '\n') {
+                    break;
+                }
+            }
+            while (i < length && Character.isJavaIdentifierPart(text.charAt(i))) {
+                ++i;
+            }
+            return i;
+        }
+
+        private static boolean isPropertyName(CharSequence text, int start) {
+            int i = start - 1;
+            while (i >= 0 && Character.isWhitespace(text.charAt(i))) {
+                --i;
+            }
+            return i >= 0 && text.charAt(i) == '.';
+        }
+    }
+}
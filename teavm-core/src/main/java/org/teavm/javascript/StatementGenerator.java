@@ -90,6 +90,9 @@ class StatementGenerator implements InstructionVisitor {
                     case LONG:
                         binary(first, second, result, BinaryOperation.ADD_LONG);
                         break;
+                    case FLOAT:
+                        floatBinary(first, second, result, BinaryOperation.ADD);
+                        break;
                     default:
                         binary(first, second, result, BinaryOperation.ADD);
                         break;
@@ -103,6 +106,9 @@ class StatementGenerator implements InstructionVisitor {
                     case LONG:
                         binary(first, second, result, BinaryOperation.SUBTRACT_LONG);
                         break;
+                    case FLOAT:
+                        floatBinary(first, second, result, BinaryOperation.SUBTRACT);
+                        break;
                     default:
                         binary(first, second, result, BinaryOperation.SUBTRACT);
                         break;
@@ -116,6 +122,9 @@ class StatementGenerator implements InstructionVisitor {
                     case LONG:
                         binary(first, second, result, BinaryOperation.MULTIPLY_LONG);
                         break;
+                    case FLOAT:
+                        floatBinary(first, second, result, BinaryOperation.MULTIPLY);
+                        break;
                     default:
                         binary(first, second, result, BinaryOperation.MULTIPLY);
                         break;
@@ -129,6 +138,9 @@ class StatementGenerator implements InstructionVisitor {
                     case LONG:
                         binary(first, second, result, BinaryOperation.DIVIDE_LONG);
                         break;
+                    case FLOAT:
+                        floatBinary(first, second, result, BinaryOperation.DIVIDE);
+                        break;
                     default:
                         binary(first, second, result, BinaryOperation.DIVIDE);
                         break;
@@ -257,7 +269,7 @@ class StatementGenerator implements InstructionVisitor {
                         value = castToInteger(value);
                         break;
                     case LONG:
-                        value = castFromLong(value);
+                        value = Expr.unary(UnaryOperation.LONG_TO_INT, value);
                         break;
                     default:
                         break;
@@ -277,6 +289,13 @@ class StatementGenerator implements InstructionVisitor {
                 }
                 break;
             case FLOAT:
+                if (insn.getSourceType() == NumericOperandType.LONG) {
+                    value = castFromLong(value);
+                }
+                if (insn.getSourceType() != NumericOperandType.FLOAT) {
+                    value = castToFloat(value);
+                }
+                break;
             case DOUBLE:
                 if (insn.getSourceType() == NumericOperandType.LONG) {
                     value = castFromLong(value);
@@ -295,9 +314,11 @@ class StatementGenerator implements InstructionVisitor {
             case FROM_INTEGER:
                 switch (insn.getTargetType()) {
                     case BYTE:
-                        value = Expr.binary(BinaryOperation.BITWISE_AND, value, Expr.constant(0xFF));
+                        value = Expr.unary(UnaryOperation.BYTE_TO_INT, value);
                         break;
                     case SHORT:
+                        value = Expr.unary(UnaryOperation.SHORT_TO_INT, value);
+                        break;
                     case CHARACTER:
                         value = Expr.binary(BinaryOperation.BITWISE_AND, value, Expr.constant(0xFFFF));
                         break;
@@ -396,7 +417,7 @@ class StatementGenerator implements InstructionVisitor {
         Map<Integer, List<Integer>> switchMap = new HashMap<>();
         for (int i = 0; i < insn.getEntries().size(); ++i) {
             SwitchTableEntry entry = insn.getEntries().get(i);
-            List<Integer> conditions = switchMap.get(entry.getTarget());
+            List<Integer> conditions = switchMap.get(entry.getTarget().getIndex());
             if (conditions == null) {
                 conditions = new ArrayList<>();
                 switchMap.put(entry.getTarget().getIndex(), conditions);
@@ -497,22 +518,22 @@ class StatementGenerator implements InstructionVisitor {
 
     @Override
     public void visit(CloneArrayInstruction insn) {
-        MethodDescriptor cloneMethodDesc = new MethodDescriptor("clone", ValueType.object("java.lang.Object"));
-        MethodReference cloneMethod = new MethodReference("java.lang.Object", cloneMethodDesc);
+        MethodDescriptor cloneMethodDesc = MethodDescriptor.get("clone", ValueType.object("java.lang.Object"));
+        MethodReference cloneMethod = MethodReference.get("java.lang.Object", cloneMethodDesc);
         assign(Expr.invoke(cloneMethod, Expr.var(insn.getArray().getIndex()), new Expr[0]),
                 insn.getReceiver().getIndex());
     }
 
     @Override
     public void visit(GetElementInstruction insn) {
-        assign(Expr.subscript(Expr.var(insn.getArray().getIndex()), Expr.var(insn.getIndex().getIndex())),
-                insn.getReceiver().getIndex());
+        assign(Expr.subscript(Expr.var(insn.getArray().getIndex()), Expr.var(insn.getIndex().getIndex()),
+                insn.getElementType()), insn.getReceiver().getIndex());
     }
 
     @Override
     public void visit(PutElementInstruction insn) {
         statements.add(Statement.assign(Expr.subscript(Expr.var(insn.getArray().getIndex()),
-                Expr.var(insn.getIndex().getIndex())), Expr.var(insn.getValue().getIndex())));
+                Expr.var(insn.getIndex().getIndex()), insn.getElementType()), Expr.var(insn.getValue().getIndex())));
     }
 
     @Override
@@ -547,7 +568,7 @@ class StatementGenerator implements InstructionVisitor {
         while (cls != null && cls.getMethod(method.getDescriptor()) == null) {
             cls = cls.getParent() != null ? classSource.getClassHolder(cls.getParent()) : null;
         }
-        return cls != null ? new MethodReference(cls.getName(), method.getDescriptor()) : null;
+        return cls != null ? MethodReference.get(cls.getName(), method.getDescriptor()) : null;
     }
 
     @Override
@@ -564,6 +585,10 @@ class StatementGenerator implements InstructionVisitor {
         return Expr.binary(BinaryOperation.BITWISE_OR, value, Expr.constant(0));
     }
 
+    private Expr castToFloat(Expr value) {
+        return Expr.unary(UnaryOperation.NUM_TO_FLOAT, value);
+    }
+
     private Expr castToLong(Expr value) {
         return Expr.unary(UnaryOperation.NUM_TO_LONG, value);
     }
@@ -584,6 +609,10 @@ class StatementGenerator implements InstructionVisitor {
         assign(castToInteger(Expr.binary(op, Expr.var(first), Expr.var(second))), result);
     }
 
+    private void floatBinary(int first, int second, int result, BinaryOperation op) {
+        assign(castToFloat(Expr.binary(op, Expr.var(first), Expr.var(second))), result);
+    }
+
     private Statement generateJumpStatement(BasicBlock target) {
         if (nextBlock == target) {
             return null;
@@ -599,6 +628,7 @@ class StatementGenerator implements InstructionVisitor {
             return contStmt;
         }
     }
+
     private Statement generateJumpStatement(SwitchStatement stmt, int target) {
         Statement body = generateJumpStatement(program.basicBlockAt(target));
         if (body == null) {
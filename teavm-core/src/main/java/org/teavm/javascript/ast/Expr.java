@@ -19,6 +19,7 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import org.teavm.model.*;
+import org.teavm.model.instructions.ArrayElementType;
 
 /**
  *
@@ -68,10 +69,11 @@ public abstract class Expr implements Cloneable {
         return result;
     }
 
-    public static Expr subscript(Expr array, Expr index) {
+    public static Expr subscript(Expr array, Expr index, ArrayElementType elementType) {
         SubscriptExpr expr = new SubscriptExpr();
         expr.setArray(array);
         expr.setIndex(index);
+        expr.setElementType(elementType);
         return expr;
     }
 
@@ -18,6 +18,7 @@ package org.teavm.javascript.ast;
 import java.util.ArrayList;
 import java.util.List;
 import org.teavm.model.MethodReference;
+import org.teavm.model.ValueType;
 
 /**
  *
@@ -26,6 +27,7 @@ import org.teavm.model.MethodReference;
 public class RegularMethodNode extends MethodNode {
     private Statement body;
     private List<Integer> variables = new ArrayList<>();
+    private List<ValueType> variableTypes;
 
     public RegularMethodNode(MethodReference reference) {
         super(reference);
@@ -43,6 +45,19 @@ public class RegularMethodNode extends MethodNode {
         return variables;
     }
 
+    /**
+     * <p>Returns types of variables of a method that only operates on numbers and primitive arrays, or
+     * <code>null</code> for other methods. Variables holding numbers have types <code>int</code>,
+     * <code>float</code> and <code>double</code>, all the other ones have <code>null</code> type.</p>
+     */
+    public List<ValueType> getVariableTypes() {
+        return variableTypes;
+    }
+
+    public void setVariableTypes(List<ValueType> variableTypes) {
+        this.variableTypes = variableTypes;
+    }
+
     @Override
     public void acceptVisitor(MethodNodeVisitor visitor) {
         visitor.visit(this);
@@ -16,6 +16,7 @@
 package org.teavm.javascript.ast;
 
 import java.util.Map;
+import org.teavm.model.instructions.ArrayElementType;
 
 /**
  *
@@ -24,6 +25,7 @@ import java.util.Map;
 public class SubscriptExpr extends Expr {
     private Expr array;
     private Expr index;
+    private ArrayElementType elementType;
 
     public Expr getArray() {
         return array;
@@ -41,6 +43,14 @@ public class SubscriptExpr extends Expr {
         this.index = index;
     }
 
+    public ArrayElementType getElementType() {
+        return elementType;
+    }
+
+    public void setElementType(ArrayElementType elementType) {
+        this.elementType = elementType;
+    }
+
     @Override
     public void acceptVisitor(ExprVisitor visitor) {
         visitor.visit(this);
@@ -55,6 +65,7 @@ public class SubscriptExpr extends Expr {
         SubscriptExpr copy = new SubscriptExpr();
         copy.setArray(array != null ? array.clone(cache) : null);
         copy.setIndex(index != null ? index.clone(cache) : null);
+        copy.setElementType(elementType);
         return copy;
     }
 }
@@ -26,7 +26,9 @@ public enum UnaryOperation {
     NEGATE_LONG,
     LENGTH,
     LONG_TO_NUM,
+    LONG_TO_INT,
     NUM_TO_LONG,
+    NUM_TO_FLOAT,
     INT_TO_LONG,
     BYTE_TO_INT,
     SHORT_TO_INT
@@ -21,4 +21,11 @@ package org.teavm.javascript.ni;
  */
 public interface GeneratorContext {
     String getParameterName(int index);
+
+    /**
+     * <p>Declares that the generated code needs a variable defined in <code>runtime.js</code>. Variables
+     * the generated code mentions are found automatically, so this is only needed for the ones
+     * accessed indirectly.</p>
+     */
+    void requireRuntime(String name);
 }
@@ -38,4 +38,11 @@ public interface InjectorContext {
     void writeType(ValueType type) throws IOException;
 
     void writeExpr(Expr expr) throws IOException;
+
+    /**
+     * <p>Declares that the injected code needs a variable defined in <code>runtime.js</code>. Variables
+     * the injected code mentions are found automatically, so this is only needed for the ones
+     * accessed indirectly.</p>
+     */
+    void requireRuntime(String name);
 }
@@ -82,13 +82,16 @@ public class JSNativeGenerator implements Generator, Injector {
                 break;
             case "wrap":
             case "unwrap":
+            case "unwrapInt":
+            case "unwrapFloat":
+            case "unwrapDouble":
                 context.writeExpr(context.getArgument(0));
                 break;
         }
     }
 
     private void generateWrapString(GeneratorContext context, SourceWriter writer) throws IOException {
-        FieldReference charsField = new FieldReference("java.lang.String", "characters");
+        FieldReference charsField = FieldReference.get("java.lang.String", "characters");
         writer.append("var result = \"\";").softNewLine();
         writer.append("var data = ").append(context.getParameterName(1)).append('.')
                 .appendField(charsField).append(".data;").softNewLine();
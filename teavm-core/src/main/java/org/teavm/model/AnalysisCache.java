@@ -0,0 +1,93 @@
+/*
+ *  Copyright 2014 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.model;
+
+import org.teavm.common.DominatorTree;
+import org.teavm.common.Graph;
+import org.teavm.common.GraphUtils;
+import org.teavm.common.LoopGraph;
+import org.teavm.model.util.ProgramUtils;
+
+/**
+ * <p>Lazily computes and keeps control flow analyses of a program. The program drops all of them
+ * when its control flow changes, i.e. when basic blocks are created or deleted, when
+ * the last instruction of a block is replaced, or when a branch instruction changes its targets.</p>
+ *
+ * <p>Returned objects are never modified, so a pass may keep using them after changing
+ * control flow, as if it had built them itself.</p>
+ *
+ * <p>Analyses live as long as their program. Programs that are kept between builds, such as
+ * the ones held by class caches, must not carry them, so {@link org.teavm.parsing.Parser} drops
+ * them once a method is parsed. Everything a build computes later belongs to copies of these
+ * programs and goes away with the build.</p>
+ *
+ * @author Alexey Andreev <konsoletyper@gmail.com>
+ */
+public class AnalysisCache {
+    private Program program;
+    private Graph cfg;
+    private DominatorTree domTree;
+    private Graph domGraph;
+    private int[][] domFrontiers;
+    private LoopGraph loopGraph;
+
+    AnalysisCache(Program program) {
+        this.program = program;
+    }
+
+    public Graph getControlFlowGraph() {
+        if (cfg == null) {
+            cfg = ProgramUtils.buildControlFlowGraph(program);
+        }
+        return cfg;
+    }
+
+    public DominatorTree getDominatorTree() {
+        if (domTree == null) {
+            domTree = GraphUtils.buildDominatorTree(getControlFlowGraph());
+        }
+        return domTree;
+    }
+
+    public Graph getDominatorGraph() {
+        if (domGraph == null) {
+            domGraph = GraphUtils.buildDominatorGraph(getDominatorTree(), getControlFlowGraph().size());
+        }
+        return domGraph;
+    }
+
+    public int[][] getDominanceFrontiers() {
+        if (domFrontiers == null) {
+            domFrontiers = GraphUtils.findDominanceFrontiers(getControlFlowGraph(), getDominatorTree());
+        }
+        return domFrontiers;
+    }
+
+    public LoopGraph getLoopGraph() {
+        if (loopGraph == null) {
+            loopGraph = new LoopGraph(getControlFlowGraph());
+        }
+        return loopGraph;
+    }
+
+    public void invalidate() {
+        cfg = null;
+        domTree = null;
+        domGraph = null;
+        domFrontiers = null;
+        loopGraph = null;
+    }
+}
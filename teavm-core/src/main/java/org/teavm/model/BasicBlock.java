@@ -69,6 +69,9 @@ public class BasicBlock implements BasicBlockReader {
             }
             e.setBasicBlock(BasicBlock.this);
             instructions.add(index, e);
+            if (index == instructions.size() - 1) {
+                controlFlowChanged();
+            }
         }
 
         @Override
@@ -79,13 +82,20 @@ public class BasicBlock implements BasicBlockReader {
             Instruction oldInsn = instructions.get(index);
             oldInsn.setBasicBlock(null);
             element.setBasicBlock(BasicBlock.this);
-            return instructions.set(index, element);
+            instructions.set(index, element);
+            if (index == instructions.size() - 1) {
+                controlFlowChanged();
+            }
+            return oldInsn;
         }
 
         @Override
         public Instruction remove(int index) {
             Instruction insn = instructions.remove(index);
             insn.setBasicBlock(null);
+            if (index == instructions.size()) {
+                controlFlowChanged();
+            }
             return insn;
         }
 
@@ -95,9 +105,16 @@ public class BasicBlock implements BasicBlockReader {
                 insn.setBasicBlock(null);
             }
             instructions.clear();
+            controlFlowChanged();
         }
     };
 
+    private void controlFlowChanged() {
+        if (program != null) {
+            program.getAnalysisCache().invalidate();
+        }
+    }
+
     public List<Instruction> getInstructions() {
         return safeInstructions;
     }
@@ -45,10 +45,11 @@ public class CopyClassHolderSource implements ClassHolderSource {
 
     private ClassHolder copyClass(String className) {
         ClassHolder original = innerSource.getClassHolder(className);
-        if (original == null) {
-            return null;
-        }
-        ClassHolder copy = new ClassHolder(className);
+        return original != null ? copyClass(original) : null;
+    }
+
+    public static ClassHolder copyClass(ClassHolder original) {
+        ClassHolder copy = new ClassHolder(original.getName());
         copy.setLevel(original.getLevel());
         copy.getModifiers().addAll(original.getModifiers());
         copy.setParent(original.getParent());
@@ -63,7 +64,7 @@ public class CopyClassHolderSource implements ClassHolderSource {
         return copy;
     }
 
-    private MethodHolder copyMethod(MethodHolder method) {
+    private static MethodHolder copyMethod(MethodHolder method) {
         MethodHolder copy = new MethodHolder(method.getDescriptor());
         copy.setLevel(method.getLevel());
         copy.getModifiers().addAll(method.getModifiers());
@@ -72,7 +73,7 @@ public class CopyClassHolderSource implements ClassHolderSource {
         return copy;
     }
 
-    private FieldHolder copyField(FieldHolder field) {
+    private static FieldHolder copyField(FieldHolder field) {
         FieldHolder copy = new FieldHolder(field.getName());
         copy.setLevel(field.getLevel());
         copy.getModifiers().addAll(field.getModifiers());
@@ -82,13 +83,13 @@ public class CopyClassHolderSource implements ClassHolderSource {
         return copy;
     }
 
-    private void copyAnnotations(AnnotationContainer src, AnnotationContainer dst) {
+    private static void copyAnnotations(AnnotationContainer src, AnnotationContainer dst) {
         for (AnnotationHolder annot : src.all()) {
             dst.add(copyAnnotation(annot));
         }
     }
 
-    private AnnotationHolder copyAnnotation(AnnotationHolder annot) {
+    private static AnnotationHolder copyAnnotation(AnnotationHolder annot) {
         AnnotationHolder copy = new AnnotationHolder(annot.getType());
         for (Map.Entry<String, AnnotationValue> entry : annot.getValues().entrySet()) {
             copy.getValues().put(entry.getKey(), copyAnnotationValue(entry.getValue()));
@@ -96,7 +97,7 @@ public class CopyClassHolderSource implements ClassHolderSource {
         return copy;
     }
 
-    private AnnotationValue copyAnnotationValue(AnnotationValue value) {
+    private static AnnotationValue copyAnnotationValue(AnnotationValue value) {
         switch (value.getType()) {
             case AnnotationValue.LIST: {
                 List<AnnotationValue> listCopy = new ArrayList<>();
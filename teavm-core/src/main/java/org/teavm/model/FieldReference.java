@@ -16,16 +16,26 @@
 package org.teavm.model;
 
 /**
+ * <p>Refers to a field of a class. Use {@link #get(String, String)} to obtain canonical instances,
+ * that are compared by identity.</p>
  *
  * @author konsoletyper
  */
 public class FieldReference {
+    private static InternPool<FieldReference, FieldReference> references = new InternPool<>();
     private String className;
     private String fieldName;
+    private int hash;
 
     public FieldReference(String className, String fieldName) {
         this.className = className;
         this.fieldName = fieldName;
+        this.hash = className.hashCode() ^ fieldName.hashCode();
+    }
+
+    public static FieldReference get(String className, String fieldName) {
+        FieldReference reference = new FieldReference(className, fieldName);
+        return references.intern(reference, reference);
     }
 
     public String getClassName() {
@@ -38,7 +48,7 @@ public class FieldReference {
 
     @Override
     public int hashCode() {
-        return className.hashCode() ^ fieldName.hashCode();
+        return hash;
     }
 
     @Override
@@ -50,6 +60,11 @@ public class FieldReference {
             return false;
         }
         FieldReference other = (FieldReference)obj;
-        return className.equals(other.className) && fieldName.equals(other.fieldName);
+        return hash == other.hash && className.equals(other.className) && fieldName.equals(other.fieldName);
+    }
+
+    @Override
+    public String toString() {
+        return className + "." + fieldName;
     }
 }
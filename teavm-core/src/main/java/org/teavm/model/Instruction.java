@@ -36,5 +36,12 @@ public abstract class Instruction {
         return basicBlock != null ? basicBlock.getProgram() : null;
     }
 
+    protected void controlFlowChanged() {
+        Program program = getProgram();
+        if (program != null) {
+            program.getAnalysisCache().invalidate();
+        }
+    }
+
     public abstract void acceptVisitor(InstructionVisitor visitor);
 }
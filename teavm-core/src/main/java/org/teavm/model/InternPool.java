@@ -0,0 +1,71 @@
+/*
+ *  Copyright 2014 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.model;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * <p>Keeps canonical instances without preventing them from being garbage collected. Both keys and
+ * values are held weakly, so a key must be strongly reachable from its value, otherwise the entry
+ * is dropped as soon as the caller forgets the key.</p>
+ *
+ * <p>Entries are spread over several independently locked maps by the hash code of a key, so that
+ * threads of a parallel build rarely wait for each other.</p>
+ *
+ * @author Alexey Andreev <konsoletyper@gmail.com>
+ */
+class InternPool<K, V> {
+    private static final int STRIPE_COUNT = 32;
+    private Map<K, WeakReference<V>>[] stripes;
+
+    @SuppressWarnings("unchecked")
+    public InternPool() {
+        stripes = new Map[STRIPE_COUNT];
+        for (int i = 0; i < STRIPE_COUNT; ++i) {
+            stripes[i] = new WeakHashMap<>();
+        }
+    }
+
+    public V get(K key) {
+        Map<K, WeakReference<V>> entries = stripeFor(key);
+        synchronized (entries) {
+            WeakReference<V> ref = entries.get(key);
+            return ref != null ? ref.get() : null;
+        }
+    }
+
+    public V intern(K key, V value) {
+        Map<K, WeakReference<V>> entries = stripeFor(key);
+        synchronized (entries) {
+            WeakReference<V> ref = entries.get(key);
+            V existing = ref != null ? ref.get() : null;
+            if (existing != null) {
+                return existing;
+            }
+            entries.put(key, new WeakReference<>(value));
+            return value;
+        }
+    }
+
+    private Map<K, WeakReference<V>> stripeFor(K key) {
+        int hash = key.hashCode();
+        hash ^= (hash >>> 20) ^ (hash >>> 12);
+        hash ^= (hash >>> 7) ^ (hash >>> 4);
+        return stripes[hash & (STRIPE_COUNT - 1)];
+    }
+}
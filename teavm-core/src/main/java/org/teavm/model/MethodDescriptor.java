@@ -18,13 +18,18 @@ package org.teavm.model;
 import java.util.Arrays;
 
 /**
+ * <p>Describes method by its name and signature. Use {@link #get(String, ValueType...)} and
+ * {@link #parse(String)} to obtain canonical instances, that are compared by identity.</p>
  *
  * @author Alexey Andreev
  */
 public class MethodDescriptor {
+    private static InternPool<MethodDescriptor, MethodDescriptor> descriptors = new InternPool<>();
+    private static InternPool<String, MethodDescriptor> parsedDescriptors = new InternPool<>();
     private String name;
     private ValueType[] signature;
     private volatile String reprCache;
+    private int hash;
 
     public MethodDescriptor(String name, ValueType... signature) {
         if (signature.length < 1) {
@@ -82,16 +87,29 @@ public class MethodDescriptor {
     }
 
     public static MethodDescriptor get(MethodHolder method) {
-        return new MethodDescriptor(method.getName(), method.getSignature());
+        return method.getDescriptor();
+    }
+
+    public static MethodDescriptor get(String name, ValueType... signature) {
+        return intern(new MethodDescriptor(name, signature));
+    }
+
+    private static MethodDescriptor intern(MethodDescriptor descriptor) {
+        return descriptors.intern(descriptor, descriptor);
     }
 
     public static MethodDescriptor parse(String text) {
-        int parenIndex = text.indexOf('(');
-        if (parenIndex < 0) {
-            throw new IllegalArgumentException("Wrong method descriptor: " + text);
+        MethodDescriptor descriptor = parsedDescriptors.get(text);
+        if (descriptor == null) {
+            int parenIndex = text.indexOf('(');
+            if (parenIndex < 0) {
+                throw new IllegalArgumentException("Wrong method descriptor: " + text);
+            }
+            descriptor = intern(new MethodDescriptor(text.substring(0, parenIndex),
+                    parseSignature(text.substring(parenIndex))));
+            descriptor = parsedDescriptors.intern(descriptor.toString(), descriptor);
         }
-        return new MethodDescriptor(text.substring(0, parenIndex),
-                parseSignature(text.substring(parenIndex)));
+        return descriptor;
     }
 
     public static ValueType[] parseSignature(String text) {
@@ -112,17 +130,22 @@ public class MethodDescriptor {
 
     @Override
     public int hashCode() {
-        return toString().hashCode();
+        if (hash == 0) {
+            hash = toString().hashCode();
+        }
+        return hash;
     }
 
     @Override
     public boolean equals(Object obj) {
         if (this == obj) {
             return true;
-         }
-         if (!(obj instanceof MethodDescriptor)) {
-             return false;
-         }
-         return toString().equals(obj.toString());
+        }
+        if (!(obj instanceof MethodDescriptor)) {
+            return false;
+        }
+        MethodDescriptor other = (MethodDescriptor)obj;
+        return hashCode() == other.hashCode() && name.equals(other.name) &&
+                Arrays.equals(signature, other.signature);
     }
 }
@@ -30,7 +30,7 @@ public class MethodHolder extends MemberHolder implements MethodReader {
     }
 
     public MethodHolder(String name, ValueType... signature) {
-        this(new MethodDescriptor(name, signature));
+        this(MethodDescriptor.get(name, signature));
     }
 
     @Override
@@ -78,7 +78,7 @@ public class MethodHolder extends MemberHolder implements MethodReader {
 
     @Override
     public MethodReference getReference() {
-        return owner != null ? new MethodReference(owner.getName(), descriptor) : null;
+        return owner != null ? MethodReference.get(owner.getName(), descriptor) : null;
     }
 
     @Override
@@ -16,16 +16,26 @@
 package org.teavm.model;
 
 /**
+ * <p>Refers to a method of a class. Use {@link #get(String, MethodDescriptor)} to obtain
+ * canonical instances, that are compared by identity.</p>
  *
  * @author konsoletyper
  */
 public class MethodReference {
+    private static InternPool<MethodReference, MethodReference> references = new InternPool<>();
     private String className;
     private MethodDescriptor descriptor;
+    private int hash;
 
     public MethodReference(String className, MethodDescriptor descriptor) {
         this.className = className;
         this.descriptor = descriptor;
+        this.hash = className.hashCode() ^ descriptor.hashCode();
+    }
+
+    public static MethodReference get(String className, MethodDescriptor descriptor) {
+        MethodReference reference = new MethodReference(className, descriptor);
+        return references.intern(reference, reference);
     }
 
     public String getClassName() {
@@ -54,19 +64,19 @@ public class MethodReference {
 
     @Override
     public int hashCode() {
-        return className.hashCode() ^ descriptor.hashCode();
+        return hash;
     }
 
     @Override
     public boolean equals(Object obj) {
         if (this == obj) {
-            return false;
+            return true;
         }
         if (!(obj instanceof MethodReference)) {
             return false;
         }
         MethodReference other = (MethodReference)obj;
-        return className.equals(other.className) && descriptor.equals(other.descriptor);
+        return hash == other.hash && className.equals(other.className) && descriptor.equals(other.descriptor);
     }
 
     @Override
@@ -28,10 +28,12 @@ public class Program implements ProgramReader {
     private MethodHolder method;
     private boolean packed;
     private int lastUsedRegister;
+    private AnalysisCache analysisCache = new AnalysisCache(this);
 
     public BasicBlock createBasicBlock() {
         BasicBlock block = new BasicBlock(this, basicBlocks.size());
         basicBlocks.add(block);
+        analysisCache.invalidate();
         return block;
     }
 
@@ -52,6 +54,7 @@ public class Program implements ProgramReader {
         basicBlock.setIndex(-1);
         basicBlock.setProgram(null);
         packed = false;
+        analysisCache.invalidate();
     }
 
     @Override
@@ -83,6 +86,7 @@ public class Program implements ProgramReader {
         if (packed) {
             return;
         }
+        analysisCache.invalidate();
         int sz = 0;
         for (int i = 0; i < basicBlocks.size(); ++i) {
             BasicBlock block = basicBlocks.get(i);
@@ -118,6 +122,10 @@ public class Program implements ProgramReader {
         return variables.get(index);
     }
 
+    public AnalysisCache getAnalysisCache() {
+        return analysisCache;
+    }
+
     @Override
     public MethodReference getMethodReference() {
         return method != null ? method.getReference() : null;
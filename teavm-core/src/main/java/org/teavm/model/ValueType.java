@@ -20,11 +20,18 @@ import java.util.List;
 
 
 /**
+ * <p>Represents a type of value. Instances returned by factory methods and by {@link #parse(String)}
+ * are canonical, so that equal types are usually the same object and can be compared
+ * by identity.</p>
  *
  * @author Alexey Andreev
  */
 public abstract class ValueType {
+    private static InternPool<String, Object> objectTypes = new InternPool<>();
+    private static InternPool<String, ValueType> parsedTypes = new InternPool<>();
     volatile String reprCache;
+    private volatile Array arrayType;
+    private int hash;
 
     private ValueType() {
     }
@@ -140,6 +147,11 @@ public abstract class ValueType {
     }
 
     public static class Null extends ValueType {
+        @Override
+        public String toString() {
+            return "null";
+        }
+
         @Override
         public boolean isObject(String cls) {
             return false;
@@ -167,15 +179,44 @@ public abstract class ValueType {
     public static final Null NULL = new Null();
 
     public static ValueType object(String cls) {
-        return new Object(cls);
+        Object type = objectTypes.get(cls);
+        if (type == null) {
+            type = new Object(cls);
+            type = objectTypes.intern(type.getClassName(), type);
+        }
+        return type;
     }
 
     public static ValueType arrayOf(ValueType type) {
-        return new Array(type);
+        Array array = type.arrayType;
+        if (array == null) {
+            array = new Array(type);
+            type.arrayType = array;
+        }
+        return array;
     }
 
     public static ValueType primitive(PrimitiveType type) {
-        return new Primitive(type);
+        switch (type) {
+            case BOOLEAN:
+                return BOOLEAN;
+            case BYTE:
+                return BYTE;
+            case SHORT:
+                return SHORT;
+            case INTEGER:
+                return INTEGER;
+            case LONG:
+                return LONG;
+            case FLOAT:
+                return FLOAT;
+            case CHARACTER:
+                return CHARACTER;
+            case DOUBLE:
+                return DOUBLE;
+            default:
+                throw new IllegalArgumentException("Unknown primitive type: " + type);
+        }
     }
 
     public static ValueType[] parseMany(String text) {
@@ -203,6 +244,15 @@ public abstract class ValueType {
     }
 
     public static ValueType parse(String string) {
+        ValueType type = parsedTypes.get(string);
+        if (type == null) {
+            type = parseUncached(string);
+            type = parsedTypes.intern(type.toString(), type);
+        }
+        return type;
+    }
+
+    private static ValueType parseUncached(String string) {
         int arrayDegree = 0;
         int left = 0;
         while (string.charAt(left) == '[') {
@@ -269,7 +319,10 @@ public abstract class ValueType {
 
     @Override
     public int hashCode() {
-        return toString().hashCode();
+        if (hash == 0) {
+            hash = toString().hashCode();
+        }
+        return hash;
     }
 
     @Override
@@ -280,6 +333,9 @@ public abstract class ValueType {
         if (!(obj instanceof ValueType)) {
             return false;
         }
+        if (hashCode() != obj.hashCode()) {
+            return false;
+        }
         return toString().equals(obj.toString());
     }
 }
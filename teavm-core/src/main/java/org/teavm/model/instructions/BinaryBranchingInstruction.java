@@ -60,6 +60,7 @@ public class BinaryBranchingInstruction extends Instruction {
 
     public void setConsequent(BasicBlock consequent) {
         this.consequent = consequent;
+        controlFlowChanged();
     }
 
     public BasicBlock getAlternative() {
@@ -68,6 +69,7 @@ public class BinaryBranchingInstruction extends Instruction {
 
     public void setAlternative(BasicBlock alternative) {
         this.alternative = alternative;
+        controlFlowChanged();
     }
 
     @Override
@@ -51,6 +51,7 @@ public class BranchingInstruction extends Instruction {
 
     public void setConsequent(BasicBlock consequent) {
         this.consequent = consequent;
+        controlFlowChanged();
     }
 
     public BasicBlock getAlternative() {
@@ -59,6 +60,7 @@ public class BranchingInstruction extends Instruction {
 
     public void setAlternative(BasicBlock alternative) {
         this.alternative = alternative;
+        controlFlowChanged();
     }
 
     @Override
@@ -26,6 +26,11 @@ public class GetElementInstruction extends Instruction {
     private Variable array;
     private Variable index;
     private Variable receiver;
+    private ArrayElementType elementType;
+
+    public GetElementInstruction(ArrayElementType elementType) {
+        this.elementType = elementType;
+    }
 
     public Variable getArray() {
         return array;
@@ -51,6 +56,10 @@ public class GetElementInstruction extends Instruction {
         this.receiver = receiver;
     }
 
+    public ArrayElementType getElementType() {
+        return elementType;
+    }
+
     @Override
     public void acceptVisitor(InstructionVisitor visitor) {
         visitor.visit(this);
@@ -31,6 +31,7 @@ public class JumpInstruction extends Instruction {
 
     public void setTarget(BasicBlock target) {
         this.target = target;
+        controlFlowChanged();
     }
 
     @Override
@@ -26,6 +26,11 @@ public class PutElementInstruction extends Instruction {
     private Variable array;
     private Variable index;
     private Variable value;
+    private ArrayElementType elementType;
+
+    public PutElementInstruction(ArrayElementType elementType) {
+        this.elementType = elementType;
+    }
 
     public Variable getArray() {
         return array;
@@ -51,6 +56,10 @@ public class PutElementInstruction extends Instruction {
         this.value = value;
     }
 
+    public ArrayElementType getElementType() {
+        return elementType;
+    }
+
     @Override
     public void acceptVisitor(InstructionVisitor visitor) {
         visitor.visit(this);
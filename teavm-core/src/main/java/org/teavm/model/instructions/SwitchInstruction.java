@@ -46,6 +46,7 @@ public class SwitchInstruction extends Instruction {
             oldElement.setInstruction(null);
             entries.set(index, element);
             element.setInstruction(SwitchInstruction.this);
+            controlFlowChanged();
             return oldElement;
         }
 
@@ -53,12 +54,14 @@ public class SwitchInstruction extends Instruction {
         public void add(int index, SwitchTableEntry element) {
             entries.add(index, element);
             element.setInstruction(SwitchInstruction.this);
+            controlFlowChanged();
         }
 
         @Override
         public SwitchTableEntry remove(int index) {
             SwitchTableEntry element = entries.remove(index);
             element.setInstruction(null);
+            controlFlowChanged();
             return element;
         }
 
@@ -68,6 +71,7 @@ public class SwitchInstruction extends Instruction {
                 element.setInstruction(null);
             }
             entries.clear();
+            controlFlowChanged();
         }
 
         @Override
@@ -89,8 +93,13 @@ public class SwitchInstruction extends Instruction {
         return defaultTarget;
     }
 
+    void entriesChanged() {
+        controlFlowChanged();
+    }
+
     public void setDefaultTarget(BasicBlock defaultTarget) {
         this.defaultTarget = defaultTarget;
+        controlFlowChanged();
     }
 
     @Override
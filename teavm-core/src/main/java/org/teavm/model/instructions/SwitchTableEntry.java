@@ -50,5 +50,8 @@ public class SwitchTableEntry implements SwitchTableEntryReader {
 
     public void setTarget(BasicBlock target) {
         this.target = target;
+        if (instruction != null) {
+            instruction.entriesChanged();
+        }
     }
 }
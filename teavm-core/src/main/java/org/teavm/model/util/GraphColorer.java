@@ -25,7 +25,12 @@ import org.teavm.common.Graph;
  * @author Alexey Andreev
  */
 class GraphColorer {
-    public void colorize(Graph graph, int[] classes, int[] colors) {
+    /**
+     * <p>Assigns colors to nodes of the graph, so that adjacent nodes get different colors, while all the
+     * nodes of a class get the same color. If categories are given, nodes of different categories
+     * never get the same color either. Negative category means that a node fits any category.</p>
+     */
+    public void colorize(Graph graph, int[] classes, int[] categories, int[] colors) {
         List<List<Integer>> classMembers = new ArrayList<>();
         for (int i = 0; i < classes.length; ++i) {
             int cls = classes[i];
@@ -42,6 +47,14 @@ class GraphColorer {
                 }
             }
         }
+        List<Integer> colorCategories = new ArrayList<>();
+        if (categories != null) {
+            for (int i = 0; i < colors.length; ++i) {
+                if (colors[i] >= 0) {
+                    setColorCategory(colorCategories, colors[i], categories[i]);
+                }
+            }
+        }
         BitSet usedColors = new BitSet();
         for (int v : getOrdering(graph)) {
             if (colors[v] >= 0) {
@@ -50,20 +63,42 @@ class GraphColorer {
             int cls = classes[v];
             usedColors.clear();
             usedColors.set(0);
+            int category = -1;
             for (int member : classMembers.get(cls)) {
-                for (int succ : graph.outgoingEdges(member)) {
+                if (categories != null && categories[member] >= 0) {
+                    category = categories[member];
+                }
+                int succCount = graph.outgoingEdgesCount(member);
+                for (int i = 0; i < succCount; ++i) {
+                    int succ = graph.outgoingEdge(member, i);
                     if (colors[succ] >= 0) {
                         usedColors.set(colors[succ]);
                     }
                 }
             }
             int color = usedColors.nextClearBit(0);
+            if (category >= 0) {
+                while (color < colorCategories.size() && colorCategories.get(color) >= 0 &&
+                        colorCategories.get(color) != category) {
+                    color = usedColors.nextClearBit(color + 1);
+                }
+                setColorCategory(colorCategories, color, category);
+            }
             for (int member : classMembers.get(cls)) {
                 colors[member] = color;
             }
         }
     }
 
+    private void setColorCategory(List<Integer> colorCategories, int color, int category) {
+        while (color >= colorCategories.size()) {
+            colorCategories.add(-1);
+        }
+        if (colorCategories.get(color) < 0) {
+            colorCategories.set(color, category);
+        }
+    }
+
     private int[] getOrdering(Graph graph) {
         boolean[] visited = new boolean[graph.size()];
         int[] ordering = new int[graph.size()];
@@ -86,7 +121,9 @@ class GraphColorer {
                 }
                 visited[v] = true;
                 ordering[index++] = v;
-                for (int succ : graph.outgoingEdges(v)) {
+                int succCount = graph.outgoingEdgesCount(v);
+                for (int i = 0; i < succCount; ++i) {
+                    int succ = graph.outgoingEdge(v, i);
                     if (visited[succ]) {
                         continue;
                     }
@@ -19,7 +19,6 @@ import java.util.ArrayDeque;
 import java.util.BitSet;
 import java.util.Deque;
 import org.teavm.common.Graph;
-import org.teavm.common.GraphUtils;
 import org.teavm.model.*;
 
 /**
@@ -40,8 +39,8 @@ public class LivenessAnalyzer {
     }
 
     public void analyze(Program program) {
-        Graph cfg = ProgramUtils.buildControlFlowGraph(program);
-        computeDomLeftRight(GraphUtils.buildDominatorGraph(GraphUtils.buildDominatorTree(cfg), cfg.size()));
+        Graph cfg = program.getAnalysisCache().getControlFlowGraph();
+        computeDomLeftRight(program.getAnalysisCache().getDominatorGraph());
         liveVars = new BitSet[cfg.size()];
         for (int i = 0; i < liveVars.length; ++i) {
             liveVars[i] = new BitSet(program.basicBlockCount());
@@ -83,9 +82,10 @@ public class LivenessAnalyzer {
                 continue;
             }
             liveVars[task.block].set(task.var, true);
-            for (int pred : cfg.incomingEdges(task.block)) {
+            int predCount = cfg.incomingEdgesCount(task.block);
+            for (int i = 0; i < predCount; ++i) {
                 Task nextTask = new Task();
-                nextTask.block = pred;
+                nextTask.block = cfg.incomingEdge(task.block, i);
                 nextTask.var = task.var;
                 stack.push(nextTask);
             }
@@ -108,8 +108,9 @@ public class LivenessAnalyzer {
             if (domLeft[v] == 0) {
                 domLeft[v] = index++;
                 stack[top++] = v;
-                for (int succ : domGraph.outgoingEdges(v)) {
-                    stack[top++] = succ;
+                int succCount = domGraph.outgoingEdgesCount(v);
+                for (int i = 0; i < succCount; ++i) {
+                    stack[top++] = domGraph.outgoingEdge(v, i);
                 }
             } else if (domRight[v] == 0) {
                 domRight[v] = index++;
@@ -46,12 +46,13 @@ public class ProgramUtils {
     public static Program copy(Program program) {
         Program copy = new Program();
         CopyVisitor insnCopier = new CopyVisitor();
-        insnCopier.programCopy = copy;
+        insnCopier.variableMap = new Variable[program.variableCount()];
+        insnCopier.blockMap = new BasicBlock[program.basicBlockCount()];
         for (int i = 0; i < program.variableCount(); ++i) {
-            copy.createVariable();
+            insnCopier.variableMap[i] = copy.createVariable();
         }
         for (int i = 0; i < program.basicBlockCount(); ++i) {
-            copy.createBasicBlock();
+            insnCopier.blockMap[i] = copy.createBasicBlock();
         }
         for (int i = 0; i < program.basicBlockCount(); ++i) {
             BasicBlock block = program.basicBlockAt(i);
@@ -75,9 +76,22 @@ public class ProgramUtils {
         return copy;
     }
 
+    /**
+     * Copies a single instruction, substituting its variables and jump targets. Both maps are
+     * indexed by the indexes of the variables and basic blocks of the original program.
+     */
+    public static Instruction copyInstruction(Instruction insn, Variable[] variableMap, BasicBlock[] blockMap) {
+        CopyVisitor insnCopier = new CopyVisitor();
+        insnCopier.variableMap = variableMap;
+        insnCopier.blockMap = blockMap;
+        insn.acceptVisitor(insnCopier);
+        return insnCopier.copy;
+    }
+
     private static class CopyVisitor implements InstructionVisitor {
         Instruction copy;
-        Program programCopy;
+        Variable[] variableMap;
+        BasicBlock[] blockMap;
 
         @Override
         public void visit(EmptyInstruction insn) {
@@ -85,11 +99,11 @@ public class ProgramUtils {
         }
 
         private Variable copyVar(Variable var) {
-            return programCopy.variableAt(var.getIndex());
+            return variableMap[var.getIndex()];
         }
 
         private BasicBlock copyBlock(BasicBlock block) {
-            return programCopy.basicBlockAt(block.getIndex());
+            return blockMap[block.getIndex()];
         }
 
         @Override
@@ -324,7 +338,7 @@ public class ProgramUtils {
 
         @Override
         public void visit(GetElementInstruction insn) {
-            GetElementInstruction insnCopy = new GetElementInstruction();
+            GetElementInstruction insnCopy = new GetElementInstruction(insn.getElementType());
             insnCopy.setArray(copyVar(insn.getArray()));
             insnCopy.setReceiver(copyVar(insn.getReceiver()));
             insnCopy.setIndex(copyVar(insn.getIndex()));
@@ -333,7 +347,7 @@ public class ProgramUtils {
 
         @Override
         public void visit(PutElementInstruction insn) {
-            PutElementInstruction insnCopy = new PutElementInstruction();
+            PutElementInstruction insnCopy = new PutElementInstruction(insn.getElementType());
             insnCopy.setArray(copyVar(insn.getArray()));
             insnCopy.setValue(copyVar(insn.getValue()));
             insnCopy.setIndex(copyVar(insn.getIndex()));
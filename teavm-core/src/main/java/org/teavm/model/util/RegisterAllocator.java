@@ -29,7 +29,24 @@ import org.teavm.model.instructions.JumpInstruction;
  */
 public class RegisterAllocator {
     public void allocateRegisters(MethodReader method, Program program) {
+        allocateRegisters(method, program, null);
+    }
+
+    /**
+     * <p>Allocates registers, so that variables of different categories never share a register. Categories
+     * are given for variables of the original program, negative category means that a variable may share
+     * a register with variable of any category.</p>
+     */
+    public void allocateRegisters(MethodReader method, Program program, int[] variableCategories) {
         List<PhiArgumentCopy> phiArgsCopies = insertPhiArgumentsCopies(program);
+        int[] categories = null;
+        if (variableCategories != null) {
+            categories = Arrays.copyOf(variableCategories, program.variableCount());
+            Arrays.fill(categories, variableCategories.length, categories.length, -1);
+            for (PhiArgumentCopy copy : phiArgsCopies) {
+                categories[copy.var] = categories[copy.original];
+            }
+        }
         InterferenceGraphBuilder interferenceBuilder = new InterferenceGraphBuilder();
         LivenessAnalyzer liveness = new LivenessAnalyzer();
         liveness.analyze(program);
@@ -43,7 +60,7 @@ public class RegisterAllocator {
             colors[i] = i;
         }
         GraphColorer colorer = new GraphColorer();
-        colorer.colorize(interferenceGraph, classArray, colors);
+        colorer.colorize(interferenceGraph, classArray, categories, colors);
         for (int i = 0; i < colors.length; ++i) {
             program.variableAt(i).setRegister(colors[i]);
         }
@@ -112,7 +129,8 @@ public class RegisterAllocator {
             DisjointSet congruenceClasses) {
         for (PhiArgumentCopy copy : copies) {
             boolean interfere = false;
-            for (int neighbour : inteferenceGraph.outgoingEdges(copy.original)) {
+            for (int i = 0; i < inteferenceGraph.outgoingEdgesCount(copy.original); ++i) {
+                int neighbour = inteferenceGraph.outgoingEdge(copy.original, i);
                 if (neighbour == copy.var || neighbour == copy.original) {
                     continue;
                 }
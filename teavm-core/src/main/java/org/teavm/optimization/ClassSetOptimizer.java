@@ -19,6 +19,7 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.Executor;
 import org.teavm.model.ClassHolder;
+import org.teavm.model.ClassHolderSource;
 import org.teavm.model.ListableClassHolderSource;
 import org.teavm.model.MethodHolder;
 import org.teavm.model.Program;
@@ -35,11 +36,15 @@ public class ClassSetOptimizer {
         this.executor = executor;
     }
 
-    private List<MethodOptimization> getOptimizations() {
-        return Arrays.<MethodOptimization>asList(new CommonSubexpressionElimination(), new UnusedVariableElimination());
+    private List<MethodOptimization> getOptimizations(ClassHolderSource classSource) {
+        return Arrays.<MethodOptimization>asList(new ConstantPropagation(classSource),
+                new UnreachableBasicBlockEliminator(), new EmptyBlockElimination(),
+                new ScalarReplacement(classSource), new GlobalValueNumbering(), new LoopInvariantMotion(),
+                new UnusedVariableElimination());
     }
 
-    public void optimizeAll(ListableClassHolderSource classSource) {
+    public void optimizeAll(final ListableClassHolderSource classSource) {
+        inlineAll(classSource);
         for (String className : classSource.getClassNames()) {
             ClassHolder cls = classSource.getClassHolder(className);
             for (final MethodHolder method : cls.getMethods()) {
@@ -47,15 +52,28 @@ public class ClassSetOptimizer {
                     executor.execute(new Runnable() {
                         @Override
                         public void run() {
-                            Program program = ProgramUtils.copy(method.getProgram());
-                            for (MethodOptimization optimization : getOptimizations()) {
-                                optimization.optimize(method, program);
-                            }
-                            method.setProgram(program);
+                            optimize(method, classSource);
                         }
                     });
                 }
             }
         }
     }
+
+    public void inlineAll(ListableClassHolderSource classSource) {
+        Inlining inlining = new Inlining(classSource);
+        for (MethodHolder method : inlining.getOrder()) {
+            Program program = ProgramUtils.copy(method.getProgram());
+            inlining.optimize(method, program);
+            method.setProgram(program);
+        }
+    }
+
+    public void optimize(MethodHolder method, ClassHolderSource classSource) {
+        Program program = ProgramUtils.copy(method.getProgram());
+        for (MethodOptimization optimization : getOptimizations(classSource)) {
+            optimization.optimize(method, program);
+        }
+        method.setProgram(program);
+    }
 }
@@ -0,0 +1,754 @@
+/*
+ *  Copyright 2014 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.optimization;
+
+import java.util.*;
+import org.teavm.model.*;
+import org.teavm.model.instructions.*;
+import org.teavm.model.util.DefinitionExtractor;
+import org.teavm.model.util.InstructionTransitionExtractor;
+import org.teavm.model.util.UsageExtractor;
+
+/**
+ * <p>Sparse conditional constant propagation. Integer, long and double values are folded
+ * following the same rules the generated code uses, branches and switches on constants
+ * are replaced by jumps. Blocks that become unreachable are left for
+ * {@link UnreachableBasicBlockEliminator}.</p>
+ *
+ * <p>These rules are Java rules, except for conversion of a double to an int, which is computed with
+ * <code>|0</code>. A double out of int range is therefore wrapped to 32 bits rather than saturated,
+ * for example <code>1e10</code> becomes <code>1410065408</code> instead of <code>2147483647</code>.</p>
+ *
+ * <p>Float arithmetic is not folded, since floats are represented by doubles at run time.</p>
+ *
+ * @author Alexey Andreev <konsoletyper@gmail.com>
+ */
+public class ConstantPropagation implements MethodOptimization {
+    private static final Object OVERDEFINED = new Object();
+    private ClassHolderSource classSource;
+    private Program program;
+    private Object[] values;
+    private boolean[] executable;
+    private Set<Long> executableEdges = new HashSet<>();
+    private List<List<Instruction>> instructionUsages = new ArrayList<>();
+    private List<List<Phi>> phiUsages = new ArrayList<>();
+    private int[] blockStack;
+    private int blockTop;
+    private int[] variableStack;
+    private int variableTop;
+    private BasicBlock currentBlock;
+    private InstructionTransitionExtractor transitionExtractor = new InstructionTransitionExtractor();
+
+    public ConstantPropagation(ClassHolderSource classSource) {
+        this.classSource = classSource;
+    }
+
+    @Override
+    public void optimize(MethodReader method, Program program) {
+        if (program.basicBlockCount() == 0) {
+            return;
+        }
+        this.program = program;
+        values = new Object[program.variableCount()];
+        executable = new boolean[program.basicBlockCount()];
+        executableEdges.clear();
+        blockStack = new int[program.basicBlockCount()];
+        blockTop = 0;
+        variableStack = new int[program.variableCount() * 2];
+        variableTop = 0;
+        buildUsages();
+
+        executable[0] = true;
+        blockStack[blockTop++] = 0;
+        while (blockTop > 0 || variableTop > 0) {
+            if (variableTop > 0) {
+                int var = variableStack[--variableTop];
+                for (Instruction insn : instructionUsages.get(var)) {
+                    if (executable[insn.getBasicBlock().getIndex()]) {
+                        currentBlock = insn.getBasicBlock();
+                        insn.acceptVisitor(evaluator);
+                    }
+                }
+                for (Phi phi : phiUsages.get(var)) {
+                    if (executable[phi.getBasicBlock().getIndex()]) {
+                        evaluate(phi);
+                    }
+                }
+            } else {
+                currentBlock = program.basicBlockAt(blockStack[--blockTop]);
+                for (Phi phi : currentBlock.getPhis()) {
+                    evaluate(phi);
+                }
+                for (Instruction insn : currentBlock.getInstructions()) {
+                    insn.acceptVisitor(evaluator);
+                }
+            }
+        }
+
+        for (int i = 0; i < program.basicBlockCount(); ++i) {
+            if (executable[i]) {
+                transform(program.basicBlockAt(i));
+            }
+        }
+    }
+
+    private void buildUsages() {
+        instructionUsages.clear();
+        phiUsages.clear();
+        boolean[] defined = new boolean[program.variableCount()];
+        for (int i = 0; i < program.variableCount(); ++i) {
+            instructionUsages.add(new ArrayList<Instruction>());
+            phiUsages.add(new ArrayList<Phi>());
+        }
+        UsageExtractor usageExtractor = new UsageExtractor();
+        DefinitionExtractor definitionExtractor = new DefinitionExtractor();
+        for (int i = 0; i < program.basicBlockCount(); ++i) {
+            BasicBlock block = program.basicBlockAt(i);
+            for (Instruction insn : block.getInstructions()) {
+                insn.acceptVisitor(usageExtractor);
+                for (Variable var : usageExtractor.getUsedVariables()) {
+                    instructionUsages.get(var.getIndex()).add(insn);
+                }
+                insn.acceptVisitor(definitionExtractor);
+                for (Variable var : definitionExtractor.getDefinedVariables()) {
+                    defined[var.getIndex()] = true;
+                }
+            }
+            for (Phi phi : block.getPhis()) {
+                for (Incoming incoming : phi.getIncomings()) {
+                    phiUsages.get(incoming.getValue().getIndex()).add(phi);
+                }
+                defined[phi.getReceiver().getIndex()] = true;
+            }
+        }
+        // Variables without definitions are method parameters
+        for (int i = 0; i < defined.length; ++i) {
+            if (!defined[i]) {
+                values[i] = OVERDEFINED;
+            }
+        }
+    }
+
+    private void evaluate(Phi phi) {
+        Object result = null;
+        for (Incoming incoming : phi.getIncomings()) {
+            if (isExecutable(incoming.getSource(), phi.getBasicBlock())) {
+                result = meet(result, values[incoming.getValue().getIndex()]);
+            }
+        }
+        update(phi.getReceiver(), result);
+    }
+
+    private static Object meet(Object a, Object b) {
+        if (a == null) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        return a.equals(b) ? a : OVERDEFINED;
+    }
+
+    private void update(Variable var, Object value) {
+        Object old = values[var.getIndex()];
+        Object result = meet(old, value);
+        if (result == old) {
+            return;
+        }
+        values[var.getIndex()] = result;
+        variableStack[variableTop++] = var.getIndex();
+    }
+
+    private boolean isExecutable(BasicBlock source, BasicBlock target) {
+        return executableEdges.contains(edgeKey(source, target));
+    }
+
+    private static long edgeKey(BasicBlock source, BasicBlock target) {
+        return ((long)source.getIndex() << 32) | target.getIndex();
+    }
+
+    private void markEdge(BasicBlock target) {
+        if (!executableEdges.add(edgeKey(currentBlock, target))) {
+            return;
+        }
+        if (!executable[target.getIndex()]) {
+            executable[target.getIndex()] = true;
+            blockStack[blockTop++] = target.getIndex();
+        } else {
+            for (Phi phi : target.getPhis()) {
+                evaluate(phi);
+            }
+        }
+    }
+
+    private void transform(BasicBlock block) {
+        int constantIndex = 0;
+        for (int i = 0; i < block.getPhis().size(); ++i) {
+            Phi phi = block.getPhis().get(i);
+            Instruction constant = createConstant(phi.getReceiver());
+            if (constant != null) {
+                block.getPhis().remove(i--);
+                block.getInstructions().add(constantIndex++, constant);
+            }
+        }
+        List<Instruction> instructions = block.getInstructions();
+        for (int i = constantIndex; i < instructions.size(); ++i) {
+            Instruction insn = instructions.get(i);
+            Variable receiver = null;
+            if (insn instanceof BinaryInstruction) {
+                receiver = ((BinaryInstruction)insn).getReceiver();
+            } else if (insn instanceof NegateInstruction) {
+                receiver = ((NegateInstruction)insn).getReceiver();
+            } else if (insn instanceof AssignInstruction) {
+                receiver = ((AssignInstruction)insn).getReceiver();
+            } else if (insn instanceof CastNumberInstruction) {
+                receiver = ((CastNumberInstruction)insn).getReceiver();
+            } else if (insn instanceof CastIntegerInstruction) {
+                receiver = ((CastIntegerInstruction)insn).getReceiver();
+            } else if (insn instanceof GetFieldInstruction) {
+                receiver = ((GetFieldInstruction)insn).getReceiver();
+            }
+            Instruction constant = receiver != null ? createConstant(receiver) : null;
+            if (constant != null) {
+                instructions.set(i, constant);
+            }
+        }
+
+        // Replace conditional jumps that have the only executable target
+        Instruction last = block.getLastInstruction();
+        last.acceptVisitor(transitionExtractor);
+        BasicBlock[] targets = transitionExtractor.getTargets();
+        if (targets == null || targets.length < 2) {
+            return;
+        }
+        BasicBlock liveTarget = null;
+        for (BasicBlock target : targets) {
+            if (isExecutable(block, target)) {
+                if (liveTarget != null && liveTarget != target) {
+                    return;
+                }
+                liveTarget = target;
+            }
+        }
+        if (liveTarget == null) {
+            return;
+        }
+        Set<BasicBlock> deadTargets = new HashSet<>(Arrays.asList(targets));
+        deadTargets.remove(liveTarget);
+        for (BasicBlock target : deadTargets) {
+            for (Phi phi : target.getPhis()) {
+                for (int i = 0; i < phi.getIncomings().size(); ++i) {
+                    if (phi.getIncomings().get(i).getSource() == block) {
+                        phi.getIncomings().remove(i--);
+                    }
+                }
+            }
+        }
+        JumpInstruction jump = new JumpInstruction();
+        jump.setTarget(liveTarget);
+        instructions.set(instructions.size() - 1, jump);
+    }
+
+    private Instruction createConstant(Variable receiver) {
+        Object value = values[receiver.getIndex()];
+        if (value instanceof Integer) {
+            IntegerConstantInstruction insn = new IntegerConstantInstruction();
+            insn.setConstant((Integer)value);
+            insn.setReceiver(receiver);
+            return insn;
+        } else if (value instanceof Long) {
+            LongConstantInstruction insn = new LongConstantInstruction();
+            insn.setConstant((Long)value);
+            insn.setReceiver(receiver);
+            return insn;
+        } else if (value instanceof Double) {
+            DoubleConstantInstruction insn = new DoubleConstantInstruction();
+            insn.setConstant((Double)value);
+            insn.setReceiver(receiver);
+            return insn;
+        }
+        return null;
+    }
+
+    private Object valueOf(Variable var) {
+        return values[var.getIndex()];
+    }
+
+    private static boolean isConstant(Object value) {
+        return value != null && value != OVERDEFINED;
+    }
+
+    private Object fold(BinaryOperation op, NumericOperandType type, Object first, Object second) {
+        switch (type) {
+            case INT:
+                if (first instanceof Integer && second instanceof Integer) {
+                    return fold(op, (Integer)first, (Integer)second);
+                }
+                break;
+            case LONG:
+                if (first instanceof Long && second instanceof Integer) {
+                    return fold(op, (Long)first, (long)(Integer)second);
+                } else if (first instanceof Long && second instanceof Long) {
+                    return fold(op, (Long)first, (Long)second);
+                }
+                break;
+            case DOUBLE:
+                if (first instanceof Double && second instanceof Double) {
+                    return fold(op, (Double)first, (Double)second);
+                }
+                break;
+            case FLOAT:
+                break;
+        }
+        return OVERDEFINED;
+    }
+
+    private static Object fold(BinaryOperation op, int a, int b) {
+        switch (op) {
+            case ADD:
+                return a + b;
+            case SUBTRACT:
+                return a - b;
+            case MULTIPLY:
+                return a * b;
+            case DIVIDE:
+                return b != 0 ? a / b : OVERDEFINED;
+            case MODULO:
+                return b != 0 ? a % b : OVERDEFINED;
+            case COMPARE:
+                return Integer.compare(a, b);
+            case AND:
+                return a & b;
+            case OR:
+                return a | b;
+            case XOR:
+                return a ^ b;
+            case SHIFT_LEFT:
+                return a << b;
+            case SHIFT_RIGHT:
+                return a >> b;
+            case SHIFT_RIGHT_UNSIGNED:
+                return a >>> b;
+        }
+        return OVERDEFINED;
+    }
+
+    private static Object fold(BinaryOperation op, long a, long b) {
+        switch (op) {
+            case ADD:
+                return a + b;
+            case SUBTRACT:
+                return a - b;
+            case MULTIPLY:
+                return a * b;
+            case DIVIDE:
+                return b != 0 ? a / b : OVERDEFINED;
+            case MODULO:
+                return b != 0 ? a % b : OVERDEFINED;
+            case COMPARE:
+                return Long.compare(a, b);
+            case AND:
+                return a & b;
+            case OR:
+                return a | b;
+            case XOR:
+                return a ^ b;
+            case SHIFT_LEFT:
+                return a << b;
+            case SHIFT_RIGHT:
+                return a >> b;
+            case SHIFT_RIGHT_UNSIGNED:
+                return a >>> b;
+        }
+        return OVERDEFINED;
+    }
+
+    private static Object fold(BinaryOperation op, double a, double b) {
+        switch (op) {
+            case ADD:
+                return a + b;
+            case SUBTRACT:
+                return a - b;
+            case MULTIPLY:
+                return a * b;
+            case DIVIDE:
+                return a / b;
+            case MODULO:
+                return a % b;
+            case COMPARE:
+                if (Double.isNaN(a) || Double.isNaN(b)) {
+                    return OVERDEFINED;
+                }
+                return a > b ? 1 : a < b ? -1 : 0;
+            default:
+                break;
+        }
+        return OVERDEFINED;
+    }
+
+    private static Object cast(Object value, NumericOperandType targetType) {
+        if (!(value instanceof Integer) && !(value instanceof Long) && !(value instanceof Double)) {
+            return OVERDEFINED;
+        }
+        Number number = (Number)value;
+        switch (targetType) {
+            case INT:
+                return value instanceof Double ? toInt32((Double)value) : number.intValue();
+            case LONG:
+                return number.longValue();
+            case DOUBLE:
+                return number.doubleValue();
+            case FLOAT:
+                break;
+        }
+        return OVERDEFINED;
+    }
+
+    /**
+     * <p>Converts a double to an int the way JavaScript <code>|0</code> does.</p>
+     */
+    static int toInt32(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return 0;
+        }
+        double truncated = value < 0 ? Math.ceil(value) : Math.floor(value);
+        return (int)(long)(truncated % 4294967296.0);
+    }
+
+    private static Object cast(int value, IntegerSubtype type, CastIntegerDirection direction) {
+        switch (direction) {
+            case FROM_INTEGER:
+                switch (type) {
+                    case BYTE:
+                        return (int)(byte)value;
+                    case SHORT:
+                        return (int)(short)value;
+                    case CHARACTER:
+                        return value & 0xFFFF;
+                }
+                break;
+            case TO_INTEGER:
+                switch (type) {
+                    case BYTE:
+                        return (int)(byte)value;
+                    case SHORT:
+                        return (int)(short)value;
+                    case CHARACTER:
+                        return value;
+                }
+                break;
+        }
+        return OVERDEFINED;
+    }
+
+    private Object getStaticConstant(FieldReference fieldRef) {
+        String className = fieldRef.getClassName();
+        while (className != null) {
+            ClassHolder cls = classSource.getClassHolder(className);
+            if (cls == null) {
+                break;
+            }
+            FieldHolder field = cls.getField(fieldRef.getFieldName());
+            if (field != null) {
+                Object value = field.getInitialValue();
+                if (field.getModifiers().contains(ElementModifier.STATIC) &&
+                        field.getModifiers().contains(ElementModifier.FINAL) &&
+                        (value instanceof Integer || value instanceof Long || value instanceof Double)) {
+                    return value;
+                }
+                break;
+            }
+            className = cls.getParent();
+        }
+        return OVERDEFINED;
+    }
+
+    private InstructionVisitor evaluator = new InstructionVisitor() {
+        @Override
+        public void visit(EmptyInstruction insn) {
+        }
+
+        @Override
+        public void visit(ClassConstantInstruction insn) {
+            update(insn.getReceiver(), OVERDEFINED);
+        }
+
+        @Override
+        public void visit(NullConstantInstruction insn) {
+            update(insn.getReceiver(), OVERDEFINED);
+        }
+
+        @Override
+        public void visit(IntegerConstantInstruction insn) {
+            update(insn.getReceiver(), insn.getConstant());
+        }
+
+        @Override
+        public void visit(LongConstantInstruction insn) {
+            update(insn.getReceiver(), insn.getConstant());
+        }
+
+        @Override
+        public void visit(FloatConstantInstruction insn) {
+            update(insn.getReceiver(), OVERDEFINED);
+        }
+
+        @Override
+        public void visit(DoubleConstantInstruction insn) {
+            update(insn.getReceiver(), insn.getConstant());
+        }
+
+        @Override
+        public void visit(StringConstantInstruction insn) {
+            update(insn.getReceiver(), OVERDEFINED);
+        }
+
+        @Override
+        public void visit(BinaryInstruction insn) {
+            Object first = valueOf(insn.getFirstOperand());
+            Object second = valueOf(insn.getSecondOperand());
+            if (first == OVERDEFINED || second == OVERDEFINED) {
+                update(insn.getReceiver(), OVERDEFINED);
+            } else if (first != null && second != null) {
+                update(insn.getReceiver(), fold(insn.getOperation(), insn.getOperandType(), first, second));
+            }
+        }
+
+        @Override
+        public void visit(NegateInstruction insn) {
+            Object value = valueOf(insn.getOperand());
+            if (!isConstant(value)) {
+                update(insn.getReceiver(), value);
+                return;
+            }
+            Object result = OVERDEFINED;
+            switch (insn.getOperandType()) {
+                case INT:
+                    result = value instanceof Integer ? -(Integer)value : OVERDEFINED;
+                    break;
+                case LONG:
+                    result = value instanceof Long ? -(Long)value : OVERDEFINED;
+                    break;
+                case DOUBLE:
+                    result = value instanceof Double ? -(Double)value : OVERDEFINED;
+                    break;
+                case FLOAT:
+                    break;
+            }
+            update(insn.getReceiver(), result);
+        }
+
+        @Override
+        public void visit(AssignInstruction insn) {
+            update(insn.getReceiver(), valueOf(insn.getAssignee()));
+        }
+
+        @Override
+        public void visit(CastInstruction insn) {
+            update(insn.getReceiver(), OVERDEFINED);
+        }
+
+        @Override
+        public void visit(CastNumberInstruction insn) {
+            Object value = valueOf(insn.getValue());
+            if (!isConstant(value)) {
+                update(insn.getReceiver(), value);
+            } else if (insn.getSourceType() == NumericOperandType.FLOAT) {
+                update(insn.getReceiver(), OVERDEFINED);
+            } else {
+                update(insn.getReceiver(), cast(value, insn.getTargetType()));
+            }
+        }
+
+        @Override
+        public void visit(CastIntegerInstruction insn) {
+            Object value = valueOf(insn.getValue());
+            if (!isConstant(value)) {
+                update(insn.getReceiver(), value);
+            } else if (value instanceof Integer) {
+                update(insn.getReceiver(), cast((Integer)value, insn.getTargetType(), insn.getDirection()));
+            } else {
+                update(insn.getReceiver(), OVERDEFINED);
+            }
+        }
+
+        @Override
+        public void visit(BranchingInstruction insn) {
+            Object value = valueOf(insn.getOperand());
+            if (value == null) {
+                return;
+            }
+            if (!(value instanceof Integer)) {
+                markEdge(insn.getConsequent());
+                markEdge(insn.getAlternative());
+                return;
+            }
+            int n = (Integer)value;
+            boolean result;
+            switch (insn.getCondition()) {
+                case EQUAL:
+                    result = n == 0;
+                    break;
+                case NOT_EQUAL:
+                    result = n != 0;
+                    break;
+                case LESS:
+                    result = n < 0;
+                    break;
+                case LESS_OR_EQUAL:
+                    result = n <= 0;
+                    break;
+                case GREATER:
+                    result = n > 0;
+                    break;
+                case GREATER_OR_EQUAL:
+                    result = n >= 0;
+                    break;
+                default:
+                    markEdge(insn.getConsequent());
+                    markEdge(insn.getAlternative());
+                    return;
+            }
+            markEdge(result ? insn.getConsequent() : insn.getAlternative());
+        }
+
+        @Override
+        public void visit(BinaryBranchingInstruction insn) {
+            Object first = valueOf(insn.getFirstOperand());
+            Object second = valueOf(insn.getSecondOperand());
+            if (first == null || second == null) {
+                return;
+            }
+            if (!(first instanceof Integer) || !(second instanceof Integer)) {
+                markEdge(insn.getConsequent());
+                markEdge(insn.getAlternative());
+                return;
+            }
+            switch (insn.getCondition()) {
+                case EQUAL:
+                    markEdge(first.equals(second) ? insn.getConsequent() : insn.getAlternative());
+                    break;
+                case NOT_EQUAL:
+                    markEdge(!first.equals(second) ? insn.getConsequent() : insn.getAlternative());
+                    break;
+                default:
+                    markEdge(insn.getConsequent());
+                    markEdge(insn.getAlternative());
+                    break;
+            }
+        }
+
+        @Override
+        public void visit(JumpInstruction insn) {
+            markEdge(insn.getTarget());
+        }
+
+        @Override
+        public void visit(SwitchInstruction insn) {
+            Object value = valueOf(insn.getCondition());
+            if (value == null) {
+                return;
+            }
+            if (!(value instanceof Integer)) {
+                for (SwitchTableEntry entry : insn.getEntries()) {
+                    markEdge(entry.getTarget());
+                }
+                markEdge(insn.getDefaultTarget());
+                return;
+            }
+            for (SwitchTableEntry entry : insn.getEntries()) {
+                if (entry.getCondition() == (Integer)value) {
+                    markEdge(entry.getTarget());
+                    return;
+                }
+            }
+            markEdge(insn.getDefaultTarget());
+        }
+
+        @Override
+        public void visit(ExitInstruction insn) {
+        }
+
+        @Override
+        public void visit(RaiseInstruction insn) {
+        }
+
+        @Override
+        public void visit(ConstructArrayInstruction insn) {
+            update(insn.getReceiver(), OVERDEFINED);
+        }
+
+        @Override
+        public void visit(ConstructInstruction insn) {
+            update(insn.getReceiver(), OVERDEFINED);
+        }
+
+        @Override
+        public void visit(ConstructMultiArrayInstruction insn) {
+            update(insn.getReceiver(), OVERDEFINED);
+        }
+
+        @Override
+        public void visit(GetFieldInstruction insn) {
+            update(insn.getReceiver(), insn.getInstance() == null ? getStaticConstant(insn.getField()) :
+                    OVERDEFINED);
+        }
+
+        @Override
+        public void visit(PutFieldInstruction insn) {
+        }
+
+        @Override
+        public void visit(ArrayLengthInstruction insn) {
+            update(insn.getReceiver(), OVERDEFINED);
+        }
+
+        @Override
+        public void visit(CloneArrayInstruction insn) {
+            update(insn.getReceiver(), OVERDEFINED);
+        }
+
+        @Override
+        public void visit(UnwrapArrayInstruction insn) {
+            update(insn.getReceiver(), OVERDEFINED);
+        }
+
+        @Override
+        public void visit(GetElementInstruction insn) {
+            update(insn.getReceiver(), OVERDEFINED);
+        }
+
+        @Override
+        public void visit(PutElementInstruction insn) {
+        }
+
+        @Override
+        public void visit(InvokeInstruction insn) {
+            if (insn.getReceiver() != null) {
+                update(insn.getReceiver(), OVERDEFINED);
+            }
+        }
+
+        @Override
+        public void visit(IsInstanceInstruction insn) {
+            update(insn.getReceiver(), OVERDEFINED);
+        }
+
+        @Override
+        public void visit(InitClassInstruction insn) {
+        }
+    };
+}
@@ -26,23 +26,19 @@ import org.teavm.model.util.BasicBlockMapper;
  * @author Alexey Andreev
  */
 public class EmptyBlockElimination implements MethodOptimization {
+    private static final int UNRESOLVED = -1;
+    private static final int IN_PROGRESS = -2;
+
     @Override
     public void optimize(MethodReader method, final Program program) {
         final int[] blockMapping = new int[program.basicBlockCount()];
         for (int i = 0; i < blockMapping.length; ++i) {
-            blockMapping[i] = i;
+            blockMapping[i] = UNRESOLVED;
         }
-        int lastNonEmpty = program.basicBlockCount() - 1;
-        for (int i = program.basicBlockCount() - 2; i > 0; --i) {
-            BasicBlock block = program.basicBlockAt(i);
-            if (block.getPhis().isEmpty() && block.getInstructions().size() == 1 &&
-                    block.getLastInstruction() instanceof JumpInstruction) {
-                JumpInstruction insn = (JumpInstruction)block.getLastInstruction();
-                if (insn.getTarget().getIndex() == i + 1) {
-                    blockMapping[i] = lastNonEmpty;
-                }
-            }
-            lastNonEmpty = blockMapping[i];
+        blockMapping[0] = 0;
+        int[] path = new int[blockMapping.length];
+        for (int i = 1; i < blockMapping.length; ++i) {
+            resolve(program, blockMapping, path, i);
         }
         new BasicBlockMapper() {
             @Override protected BasicBlock map(BasicBlock block) {
@@ -56,4 +52,45 @@ public class EmptyBlockElimination implements MethodOptimization {
         }
         program.pack();
     }
+
+    private void resolve(Program program, int[] blockMapping, int[] path, int index) {
+        // A block that only contains a jump is replaced by the block it jumps to. It is kept when
+        // its target has phis, since the block may be the source of an incoming, or when
+        // empty blocks form a cycle
+        int pathSize = 0;
+        int current = index;
+        int result;
+        while (true) {
+            if (blockMapping[current] >= 0) {
+                result = blockMapping[current];
+                break;
+            }
+            if (blockMapping[current] == IN_PROGRESS) {
+                result = current;
+                break;
+            }
+            BasicBlock block = program.basicBlockAt(current);
+            if (current == 0 || !isEmpty(block)) {
+                result = current;
+                break;
+            }
+            BasicBlock target = ((JumpInstruction)block.getLastInstruction()).getTarget();
+            if (!target.getPhis().isEmpty()) {
+                result = current;
+                break;
+            }
+            blockMapping[current] = IN_PROGRESS;
+            path[pathSize++] = current;
+            current = target.getIndex();
+        }
+        blockMapping[result] = result;
+        while (pathSize > 0) {
+            blockMapping[path[--pathSize]] = result;
+        }
+    }
+
+    private static boolean isEmpty(BasicBlock block) {
+        return block.getPhis().isEmpty() && block.getInstructions().size() == 1 &&
+                block.getLastInstruction() instanceof JumpInstruction;
+    }
 }
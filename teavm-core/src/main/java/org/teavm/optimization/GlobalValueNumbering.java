@@ -0,0 +1,547 @@
+/*
+ *  Copyright 2014 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.optimization;
+
+import java.util.Arrays;
+import org.teavm.common.DominatorTree;
+import org.teavm.common.Graph;
+import org.teavm.model.*;
+import org.teavm.model.instructions.*;
+
+/**
+ * <p>Dominator-based global value numbering. Every pure instruction is described by its opcode,
+ * value numbers of its operands and an optional type or field, and the description is looked
+ * up in an open-addressing table. An instruction is eliminated when an equal one was found in
+ * a dominating block.</p>
+ *
+ * <p>Field and array loads are numbered as well. They are keyed by a memory epoch, which is
+ * renewed by every store, invocation and class initialization. A block starts with the epoch
+ * its predecessor ends with if it is the only predecessor, and with a fresh epoch otherwise.
+ * Stores record the stored value, so that following loads of the same location reuse it.
+ * This is not done for arrays of bytes, shorts, chars and floats, as typed arrays convert
+ * values on store.</p>
+ *
+ * @author Alexey Andreev <konsoletyper@gmail.com>
+ */
+public class GlobalValueNumbering implements MethodOptimization {
+    private static final int BINARY = 1 << 16;
+    private static final int NEGATE = 2 << 16;
+    private static final int CAST = 3 << 16;
+    private static final int CAST_NUMBER = 4 << 16;
+    private static final int CAST_INTEGER = 5 << 16;
+    private static final int ARRAY_LENGTH = 6 << 16;
+    private static final int UNWRAP_ARRAY = 7 << 16;
+    private static final int IS_INSTANCE = 8 << 16;
+    private static final int GET_FIELD = 9 << 16;
+    private static final int GET_ELEMENT = 10 << 16;
+    private ValueTable table = new ValueTable();
+    private boolean eliminate;
+    private int[] map;
+    private boolean[] exactArrays;
+    private Program program;
+    private int currentBlockIndex;
+    private DominatorTree domTree;
+    private int fieldEpoch;
+    private int arrayEpoch;
+    private int lastEpoch;
+
+    @Override
+    public void optimize(MethodReader method, Program program) {
+        this.program = program;
+        table.clear();
+        Graph cfg = program.getAnalysisCache().getControlFlowGraph();
+        domTree = program.getAnalysisCache().getDominatorTree();
+        Graph dom = program.getAnalysisCache().getDominatorGraph();
+        map = new int[program.variableCount()];
+        for (int i = 0; i < map.length; ++i) {
+            map[i] = i;
+        }
+        exactArrays = new boolean[program.variableCount()];
+        int[] blockFieldEpochs = new int[cfg.size()];
+        int[] blockArrayEpochs = new int[cfg.size()];
+        lastEpoch = 0;
+
+        int[] stack = new int[cfg.size() * 2];
+        int top = 0;
+        for (int i = 0; i < cfg.size(); ++i) {
+            if (cfg.incomingEdgesCount(i) == 0) {
+                stack[top++] = i;
+            }
+        }
+        while (top > 0) {
+            int v = stack[--top];
+            currentBlockIndex = v;
+            if (cfg.incomingEdgesCount(v) == 1) {
+                int pred = cfg.incomingEdge(v, 0);
+                fieldEpoch = blockFieldEpochs[pred];
+                arrayEpoch = blockArrayEpochs[pred];
+            } else {
+                fieldEpoch = ++lastEpoch;
+                arrayEpoch = ++lastEpoch;
+            }
+            BasicBlock block = program.basicBlockAt(v);
+            for (int i = 0; i < block.getPhis().size(); ++i) {
+                Phi phi = block.getPhis().get(i);
+                int sharedValue = -2;
+                for (Incoming incoming : phi.getIncomings()) {
+                    int value = map[incoming.getValue().getIndex()];
+                    incoming.setValue(program.variableAt(value));
+                    if (sharedValue != -2 && sharedValue != incoming.getValue().getIndex()) {
+                        sharedValue = -1;
+                    } else {
+                        sharedValue = incoming.getValue().getIndex();
+                    }
+                }
+                if (sharedValue == -1) {
+                    for (int j = 0; j < i; ++j) {
+                        Phi other = block.getPhis().get(j);
+                        if (congruent(phi, other)) {
+                            sharedValue = other.getReceiver().getIndex();
+                            break;
+                        }
+                    }
+                }
+                if (sharedValue >= 0) {
+                    map[phi.getReceiver().getIndex()] = sharedValue;
+                    block.getPhis().remove(i--);
+                }
+            }
+            for (int i = 0; i < block.getInstructions().size(); ++i) {
+                Instruction currentInsn = block.getInstructions().get(i);
+                currentInsn.acceptVisitor(optimizer);
+                if (eliminate) {
+                    block.getInstructions().remove(i--);
+                    eliminate = false;
+                }
+            }
+            blockFieldEpochs[v] = fieldEpoch;
+            blockArrayEpochs[v] = arrayEpoch;
+            for (int i = 0; i < dom.outgoingEdgesCount(v); ++i) {
+                stack[top++] = dom.outgoingEdge(v, i);
+            }
+        }
+        for (int v = 0; v < program.basicBlockCount(); ++v) {
+            BasicBlock block = program.basicBlockAt(v);
+            for (int i = 0; i < block.getPhis().size(); ++i) {
+                Phi phi = block.getPhis().get(i);
+                for (Incoming incoming : phi.getIncomings()) {
+                    int value = map[incoming.getValue().getIndex()];
+                    incoming.setValue(program.variableAt(value));
+                }
+            }
+        }
+
+        for (int i = 0; i < map.length; ++i) {
+            if (map[i] != i) {
+                program.deleteVariable(i);
+            }
+        }
+
+        program.pack();
+        program = null;
+    }
+
+    private static boolean congruent(Phi phi, Phi other) {
+        if (phi.getIncomings().size() != other.getIncomings().size()) {
+            return false;
+        }
+        outer: for (Incoming incoming : phi.getIncomings()) {
+            for (Incoming otherIncoming : other.getIncomings()) {
+                if (otherIncoming.getSource() == incoming.getSource()) {
+                    if (otherIncoming.getValue() != incoming.getValue()) {
+                        return false;
+                    }
+                    continue outer;
+                }
+            }
+            return false;
+        }
+        return true;
+    }
+
+    private int mapVar(Variable var) {
+        return map[var.getIndex()];
+    }
+
+    private void bind(Variable var, int kind, int a, int b, int c, Object extra) {
+        int known = table.lookup(kind, a, b, c, extra);
+        if (known >= 0 && domTree.dominates(table.location(known), currentBlockIndex)) {
+            eliminate = true;
+            map[var.getIndex()] = table.value(known);
+        } else {
+            table.store(known, kind, a, b, c, extra, var.getIndex(), currentBlockIndex);
+        }
+    }
+
+    private void record(int value, int kind, int a, int b, int c, Object extra) {
+        int known = table.lookup(kind, a, b, c, extra);
+        table.store(known, kind, a, b, c, extra, value, currentBlockIndex);
+    }
+
+    private void invalidateMemory() {
+        fieldEpoch = ++lastEpoch;
+        arrayEpoch = ++lastEpoch;
+    }
+
+    private static boolean isCommutative(BinaryOperation op) {
+        switch (op) {
+            case ADD:
+            case MULTIPLY:
+            case AND:
+            case OR:
+            case XOR:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * <p>Hash table with open addressing, keyed by an opcode, three integers and an optional object.
+     * Keys and values are held in parallel arrays, so that lookups do not allocate.</p>
+     */
+    static class ValueTable {
+        private int[] kinds = new int[64];
+        private int[] firsts = new int[64];
+        private int[] seconds = new int[64];
+        private int[] thirds = new int[64];
+        private Object[] extras = new Object[64];
+        private int[] values = new int[64];
+        private int[] locations = new int[64];
+        private int size;
+        private int lastSlot;
+
+        void clear() {
+            Arrays.fill(kinds, 0);
+            Arrays.fill(extras, null);
+            size = 0;
+        }
+
+        int lookup(int kind, int a, int b, int c, Object extra) {
+            int mask = kinds.length - 1;
+            int slot = hash(kind, a, b, c, extra) & mask;
+            while (kinds[slot] != 0) {
+                if (kinds[slot] == kind && firsts[slot] == a && seconds[slot] == b && thirds[slot] == c &&
+                        (extra == null ? extras[slot] == null : extra.equals(extras[slot]))) {
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+            lastSlot = slot;
+            return -1;
+        }
+
+        int value(int slot) {
+            return values[slot];
+        }
+
+        int location(int slot) {
+            return locations[slot];
+        }
+
+        void store(int slot, int kind, int a, int b, int c, Object extra, int value, int location) {
+            if (slot < 0) {
+                if ((size + 1) * 2 > kinds.length) {
+                    grow();
+                    lookup(kind, a, b, c, extra);
+                }
+                slot = lastSlot;
+                kinds[slot] = kind;
+                firsts[slot] = a;
+                seconds[slot] = b;
+                thirds[slot] = c;
+                extras[slot] = extra;
+                ++size;
+            }
+            values[slot] = value;
+            locations[slot] = location;
+        }
+
+        private void grow() {
+            int[] oldKinds = kinds;
+            int[] oldFirsts = firsts;
+            int[] oldSeconds = seconds;
+            int[] oldThirds = thirds;
+            Object[] oldExtras = extras;
+            int[] oldValues = values;
+            int[] oldLocations = locations;
+            int capacity = oldKinds.length * 2;
+            kinds = new int[capacity];
+            firsts = new int[capacity];
+            seconds = new int[capacity];
+            thirds = new int[capacity];
+            extras = new Object[capacity];
+            values = new int[capacity];
+            locations = new int[capacity];
+            for (int i = 0; i < oldKinds.length; ++i) {
+                if (oldKinds[i] != 0) {
+                    lookup(oldKinds[i], oldFirsts[i], oldSeconds[i], oldThirds[i], oldExtras[i]);
+                    int slot = lastSlot;
+                    kinds[slot] = oldKinds[i];
+                    firsts[slot] = oldFirsts[i];
+                    seconds[slot] = oldSeconds[i];
+                    thirds[slot] = oldThirds[i];
+                    extras[slot] = oldExtras[i];
+                    values[slot] = oldValues[i];
+                    locations[slot] = oldLocations[i];
+                }
+            }
+        }
+
+        private static int hash(int kind, int a, int b, int c, Object extra) {
+            int h = kind;
+            h = h * 31 + a;
+            h = h * 31 + b;
+            h = h * 31 + c;
+            h = h * 31 + (extra != null ? extra.hashCode() : 0);
+            h ^= h >>> 16;
+            h *= 0x85EBCA6B;
+            h ^= h >>> 13;
+            return h;
+        }
+    }
+
+    private InstructionVisitor optimizer = new InstructionVisitor() {
+        @Override
+        public void visit(EmptyInstruction insn) {
+        }
+
+        @Override
+        public void visit(ClassConstantInstruction insn) {
+        }
+
+        @Override
+        public void visit(NullConstantInstruction insn) {
+        }
+
+        @Override
+        public void visit(IntegerConstantInstruction insn) {
+        }
+
+        @Override
+        public void visit(LongConstantInstruction insn) {
+        }
+
+        @Override
+        public void visit(FloatConstantInstruction insn) {
+        }
+
+        @Override
+        public void visit(DoubleConstantInstruction insn) {
+        }
+
+        @Override
+        public void visit(StringConstantInstruction insn) {
+        }
+
+        @Override
+        public void visit(BinaryInstruction insn) {
+            int a = mapVar(insn.getFirstOperand());
+            int b = mapVar(insn.getSecondOperand());
+            insn.setFirstOperand(program.variableAt(a));
+            insn.setSecondOperand(program.variableAt(b));
+            if (isCommutative(insn.getOperation()) && a > b) {
+                int tmp = a;
+                a = b;
+                b = tmp;
+            }
+            int kind = BINARY | (insn.getOperation().ordinal() << 4) | insn.getOperandType().ordinal();
+            bind(insn.getReceiver(), kind, a, b, 0, null);
+        }
+
+        @Override
+        public void visit(NegateInstruction insn) {
+            int a = mapVar(insn.getOperand());
+            insn.setOperand(program.variableAt(a));
+            bind(insn.getReceiver(), NEGATE | insn.getOperandType().ordinal(), a, 0, 0, null);
+        }
+
+        @Override
+        public void visit(AssignInstruction insn) {
+            map[insn.getReceiver().getIndex()] = mapVar(insn.getAssignee());
+            eliminate = true;
+        }
+
+        @Override
+        public void visit(CastInstruction insn) {
+            int a = mapVar(insn.getValue());
+            insn.setValue(program.variableAt(a));
+            bind(insn.getReceiver(), CAST, a, 0, 0, insn.getTargetType());
+        }
+
+        @Override
+        public void visit(CastNumberInstruction insn) {
+            int a = mapVar(insn.getValue());
+            insn.setValue(program.variableAt(a));
+            int kind = CAST_NUMBER | (insn.getSourceType().ordinal() << 4) | insn.getTargetType().ordinal();
+            bind(insn.getReceiver(), kind, a, 0, 0, null);
+        }
+
+        @Override
+        public void visit(CastIntegerInstruction insn) {
+            int a = mapVar(insn.getValue());
+            insn.setValue(program.variableAt(a));
+            int kind = CAST_INTEGER | (insn.getTargetType().ordinal() << 4) | insn.getDirection().ordinal();
+            bind(insn.getReceiver(), kind, a, 0, 0, null);
+        }
+
+        @Override
+        public void visit(BranchingInstruction insn) {
+            insn.setOperand(program.variableAt(mapVar(insn.getOperand())));
+        }
+
+        @Override
+        public void visit(BinaryBranchingInstruction insn) {
+            insn.setFirstOperand(program.variableAt(mapVar(insn.getFirstOperand())));
+            insn.setSecondOperand(program.variableAt(mapVar(insn.getSecondOperand())));
+        }
+
+        @Override
+        public void visit(JumpInstruction insn) {
+        }
+
+        @Override
+        public void visit(SwitchInstruction insn) {
+            insn.setCondition(program.variableAt(mapVar(insn.getCondition())));
+        }
+
+        @Override
+        public void visit(ExitInstruction insn) {
+            if (insn.getValueToReturn() != null) {
+                insn.setValueToReturn(program.variableAt(mapVar(insn.getValueToReturn())));
+            }
+        }
+
+        @Override
+        public void visit(RaiseInstruction insn) {
+            insn.setException(program.variableAt(mapVar(insn.getException())));
+        }
+
+        @Override
+        public void visit(ConstructArrayInstruction insn) {
+            insn.setSize(program.variableAt(mapVar(insn.getSize())));
+        }
+
+        @Override
+        public void visit(ConstructInstruction insn) {
+        }
+
+        @Override
+        public void visit(ConstructMultiArrayInstruction insn) {
+            for (int i = 0; i < insn.getDimensions().size(); ++i) {
+                insn.getDimensions().set(i, program.variableAt(mapVar(insn.getDimensions().get(i))));
+            }
+        }
+
+        @Override
+        public void visit(GetFieldInstruction insn) {
+            int instance = -1;
+            if (insn.getInstance() != null) {
+                instance = mapVar(insn.getInstance());
+                insn.setInstance(program.variableAt(instance));
+            }
+            bind(insn.getReceiver(), GET_FIELD, instance, 0, fieldEpoch, insn.getField());
+        }
+
+        @Override
+        public void visit(PutFieldInstruction insn) {
+            int instance = -1;
+            if (insn.getInstance() != null) {
+                instance = mapVar(insn.getInstance());
+                insn.setInstance(program.variableAt(instance));
+            }
+            int val = mapVar(insn.getValue());
+            insn.setValue(program.variableAt(val));
+            fieldEpoch = ++lastEpoch;
+            record(val, GET_FIELD, instance, 0, fieldEpoch, insn.getField());
+        }
+
+        @Override
+        public void visit(ArrayLengthInstruction insn) {
+            int a = mapVar(insn.getArray());
+            insn.setArray(program.variableAt(a));
+            bind(insn.getReceiver(), ARRAY_LENGTH, a, 0, 0, null);
+        }
+
+        @Override
+        public void visit(CloneArrayInstruction insn) {
+            insn.setArray(program.variableAt(mapVar(insn.getArray())));
+        }
+
+        @Override
+        public void visit(UnwrapArrayInstruction insn) {
+            int a = mapVar(insn.getArray());
+            insn.setArray(program.variableAt(a));
+            switch (insn.getElementType()) {
+                case INT:
+                case LONG:
+                case DOUBLE:
+                case OBJECT:
+                    exactArrays[insn.getReceiver().getIndex()] = true;
+                    break;
+                default:
+                    break;
+            }
+            bind(insn.getReceiver(), UNWRAP_ARRAY | insn.getElementType().ordinal(), a, 0, 0, null);
+        }
+
+        @Override
+        public void visit(GetElementInstruction insn) {
+            int a = mapVar(insn.getArray());
+            insn.setArray(program.variableAt(a));
+            int index = mapVar(insn.getIndex());
+            insn.setIndex(program.variableAt(index));
+            bind(insn.getReceiver(), GET_ELEMENT, a, index, arrayEpoch, null);
+        }
+
+        @Override
+        public void visit(PutElementInstruction insn) {
+            int a = mapVar(insn.getArray());
+            insn.setArray(program.variableAt(a));
+            int index = mapVar(insn.getIndex());
+            insn.setIndex(program.variableAt(index));
+            int val = mapVar(insn.getValue());
+            insn.setValue(program.variableAt(val));
+            arrayEpoch = ++lastEpoch;
+            if (exactArrays[a]) {
+                record(val, GET_ELEMENT, a, index, arrayEpoch, null);
+            }
+        }
+
+        @Override
+        public void visit(InvokeInstruction insn) {
+            if (insn.getInstance() != null) {
+                insn.setInstance(program.variableAt(mapVar(insn.getInstance())));
+            }
+            for (int i = 0; i < insn.getArguments().size(); ++i) {
+                insn.getArguments().set(i, program.variableAt(mapVar(insn.getArguments().get(i))));
+            }
+            invalidateMemory();
+        }
+
+        @Override
+        public void visit(IsInstanceInstruction insn) {
+            int val = mapVar(insn.getValue());
+            insn.setValue(program.variableAt(val));
+            bind(insn.getReceiver(), IS_INSTANCE, val, 0, 0, insn.getType());
+        }
+
+        @Override
+        public void visit(InitClassInstruction insn) {
+            invalidateMemory();
+        }
+    };
+}
@@ -0,0 +1,428 @@
+/*
+ *  Copyright 2014 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.optimization;
+
+import java.util.*;
+import org.teavm.common.GraphBuilder;
+import org.teavm.common.GraphUtils;
+import org.teavm.javascript.ni.GeneratedBy;
+import org.teavm.javascript.ni.InjectedBy;
+import org.teavm.model.*;
+import org.teavm.model.instructions.*;
+import org.teavm.model.util.InstructionTransitionExtractor;
+import org.teavm.model.util.ProgramUtils;
+
+/**
+ * <p>Replaces invocations of small methods by copies of their bodies. Only calls that can be
+ * resolved statically are inlined: static methods, <code>invokespecial</code> targets and virtual
+ * methods that are not overridden by any class of the class set.</p>
+ *
+ * <p>An inlined body does not dereference the receiver by itself, so unless the receiver is known to be
+ * non-null, the inlined body is guarded by a null check that leads to the original invocation.</p>
+ *
+ * <p>Methods must be optimized in the order given by {@link #getOrder()}, so that callees
+ * already contain their own inlined calls. Calls inside a strongly connected component
+ * of the call graph are never inlined.</p>
+ *
+ * @author Alexey Andreev <konsoletyper@gmail.com>
+ */
+public class Inlining implements MethodOptimization {
+    private static final int MAX_CALLEE_SIZE = 20;
+    private static final int MAX_CALLER_SIZE = 1024;
+    private static final int MAX_DEPTH = 3;
+    private ListableClassHolderSource classSource;
+    private Map<String, List<String>> subclasses = new HashMap<>();
+    private List<MethodHolder> methods = new ArrayList<>();
+    private Map<MethodReference, Integer> methodIndexes = new HashMap<>();
+    private List<MethodHolder> order = new ArrayList<>();
+    private int[] components;
+    private int[] depths;
+    private InstructionTransitionExtractor transitionExtractor = new InstructionTransitionExtractor();
+
+    public Inlining(ListableClassHolderSource classSource) {
+        this.classSource = classSource;
+        List<String> classNames = new ArrayList<>(classSource.getClassNames());
+        Collections.sort(classNames);
+        for (String className : classNames) {
+            ClassHolder cls = classSource.getClassHolder(className);
+            if (cls.getParent() != null) {
+                List<String> children = subclasses.get(cls.getParent());
+                if (children == null) {
+                    children = new ArrayList<>();
+                    subclasses.put(cls.getParent(), children);
+                }
+                children.add(className);
+            }
+            List<MethodHolder> clsMethods = new ArrayList<>(cls.getMethods());
+            Collections.sort(clsMethods, new Comparator<MethodHolder>() {
+                @Override
+                public int compare(MethodHolder o1, MethodHolder o2) {
+                    return o1.getDescriptor().toString().compareTo(o2.getDescriptor().toString());
+                }
+            });
+            for (MethodHolder method : clsMethods) {
+                if (method.getProgram() != null && method.getProgram().basicBlockCount() > 0) {
+                    methodIndexes.put(method.getReference(), methods.size());
+                    methods.add(method);
+                }
+            }
+        }
+        buildOrder();
+    }
+
+    private void buildOrder() {
+        GraphBuilder callGraph = new GraphBuilder(methods.size());
+        for (int i = 0; i < methods.size(); ++i) {
+            Program program = methods.get(i).getProgram();
+            for (int j = 0; j < program.basicBlockCount(); ++j) {
+                for (Instruction insn : program.basicBlockAt(j).getInstructions()) {
+                    if (!(insn instanceof InvokeInstruction)) {
+                        continue;
+                    }
+                    MethodHolder callee = resolve((InvokeInstruction)insn);
+                    Integer calleeIndex = callee != null ? methodIndexes.get(callee.getReference()) : null;
+                    if (calleeIndex != null) {
+                        callGraph.addEdge(i, calleeIndex);
+                    }
+                }
+            }
+        }
+        components = new int[methods.size()];
+        depths = new int[methods.size()];
+        int[][] sccs = GraphUtils.findStronglyConnectedComponents(callGraph.build());
+        for (int i = 0; i < sccs.length; ++i) {
+            for (int node : sccs[i]) {
+                components[node] = i;
+                order.add(methods.get(node));
+            }
+        }
+    }
+
+    /**
+     * <p>Gets all methods of the class set that have bodies, callees first.</p>
+     */
+    public List<MethodHolder> getOrder() {
+        return order;
+    }
+
+    @Override
+    public void optimize(MethodReader method, Program program) {
+        Integer index = methodIndexes.get(method.getReference());
+        if (index == null) {
+            return;
+        }
+        int size = sizeOf(program);
+        boolean[] nonNull = findNonNullVariables(method, program);
+        List<BasicBlock> blocks = new ArrayList<>();
+        for (int i = 0; i < program.basicBlockCount(); ++i) {
+            blocks.add(program.basicBlockAt(i));
+        }
+        for (int i = 0; i < blocks.size(); ++i) {
+            BasicBlock block = blocks.get(i);
+            List<Instruction> instructions = block.getInstructions();
+            for (int j = 0; j < instructions.size(); ++j) {
+                Instruction insn = instructions.get(j);
+                if (!(insn instanceof InvokeInstruction)) {
+                    continue;
+                }
+                InvokeInstruction invoke = (InvokeInstruction)insn;
+                MethodHolder callee = resolve(invoke);
+                if (callee == null || !isInlinable(callee)) {
+                    continue;
+                }
+                Integer calleeIndex = methodIndexes.get(callee.getReference());
+                if (calleeIndex == null || components[calleeIndex] == components[index] ||
+                        depths[calleeIndex] >= MAX_DEPTH) {
+                    continue;
+                }
+                int calleeSize = sizeOf(callee.getProgram());
+                if (calleeSize > MAX_CALLEE_SIZE || size + calleeSize > MAX_CALLER_SIZE) {
+                    continue;
+                }
+                Variable instance = invoke.getInstance();
+                boolean nullChecked = instance != null &&
+                        (instance.getIndex() >= nonNull.length || !nonNull[instance.getIndex()]);
+                blocks.add(inline(method, block, j, invoke, callee, nullChecked));
+                size += calleeSize;
+                depths[index] = Math.max(depths[index], depths[calleeIndex] + 1);
+                break;
+            }
+        }
+    }
+
+    private boolean[] findNonNullVariables(MethodReader method, Program program) {
+        boolean[] nonNull = new boolean[program.variableCount()];
+        if (!method.hasModifier(ElementModifier.STATIC) && nonNull.length > 0) {
+            nonNull[0] = true;
+        }
+        boolean changed;
+        do {
+            changed = false;
+            for (int i = 0; i < program.basicBlockCount(); ++i) {
+                BasicBlock block = program.basicBlockAt(i);
+                for (Phi phi : block.getPhis()) {
+                    if (nonNull[phi.getReceiver().getIndex()] || phi.getIncomings().isEmpty()) {
+                        continue;
+                    }
+                    boolean allNonNull = true;
+                    for (Incoming incoming : phi.getIncomings()) {
+                        if (!nonNull[incoming.getValue().getIndex()]) {
+                            allNonNull = false;
+                            break;
+                        }
+                    }
+                    if (allNonNull) {
+                        nonNull[phi.getReceiver().getIndex()] = true;
+                        changed = true;
+                    }
+                }
+                for (Instruction insn : block.getInstructions()) {
+                    Variable receiver = null;
+                    if (insn instanceof ConstructInstruction) {
+                        receiver = ((ConstructInstruction)insn).getReceiver();
+                    } else if (insn instanceof AssignInstruction) {
+                        AssignInstruction assign = (AssignInstruction)insn;
+                        if (nonNull[assign.getAssignee().getIndex()]) {
+                            receiver = assign.getReceiver();
+                        }
+                    }
+                    if (receiver != null && !nonNull[receiver.getIndex()]) {
+                        nonNull[receiver.getIndex()] = true;
+                        changed = true;
+                    }
+                }
+            }
+        } while (changed);
+        return nonNull;
+    }
+
+    private BasicBlock inline(MethodReader caller, BasicBlock block, int position, InvokeInstruction invoke,
+            MethodHolder callee, boolean nullChecked) {
+        Program program = block.getProgram();
+        Program calleeProgram = callee.getProgram();
+
+        // Move instructions following the invocation to a new block
+        BasicBlock continuation = program.createBasicBlock();
+        List<Instruction> instructions = block.getInstructions();
+        while (instructions.size() > position + 1) {
+            continuation.getInstructions().add(instructions.remove(position + 1));
+        }
+        instructions.remove(position);
+        continuation.getLastInstruction().acceptVisitor(transitionExtractor);
+        if (transitionExtractor.getTargets() != null) {
+            for (BasicBlock successor : transitionExtractor.getTargets()) {
+                for (Phi phi : successor.getPhis()) {
+                    for (Incoming incoming : phi.getIncomings()) {
+                        if (incoming.getSource() == block) {
+                            incoming.setSource(continuation);
+                        }
+                    }
+                }
+            }
+        }
+
+        // Parameters of the callee become arguments of the invocation, `this` becomes the instance
+        Variable[] variableMap = new Variable[calleeProgram.variableCount()];
+        variableMap[0] = invoke.getInstance();
+        for (int i = 0; i < invoke.getArguments().size(); ++i) {
+            variableMap[i + 1] = invoke.getArguments().get(i);
+        }
+        for (int i = invoke.getArguments().size() + 1; i < variableMap.length; ++i) {
+            variableMap[i] = program.createVariable();
+        }
+        BasicBlock[] blockMap = new BasicBlock[calleeProgram.basicBlockCount()];
+        for (int i = 0; i < blockMap.length; ++i) {
+            blockMap[i] = program.createBasicBlock();
+        }
+
+        // Copy the body, replacing returns by jumps to the continuation
+        List<Incoming> results = new ArrayList<>();
+        for (int i = 0; i < blockMap.length; ++i) {
+            BasicBlock calleeBlock = calleeProgram.basicBlockAt(i);
+            BasicBlock blockCopy = blockMap[i];
+            for (Instruction insn : calleeBlock.getInstructions()) {
+                if (insn instanceof ExitInstruction) {
+                    ExitInstruction exit = (ExitInstruction)insn;
+                    if (invoke.getReceiver() != null && exit.getValueToReturn() != null) {
+                        Incoming result = new Incoming();
+                        result.setSource(blockCopy);
+                        result.setValue(variableMap[exit.getValueToReturn().getIndex()]);
+                        results.add(result);
+                    }
+                    JumpInstruction jump = new JumpInstruction();
+                    jump.setTarget(continuation);
+                    blockCopy.getInstructions().add(jump);
+                } else {
+                    blockCopy.getInstructions().add(ProgramUtils.copyInstruction(insn, variableMap, blockMap));
+                }
+            }
+            for (Phi phi : calleeBlock.getPhis()) {
+                Phi phiCopy = new Phi();
+                phiCopy.setReceiver(variableMap[phi.getReceiver().getIndex()]);
+                for (Incoming incoming : phi.getIncomings()) {
+                    Incoming incomingCopy = new Incoming();
+                    incomingCopy.setSource(blockMap[incoming.getSource().getIndex()]);
+                    incomingCopy.setValue(variableMap[incoming.getValue().getIndex()]);
+                    phiCopy.getIncomings().add(incomingCopy);
+                }
+                blockCopy.getPhis().add(phiCopy);
+            }
+        }
+        // On a null receiver the original call is performed virtually, so that it fails as it would
+        // without inlining
+        BasicBlock nullBlock = null;
+        if (nullChecked) {
+            nullBlock = program.createBasicBlock();
+            InvokeInstruction call = new InvokeInstruction();
+            call.setType(InvocationType.VIRTUAL);
+            call.setMethod(invoke.getMethod());
+            call.setInstance(invoke.getInstance());
+            call.getArguments().addAll(invoke.getArguments());
+            if (invoke.getReceiver() != null) {
+                call.setReceiver(program.createVariable());
+                Incoming result = new Incoming();
+                result.setSource(nullBlock);
+                result.setValue(call.getReceiver());
+                results.add(result);
+            }
+            nullBlock.getInstructions().add(call);
+            JumpInstruction jump = new JumpInstruction();
+            jump.setTarget(continuation);
+            nullBlock.getInstructions().add(jump);
+        }
+        if (results.size() == 1) {
+            Incoming result = results.get(0);
+            AssignInstruction assign = new AssignInstruction();
+            assign.setAssignee(result.getValue());
+            assign.setReceiver(invoke.getReceiver());
+            List<Instruction> resultInstructions = result.getSource().getInstructions();
+            resultInstructions.add(resultInstructions.size() - 1, assign);
+        } else if (results.size() > 1) {
+            Phi phi = new Phi();
+            phi.setReceiver(invoke.getReceiver());
+            phi.getIncomings().addAll(results);
+            continuation.getPhis().add(phi);
+        }
+
+        if (requiresInitialization(caller, callee)) {
+            InitClassInstruction initInsn = new InitClassInstruction();
+            initInsn.setClassName(callee.getOwnerName());
+            instructions.add(initInsn);
+        }
+        if (nullBlock != null) {
+            BranchingInstruction nullCheck = new BranchingInstruction(BranchingCondition.NULL);
+            nullCheck.setOperand(invoke.getInstance());
+            nullCheck.setConsequent(nullBlock);
+            nullCheck.setAlternative(blockMap[0]);
+            instructions.add(nullCheck);
+        } else {
+            JumpInstruction jumpToCallee = new JumpInstruction();
+            jumpToCallee.setTarget(blockMap[0]);
+            instructions.add(jumpToCallee);
+        }
+        return continuation;
+    }
+
+    private boolean requiresInitialization(MethodReader caller, MethodHolder callee) {
+        if (callee.getOwnerName().equals(caller.getOwnerName())) {
+            return false;
+        }
+        if (!callee.getModifiers().contains(ElementModifier.STATIC) && !callee.getName().equals("<init>")) {
+            return false;
+        }
+        ClassHolder cls = classSource.getClassHolder(callee.getOwnerName());
+        return cls.getMethod(MethodDescriptor.get("<clinit>", ValueType.VOID)) != null;
+    }
+
+    private boolean isInlinable(MethodHolder method) {
+        if (method.getModifiers().contains(ElementModifier.NATIVE) ||
+                method.getModifiers().contains(ElementModifier.ABSTRACT) ||
+                method.getAnnotations().get(InjectedBy.class.getName()) != null ||
+                method.getAnnotations().get(GeneratedBy.class.getName()) != null) {
+            return false;
+        }
+        Program program = method.getProgram();
+        if (program == null || program.basicBlockCount() == 0) {
+            return false;
+        }
+        for (int i = 0; i < program.basicBlockCount(); ++i) {
+            if (program.basicBlockAt(i).getLastInstruction() instanceof ExitInstruction) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private MethodHolder resolve(InvokeInstruction invoke) {
+        MethodReference ref = invoke.getMethod();
+        if (invoke.getType() == InvocationType.SPECIAL) {
+            return findMethod(ref.getClassName(), ref.getDescriptor());
+        }
+        ClassHolder cls = classSource.getClassHolder(ref.getClassName());
+        if (cls == null || cls.getModifiers().contains(ElementModifier.INTERFACE)) {
+            return null;
+        }
+        MethodHolder method = findMethod(ref.getClassName(), ref.getDescriptor());
+        if (method == null) {
+            return null;
+        }
+        if (method.getLevel() == AccessLevel.PRIVATE || method.getModifiers().contains(ElementModifier.FINAL) ||
+                cls.getModifiers().contains(ElementModifier.FINAL)) {
+            return method;
+        }
+        return isOverridden(cls.getName(), ref.getDescriptor()) ? null : method;
+    }
+
+    private MethodHolder findMethod(String className, MethodDescriptor descriptor) {
+        while (className != null) {
+            ClassHolder cls = classSource.getClassHolder(className);
+            if (cls == null) {
+                return null;
+            }
+            MethodHolder method = cls.getMethod(descriptor);
+            if (method != null) {
+                return method;
+            }
+            className = cls.getParent();
+        }
+        return null;
+    }
+
+    private boolean isOverridden(String className, MethodDescriptor descriptor) {
+        List<String> children = subclasses.get(className);
+        if (children == null) {
+            return false;
+        }
+        for (String child : children) {
+            MethodHolder method = classSource.getClassHolder(child).getMethod(descriptor);
+            if (method != null && !method.getModifiers().contains(ElementModifier.ABSTRACT)) {
+                return true;
+            }
+            if (isOverridden(child, descriptor)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int sizeOf(Program program) {
+        int size = 0;
+        for (int i = 0; i < program.basicBlockCount(); ++i) {
+            size += program.basicBlockAt(i).getInstructions().size();
+        }
+        return size;
+    }
+}
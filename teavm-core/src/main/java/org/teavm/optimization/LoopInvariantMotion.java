@@ -0,0 +1,302 @@
+/*
+ *  Copyright 2014 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.optimization;
+
+import java.util.*;
+import org.teavm.common.*;
+import org.teavm.model.*;
+import org.teavm.model.instructions.*;
+import org.teavm.model.util.BasicBlockMapper;
+import org.teavm.model.util.DefinitionExtractor;
+import org.teavm.model.util.UsageExtractor;
+
+/**
+ * <p>Moves loop-invariant instructions without side effects to loop preheaders. Loops are
+ * processed from the innermost ones, so that an instruction may leave several loops at once.
+ * A preheader is created when the head of a loop has no single outer predecessor that
+ * jumps directly to it.</p>
+ *
+ * <p>Instructions that may fail, such as field reads or array length, are only moved
+ * from the loop head, before any instruction with side effects, since the head is always
+ * executed on loop entry. Field and array reads are only moved out of loops that neither
+ * write the same locations nor invoke methods other than pure ones. Fields are matched by name,
+ * since the same field may be referred to through different subclasses.</p>
+ *
+ * @author Alexey Andreev <konsoletyper@gmail.com>
+ */
+public class LoopInvariantMotion implements MethodOptimization {
+    private Program program;
+    private List<Loop> blockLoops = new ArrayList<>();
+    private Graph cfg;
+    private DefinitionExtractor definitionExtractor = new DefinitionExtractor();
+    private UsageExtractor usageExtractor = new UsageExtractor();
+
+    @Override
+    public void optimize(MethodReader method, Program program) {
+        this.program = program;
+        cfg = program.getAnalysisCache().getControlFlowGraph();
+        LoopGraph loopGraph = program.getAnalysisCache().getLoopGraph();
+        DominatorTree domTree = program.getAnalysisCache().getDominatorTree();
+        blockLoops.clear();
+        for (int i = 0; i < cfg.size(); ++i) {
+            blockLoops.add(loopGraph.loopAt(i));
+        }
+
+        List<Loop> loops = new ArrayList<>(Arrays.asList(loopGraph.knownLoops()));
+        final Map<Loop, Integer> depths = new HashMap<>();
+        for (Loop loop : loops) {
+            int depth = 0;
+            for (Loop parent = loop.getParent(); parent != null; parent = parent.getParent()) {
+                ++depth;
+            }
+            depths.put(loop, depth);
+        }
+        Collections.sort(loops, new Comparator<Loop>() {
+            @Override
+            public int compare(Loop o1, Loop o2) {
+                int cmp = depths.get(o2) - depths.get(o1);
+                return cmp != 0 ? cmp : o1.getHead() - o2.getHead();
+            }
+        });
+        for (Loop loop : loops) {
+            if (isReducible(loop, domTree)) {
+                hoist(loop);
+            }
+        }
+        this.program = null;
+    }
+
+    private boolean isReducible(Loop loop, DominatorTree domTree) {
+        for (int i = 0; i < cfg.size(); ++i) {
+            if (contains(loop, i) && !domTree.dominates(loop.getHead(), i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean contains(Loop loop, int block) {
+        Loop blockLoop = blockLoops.get(block);
+        return blockLoop != null && blockLoop.isChildOf(loop);
+    }
+
+    private void hoist(Loop loop) {
+        List<BasicBlock> blocks = new ArrayList<>();
+        for (int i = 0; i < program.basicBlockCount(); ++i) {
+            if (contains(loop, i)) {
+                blocks.add(program.basicBlockAt(i));
+            }
+        }
+
+        // Collect side effects of the loop and variables defined in it
+        boolean[] definedInLoop = new boolean[program.variableCount()];
+        boolean invokes = false;
+        boolean writesArrays = false;
+        Set<String> writtenFields = new HashSet<>();
+        for (BasicBlock block : blocks) {
+            for (Phi phi : block.getPhis()) {
+                definedInLoop[phi.getReceiver().getIndex()] = true;
+            }
+            for (Instruction insn : block.getInstructions()) {
+                insn.acceptVisitor(definitionExtractor);
+                for (Variable var : definitionExtractor.getDefinedVariables()) {
+                    definedInLoop[var.getIndex()] = true;
+                }
+                if (insn instanceof InvokeInstruction) {
+                    invokes |= !isPure(((InvokeInstruction)insn).getMethod());
+                } else if (insn instanceof InitClassInstruction) {
+                    invokes = true;
+                } else if (insn instanceof PutFieldInstruction) {
+                    writtenFields.add(((PutFieldInstruction)insn).getField().getFieldName());
+                } else if (insn instanceof PutElementInstruction) {
+                    writesArrays = true;
+                }
+            }
+        }
+
+        // Find invariant instructions, the order of discovery respects dependencies
+        BasicBlock head = program.basicBlockAt(loop.getHead());
+        List<Instruction> invariants = new ArrayList<>();
+        Set<Instruction> invariantSet = new HashSet<>();
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (BasicBlock block : blocks) {
+                boolean safe = block == head;
+                for (Instruction insn : block.getInstructions()) {
+                    if (invariantSet.contains(insn)) {
+                        continue;
+                    }
+                    Purity purity = getPurity(insn, invokes, writesArrays, writtenFields);
+                    if (purity != Purity.NONE && (purity == Purity.PURE || safe) &&
+                            hasInvariantOperands(insn, definedInLoop)) {
+                        invariants.add(insn);
+                        invariantSet.add(insn);
+                        insn.acceptVisitor(definitionExtractor);
+                        for (Variable var : definitionExtractor.getDefinedVariables()) {
+                            definedInLoop[var.getIndex()] = false;
+                        }
+                        changed = true;
+                    } else if (purity != Purity.PURE) {
+                        safe = false;
+                    }
+                }
+            }
+        }
+
+        // Constants are only moved along with instructions using them
+        Set<Variable> requiredConstants = new HashSet<>();
+        for (Instruction insn : invariants) {
+            if (!isConstant(insn)) {
+                insn.acceptVisitor(usageExtractor);
+                requiredConstants.addAll(Arrays.asList(usageExtractor.getUsedVariables()));
+            }
+        }
+        BasicBlock preheader = null;
+        for (Instruction insn : invariants) {
+            if (isConstant(insn)) {
+                insn.acceptVisitor(definitionExtractor);
+                if (!requiredConstants.contains(definitionExtractor.getDefinedVariables()[0])) {
+                    continue;
+                }
+            }
+            if (preheader == null) {
+                preheader = getPreheader(loop);
+            }
+            insn.getBasicBlock().getInstructions().remove(insn);
+            List<Instruction> preheaderInstructions = preheader.getInstructions();
+            preheaderInstructions.add(preheaderInstructions.size() - 1, insn);
+        }
+    }
+
+    private boolean hasInvariantOperands(Instruction insn, boolean[] definedInLoop) {
+        insn.acceptVisitor(usageExtractor);
+        for (Variable var : usageExtractor.getUsedVariables()) {
+            if (definedInLoop[var.getIndex()]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private BasicBlock getPreheader(Loop loop) {
+        final BasicBlock head = program.basicBlockAt(loop.getHead());
+        List<BasicBlock> outerPredecessors = new ArrayList<>();
+        for (int i = 0; i < cfg.incomingEdgesCount(loop.getHead()); ++i) {
+            int pred = cfg.incomingEdge(loop.getHead(), i);
+            if (!contains(loop, pred)) {
+                outerPredecessors.add(program.basicBlockAt(pred));
+            }
+        }
+        if (outerPredecessors.size() == 1) {
+            BasicBlock pred = outerPredecessors.get(0);
+            if (pred.getLastInstruction() instanceof JumpInstruction) {
+                return pred;
+            }
+        }
+
+        final BasicBlock preheader = program.createBasicBlock();
+        blockLoops.add(loop.getParent());
+        JumpInstruction jump = new JumpInstruction();
+        jump.setTarget(head);
+        preheader.getInstructions().add(jump);
+        BasicBlockMapper mapper = new BasicBlockMapper() {
+            @Override
+            protected BasicBlock map(BasicBlock block) {
+                return block == head ? preheader : block;
+            }
+        };
+        for (BasicBlock pred : outerPredecessors) {
+            pred.getLastInstruction().acceptVisitor(mapper);
+        }
+        for (Phi phi : head.getPhis()) {
+            List<Incoming> outerIncomings = new ArrayList<>();
+            for (int i = 0; i < phi.getIncomings().size(); ++i) {
+                Incoming incoming = phi.getIncomings().get(i);
+                if (outerPredecessors.contains(incoming.getSource())) {
+                    outerIncomings.add(incoming);
+                    phi.getIncomings().remove(i--);
+                }
+            }
+            Incoming preheaderIncoming = new Incoming();
+            preheaderIncoming.setSource(preheader);
+            if (outerIncomings.size() == 1) {
+                preheaderIncoming.setValue(outerIncomings.get(0).getValue());
+            } else {
+                Phi preheaderPhi = new Phi();
+                preheaderPhi.setReceiver(program.createVariable());
+                preheaderPhi.getIncomings().addAll(outerIncomings);
+                preheader.getPhis().add(preheaderPhi);
+                preheaderIncoming.setValue(preheaderPhi.getReceiver());
+            }
+            phi.getIncomings().add(preheaderIncoming);
+        }
+        return preheader;
+    }
+
+    private static boolean isConstant(Instruction insn) {
+        return insn instanceof IntegerConstantInstruction || insn instanceof LongConstantInstruction ||
+                insn instanceof FloatConstantInstruction || insn instanceof DoubleConstantInstruction ||
+                insn instanceof StringConstantInstruction || insn instanceof ClassConstantInstruction ||
+                insn instanceof NullConstantInstruction;
+    }
+
+    private static boolean isPure(MethodReference method) {
+        return method.getClassName().equals("java.lang.Math") && !method.getName().equals("random");
+    }
+
+    private enum Purity {
+        PURE,
+        MAY_FAIL,
+        NONE
+    }
+
+    private static Purity getPurity(Instruction insn, boolean invokes, boolean writesArrays,
+            Set<String> writtenFields) {
+        if (isConstant(insn) || insn instanceof NegateInstruction || insn instanceof CastNumberInstruction ||
+                insn instanceof CastIntegerInstruction || insn instanceof IsInstanceInstruction ||
+                insn instanceof AssignInstruction) {
+            return Purity.PURE;
+        } else if (insn instanceof BinaryInstruction) {
+            BinaryInstruction binary = (BinaryInstruction)insn;
+            if (binary.getOperandType() == NumericOperandType.LONG) {
+                switch (binary.getOperation()) {
+                    case DIVIDE:
+                    case MODULO:
+                        return Purity.MAY_FAIL;
+                    default:
+                        break;
+                }
+            }
+            return Purity.PURE;
+        } else if (insn instanceof CastInstruction || insn instanceof ArrayLengthInstruction ||
+                insn instanceof UnwrapArrayInstruction) {
+            return Purity.MAY_FAIL;
+        } else if (insn instanceof GetFieldInstruction) {
+            GetFieldInstruction getField = (GetFieldInstruction)insn;
+            if (invokes || writtenFields.contains(getField.getField().getFieldName())) {
+                return Purity.NONE;
+            }
+            return getField.getInstance() == null ? Purity.PURE : Purity.MAY_FAIL;
+        } else if (insn instanceof GetElementInstruction) {
+            return invokes || writesArrays ? Purity.NONE : Purity.MAY_FAIL;
+        } else if (insn instanceof InvokeInstruction) {
+            InvokeInstruction invoke = (InvokeInstruction)insn;
+            return invoke.getInstance() == null && isPure(invoke.getMethod()) ? Purity.PURE : Purity.NONE;
+        }
+        return Purity.NONE;
+    }
+}
@@ -0,0 +1,408 @@
+/*
+ *  Copyright 2014 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.optimization;
+
+import java.util.*;
+import org.teavm.common.DominatorTree;
+import org.teavm.common.Graph;
+import org.teavm.common.GraphBuilder;
+import org.teavm.model.*;
+import org.teavm.model.instructions.*;
+import org.teavm.model.util.UsageExtractor;
+
+/**
+ * <p>Replaces objects that never escape a method by a set of local variables, one per field.
+ * An object does not escape if it is only used as an instance of field reads and writes
+ * and of the <code>java.lang.Object</code> constructor, which is dropped. So this optimization
+ * should run after inlining has substituted constructors of such objects.</p>
+ *
+ * <p>Fields are turned into SSA variables the same way the parser does it for local variables:
+ * phis are placed at the dominance frontiers of writes and variables are renamed along
+ * the dominator tree of the block that constructs the object.</p>
+ *
+ * @author Alexey Andreev <konsoletyper@gmail.com>
+ */
+public class ScalarReplacement implements MethodOptimization {
+    private static final MethodReference OBJECT_INIT = MethodReference.get("java.lang.Object",
+            MethodDescriptor.get("<init>", ValueType.VOID));
+    private ClassHolderSource classSource;
+    private Program program;
+    private Graph cfg;
+    private DominatorTree domTree;
+    private Graph domGraph;
+    private int[][] domFrontiers;
+
+    public ScalarReplacement(ClassHolderSource classSource) {
+        this.classSource = classSource;
+    }
+
+    @Override
+    public void optimize(MethodReader method, Program program) {
+        this.program = program;
+        Map<ConstructInstruction, boolean[]> candidates = findCandidates();
+        if (!candidates.isEmpty()) {
+            cfg = program.getAnalysisCache().getControlFlowGraph();
+            domTree = program.getAnalysisCache().getDominatorTree();
+            domGraph = program.getAnalysisCache().getDominatorGraph();
+            domFrontiers = program.getAnalysisCache().getDominanceFrontiers();
+            for (Map.Entry<ConstructInstruction, boolean[]> entry : candidates.entrySet()) {
+                Map<FieldReference, FieldReader> fields = getFields(entry.getKey().getType());
+                if (fields != null) {
+                    replace(entry.getKey(), entry.getValue(), fields);
+                }
+            }
+        }
+        this.program = null;
+        cfg = null;
+        domTree = null;
+        domGraph = null;
+        domFrontiers = null;
+    }
+
+    private Map<ConstructInstruction, boolean[]> findCandidates() {
+        List<ConstructInstruction> constructs = new ArrayList<>();
+        boolean[] escaping = new boolean[program.variableCount()];
+        boolean[] accessed = new boolean[program.variableCount()];
+        GraphBuilder assignGraphBuilder = new GraphBuilder(program.variableCount());
+        GraphBuilder phiGraphBuilder = new GraphBuilder(program.variableCount());
+        UsageExtractor usageExtractor = new UsageExtractor();
+        for (int i = 0; i < program.basicBlockCount(); ++i) {
+            BasicBlock block = program.basicBlockAt(i);
+            for (Phi phi : block.getPhis()) {
+                for (Incoming incoming : phi.getIncomings()) {
+                    phiGraphBuilder.addEdge(incoming.getValue().getIndex(), phi.getReceiver().getIndex());
+                }
+            }
+            for (Instruction insn : block.getInstructions()) {
+                if (insn instanceof ConstructInstruction) {
+                    constructs.add((ConstructInstruction)insn);
+                } else if (insn instanceof AssignInstruction) {
+                    AssignInstruction assign = (AssignInstruction)insn;
+                    assignGraphBuilder.addEdge(assign.getAssignee().getIndex(), assign.getReceiver().getIndex());
+                } else if (insn instanceof GetFieldInstruction) {
+                    Variable instance = ((GetFieldInstruction)insn).getInstance();
+                    if (instance != null) {
+                        accessed[instance.getIndex()] = true;
+                    }
+                } else if (insn instanceof PutFieldInstruction) {
+                    PutFieldInstruction putField = (PutFieldInstruction)insn;
+                    if (putField.getInstance() != null) {
+                        accessed[putField.getInstance().getIndex()] = true;
+                    }
+                    escaping[putField.getValue().getIndex()] = true;
+                } else if (isObjectInit(insn)) {
+                    accessed[((InvokeInstruction)insn).getInstance().getIndex()] = true;
+                } else {
+                    insn.acceptVisitor(usageExtractor);
+                    for (Variable var : usageExtractor.getUsedVariables()) {
+                        escaping[var.getIndex()] = true;
+                    }
+                }
+            }
+        }
+        Graph assignGraph = assignGraphBuilder.build();
+        Graph phiGraph = phiGraphBuilder.build();
+
+        // An object escapes if any of its copies escapes. Phis may merge the object with another values,
+        // so fields can't be accessed through them
+        Map<ConstructInstruction, boolean[]> candidates = new LinkedHashMap<>();
+        for (ConstructInstruction construct : constructs) {
+            boolean[] copies = findCopies(construct.getReceiver(), assignGraph, phiGraph);
+            boolean[] exactCopies = findCopies(construct.getReceiver(), assignGraph, null);
+            boolean escapes = false;
+            for (int i = 0; i < copies.length; ++i) {
+                if (copies[i] && (escaping[i] || !exactCopies[i] && accessed[i])) {
+                    escapes = true;
+                    break;
+                }
+            }
+            if (!escapes) {
+                candidates.put(construct, copies);
+            }
+        }
+        return candidates;
+    }
+
+    private boolean[] findCopies(Variable object, Graph assignGraph, Graph phiGraph) {
+        boolean[] copies = new boolean[assignGraph.size()];
+        int[] stack = new int[assignGraph.size()];
+        int head = 0;
+        stack[head++] = object.getIndex();
+        copies[object.getIndex()] = true;
+        while (head > 0) {
+            int var = stack[--head];
+            for (int i = 0; i < assignGraph.outgoingEdgesCount(var); ++i) {
+                int copy = assignGraph.outgoingEdge(var, i);
+                if (!copies[copy]) {
+                    copies[copy] = true;
+                    stack[head++] = copy;
+                }
+            }
+            if (phiGraph != null) {
+                for (int i = 0; i < phiGraph.outgoingEdgesCount(var); ++i) {
+                    int copy = phiGraph.outgoingEdge(var, i);
+                    if (!copies[copy]) {
+                        copies[copy] = true;
+                        stack[head++] = copy;
+                    }
+                }
+            }
+        }
+        return copies;
+    }
+
+    private static boolean isCopy(Variable var, boolean[] copies) {
+        return var != null && var.getIndex() < copies.length && copies[var.getIndex()];
+    }
+
+    private static boolean isObjectInit(Instruction insn) {
+        if (!(insn instanceof InvokeInstruction)) {
+            return false;
+        }
+        InvokeInstruction invoke = (InvokeInstruction)insn;
+        return invoke.getType() == InvocationType.SPECIAL && invoke.getMethod().equals(OBJECT_INIT);
+    }
+
+    private Map<FieldReference, FieldReader> getFields(String className) {
+        Map<FieldReference, FieldReader> fields = new HashMap<>();
+        while (className != null) {
+            ClassReader cls = classSource.getClassHolder(className);
+            if (cls == null) {
+                return null;
+            }
+            for (FieldReader field : cls.getFields()) {
+                if (!field.hasModifier(ElementModifier.STATIC)) {
+                    fields.put(FieldReference.get(className, field.getName()), field);
+                }
+            }
+            className = cls.getParent();
+        }
+        return fields;
+    }
+
+    private FieldReference resolve(FieldReference ref, Map<FieldReference, FieldReader> fields) {
+        String className = ref.getClassName();
+        while (className != null) {
+            FieldReference candidate = FieldReference.get(className, ref.getFieldName());
+            if (fields.containsKey(candidate)) {
+                return candidate;
+            }
+            ClassReader cls = classSource.getClassHolder(className);
+            if (cls == null) {
+                break;
+            }
+            className = cls.getParent();
+        }
+        return null;
+    }
+
+    static class Task {
+        Variable[] values;
+        BasicBlock block;
+    }
+
+    private void replace(ConstructInstruction construct, boolean[] copies,
+            Map<FieldReference, FieldReader> fieldMap) {
+        BasicBlock constructBlock = construct.getBasicBlock();
+        List<FieldReference> fields = new ArrayList<>(fieldMap.keySet());
+        Map<FieldReference, Integer> fieldIndexes = new HashMap<>();
+        for (int i = 0; i < fields.size(); ++i) {
+            fieldIndexes.put(fields.get(i), i);
+        }
+
+        // Map field accesses to fields, give up if any of them can't be resolved
+        Map<Instruction, Integer> accessedFields = new HashMap<>();
+        for (int i = 0; i < program.basicBlockCount(); ++i) {
+            for (Instruction insn : program.basicBlockAt(i).getInstructions()) {
+                FieldReference field;
+                if (insn instanceof GetFieldInstruction && isCopy(((GetFieldInstruction)insn).getInstance(), copies)) {
+                    field = resolve(((GetFieldInstruction)insn).getField(), fieldMap);
+                } else if (insn instanceof PutFieldInstruction &&
+                        isCopy(((PutFieldInstruction)insn).getInstance(), copies)) {
+                    field = resolve(((PutFieldInstruction)insn).getField(), fieldMap);
+                } else {
+                    continue;
+                }
+                if (field == null) {
+                    return;
+                }
+                accessedFields.put(insn, fieldIndexes.get(field));
+            }
+        }
+
+        // Place phis at the dominance frontiers of writes, but only in blocks where the object exists
+        Phi[][] phiMap = new Phi[cfg.size()][];
+        for (Map.Entry<Instruction, Integer> entry : accessedFields.entrySet()) {
+            if (entry.getKey() instanceof PutFieldInstruction) {
+                placePhis(constructBlock.getIndex(), entry.getKey().getBasicBlock().getIndex(), entry.getValue(),
+                        fields.size(), phiMap);
+            }
+        }
+
+        // Initialize fields with default values in place of the construction
+        Variable[] initialValues = new Variable[fields.size()];
+        List<Instruction> constructInstructions = constructBlock.getInstructions();
+        int constructIndex = constructInstructions.indexOf(construct);
+        constructInstructions.remove(constructIndex);
+        for (int i = 0; i < fields.size(); ++i) {
+            initialValues[i] = program.createVariable();
+            Instruction defaultValue = createDefaultValue(fieldMap.get(fields.get(i)).getType(), initialValues[i]);
+            constructInstructions.add(constructIndex++, defaultValue);
+        }
+
+        // Rename fields along the dominator tree
+        Task[] stack = new Task[cfg.size()];
+        int head = 0;
+        Task initialTask = new Task();
+        initialTask.block = constructBlock;
+        initialTask.values = initialValues;
+        stack[head++] = initialTask;
+        while (head > 0) {
+            Task task = stack[--head];
+            BasicBlock block = task.block;
+            Variable[] values = task.values;
+            Phi[] phis = phiMap[block.getIndex()];
+            if (phis != null && block != constructBlock) {
+                for (int i = 0; i < phis.length; ++i) {
+                    if (phis[i] != null) {
+                        values[i] = phis[i].getReceiver();
+                    }
+                }
+            }
+            List<Instruction> instructions = block.getInstructions();
+            for (int i = block == constructBlock ? constructIndex : 0; i < instructions.size(); ++i) {
+                Instruction insn = instructions.get(i);
+                if (insn instanceof GetFieldInstruction) {
+                    GetFieldInstruction getField = (GetFieldInstruction)insn;
+                    if (isCopy(getField.getInstance(), copies)) {
+                        AssignInstruction assign = new AssignInstruction();
+                        assign.setAssignee(values[accessedFields.get(insn)]);
+                        assign.setReceiver(getField.getReceiver());
+                        instructions.set(i, assign);
+                    }
+                } else if (insn instanceof PutFieldInstruction) {
+                    PutFieldInstruction putField = (PutFieldInstruction)insn;
+                    if (isCopy(putField.getInstance(), copies)) {
+                        values[accessedFields.get(insn)] = putField.getValue();
+                        instructions.remove(i--);
+                    }
+                } else if (isObjectInit(insn) && isCopy(((InvokeInstruction)insn).getInstance(), copies)) {
+                    instructions.remove(i--);
+                }
+            }
+            for (int i = 0; i < domGraph.outgoingEdgesCount(block.getIndex()); ++i) {
+                int succ = domGraph.outgoingEdge(block.getIndex(), i);
+                Task next = new Task();
+                next.block = program.basicBlockAt(succ);
+                next.values = Arrays.copyOf(values, values.length);
+                stack[head++] = next;
+            }
+            for (int j = 0; j < cfg.outgoingEdgesCount(block.getIndex()); ++j) {
+                int succ = cfg.outgoingEdge(block.getIndex(), j);
+                Phi[] succPhis = phiMap[succ];
+                if (succPhis == null || succ == constructBlock.getIndex()) {
+                    continue;
+                }
+                for (int i = 0; i < succPhis.length; ++i) {
+                    if (succPhis[i] != null) {
+                        Incoming incoming = new Incoming();
+                        incoming.setSource(block);
+                        incoming.setValue(values[i]);
+                        succPhis[i].getIncomings().add(incoming);
+                    }
+                }
+            }
+        }
+
+        // Remaining copies of the object are not used anywhere, so they can be removed
+        for (int i = 0; i < program.basicBlockCount(); ++i) {
+            BasicBlock block = program.basicBlockAt(i);
+            List<Phi> phis = block.getPhis();
+            for (int j = 0; j < phis.size(); ++j) {
+                if (isCopy(phis.get(j).getReceiver(), copies)) {
+                    phis.remove(j--);
+                }
+            }
+            List<Instruction> instructions = block.getInstructions();
+            for (int j = 0; j < instructions.size(); ++j) {
+                Instruction insn = instructions.get(j);
+                if (insn instanceof AssignInstruction && isCopy(((AssignInstruction)insn).getReceiver(), copies)) {
+                    instructions.remove(j--);
+                }
+            }
+        }
+    }
+
+    private void placePhis(int root, int block, int field, int fieldCount, Phi[][] phiMap) {
+        int[] worklist = new int[cfg.size() * 4];
+        int head = 0;
+        worklist[head++] = block;
+        while (head > 0) {
+            int current = worklist[--head];
+            for (int frontier : domFrontiers[current]) {
+                if (frontier == root || !domTree.dominates(root, frontier)) {
+                    continue;
+                }
+                Phi[] phis = phiMap[frontier];
+                if (phis == null) {
+                    phis = new Phi[fieldCount];
+                    phiMap[frontier] = phis;
+                }
+                if (phis[field] == null) {
+                    Phi phi = new Phi();
+                    phi.setReceiver(program.createVariable());
+                    program.basicBlockAt(frontier).getPhis().add(phi);
+                    phis[field] = phi;
+                    worklist[head++] = frontier;
+                }
+            }
+        }
+    }
+
+    private static Instruction createDefaultValue(ValueType type, Variable receiver) {
+        if (type instanceof ValueType.Primitive) {
+            switch (((ValueType.Primitive)type).getKind()) {
+                case BOOLEAN:
+                case CHARACTER:
+                case BYTE:
+                case SHORT:
+                case INTEGER: {
+                    IntegerConstantInstruction insn = new IntegerConstantInstruction();
+                    insn.setReceiver(receiver);
+                    return insn;
+                }
+                case LONG: {
+                    LongConstantInstruction insn = new LongConstantInstruction();
+                    insn.setReceiver(receiver);
+                    return insn;
+                }
+                case FLOAT: {
+                    FloatConstantInstruction insn = new FloatConstantInstruction();
+                    insn.setReceiver(receiver);
+                    return insn;
+                }
+                case DOUBLE: {
+                    DoubleConstantInstruction insn = new DoubleConstantInstruction();
+                    insn.setReceiver(receiver);
+                    return insn;
+                }
+            }
+        }
+        NullConstantInstruction insn = new NullConstantInstruction();
+        insn.setReceiver(receiver);
+        return insn;
+    }
+}
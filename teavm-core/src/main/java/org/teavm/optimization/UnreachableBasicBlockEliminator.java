@@ -15,22 +15,27 @@
  */
 package org.teavm.optimization;
 
-import org.teavm.model.BasicBlock;
-import org.teavm.model.Program;
-import org.teavm.model.util.InstructionTransitionExtractor;
+import org.teavm.common.Graph;
+import org.teavm.common.GraphUtils;
+import org.teavm.model.*;
 
 /**
  *
  * @author Alexey Andreev
  */
-public class UnreachableBasicBlockEliminator {
+public class UnreachableBasicBlockEliminator implements MethodOptimization {
+    @Override
+    public void optimize(MethodReader method, Program program) {
+        optimize(program);
+    }
+
     public void optimize(Program program) {
         if (program.basicBlockCount() == 0) {
             return;
         }
-        InstructionTransitionExtractor transitionExtractor = new InstructionTransitionExtractor();
+        Graph cfg = program.getAnalysisCache().getControlFlowGraph();
         boolean[] reachable = new boolean[program.basicBlockCount()];
-        int[] stack = new int[program.basicBlockCount()];
+        int[] stack = new int[GraphUtils.edgeCount(cfg) + 1];
         int top = 0;
         stack[top++] = 0;
         while (top > 0) {
@@ -39,10 +44,21 @@ public class UnreachableBasicBlockEliminator {
                 continue;
             }
             reachable[i] = true;
-            BasicBlock block = program.basicBlockAt(i);
-            block.getLastInstruction().acceptVisitor(transitionExtractor);
-            for (BasicBlock successor : transitionExtractor.getTargets()) {
-                stack[top++] = successor.getIndex();
+            for (int j = 0; j < cfg.outgoingEdgesCount(i); ++j) {
+                stack[top++] = cfg.outgoingEdge(i, j);
+            }
+        }
+        for (int i = 0; i < reachable.length; ++i) {
+            if (!reachable[i]) {
+                continue;
+            }
+            for (Phi phi : program.basicBlockAt(i).getPhis()) {
+                for (int j = 0; j < phi.getIncomings().size(); ++j) {
+                    Incoming incoming = phi.getIncomings().get(j);
+                    if (!reachable[incoming.getSource().getIndex()]) {
+                        phi.getIncomings().remove(j--);
+                    }
+                }
             }
         }
         for (int i = 0; i < reachable.length; ++i) {
@@ -47,7 +47,8 @@ public class UnusedVariableElimination implements MethodOptimization {
                 continue;
             }
             used[var] = true;
-            for (int arg : graph.incomingEdges(var)) {
+            for (int i = 0; i < graph.incomingEdgesCount(var); ++i) {
+                int arg = graph.incomingEdge(var, i);
                 if (!used[arg]) {
                     stack[top++] = arg;
                 }
@@ -221,13 +221,13 @@ class ClassRefsRenamer implements InstructionVisitor {
     @Override
     public void visit(GetFieldInstruction insn) {
         String className = classNameMapper.map(insn.getField().getClassName());
-        insn.setField(new FieldReference(className, insn.getField().getFieldName()));
+        insn.setField(FieldReference.get(className, insn.getField().getFieldName()));
     }
 
     @Override
     public void visit(PutFieldInstruction insn) {
         String className = classNameMapper.map(insn.getField().getClassName());
-        insn.setField(new FieldReference(className, insn.getField().getFieldName()));
+        insn.setField(FieldReference.get(className, insn.getField().getFieldName()));
     }
 
     @Override
@@ -257,7 +257,7 @@ class ClassRefsRenamer implements InstructionVisitor {
         for (int i = 0; i < signature.length; ++i) {
             signature[i] = rename(signature[i]);
         }
-        insn.setMethod(new MethodReference(className, new MethodDescriptor(insn.getMethod().getName(), signature)));
+        insn.setMethod(MethodReference.get(className, MethodDescriptor.get(insn.getMethod().getName(), signature)));
     }
 
     @Override
@@ -15,9 +15,13 @@
  */
 package org.teavm.parsing;
 
+import org.teavm.common.BoundedCache;
+import org.teavm.common.CacheStatistics;
+import org.teavm.common.Mapper;
 import org.teavm.model.ClassHolder;
 import org.teavm.model.ClassHolderSource;
 import org.teavm.resource.ClasspathResourceReader;
+import org.teavm.resource.HashedClassHolderMapper;
 import org.teavm.resource.MapperClassHolderSource;
 import org.teavm.resource.ResourceClassHolderMapper;
 
@@ -29,10 +33,26 @@ public class ClasspathClassHolderSource implements ClassHolderSource {
     private MapperClassHolderSource innerClassSource;
 
     public ClasspathClassHolderSource(ClassLoader classLoader) {
-        ClasspathResourceReader reader = new ClasspathResourceReader(classLoader);
-        ResourceClassHolderMapper rawMapper = new ResourceClassHolderMapper(reader);
+        this(classLoader, 0);
+    }
+
+    /**
+     * <p>Creates a source that keeps at most <code>capacity</code> classes strongly reachable,
+     * or all of them if <code>capacity</code> is zero.</p>
+     */
+    public ClasspathClassHolderSource(ClassLoader classLoader, int capacity) {
+        this(classLoader, new ResourceClassHolderMapper(new ClasspathResourceReader(classLoader)), capacity);
+    }
+
+    public ClasspathClassHolderSource(ClassLoader classLoader, BoundedCache<String, ClassHolder> parsedClasses) {
+        this(classLoader, new HashedClassHolderMapper(new ClasspathResourceReader(classLoader), parsedClasses), 0);
+    }
+
+    private ClasspathClassHolderSource(ClassLoader classLoader, Mapper<String, ClassHolder> rawMapper,
+            int capacity) {
         ClasspathResourceMapper classPathMapper = new ClasspathResourceMapper(classLoader, rawMapper);
-        innerClassSource = new MapperClassHolderSource(classPathMapper);
+        innerClassSource = capacity > 0 ? new MapperClassHolderSource(classPathMapper, capacity) :
+                new MapperClassHolderSource(classPathMapper);
     }
 
     public ClasspathClassHolderSource() {
@@ -43,4 +63,15 @@ public class ClasspathClassHolderSource implements ClassHolderSource {
     public ClassHolder getClassHolder(String name) {
         return innerClassSource.getClassHolder(name);
     }
+
+    /**
+     * <p>Starts a session that gives classes of this source, pinned until the session ends.</p>
+     */
+    public MapperClassHolderSource.Session beginPinning() {
+        return innerClassSource.beginPinning();
+    }
+
+    public CacheStatistics getStatistics() {
+        return innerClassSource.getStatistics();
+    }
 }
@@ -15,23 +15,39 @@
  */
 package org.teavm.parsing;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import org.teavm.cache.ClassArchive;
 import org.teavm.common.ConcurrentCachedMapper;
 import org.teavm.common.Mapper;
 import org.teavm.model.ClassHolder;
 
 /**
+ * <p>Maps class names to classes, renaming class library substitutes of JDK classes. Renamed classes
+ * are taken from class archives on the classpath, unless an archive was produced from different
+ * bytecode than the classpath contains, in which case the class is parsed and renamed again.</p>
+ *
+ * <p>Archives are validated once, when they are opened. An archive in a jar file is compared to checksums
+ * the jar keeps for its entries, an archive in a directory is compared to modification times of
+ * class files, so that no bytecode is read. A class is only taken from an archive if the class loader
+ * finds its bytecode next to the archive, so classes overridden by earlier classpath entries
+ * are parsed as well.</p>
  *
  * @author Alexey Andreev <konsoletyper@gmail.com>
  */
 public class ClasspathResourceMapper implements Mapper<String, ClassHolder> {
     private static String PACKAGE_PREFIX = "packagePrefix.";
     private static String CLASS_PREFIX = "classPrefix.";
+    private ClassLoader classLoader;
     private Mapper<String, ClassHolder> innerMapper;
     private List<Transformation> transformations = new ArrayList<>();
+    private List<Archive> archives = new ArrayList<>();
     private ClassRefsRenamer renamer;
 
     private static class Transformation {
@@ -41,7 +57,14 @@ public class ClasspathResourceMapper implements Mapper<String, ClassHolder> {
         String classPrefix = "";
     }
 
+    private static class Archive {
+        ClassArchive content;
+        String root;
+        Set<String> staleClasses;
+    }
+
     public ClasspathResourceMapper(ClassLoader classLoader, Mapper<String, ClassHolder> innerMapper) {
+        this.classLoader = classLoader;
         this.innerMapper = innerMapper;
         try {
             Enumeration<URL> resources = classLoader.getResources("META-INF/teavm.properties");
@@ -55,6 +78,30 @@ public class ClasspathResourceMapper implements Mapper<String, ClassHolder> {
                 loadProperties(properties, transformationMap);
             }
             transformations.addAll(transformationMap.values());
+            Enumeration<URL> archiveResources = classLoader.getResources(ClassArchive.RESOURCE_NAME);
+            while (archiveResources.hasMoreElements()) {
+                URL resource = archiveResources.nextElement();
+                Archive archive = new Archive();
+                try (InputStream input = resource.openStream()) {
+                    archive.content = ClassArchive.read(input);
+                    archive.staleClasses = findStaleClasses(resource, archive.content);
+                } catch (IOException | URISyntaxException e) {
+                    System.err.println("Ignoring class archive " + resource + ": " + e.getMessage());
+                    continue;
+                }
+                if (archive.staleClasses == null) {
+                    System.err.println("Ignoring class archive " + resource + ", since it can't be checked " +
+                            "against bytecode");
+                    continue;
+                }
+                if (!archive.staleClasses.isEmpty()) {
+                    System.err.println("Class archive " + resource + " is older than the bytecode of " +
+                            archive.staleClasses.size() + " of its classes, parsing them instead");
+                }
+                String url = resource.toString();
+                archive.root = url.substring(0, url.length() - ClassArchive.RESOURCE_NAME.length());
+                archives.add(archive);
+            }
         } catch (IOException e) {
             throw new RuntimeException("Error reading resources", e);
         }
@@ -89,23 +136,99 @@ public class ClasspathResourceMapper implements Mapper<String, ClassHolder> {
 
     @Override
     public ClassHolder map(String name) {
+        Transformation transformation = getTransformation(name);
+        if (transformation == null) {
+            ClassHolder classHolder = mapArchived(name, name);
+            return classHolder != null ? classHolder : innerMapper.map(name);
+        }
+        String sourceName = getSourceName(transformation, name);
+        ClassHolder classHolder = mapArchived(name, sourceName);
+        if (classHolder != null) {
+            return classHolder;
+        }
+        classHolder = innerMapper.map(sourceName);
+        if (classHolder != null) {
+            classHolder = renamer.rename(classHolder);
+        }
+        return classHolder;
+    }
+
+    private Transformation getTransformation(String name) {
         for (Transformation transformation : transformations) {
             if (name.startsWith(transformation.packageName)) {
-                int index = name.lastIndexOf('.');
-                String className = name.substring(index + 1);
-                String packageName = name.substring(0, index);
-                ClassHolder classHolder = innerMapper.map(transformation.packagePrefix + packageName +
-                        "." + transformation.classPrefix + className);
-                if (classHolder != null) {
-                    classHolder = renamer.rename(classHolder);
+                return transformation;
+            }
+        }
+        return null;
+    }
+
+    private String getSourceName(String name) {
+        Transformation transformation = getTransformation(name);
+        return transformation != null ? getSourceName(transformation, name) : name;
+    }
+
+    private static String getSourceName(Transformation transformation, String name) {
+        int index = name.lastIndexOf('.');
+        String className = name.substring(index + 1);
+        String packageName = name.substring(0, index);
+        return transformation.packagePrefix + packageName + "." + transformation.classPrefix + className;
+    }
+
+    private ClassHolder mapArchived(String name, String sourceName) {
+        for (Archive archive : archives) {
+            if (!archive.content.contains(name)) {
+                continue;
+            }
+            String path = toPath(sourceName);
+            URL bytecode = classLoader.getResource(path);
+            if (archive.staleClasses.contains(name) || bytecode == null ||
+                    !bytecode.toString().equals(archive.root + path)) {
+                return null;
+            }
+            return archive.content.getClassHolder(name);
+        }
+        return null;
+    }
+
+    /**
+     * <p>Finds classes of an archive whose bytecode changed since the archive was produced. Returns
+     * <code>null</code> if the archive is neither in a jar file nor in a directory.</p>
+     */
+    private Set<String> findStaleClasses(URL resource, ClassArchive archive) throws IOException,
+            URISyntaxException {
+        Set<String> staleClasses = new HashSet<>();
+        String url = resource.toString();
+        String suffix = "!/" + ClassArchive.RESOURCE_NAME;
+        if (url.startsWith("jar:") && url.endsWith(suffix)) {
+            File jarFile = new File(new URL(url.substring(4, url.length() - suffix.length())).toURI());
+            try (ZipFile zip = new ZipFile(jarFile)) {
+                for (String name : archive.getClassNames()) {
+                    ZipEntry entry = zip.getEntry(toPath(getSourceName(name)));
+                    if (entry == null || entry.getCrc() != archive.getChecksum(name)) {
+                        staleClasses.add(name);
+                    }
                 }
-                return classHolder;
             }
+        } else if (url.startsWith("file:")) {
+            File archiveFile = new File(resource.toURI());
+            File root = archiveFile.getParentFile().getParentFile();
+            for (String name : archive.getClassNames()) {
+                File classFile = new File(root, toPath(getSourceName(name)));
+                if (!classFile.exists() || classFile.lastModified() > archiveFile.lastModified()) {
+                    staleClasses.add(name);
+                }
+            }
+        } else {
+            return null;
         }
-        return innerMapper.map(name);
+        return staleClasses;
+    }
+
+    private static String toPath(String className) {
+        return className.replace('.', '/') + ".class";
     }
 
-    private String renameClass(String name) {
+    public String renameClass(String name) {
         for (Transformation transformation : transformations) {
             if (name.startsWith(transformation.fullPrefix)) {
                 int index = name.lastIndexOf('.');
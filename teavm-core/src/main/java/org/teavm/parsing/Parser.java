@@ -35,8 +35,9 @@ public class Parser {
         ProgramParser programParser = new ProgramParser();
         Program program = programParser.parse(node, className);
         new UnreachableBasicBlockEliminator().optimize(program);
-        SSATransformer ssaProducer = new SSATransformer();
+        SSABuilder ssaProducer = new SSABuilder();
         ssaProducer.transformToSSA(program, method.getParameterTypes());
+        program.getAnalysisCache().invalidate();
         method.setProgram(program);
         parseAnnotations(method.getAnnotations(), node);
         return method;
@@ -170,7 +171,7 @@ public class Parser {
     private static AnnotationValue parseAnnotationValue(Object value) {
         if (value instanceof String[]) {
             String[] enumInfo = (String[])value;
-            return new AnnotationValue(new FieldReference(enumInfo[0], enumInfo[1]));
+            return new AnnotationValue(FieldReference.get(enumInfo[0], enumInfo[1]));
         } else if (value instanceof Type) {
             Type cls = (Type)value;
             return new AnnotationValue(ValueType.parse(cls.getDescriptor()));
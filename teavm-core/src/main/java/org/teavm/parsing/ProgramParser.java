@@ -377,7 +377,7 @@ public class ProgramParser {
                         }
                         args[--j] = getVariable(--currentDepth);
                     }
-                    MethodDescriptor method = new MethodDescriptor(name, MethodDescriptor.parseSignature(desc));
+                    MethodDescriptor method = MethodDescriptor.get(name, MethodDescriptor.parseSignature(desc));
                     int instance = -1;
                     if (opcode != Opcodes.INVOKESTATIC) {
                         instance = --currentDepth;
@@ -393,7 +393,7 @@ public class ProgramParser {
                     }
                     if (instance == -1) {
                         InvokeInstruction insn = new InvokeInstruction();
-                        insn.setMethod(new MethodReference(ownerCls, method));
+                        insn.setMethod(MethodReference.get(ownerCls, method));
                         if (result >= 0) {
                             insn.setReceiver(getVariable(result));
                         }
@@ -406,7 +406,7 @@ public class ProgramParser {
                         } else {
                             insn.setType(InvocationType.VIRTUAL);
                         }
-                        insn.setMethod(new MethodReference(ownerCls, method));
+                        insn.setMethod(MethodReference.get(ownerCls, method));
                         if (result >= 0) {
                             insn.setReceiver(getVariable(result));
                         }
@@ -727,7 +727,7 @@ public class ProgramParser {
             unwrapInsn.setArray(getVariable(array));
             unwrapInsn.setReceiver(unwrapInsn.getArray());
             builder.add(unwrapInsn);
-            GetElementInstruction insn = new GetElementInstruction();
+            GetElementInstruction insn = new GetElementInstruction(type);
             insn.setArray(getVariable(array));
             insn.setIndex(getVariable(arrIndex));
             insn.setReceiver(getVariable(var));
@@ -743,7 +743,7 @@ public class ProgramParser {
             unwrapInsn.setArray(getVariable(array));
             unwrapInsn.setReceiver(unwrapInsn.getArray());
             builder.add(unwrapInsn);
-            PutElementInstruction insn = new PutElementInstruction();
+            PutElementInstruction insn = new PutElementInstruction(type);
             insn.setArray(getVariable(array));
             insn.setIndex(getVariable(arrIndex));
             insn.setValue(getVariable(value));
@@ -1377,7 +1377,7 @@ public class ProgramParser {
                     }
                     GetFieldInstruction insn = new GetFieldInstruction();
                     insn.setInstance(getVariable(instance));
-                    insn.setField(new FieldReference(ownerCls, name));
+                    insn.setField(FieldReference.get(ownerCls, name));
                     insn.setFieldType(type);
                     insn.setReceiver(getVariable(value));
                     builder.add(insn);
@@ -1393,7 +1393,7 @@ public class ProgramParser {
                     int instance = --currentDepth;
                     PutFieldInstruction insn = new PutFieldInstruction();
                     insn.setInstance(getVariable(instance));
-                    insn.setField(new FieldReference(ownerCls, name));
+                    insn.setField(FieldReference.get(ownerCls, name));
                     insn.setValue(getVariable(value));
                     builder.add(insn);
                     break;
@@ -1410,7 +1410,7 @@ public class ProgramParser {
                         builder.add(initInsn);
                     }
                     GetFieldInstruction insn = new GetFieldInstruction();
-                    insn.setField(new FieldReference(ownerCls, name));
+                    insn.setField(FieldReference.get(ownerCls, name));
                     insn.setFieldType(type);
                     insn.setReceiver(getVariable(value));
                     builder.add(insn);
@@ -1427,7 +1427,7 @@ public class ProgramParser {
                     }
                     int value = --currentDepth;
                     PutFieldInstruction insn = new PutFieldInstruction();
-                    insn.setField(new FieldReference(ownerCls, name));
+                    insn.setField(FieldReference.get(ownerCls, name));
                     insn.setValue(getVariable(value));
                     builder.add(insn);
                     break;
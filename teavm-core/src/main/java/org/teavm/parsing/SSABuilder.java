@@ -0,0 +1,476 @@
+/*
+ *  Copyright 2014 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.parsing;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import org.teavm.common.Graph;
+import org.teavm.common.IntegerArray;
+import org.teavm.model.*;
+import org.teavm.model.instructions.*;
+
+/**
+ * <p>Brings a freshly parsed program to SSA form in a single walk over its basic blocks,
+ * without computing dominators and dominance frontiers. Variables of the parsed program are
+ * treated as slots of the JVM frame. Blocks are visited in reverse postorder, each slot read
+ * is resolved to its latest definition in the block or, if there is none, is looked up
+ * in predecessors. A phi is only created on demand, at a block with several predecessors,
+ * and receives its incomings once all blocks are visited. Finally phis that merge a single
+ * value are replaced by that value.</p>
+ *
+ * <p>Unlike {@link SSATransformer}, this class expects all blocks to be reachable
+ * from the first one.</p>
+ *
+ * @author Alexey Andreev <konsoletyper@gmail.com>
+ */
+public class SSABuilder {
+    private Program program;
+    private Graph cfg;
+    private int slotCount;
+    private Variable[][] definitions;
+    private boolean[] filled;
+    private BasicBlock currentBlock;
+    private List<Phi> phis = new ArrayList<>();
+    private IntegerArray phiSlots = new IntegerArray(16);
+    private BitSet partialPhis = new BitSet();
+    private Variable[] replacements;
+    private boolean[] undefined;
+    private boolean resolving;
+
+    public void transformToSSA(Program program, ValueType[] arguments) {
+        if (program.basicBlockCount() == 0) {
+            return;
+        }
+        this.program = program;
+        cfg = program.getAnalysisCache().getControlFlowGraph();
+        slotCount = program.variableCount();
+        definitions = new Variable[program.basicBlockCount()][];
+        filled = new boolean[program.basicBlockCount()];
+        applySignature(arguments);
+        for (int block : reversePostorder()) {
+            currentBlock = program.basicBlockAt(block);
+            for (Instruction insn : currentBlock.getInstructions()) {
+                insn.acceptVisitor(consumer);
+            }
+            filled[block] = true;
+        }
+        fillPhis();
+        removeTrivialPhis();
+        resolveUses();
+        this.program = null;
+        cfg = null;
+        definitions = null;
+        filled = null;
+        currentBlock = null;
+        phis.clear();
+        phiSlots.clear();
+        partialPhis.clear();
+        replacements = null;
+        undefined = null;
+    }
+
+    private void applySignature(ValueType[] arguments) {
+        Variable[] entryDefinitions = definitionsOf(0);
+        int index = 0;
+        entryDefinitions[index] = program.variableAt(index);
+        ++index;
+        for (int i = 0; i < arguments.length; ++i) {
+            entryDefinitions[index] = program.variableAt(index);
+            ++index;
+        }
+    }
+
+    private int[] reversePostorder() {
+        int sz = cfg.size();
+        int[] order = new int[sz];
+        int orderIndex = sz;
+        boolean[] visited = new boolean[sz];
+        int[] stack = new int[sz];
+        int[] edgeIndexes = new int[sz];
+        int head = 0;
+        stack[head++] = 0;
+        visited[0] = true;
+        while (head > 0) {
+            int node = stack[head - 1];
+            int edgeIndex = edgeIndexes[head - 1];
+            if (edgeIndex < cfg.outgoingEdgesCount(node)) {
+                edgeIndexes[head - 1] = edgeIndex + 1;
+                int next = cfg.outgoingEdge(node, edgeIndex);
+                if (!visited[next]) {
+                    visited[next] = true;
+                    edgeIndexes[head] = 0;
+                    stack[head++] = next;
+                }
+            } else {
+                order[--orderIndex] = node;
+                --head;
+            }
+        }
+        if (orderIndex > 0) {
+            throw new IllegalStateException("Program contains unreachable basic blocks");
+        }
+        return order;
+    }
+
+    private Variable[] definitionsOf(int block) {
+        Variable[] result = definitions[block];
+        if (result == null) {
+            result = new Variable[slotCount];
+            definitions[block] = result;
+        }
+        return result;
+    }
+
+    private Variable read(int slot, int block) {
+        int start = block;
+        Variable value;
+        while (true) {
+            value = definitionsOf(block)[slot];
+            if (value != null || cfg.incomingEdgesCount(block) == 0) {
+                break;
+            }
+            if (cfg.incomingEdgesCount(block) == 1 && filled[cfg.incomingEdge(block, 0)]) {
+                block = cfg.incomingEdge(block, 0);
+                continue;
+            }
+            Phi phi = new Phi();
+            value = program.createVariable();
+            phi.setReceiver(value);
+            program.basicBlockAt(block).getPhis().add(phi);
+            phis.add(phi);
+            phiSlots.add(slot);
+            break;
+        }
+        if (value != null) {
+            for (int current = start;; current = cfg.incomingEdge(current, 0)) {
+                definitions[current][slot] = value;
+                if (current == block) {
+                    break;
+                }
+            }
+        }
+        return value;
+    }
+
+    private void fillPhis() {
+        for (int i = 0; i < phis.size(); ++i) {
+            Phi phi = phis.get(i);
+            int slot = phiSlots.get(i);
+            int block = phi.getBasicBlock().getIndex();
+            for (int j = 0; j < cfg.incomingEdgesCount(block); ++j) {
+                int pred = cfg.incomingEdge(block, j);
+                Variable value = read(slot, pred);
+                if (value != null) {
+                    Incoming incoming = new Incoming();
+                    incoming.setSource(program.basicBlockAt(pred));
+                    incoming.setValue(value);
+                    phi.getIncomings().add(incoming);
+                } else {
+                    partialPhis.set(i);
+                }
+            }
+        }
+    }
+
+    private void removeTrivialPhis() {
+        replacements = new Variable[program.variableCount()];
+        undefined = new boolean[program.variableCount()];
+        boolean[] removed = new boolean[phis.size()];
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = 0; i < phis.size(); ++i) {
+                if (removed[i]) {
+                    continue;
+                }
+                Phi phi = phis.get(i);
+                Variable receiver = phi.getReceiver();
+                Variable same = null;
+                boolean unique = true;
+                for (int j = 0; j < phi.getIncomings().size(); ++j) {
+                    Incoming incoming = phi.getIncomings().get(j);
+                    Variable value = resolve(incoming.getValue());
+                    if (value == null) {
+                        phi.getIncomings().remove(j--);
+                        partialPhis.set(i);
+                        continue;
+                    }
+                    incoming.setValue(value);
+                    if (value == receiver || value == same) {
+                        continue;
+                    }
+                    if (same != null) {
+                        unique = false;
+                    }
+                    same = value;
+                }
+                if (same == null) {
+                    undefined[receiver.getIndex()] = true;
+                } else if (unique && !partialPhis.get(i)) {
+                    replacements[receiver.getIndex()] = same;
+                } else {
+                    continue;
+                }
+                removed[i] = true;
+                phi.getBasicBlock().getPhis().remove(phi);
+                changed = true;
+            }
+        }
+    }
+
+    private Variable resolve(Variable var) {
+        Variable result = var;
+        while (replacements[result.getIndex()] != null) {
+            result = replacements[result.getIndex()];
+        }
+        while (var != result) {
+            Variable next = replacements[var.getIndex()];
+            replacements[var.getIndex()] = result;
+            var = next;
+        }
+        return undefined[result.getIndex()] ? null : result;
+    }
+
+    private void resolveUses() {
+        resolving = true;
+        for (int i = 0; i < program.basicBlockCount(); ++i) {
+            for (Instruction insn : program.basicBlockAt(i).getInstructions()) {
+                insn.acceptVisitor(consumer);
+            }
+        }
+        resolving = false;
+    }
+
+    private Variable define(Variable var) {
+        if (resolving) {
+            return var;
+        }
+        Variable result = program.createVariable();
+        definitionsOf(currentBlock.getIndex())[var.getIndex()] = result;
+        return result;
+    }
+
+    private Variable use(Variable var) {
+        Variable mappedVar = resolving ? resolve(var) : read(var.getIndex(), currentBlock.getIndex());
+        if (mappedVar == null) {
+            throw new AssertionError();
+        }
+        return mappedVar;
+    }
+
+    private InstructionVisitor consumer = new InstructionVisitor() {
+        @Override
+        public void visit(EmptyInstruction insn) {
+        }
+
+        @Override
+        public void visit(ClassConstantInstruction insn) {
+            insn.setReceiver(define(insn.getReceiver()));
+        }
+
+        @Override
+        public void visit(NullConstantInstruction insn) {
+            insn.setReceiver(define(insn.getReceiver()));
+        }
+
+        @Override
+        public void visit(IntegerConstantInstruction insn) {
+            insn.setReceiver(define(insn.getReceiver()));
+        }
+
+        @Override
+        public void visit(LongConstantInstruction insn) {
+            insn.setReceiver(define(insn.getReceiver()));
+        }
+
+        @Override
+        public void visit(FloatConstantInstruction insn) {
+            insn.setReceiver(define(insn.getReceiver()));
+        }
+
+        @Override
+        public void visit(DoubleConstantInstruction insn) {
+            insn.setReceiver(define(insn.getReceiver()));
+        }
+
+        @Override
+        public void visit(StringConstantInstruction insn) {
+            insn.setReceiver(define(insn.getReceiver()));
+        }
+
+        @Override
+        public void visit(BinaryInstruction insn) {
+            insn.setFirstOperand(use(insn.getFirstOperand()));
+            insn.setSecondOperand(use(insn.getSecondOperand()));
+            insn.setReceiver(define(insn.getReceiver()));
+        }
+
+        @Override
+        public void visit(NegateInstruction insn) {
+            insn.setOperand(use(insn.getOperand()));
+            insn.setReceiver(define(insn.getReceiver()));
+        }
+
+        @Override
+        public void visit(AssignInstruction insn) {
+            insn.setAssignee(use(insn.getAssignee()));
+            insn.setReceiver(define(insn.getReceiver()));
+        }
+
+        @Override
+        public void visit(BranchingInstruction insn) {
+            insn.setOperand(use(insn.getOperand()));
+        }
+
+        @Override
+        public void visit(BinaryBranchingInstruction insn) {
+            insn.setFirstOperand(use(insn.getFirstOperand()));
+            insn.setSecondOperand(use(insn.getSecondOperand()));
+        }
+
+        @Override
+        public void visit(JumpInstruction insn) {
+        }
+
+        @Override
+        public void visit(SwitchInstruction insn) {
+            insn.setCondition(use(insn.getCondition()));
+        }
+
+        @Override
+        public void visit(ExitInstruction insn) {
+            if (insn.getValueToReturn() != null) {
+                insn.setValueToReturn(use(insn.getValueToReturn()));
+            }
+        }
+
+        @Override
+        public void visit(RaiseInstruction insn) {
+            insn.setException(use(insn.getException()));
+        }
+
+        @Override
+        public void visit(ConstructArrayInstruction insn) {
+            insn.setSize(use(insn.getSize()));
+            insn.setReceiver(define(insn.getReceiver()));
+        }
+
+        @Override
+        public void visit(ConstructInstruction insn) {
+            insn.setReceiver(define(insn.getReceiver()));
+        }
+
+        @Override
+        public void visit(ConstructMultiArrayInstruction insn) {
+            List<Variable> dimensions = insn.getDimensions();
+            for (int i = 0; i < dimensions.size(); ++i) {
+                dimensions.set(i, use(dimensions.get(i)));
+            }
+            insn.setReceiver(define(insn.getReceiver()));
+        }
+
+        @Override
+        public void visit(GetFieldInstruction insn) {
+            if (insn.getInstance() != null) {
+                insn.setInstance(use(insn.getInstance()));
+            }
+            insn.setReceiver(define(insn.getReceiver()));
+        }
+
+        @Override
+        public void visit(PutFieldInstruction insn) {
+            if (insn.getInstance() != null) {
+                insn.setInstance(use(insn.getInstance()));
+            }
+            insn.setValue(use(insn.getValue()));
+        }
+
+        @Override
+        public void visit(GetElementInstruction insn) {
+            insn.setArray(use(insn.getArray()));
+            insn.setIndex(use(insn.getIndex()));
+            insn.setReceiver(define(insn.getReceiver()));
+        }
+
+        @Override
+        public void visit(PutElementInstruction insn) {
+            insn.setArray(use(insn.getArray()));
+            insn.setIndex(use(insn.getIndex()));
+            insn.setValue(use(insn.getValue()));
+        }
+
+        @Override
+        public void visit(InvokeInstruction insn) {
+            List<Variable> args = insn.getArguments();
+            for (int i = 0; i < args.size(); ++i) {
+                args.set(i, use(args.get(i)));
+            }
+            if (insn.getInstance() != null) {
+                insn.setInstance(use(insn.getInstance()));
+            }
+            if (insn.getReceiver() != null) {
+                insn.setReceiver(define(insn.getReceiver()));
+            }
+        }
+
+        @Override
+        public void visit(IsInstanceInstruction insn) {
+            insn.setValue(use(insn.getValue()));
+            insn.setReceiver(define(insn.getReceiver()));
+        }
+
+        @Override
+        public void visit(CastInstruction insn) {
+            insn.setValue(use(insn.getValue()));
+            insn.setReceiver(define(insn.getReceiver()));
+        }
+
+        @Override
+        public void visit(CastNumberInstruction insn) {
+            insn.setValue(use(insn.getValue()));
+            insn.setReceiver(define(insn.getReceiver()));
+        }
+
+        @Override
+        public void visit(CastIntegerInstruction insn) {
+            insn.setValue(use(insn.getValue()));
+            insn.setReceiver(define(insn.getReceiver()));
+        }
+
+        @Override
+        public void visit(ArrayLengthInstruction insn) {
+            insn.setArray(use(insn.getArray()));
+            insn.setReceiver(define(insn.getReceiver()));
+        }
+
+        @Override
+        public void visit(UnwrapArrayInstruction insn) {
+            insn.setArray(use(insn.getArray()));
+            insn.setReceiver(define(insn.getReceiver()));
+        }
+
+        @Override
+        public void visit(CloneArrayInstruction insn) {
+            insn.setArray(use(insn.getArray()));
+            insn.setReceiver(define(insn.getReceiver()));
+        }
+
+        @Override
+        public void visit(InitClassInstruction insn) {
+        }
+    };
+}
@@ -21,7 +21,6 @@ import org.teavm.common.*;
 import org.teavm.model.*;
 import org.teavm.model.instructions.*;
 import org.teavm.model.util.DefinitionExtractor;
-import org.teavm.model.util.ProgramUtils;
 
 /**
  *
@@ -45,9 +44,8 @@ public class SSATransformer {
         }
         this.program = program;
         this.arguments = arguments;
-        cfg = ProgramUtils.buildControlFlowGraph(program);
-        domTree = GraphUtils.buildDominatorTree(cfg);
-        domFrontiers = new int[cfg.size()][];
+        cfg = program.getAnalysisCache().getControlFlowGraph();
+        domTree = program.getAnalysisCache().getDominatorTree();
         variableMap = new Variable[program.variableCount()];
         phiMap = new Phi[program.basicBlockCount()][];
         phiIndexMap = new int[program.basicBlockCount()][];
@@ -56,7 +54,7 @@ public class SSATransformer {
             phiIndexMap[i] = new int[program.variableCount()];
         }
         applySignature();
-        domFrontiers = GraphUtils.findDominanceFrontiers(cfg, domTree);
+        domFrontiers = program.getAnalysisCache().getDominanceFrontiers();
         estimatePhis();
         renameVariables();
     }
@@ -68,14 +66,6 @@ public class SSATransformer {
         for (int i = 0; i < arguments.length; ++i) {
             variableMap[index] = program.variableAt(index);
             ++index;
-            ValueType arg = arguments[i];
-            if (arg instanceof ValueType.Primitive) {
-                PrimitiveType kind = ((ValueType.Primitive)arg).getKind();
-                if (kind == PrimitiveType.LONG || kind == PrimitiveType.DOUBLE) {
-                    variableMap[index] = variableMap[index - 1];
-                    ++index;
-                }
-            }
         }
         arguments = null;
     }
@@ -99,7 +89,7 @@ public class SSATransformer {
     }
 
     private void renameVariables() {
-        domGraph = GraphUtils.buildDominatorGraph(domTree, program.basicBlockCount());
+        domGraph = program.getAnalysisCache().getDominatorGraph();
         Task[] stack = new Task[cfg.size() * 2];
         int head = 0;
         for (int i = 0; i < program.basicBlockCount(); ++i) {
@@ -0,0 +1,96 @@
+/*
+ *  Copyright 2014 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.resource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.tree.ClassNode;
+import org.teavm.common.BoundedCache;
+import org.teavm.common.Mapper;
+import org.teavm.model.ClassHolder;
+import org.teavm.model.CopyClassHolderSource;
+import org.teavm.parsing.Parser;
+
+/**
+ * <p>Parses classes like {@link ResourceClassHolderMapper}, but keeps parsed classes in a cache
+ * that is keyed by the SHA-1 hash of the class file and may be shared between builds.
+ * A class file that did not change is not parsed again. Each call returns a fresh copy
+ * of the cached class, since builds modify the classes they get.</p>
+ *
+ * @author Alexey Andreev <konsoletyper@gmail.com>
+ */
+public class HashedClassHolderMapper implements Mapper<String, ClassHolder> {
+    private ResourceReader resourceReader;
+    private BoundedCache<String, ClassHolder> cache;
+
+    public HashedClassHolderMapper(ResourceReader resourceReader, BoundedCache<String, ClassHolder> cache) {
+        this.resourceReader = resourceReader;
+        this.cache = cache;
+    }
+
+    @Override
+    public ClassHolder map(String name) {
+        String resourceName = name.replace('.', '/') + ".class";
+        if (!resourceReader.hasResource(resourceName)) {
+            return null;
+        }
+        byte[] bytes;
+        try (InputStream input = resourceReader.openResource(resourceName)) {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            while (true) {
+                int bytesRead = input.read(buffer);
+                if (bytesRead < 0) {
+                    break;
+                }
+                output.write(buffer, 0, bytesRead);
+            }
+            bytes = output.toByteArray();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        String hash = hash(bytes);
+        ClassHolder cls = cache.get(hash);
+        if (cls == null) {
+            ClassNode clsNode = new ClassNode();
+            new ClassReader(bytes).accept(clsNode, 0);
+            cls = Parser.parseClass(clsNode);
+            ClassHolder oldCls = cache.putIfAbsent(hash, cls);
+            if (oldCls != null) {
+                cls = oldCls;
+            }
+        }
+        return CopyClassHolderSource.copyClass(cls);
+    }
+
+    private static String hash(byte[] bytes) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("Platform does not support SHA-1", e);
+        }
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest.digest(bytes)) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+}
@@ -15,6 +15,8 @@
  */
 package org.teavm.resource;
 
+import org.teavm.common.BoundedCachedMapper;
+import org.teavm.common.CacheStatistics;
 import org.teavm.common.ConcurrentCachedMapper;
 import org.teavm.common.Mapper;
 import org.teavm.model.ClassHolder;
@@ -26,11 +28,61 @@ import org.teavm.model.ClassHolderSource;
  */
 public class MapperClassHolderSource implements ClassHolderSource {
     private Mapper<String, ClassHolder> mapper;
+    private BoundedCachedMapper<String, ClassHolder> boundedMapper;
+
+    /**
+     * <p>Gives classes of the source it was started from and pins them until it ends, so that
+     * a bounded source does not evict them.</p>
+     */
+    public class Session implements ClassHolderSource {
+        private BoundedCachedMapper<String, ClassHolder>.Session mapperSession;
+
+        private Session(BoundedCachedMapper<String, ClassHolder>.Session mapperSession) {
+            this.mapperSession = mapperSession;
+        }
+
+        @Override
+        public ClassHolder getClassHolder(String name) {
+            return mapperSession != null ? mapperSession.map(name) : mapper.map(name);
+        }
+
+        public void end() {
+            if (mapperSession != null) {
+                mapperSession.end();
+            }
+        }
+    }
 
     public MapperClassHolderSource(Mapper<String, ClassHolder> mapper) {
         this.mapper = new ConcurrentCachedMapper<>(mapper);
     }
 
+    /**
+     * <p>Creates a source that keeps at most <code>capacity</code> classes strongly reachable.
+     * See {@link org.teavm.common.BoundedCache} for details.</p>
+     */
+    public MapperClassHolderSource(Mapper<String, ClassHolder> mapper, int capacity) {
+        this.boundedMapper = new BoundedCachedMapper<>(mapper, capacity);
+        this.mapper = boundedMapper;
+    }
+
+    public boolean isBounded() {
+        return boundedMapper != null;
+    }
+
+    public Session beginPinning() {
+        return new Session(boundedMapper != null ? boundedMapper.beginPinning() : null);
+    }
+
+    /**
+     * <p>Gets cache counters of a bounded source.</p>
+     *
+     * @return statistics or <code>null</code> if the source is not bounded.
+     */
+    public CacheStatistics getStatistics() {
+        return boundedMapper != null ? boundedMapper.getStatistics() : null;
+    }
+
     @Override
     public ClassHolder getClassHolder(String name) {
         return mapper.map(name);
@@ -13,17 +13,32 @@
  *  See the License for the specific language governing permissions and
  *  limitations under the License.
  */
-$rt_lastObjectId = 0;
-$rt_nextId = function() {
+var $rt_lastObjectId = 0;
+var $rt_nextId = function() {
     return $rt_lastObjectId++;
 }
-$rt_compare = function(a, b) {
+var $rt_objectHashCode = function(obj) {
+    if (obj.$id === undefined) {
+        obj.$id = $rt_nextId();
+    }
+    return obj.$id;
+}
+var $rt_compare = function(a, b) {
     return a > b ? 1 : a < b ? -1 : 0;
 }
-$rt_isInstance = function(obj, cls) {
+if (Math.fround) {
+    var $rt_fround = Math.fround;
+} else {
+    var $rt_floatBuffer = new Float32Array(1);
+    var $rt_fround = function(value) {
+        $rt_floatBuffer[0] = value;
+        return $rt_floatBuffer[0];
+    }
+}
+var $rt_isInstance = function(obj, cls) {
     return $rt_isAssignable(obj.constructor, cls);
 }
-$rt_isAssignable = function(from, to) {
+var $rt_isAssignable = function(from, to) {
     if (from === to) {
         return true;
     }
@@ -35,88 +50,129 @@ $rt_isAssignable = function(from, to) {
     }
     return false;
 }
-$rt_createArray = function(cls, sz) {
+var $rt_createArray = function(cls, sz) {
     var data = new Array(sz);
     var arr = new ($rt_arraycls(cls))(data);
-    arr.$id = $rt_nextId();
     for (var i = 0; i < sz; i = (i + 1) | 0) {
         data[i] = null;
     }
     return arr;
 }
-$rt_createLongArray = function(sz) {
-    var data = new Array(sz);
-    var arr = new ($rt_arraycls($rt_longcls()))(data);
-    arr.$id = $rt_nextId();
-    for (var i = 0; i < sz; i = (i + 1) | 0) {
-        data[i] = Long.ZERO;
-    }
-    return arr;
-}
 if (ArrayBuffer) {
-    $rt_createNumericArray = function(cls, nativeArray) {
+    var $rt_createNumericArray = function(cls, nativeArray) {
         return new ($rt_arraycls(cls))(nativeArray);
     }
-    $rt_createByteArray = function(sz) {
+    var $rt_createByteArray = function(sz) {
         return $rt_createNumericArray($rt_bytecls(), new Int8Array(new ArrayBuffer(sz)), 0);
     };
-    $rt_createShortArray = function(sz) {
+    var $rt_createShortArray = function(sz) {
         return $rt_createNumericArray($rt_shortcls(), new Int16Array(new ArrayBuffer(sz << 1)), 0);
     };
-    $rt_createIntArray = function(sz) {
+    var $rt_createIntArray = function(sz) {
         return $rt_createNumericArray($rt_intcls(), new Int32Array(new ArrayBuffer(sz << 2)), 0);
     };
-    $rt_createBooleanArray = function(sz) {
+    var $rt_createBooleanArray = function(sz) {
         return $rt_createNumericArray($rt_booleancls(), new Int8Array(new ArrayBuffer(sz)), 0);
     };
-    $rt_createFloatArray = function(sz) {
+    var $rt_createFloatArray = function(sz) {
         return $rt_createNumericArray($rt_floatcls(), new Float32Array(new ArrayBuffer(sz << 2)), 0);
     };
-    $rt_createDoubleArray = function(sz) {
+    var $rt_createDoubleArray = function(sz) {
         return $rt_createNumericArray($rt_doublecls(), new Float64Array(new ArrayBuffer(sz << 3)), 0);
     };
-    $rt_createCharArray = function(sz) {
+    var $rt_createCharArray = function(sz) {
         return $rt_createNumericArray($rt_charcls(), new Uint16Array(new ArrayBuffer(sz << 1)), 0);
     };
+    var $rt_createLongArray = function(sz) {
+        var data = new Int32Array(new ArrayBuffer(sz << 2));
+        data.hi = new Int32Array(new ArrayBuffer(sz << 2));
+        return new ($rt_arraycls($rt_longcls()))(data);
+    };
 } else {
-    $rt_createNumericArray = function(cls, sz) {
+    var $rt_createNumericArray = function(cls, sz) {
         var data = new Array(sz);
         var arr = new ($rt_arraycls(cls))(data);
-        arr.$id = $rt_nextId();
         for (var i = 0; i < sz; i = (i + 1) | 0) {
             data[i] = 0;
         }
         return arr;
     }
-    $rt_createByteArray = function(sz) { return $rt_createNumericArray($rt_bytecls(), sz); }
-    $rt_createShortArray = function(sz) { return $rt_createNumericArray($rt_shortcls(), sz); }
-    $rt_createIntArray = function(sz) { return $rt_createNumericArray($rt_intcls(), sz); }
-    $rt_createBooleanArray = function(sz) { return $rt_createNumericArray($rt_booleancls(), sz); }
-    $rt_createFloatArray = function(sz) { return $rt_createNumericArray($rt_floatcls(), sz); }
-    $rt_createDoubleArray = function(sz) { return $rt_createNumericArray($rt_doublecls(), sz); }
-    $rt_createCharArray = function(sz) { return $rt_createNumericArray($rt_charcls(), sz); }
+    var $rt_createByteArray = function(sz) { return $rt_createNumericArray($rt_bytecls(), sz); }
+    var $rt_createShortArray = function(sz) { return $rt_createNumericArray($rt_shortcls(), sz); }
+    var $rt_createIntArray = function(sz) { return $rt_createNumericArray($rt_intcls(), sz); }
+    var $rt_createBooleanArray = function(sz) { return $rt_createNumericArray($rt_booleancls(), sz); }
+    var $rt_createFloatArray = function(sz) { return $rt_createNumericArray($rt_floatcls(), sz); }
+    var $rt_createDoubleArray = function(sz) { return $rt_createNumericArray($rt_doublecls(), sz); }
+    var $rt_createCharArray = function(sz) { return $rt_createNumericArray($rt_charcls(), sz); }
+    var $rt_createLongArray = function(sz) {
+        var arr = $rt_createNumericArray($rt_longcls(), sz);
+        var hi = new Array(sz);
+        for (var i = 0; i < sz; i = (i + 1) | 0) {
+            hi[i] = 0;
+        }
+        arr.data.hi = hi;
+        return arr;
+    }
+}
+// Elements of long[] are kept in two parallel arrays of 32-bit words, low words in data and high words
+// in data.hi, so that neither array creation nor element stores allocate Long objects
+var $rt_getLongElement = function(data, index) {
+    return new Long(data[index], data.hi[index]);
 }
-$rt_arraycls = function(cls) {
+var $rt_setLongElement = function(data, index, value) {
+    data[index] = value.lo;
+    data.hi[index] = value.hi;
+}
+var $rt_arraycopy = function(src, srcPos, dest, destPos, length) {
+    $rt_copyData(src.data, srcPos, dest.data, destPos, length);
+    if (src.data.hi !== undefined) {
+        $rt_copyData(src.data.hi, srcPos, dest.data.hi, destPos, length);
+    }
+}
+var $rt_copyData = function(src, srcPos, dest, destPos, length) {
+    if (src.subarray && dest.set) {
+        dest.set(src.subarray(srcPos, srcPos + length), destPos);
+    } else if (src === dest && srcPos < destPos) {
+        for (var i = length - 1; i >= 0; i = (i - 1) | 0) {
+            dest[destPos + i] = src[srcPos + i];
+        }
+    } else {
+        for (var i = 0; i < length; i = (i + 1) | 0) {
+            dest[destPos + i] = src[srcPos + i];
+        }
+    }
+}
+var $rt_cloneArray = function(arr) {
+    var data = $rt_cloneData(arr.data);
+    if (arr.data.hi !== undefined) {
+        data.hi = $rt_cloneData(arr.data.hi);
+    }
+    return new arr.constructor(data);
+}
+var $rt_cloneData = function(data) {
+    return data instanceof Array ? data.slice(0) : new data.constructor(data);
+}
+var $rt_arraycls = function(cls) {
     if (cls.$array == undefined) {
         var arraycls = function(data) {
             this.data = data;
         };
-        arraycls.prototype = new ($rt_objcls())();
+        arraycls.prototype = Object.create($rt_objcls().prototype);
         arraycls.prototype.constructor = arraycls;
         arraycls.$meta = { item : cls, supertypes : [$rt_objcls()], primitive : false };
         cls.$array = arraycls;
     }
     return cls.$array;
 }
-$rt_createcls = function() {
+var $rt_createcls = function() {
     return {
         $meta : {
             supertypes : []
         }
     };
 }
-$rt_booleanclsCache = null;
-$rt_booleancls = function() {
+var $rt_booleanclsCache = null;
+var $rt_booleancls = function() {
     if ($rt_booleanclsCache == null) {
         $rt_booleanclsCache = $rt_createcls();
         $rt_booleanclsCache.primitive = true;
@@ -124,8 +180,8 @@ $rt_booleancls = function() {
     }
     return $rt_booleanclsCache;
 }
-$rt_charclsCache = null;
-$rt_charcls = function() {
+var $rt_charclsCache = null;
+var $rt_charcls = function() {
     if ($rt_charclsCache == null) {
         $rt_charclsCache = $rt_createcls();
         $rt_charclsCache.primitive = true;
@@ -133,8 +189,8 @@ $rt_charcls = function() {
     }
     return $rt_charclsCache;
 }
-$rt_byteclsCache = null;
-$rt_bytecls = function() {
+var $rt_byteclsCache = null;
+var $rt_bytecls = function() {
     if ($rt_byteclsCache == null) {
         $rt_byteclsCache = $rt_createcls();
         $rt_byteclsCache.primitive = true;
@@ -142,8 +198,8 @@ $rt_bytecls = function() {
     }
     return $rt_byteclsCache;
 }
-$rt_shortclsCache = null;
-$rt_shortcls = function() {
+var $rt_shortclsCache = null;
+var $rt_shortcls = function() {
     if ($rt_shortclsCache == null) {
         $rt_shortclsCache = $rt_createcls();
         $rt_shortclsCache.primitive = true;
@@ -151,8 +207,8 @@ $rt_shortcls = function() {
     }
     return $rt_shortclsCache;
 }
-$rt_intclsCache = null;
-$rt_intcls = function() {
+var $rt_intclsCache = null;
+var $rt_intcls = function() {
     if ($rt_intclsCache == null) {
         $rt_intclsCache = $rt_createcls();
         $rt_intclsCache.primitive = true;
@@ -160,8 +216,8 @@ $rt_intcls = function() {
     }
     return $rt_intclsCache;
 }
-$rt_longclsCache = null;
-$rt_longcls = function() {
+var $rt_longclsCache = null;
+var $rt_longcls = function() {
     if ($rt_longclsCache == null) {
         $rt_longclsCache = $rt_createcls();
         $rt_longclsCache.primitive = true;
@@ -169,8 +225,8 @@ $rt_longcls = function() {
     }
     return $rt_longclsCache;
 }
-$rt_floatclsCache = null;
-$rt_floatcls = function() {
+var $rt_floatclsCache = null;
+var $rt_floatcls = function() {
     if ($rt_floatclsCache == null) {
         $rt_floatclsCache = $rt_createcls();
         $rt_floatclsCache.primitive = true;
@@ -178,8 +234,8 @@ $rt_floatcls = function() {
     }
     return $rt_floatclsCache;
 }
-$rt_doubleclsCache = null;
-$rt_doublecls = function() {
+var $rt_doubleclsCache = null;
+var $rt_doublecls = function() {
     if ($rt_doubleclsCache == null) {
         $rt_doubleclsCache = $rt_createcls();
         $rt_doubleclsCache.primitive = true;
@@ -187,8 +243,8 @@ $rt_doublecls = function() {
     }
     return $rt_doubleclsCache;
 }
-$rt_voidclsCache = null;
-$rt_voidcls = function() {
+var $rt_voidclsCache = null;
+var $rt_voidcls = function() {
     if ($rt_voidclsCache == null) {
         $rt_voidclsCache = $rt_createcls();
         $rt_voidclsCache.primitive = true;
@@ -196,7 +252,7 @@ $rt_voidcls = function() {
     }
     return $rt_voidclsCache;
 }
-$rt_equals = function(a, b) {
+var $rt_equals = function(a, b) {
     if (a === b) {
         return true;
     }
@@ -209,7 +265,7 @@ $rt_equals = function(a, b) {
         return false;
     }
 }
-$rt_clinit = function(cls) {
+var $rt_clinit = function(cls) {
     if (cls.$clinit) {
         var f = cls.$clinit;
         delete cls.$clinit;
@@ -217,29 +273,33 @@ $rt_clinit = function(cls) {
     }
     return cls;
 }
-$rt_init = function(cls, constructor, args) {
+var $rt_init = function(cls, constructor, args) {
     var obj = new cls();
     cls.prototype[constructor].apply(obj, args);
     return obj;
 }
-$rt_throw = function(ex) {
+var $rt_throw = function(ex) {
     var err = new Error("Java exception thrown");
     err.$javaException = ex;
     throw err;
 }
-$rt_byteToInt = function(value) {
-    return value > 0xFF ? value | 0xFFFFFF00 : value;
+var $rt_byteToInt = function(value) {
+    return value << 24 >> 24;
 }
-$rt_shortToInt = function(value) {
-    return value > 0xFFFF ? value | 0xFFFF0000 : value;
+var $rt_shortToInt = function(value) {
+    return value << 16 >> 16;
 }
-$rt_createMultiArray = function(cls, dimensions) {
+var $rt_createMultiArray = function(cls, dimensions) {
     return $rt_createMultiArrayImpl(cls, dimensions, 0);
 }
-$rt_createMultiArrayImpl = function(cls, dimensions, offset) {
+var $rt_createMultiArrayImpl = function(cls, dimensions, offset) {
     cls = cls.$meta.item;
-    var result = $rt_createArray(cls, dimensions[offset]);
+    var size = dimensions[offset];
     offset = (offset + 1) | 0;
+    if (offset == dimensions.length && cls.primitive) {
+        return $rt_createPrimitiveArray(cls, size);
+    }
+    var result = $rt_createArray(cls, size);
     if (offset < dimensions.length) {
         for (var i = 0; i < result.data.length; i = (i + 1) | 0) {
             result.data[i] = $rt_createMultiArrayImpl(cls, dimensions, offset);
@@ -247,13 +307,33 @@ $rt_createMultiArrayImpl = function(cls, dimensions, offset) {
     }
     return result;
 }
-$rt_assertNotNaN = function(value) {
+var $rt_createPrimitiveArray = function(cls, sz) {
+    switch (cls.name) {
+        case "boolean":
+            return $rt_createBooleanArray(sz);
+        case "byte":
+            return $rt_createByteArray(sz);
+        case "short":
+            return $rt_createShortArray(sz);
+        case "char":
+            return $rt_createCharArray(sz);
+        case "int":
+            return $rt_createIntArray(sz);
+        case "long":
+            return $rt_createLongArray(sz);
+        case "float":
+            return $rt_createFloatArray(sz);
+        case "double":
+            return $rt_createDoubleArray(sz);
+    }
+}
+var $rt_assertNotNaN = function(value) {
     if (typeof value == 'number' && isNaN(value)) {
         throw "NaN";
     }
     return value;
 }
-$rt_methodStubs = function(clinit, names) {
+var $rt_methodStubs = function(clinit, names) {
     for (var i = 0; i < names.length; i = (i + 1) | 0) {
         window[names[i]] = (function(name) {
             return function() {
@@ -263,8 +343,8 @@ $rt_methodStubs = function(clinit, names) {
         })(names[i]);
     }
 }
-$rt_stdoutBuffer = "";
-$rt_putStdout = function(ch) {
+var $rt_stdoutBuffer = "";
+var $rt_putStdout = function(ch) {
     if (ch === 0xA) {
         if (console) {
             console.info($rt_stdoutBuffer);
@@ -274,8 +354,8 @@ $rt_putStdout = function(ch) {
         $rt_stdoutBuffer += String.fromCharCode(ch);
     }
 }
-$rt_stderrBuffer = "";
-$rt_putStderr = function(ch) {
+var $rt_stderrBuffer = "";
+var $rt_putStderr = function(ch) {
     if (ch === 0xA) {
         if (console) {
             console.info($rt_stderrBuffer);
@@ -286,21 +366,31 @@ $rt_putStderr = function(ch) {
     }
 }
 
-Long = function(lo, hi) {
+var Long = function(lo, hi) {
     this.lo = lo | 0;
     this.hi = hi | 0;
 }
-Long_ZERO = new Long(0, 0);
-Long_fromInt = function(val) {
+var Long_ZERO = new Long(0, 0);
+var Long_fromInt = function(val) {
     return val >= 0 ? new Long(val, 0) : new Long(val, -1);
 }
-Long_fromNumber = function(val) {
-    return new Long(val | 0, (val / 0x100000000) | 0);
+var Long_fromNumber = function(val) {
+    if (val !== val) {
+        return Long_ZERO;
+    }
+    if (val >= 0x8000000000000000) {
+        return new Long(-1, 0x7FFFFFFF);
+    }
+    if (val <= -0x8000000000000000) {
+        return new Long(0, 0x80000000);
+    }
+    val = val >= 0 ? Math.floor(val) : Math.ceil(val);
+    return new Long(val | 0, Math.floor(val / 0x100000000));
 }
-Long_toNumber = function(val) {
-    return val.lo + 0x100000000 * val.hi;
+var Long_toNumber = function(val) {
+    return (val.lo >>> 0) + 0x100000000 * val.hi;
 }
-Long_add = function(a, b) {
+var Long_add = function(a, b) {
     var a_lolo = a.lo & 0xFFFF;
     var a_lohi = a.lo >>> 16;
     var a_hilo = a.hi & 0xFFFF;
@@ -317,7 +407,7 @@ Long_add = function(a, b) {
     return new Long((lolo & 0xFFFF) | ((lohi & 0xFFFF) << 16),
             (hilo & 0xFFFF) | ((hihi & 0xFFFF) << 16));
 }
-Long_inc = function(a) {
+var Long_inc = function(a) {
     var lo = (a.lo + 1) | 0;
     var hi = a.hi;
     if (lo === 0) {
@@ -325,7 +415,7 @@ Long_inc = function(a) {
     }
     return new Long(lo, hi);
 }
-Long_dec = function(a) {
+var Long_dec = function(a) {
     var lo = (a.lo - 1) | 0;
     var hi = a.hi;
     if (lo === -1) {
@@ -333,10 +423,10 @@ Long_dec = function(a) {
     }
     return new Long(lo, hi);
 }
-Long_neg = function(a) {
+var Long_neg = function(a) {
     return Long_inc(new Long(a.lo ^ 0xFFFFFFFF, a.hi ^ 0xFFFFFFFF));
 }
-Long_sub = function(a, b) {
+var Long_sub = function(a, b) {
     var a_lolo = a.lo & 0xFFFF;
     var a_lohi = a.lo >>> 16;
     var a_hilo = a.hi & 0xFFFF;
@@ -353,7 +443,7 @@ Long_sub = function(a, b) {
     return new Long((lolo & 0xFFFF) | ((lohi & 0xFFFF) << 16),
             (hilo & 0xFFFF) | ((hihi & 0xFFFF) << 16));
 }
-Long_compare = function(a, b) {
+var Long_compare = function(a, b) {
     var r = a.hi - b.hi;
     if (r !== 0) {
         return r;
@@ -364,13 +454,13 @@ Long_compare = function(a, b) {
     }
     return (a.lo & 1) - (b.lo & 1);
 }
-Long_isPositive = function(a) {
+var Long_isPositive = function(a) {
     return (a.hi & 0x80000000) === 0;
 }
-Long_isNegative = function(a) {
+var Long_isNegative = function(a) {
     return (a.hi & 0x80000000) !== 0;
 }
-Long_mul = function(a, b) {
+var Long_mul = function(a, b) {
     var a_lolo = a.lo & 0xFFFF;
     var a_lohi = a.lo >>> 16;
     var a_hilo = a.hi & 0xFFFF;
@@ -386,13 +476,13 @@ Long_mul = function(a, b) {
     var hihi = (a_hihi * b_lolo + a_hilo * b_lohi + a_lohi * b_hilo + a_lolo * b_hihi + (hilo >> 16)) | 0;
     return new Long((lolo & 0xFFFF) | ((lohi & 0xFFFF) << 16), (hilo & 0xFFFF) | ((hihi & 0xFFFF) << 16));
 }
-Long_div = function(a, b) {
+var Long_div = function(a, b) {
     return Long_divRem(a, b)[0];
 }
-Long_rem = function(a, b) {
+var Long_rem = function(a, b) {
     return Long_divRem(a, b)[1];
 }
-Long_divRem = function(a, b) {
+var Long_divRem = function(a, b) {
     var positive = Long_isNegative(a) === Long_isNegative(b);
     if (Long_isNegative(a)) {
         a = Long_neg(a);
@@ -407,36 +497,36 @@ Long_divRem = function(a, b) {
     q = new Long(q.lo, q.hi);
     return positive ? [q, a] : [Long_neg(q), Long_neg(a)];
 }
-Long_shiftLeft16 = function(a) {
+var Long_shiftLeft16 = function(a) {
     return new Long(a.lo << 16, (a.lo >>> 16) | (a.hi << 16));
 }
-Long_shiftRight16 = function(a) {
+var Long_shiftRight16 = function(a) {
     return new Long((a.lo >>> 16) | (a.hi << 16), a.hi >>> 16);
 }
-Long_and = function(a, b) {
+var Long_and = function(a, b) {
     return new Long(a.lo & b.lo, a.hi & b.hi);
 }
-Long_or = function(a, b) {
+var Long_or = function(a, b) {
     return new Long(a.lo | b.lo, a.hi | b.hi);
 }
-Long_xor = function(a, b) {
+var Long_xor = function(a, b) {
     return new Long(a.lo ^ b.lo, a.hi ^ b.hi);
 }
-Long_shl = function(a, b) {
+var Long_shl = function(a, b) {
     if (b < 32) {
         return new Long(a.lo << b, (a.lo >>> (32 - b)) | (a.hi << b));
     } else {
         return new Long(0, a.lo << (b - 32));
     }
 }
-Long_shr = function(a, b) {
+var Long_shr = function(a, b) {
     if (b < 32) {
         return new Long((a.lo >>> b) | (a.hi << (32 - b)), a.hi >> b);
     } else {
         return new Long((a.hi >> (b - 32)), -1);
     }
 }
-Long_shru = function(a, b) {
+var Long_shru = function(a, b) {
     if (b < 32) {
         return new Long((a.lo >>> b) | (a.hi << (32 - b)), a.hi >>> b);
     } else {
@@ -445,12 +535,12 @@ Long_shru = function(a, b) {
 }
 
 // Represents a mutable 80-bit unsigned integer
-LongInt = function(lo, hi, sup) {
+var LongInt = function(lo, hi, sup) {
     this.lo = lo;
     this.hi = hi;
     this.sup = sup;
 }
-LongInt_mul = function(a, b) {
+var LongInt_mul = function(a, b) {
     var a_lolo = ((a.lo & 0xFFFF) * b) | 0;
     var a_lohi = ((a.lo >>> 16) * b) | 0;
     var a_hilo = ((a.hi & 0xFFFF) * b) | 0;
@@ -465,7 +555,7 @@ LongInt_mul = function(a, b) {
     a.hi = (a_hilo & 0xFFFF) | (a_hihi << 16);
     a.sup = sup & 0xFFFF;
 }
-LongInt_sub = function(a, b) {
+var LongInt_sub = function(a, b) {
     var a_lolo = a.lo & 0xFFFF;
     var a_lohi = a.lo >>> 16;
     var a_hilo = a.hi & 0xFFFF;
@@ -479,12 +569,12 @@ LongInt_sub = function(a, b) {
     a_lohi = (a_lohi - b_lohi + (a_lolo >> 16)) | 0;
     a_hilo = (a_hilo - b_hilo + (a_lohi >> 16)) | 0;
     a_hihi = (a_hihi - b_hihi + (a_hilo >> 16)) | 0;
-    sup = (a.sup - b.sup + (a_hihi >> 16)) | 0;
+    var sup = (a.sup - b.sup + (a_hihi >> 16)) | 0;
     a.lo = (a_lolo & 0xFFFF) | ((a_lohi & 0xFFFF) << 16);
     a.hi = (a_hilo & 0xFFFF) | ((a_hihi & 0xFFFF) << 16);
     a.sup = sup;
 }
-LongInt_add = function(a, b) {
+var LongInt_add = function(a, b) {
     var a_lolo = a.lo & 0xFFFF;
     var a_lohi = a.lo >>> 16;
     var a_hilo = a.hi & 0xFFFF;
@@ -498,12 +588,12 @@ LongInt_add = function(a, b) {
     a_lohi = (a_lohi + b_lohi + (a_lolo >> 16)) | 0;
     a_hilo = (a_hilo + b_hilo + (a_lohi >> 16)) | 0;
     a_hihi = (a_hihi + b_hihi + (a_hilo >> 16)) | 0;
-    sup = (a.sup + b.sup + (a_hihi >> 16)) | 0;
+    var sup = (a.sup + b.sup + (a_hihi >> 16)) | 0;
     a.lo = (a_lolo & 0xFFFF) | (a_lohi << 16);
     a.hi = (a_hilo & 0xFFFF) | (a_hihi << 16);
     a.sup = sup;
 }
-LongInt_ucompare = function(a, b) {
+var LongInt_ucompare = function(a, b) {
     var r = (a.sup - b.sup);
     if (r != 0) {
         return r;
@@ -522,7 +612,7 @@ LongInt_ucompare = function(a, b) {
     }
     return (a.lo & 1) - (b.lo & 1);
 }
-LongInt_numOfLeadingZeroBits = function(a) {
+var LongInt_numOfLeadingZeroBits = function(a) {
     var n = 0;
     var d = 16;
     while (d > 0) {
@@ -534,7 +624,7 @@ LongInt_numOfLeadingZeroBits = function(a) {
     }
     return 31 - n;
 }
-LongInt_shl = function(a, b) {
+var LongInt_shl = function(a, b) {
     if (b < 32) {
         a.sup = ((a.hi >>> (32 - b)) | (a.sup << b)) & 0xFFFF;
         a.hi = (a.lo >>> (32 - b)) | (a.hi << b);
@@ -549,7 +639,7 @@ LongInt_shl = function(a, b) {
         a.lo = 0;
     }
 }
-LongInt_shr = function(a, b) {
+var LongInt_shr = function(a, b) {
     if (b < 32) {
         a.lo = (a.lo >>> b) | (a.hi << (32 - b));
         a.hi = (a.hi >>> b) | (a.sup << (32 - b));
@@ -564,17 +654,17 @@ LongInt_shr = function(a, b) {
         a.sup = 0;
     }
 }
-LongInt_copy = function(a) {
+var LongInt_copy = function(a) {
     return new LongInt(a.lo, a.hi, a.sup);
 }
-LongInt_div = function(a, b) {
+var LongInt_div = function(a, b) {
     // Normalize divisor
     var bits = b.hi !== 0 ? LongInt_numOfLeadingZeroBits(b.hi) : LongInt_numOfLeadingZeroBits(b.lo) + 32;
     var sz = 1 + ((bits / 16) | 0);
     var dividentBits = bits % 16;
     LongInt_shl(b, bits);
     LongInt_shl(a, dividentBits);
-    q = new LongInt(0, 0, 0);
+    var q = new LongInt(0, 0, 0);
     while (sz-- > 0) {
         LongInt_shl(q, 16);
         // Calculate approximate q
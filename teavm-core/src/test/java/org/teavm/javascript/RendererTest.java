@@ -0,0 +1,108 @@
+/*
+ *  Copyright 2014 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.javascript;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+import org.teavm.codegen.*;
+import org.teavm.javascript.ast.ClassNode;
+import org.teavm.javascript.ast.FieldNode;
+import org.teavm.model.*;
+
+/**
+ *
+ * @author Alexey Andreev <konsoletyper@gmail.com>
+ */
+public class RendererTest {
+    private MutableClassHolderSource classSource = new MutableClassHolderSource();
+    private DefaultNamingStrategy naming = new DefaultNamingStrategy(new DefaultAliasProvider(), classSource);
+
+    @Test
+    public void constructorInitializesInheritedFieldsFirst() {
+        addClass("test.Base", null, "x", "y");
+        addClass("test.Derived", "test.Base", "z");
+
+        String code = render("test.Derived", "test.Base", "z");
+
+        String constructor = code.substring(0, code.indexOf('}') + 1);
+        assertEquals("function " + className("test.Derived") + "() {\n" +
+                "    this." + fieldName("test.Base", "x") + " = 0;\n" +
+                "    this." + fieldName("test.Base", "y") + " = 0;\n" +
+                "    this." + fieldName("test.Derived", "z") + " = 0;\n" +
+                "}", constructor);
+    }
+
+    @Test
+    public void prototypeDoesNotInstantiateParent() {
+        addClass("test.Base", null, "x");
+        addClass("test.Derived", "test.Base");
+
+        String code = render("test.Derived", "test.Base");
+
+        assertTrue(code.contains(className("test.Derived") + ".prototype = Object.create("
+                + className("test.Base") + ".prototype);\n"));
+        assertFalse(code.contains("new " + className("test.Base")));
+    }
+
+    @Test
+    public void staticFieldsNotInherited() {
+        ClassHolder base = addClass("test.Base", null, "x");
+        FieldHolder counter = new FieldHolder("counter");
+        counter.setType(ValueType.INTEGER);
+        counter.getModifiers().add(ElementModifier.STATIC);
+        base.addField(counter);
+        addClass("test.Derived", "test.Base");
+
+        String code = render("test.Derived", "test.Base");
+
+        String constructor = code.substring(0, code.indexOf('}') + 1);
+        assertEquals("function " + className("test.Derived") + "() {\n" +
+                "    this." + fieldName("test.Base", "x") + " = 0;\n" +
+                "}", constructor);
+    }
+
+    private ClassHolder addClass(String name, String parent, String... fields) {
+        ClassHolder cls = new ClassHolder(name);
+        cls.setParent(parent);
+        for (String fieldName : fields) {
+            FieldHolder field = new FieldHolder(fieldName);
+            field.setType(ValueType.INTEGER);
+            cls.addField(field);
+        }
+        classSource.putClassHolder(cls);
+        return cls;
+    }
+
+    private String render(String name, String parent, String... fields) {
+        ClassNode cls = new ClassNode(name, parent);
+        for (String fieldName : fields) {
+            cls.getFields().add(new FieldNode(fieldName, ValueType.INTEGER));
+        }
+        StringBuilder sb = new StringBuilder();
+        SourceWriter writer = new SourceWriterBuilder(naming).build(sb);
+        Renderer renderer = new Renderer(writer, classSource, RendererTest.class.getClassLoader());
+        renderer.render(cls);
+        return sb.toString();
+    }
+
+    private String className(String name) {
+        return naming.getNameFor(name);
+    }
+
+    private String fieldName(String className, String name) {
+        return naming.getNameFor(FieldReference.get(className, name));
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ *  Copyright 2014 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.javascript;
+
+import static org.junit.Assert.*;
+import java.io.IOException;
+import java.util.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Alexey Andreev <konsoletyper@gmail.com>
+ */
+public class RuntimeLibraryTest {
+    @Test
+    public void splitsTopLevelStatements() throws IOException {
+        RuntimeLibrary runtime = new RuntimeLibrary(
+                "/* header */\n" +
+                "// first\n" +
+                "var a = function() {\n" +
+                "    return 1;\n" +
+                "}\n" +
+                "var b = function() {\n" +
+                "    return a();\n" +
+                "};\n");
+        assertEquals(names("a", "b"), runtime.getNames());
+        assertEquals("/* header */\n// first\nvar a = function() {\n    return 1;\n}\n", write(runtime, "a"));
+        assertEquals("/* header */\n// first\nvar a = function() {\n    return 1;\n}\n" +
+                "var b = function() {\n    return a();\n};\n", write(runtime, "b"));
+    }
+
+    @Test
+    public void declaresAllDeclarators() throws IOException {
+        RuntimeLibrary runtime = new RuntimeLibrary(
+                "var a = f(1, 2), b = [3, 4], c;\n" +
+                "var f = function(x, y) {\n" +
+                "    var local = x, other = y;\n" +
+                "    return local + other;\n" +
+                "}\n");
+        assertEquals(names("a", "b", "c", "f"), runtime.getNames());
+        assertEquals("var a = f(1, 2), b = [3, 4], c;\n" +
+                "var f = function(x, y) {\n    var local = x, other = y;\n    return local + other;\n}\n",
+                write(runtime, "b"));
+    }
+
+    @Test
+    public void declaresInBranchesOfCondition() {
+        RuntimeLibrary runtime = new RuntimeLibrary(
+                "if (Math.fround) {\n" +
+                "    var round = Math.fround;\n" +
+                "} else {\n" +
+                "    var buffer = new Float32Array(1), round = function(value) {\n" +
+                "        buffer[0] = value, value = 0;\n" +
+                "        return buffer[0];\n" +
+                "    }\n" +
+                "}\n");
+        assertEquals(names("round", "buffer"), runtime.getNames());
+    }
+
+    @Test(expected = RenderingException.class)
+    public void rejectsStatementWithoutDeclaration() {
+        new RuntimeLibrary(
+                "var Long = function() {\n" +
+                "}\n" +
+                "Long.prototype.x = 1;\n");
+    }
+
+    @Test(expected = RenderingException.class)
+    public void rejectsFunctionDeclaration() {
+        new RuntimeLibrary("function foo() {\n}\n");
+    }
+
+    @Test(expected = RenderingException.class)
+    public void rejectsDuplicateDeclaration() {
+        new RuntimeLibrary("var a = 1;\nvar a = 2;\n");
+    }
+
+    @Test
+    public void skipsRegularExpressions() {
+        RuntimeLibrary runtime = new RuntimeLibrary(
+                "var a = /[/'\"]b\\/c/g.test(d);\n" +
+                "var b = function(x) {\n" +
+                "    return /a/.test(x) ? 1 / 2 : x / c;\n" +
+                "}\n" +
+                "var c = 1, d = '';\n");
+        assertEquals(names("a", "b", "c", "d"), runtime.getNames());
+        Set<String> references = new HashSet<>();
+        runtime.collectReferences("var x = /a|b/.exec(y) + ')/' + d;", references);
+        assertEquals(names("d"), references);
+        references.clear();
+        runtime.collectReferences("var x = (y) / a / b;", references);
+        assertEquals(names("a", "b"), references);
+    }
+
+    @Test
+    public void collectsReferencesOutsideLiteralsAndProperties() {
+        RuntimeLibrary runtime = new RuntimeLibrary("var a = 1;\nvar b = 2;\nvar c = 3;\n");
+        Set<String> references = new HashSet<>();
+        runtime.collectReferences("x.a = 'b' + c; // a\n/* b */", references);
+        assertEquals(names("c"), references);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownName() throws IOException {
+        write(new RuntimeLibrary("var a = 1;\n"), "b");
+    }
+
+    private static Set<String> names(String... names) {
+        return new HashSet<>(Arrays.asList(names));
+    }
+
+    private static String write(RuntimeLibrary runtime, String... names) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        runtime.write(sb, Arrays.asList(names));
+        return sb.toString();
+    }
+}
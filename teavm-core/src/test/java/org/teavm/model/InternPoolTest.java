@@ -0,0 +1,63 @@
+/*
+ *  Copyright 2014 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.model;
+
+import static org.junit.Assert.*;
+import java.util.concurrent.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Alexey Andreev <konsoletyper@gmail.com>
+ */
+public class InternPoolTest {
+    @Test
+    public void equalKeysGiveSameInstance() {
+        InternPool<String, Object> pool = new InternPool<>();
+        String key = "a";
+        Object value = new Object();
+        assertSame(value, pool.intern(key, value));
+        assertSame(value, pool.intern(new String("a"), new Object()));
+        assertSame(value, pool.get(new String("a")));
+        assertNull(pool.get("b"));
+    }
+
+    @Test
+    public void referencesInternedConcurrently() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Callable<MethodReference[]> task = new Callable<MethodReference[]>() {
+                @Override
+                public MethodReference[] call() {
+                    MethodReference[] result = new MethodReference[1000];
+                    for (int i = 0; i < result.length; ++i) {
+                        result[i] = MethodReference.get("test.Item", MethodDescriptor.get("m" + i, ValueType.VOID));
+                    }
+                    return result;
+                }
+            };
+            Future<MethodReference[]> first = executor.submit(task);
+            Future<MethodReference[]> second = executor.submit(task);
+            MethodReference[] firstResult = first.get();
+            MethodReference[] secondResult = second.get();
+            for (int i = 0; i < firstResult.length; ++i) {
+                assertSame(firstResult[i], secondResult[i]);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
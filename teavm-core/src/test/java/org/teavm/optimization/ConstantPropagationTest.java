@@ -0,0 +1,48 @@
+/*
+ *  Copyright 2014 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.optimization;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Alexey Andreev <konsoletyper@gmail.com>
+ */
+public class ConstantPropagationTest {
+    @Test
+    public void doubleInIntRangeTruncated() {
+        assertEquals(3, ConstantPropagation.toInt32(3.7));
+        assertEquals(-3, ConstantPropagation.toInt32(-3.7));
+        assertEquals(Integer.MAX_VALUE, ConstantPropagation.toInt32(Integer.MAX_VALUE));
+        assertEquals(Integer.MIN_VALUE, ConstantPropagation.toInt32(Integer.MIN_VALUE));
+    }
+
+    @Test
+    public void doubleOutOfIntRangeWrapped() {
+        assertEquals(1410065408, ConstantPropagation.toInt32(1e10));
+        assertEquals(-1410065408, ConstantPropagation.toInt32(-1e10));
+        assertEquals(Integer.MIN_VALUE, ConstantPropagation.toInt32(2147483648.0));
+        assertEquals(0, ConstantPropagation.toInt32(4294967296.0));
+    }
+
+    @Test
+    public void nonFiniteDoubleConvertedToZero() {
+        assertEquals(0, ConstantPropagation.toInt32(Double.NaN));
+        assertEquals(0, ConstantPropagation.toInt32(Double.POSITIVE_INFINITY));
+        assertEquals(0, ConstantPropagation.toInt32(Double.NEGATIVE_INFINITY));
+    }
+}
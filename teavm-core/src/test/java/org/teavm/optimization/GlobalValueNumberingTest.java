@@ -0,0 +1,302 @@
+/*
+ *  Copyright 2014 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.optimization;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+import org.teavm.model.*;
+import org.teavm.model.instructions.*;
+
+/**
+ *
+ * @author Alexey Andreev <konsoletyper@gmail.com>
+ */
+public class GlobalValueNumberingTest {
+    private static final FieldReference FIELD = FieldReference.get("test.Item", "value");
+    private Program program = new Program();
+    private Variable first;
+    private Variable second;
+    private Variable value;
+    private Variable otherValue;
+
+    public GlobalValueNumberingTest() {
+        program.createVariable();
+        first = program.createVariable();
+        second = program.createVariable();
+        value = program.createVariable();
+        otherValue = program.createVariable();
+    }
+
+    @Test
+    public void storedValueForwardedToLoad() {
+        BasicBlock block = program.createBasicBlock();
+        block.getInstructions().add(putField(first, value));
+        Variable loaded = program.createVariable();
+        block.getInstructions().add(getField(first, loaded));
+        block.getInstructions().add(exit(loaded));
+
+        optimize();
+
+        assertEquals(0, count(block, GetFieldInstruction.class));
+        assertSame(value, returnedValue(block));
+    }
+
+    @Test
+    public void storeToPossibleAliasPreventsForwarding() {
+        BasicBlock block = program.createBasicBlock();
+        block.getInstructions().add(putField(first, value));
+        block.getInstructions().add(putField(second, otherValue));
+        Variable loaded = program.createVariable();
+        block.getInstructions().add(getField(first, loaded));
+        block.getInstructions().add(exit(loaded));
+
+        optimize();
+
+        assertEquals(1, count(block, GetFieldInstruction.class));
+        assertSame(loaded, returnedValue(block));
+    }
+
+    @Test
+    public void invocationPreventsForwarding() {
+        BasicBlock block = program.createBasicBlock();
+        Variable loaded = program.createVariable();
+        Variable reloaded = program.createVariable();
+        Variable sum = program.createVariable();
+        block.getInstructions().add(getField(first, loaded));
+        InvokeInstruction invoke = new InvokeInstruction();
+        invoke.setType(InvocationType.SPECIAL);
+        invoke.setMethod(MethodReference.get("test.Item", MethodDescriptor.get("update", ValueType.VOID)));
+        block.getInstructions().add(invoke);
+        block.getInstructions().add(getField(first, reloaded));
+        block.getInstructions().add(add(loaded, reloaded, sum));
+        block.getInstructions().add(exit(sum));
+
+        optimize();
+
+        assertEquals(2, count(block, GetFieldInstruction.class));
+    }
+
+    @Test
+    public void elementForwardedOnlyForExactArrays() {
+        BasicBlock block = program.createBasicBlock();
+        Variable ints = program.createVariable();
+        Variable bytes = program.createVariable();
+        block.getInstructions().add(unwrap(first, ints, ArrayElementType.INT));
+        block.getInstructions().add(unwrap(second, bytes, ArrayElementType.BYTE));
+        block.getInstructions().add(putElement(ints, value, ArrayElementType.INT));
+        Variable intLoaded = program.createVariable();
+        block.getInstructions().add(getElement(ints, intLoaded, ArrayElementType.INT));
+        block.getInstructions().add(putElement(bytes, value, ArrayElementType.BYTE));
+        Variable byteLoaded = program.createVariable();
+        block.getInstructions().add(getElement(bytes, byteLoaded, ArrayElementType.BYTE));
+        Variable sum = program.createVariable();
+        block.getInstructions().add(add(intLoaded, byteLoaded, sum));
+        block.getInstructions().add(exit(sum));
+
+        optimize();
+
+        assertEquals(1, count(block, GetElementInstruction.class));
+        BinaryInstruction addition = (BinaryInstruction)block.getInstructions().get(
+                block.getInstructions().size() - 2);
+        assertSame(value, addition.getFirstOperand());
+        assertSame(byteLoaded, addition.getSecondOperand());
+    }
+
+    @Test
+    public void expressionReusedInDominatedBlockOnly() {
+        BasicBlock entry = program.createBasicBlock();
+        BasicBlock consequent = program.createBasicBlock();
+        BasicBlock alternative = program.createBasicBlock();
+        Variable sum = program.createVariable();
+        Variable dominatedSum = program.createVariable();
+        Variable consequentSum = program.createVariable();
+        Variable alternativeSum = program.createVariable();
+        entry.getInstructions().add(add(value, otherValue, sum));
+        entry.getInstructions().add(branch(value, consequent, alternative));
+        consequent.getInstructions().add(add(otherValue, value, dominatedSum));
+        consequent.getInstructions().add(add(value, value, consequentSum));
+        consequent.getInstructions().add(exit(dominatedSum));
+        alternative.getInstructions().add(add(value, value, alternativeSum));
+        alternative.getInstructions().add(exit(alternativeSum));
+
+        optimize();
+
+        assertEquals(1, count(consequent, BinaryInstruction.class));
+        assertSame(sum, returnedValue(consequent));
+        assertEquals(1, count(alternative, BinaryInstruction.class));
+        assertSame(alternativeSum, returnedValue(alternative));
+    }
+
+    @Test
+    public void congruentPhisMerged() {
+        BasicBlock exit = createDiamond();
+        Phi phi = phi(exit, first, second);
+        Phi other = phi(exit, first, second);
+        Variable sum = program.createVariable();
+        exit.getInstructions().add(add(phi.getReceiver(), other.getReceiver(), sum));
+        exit.getInstructions().add(exit(sum));
+
+        optimize();
+
+        assertEquals(1, exit.getPhis().size());
+        BinaryInstruction addition = (BinaryInstruction)exit.getInstructions().get(0);
+        assertSame(phi.getReceiver(), addition.getFirstOperand());
+        assertSame(phi.getReceiver(), addition.getSecondOperand());
+    }
+
+    @Test
+    public void phisWithSwappedIncomingsKept() {
+        BasicBlock exit = createDiamond();
+        Phi phi = phi(exit, first, second);
+        Phi other = phi(exit, second, first);
+        Variable sum = program.createVariable();
+        exit.getInstructions().add(add(phi.getReceiver(), other.getReceiver(), sum));
+        exit.getInstructions().add(exit(sum));
+
+        optimize();
+
+        assertEquals(2, exit.getPhis().size());
+    }
+
+    @Test
+    public void phiOfSingleValueReplaced() {
+        BasicBlock exit = createDiamond();
+        Phi phi = phi(exit, first, first);
+        exit.getInstructions().add(exit(phi.getReceiver()));
+
+        optimize();
+
+        assertEquals(0, exit.getPhis().size());
+        assertSame(first, returnedValue(exit));
+    }
+
+    private BasicBlock createDiamond() {
+        BasicBlock entry = program.createBasicBlock();
+        BasicBlock consequent = program.createBasicBlock();
+        BasicBlock alternative = program.createBasicBlock();
+        BasicBlock exit = program.createBasicBlock();
+        entry.getInstructions().add(branch(value, consequent, alternative));
+        consequent.getInstructions().add(jump(exit));
+        alternative.getInstructions().add(jump(exit));
+        return exit;
+    }
+
+    private Phi phi(BasicBlock block, Variable fromConsequent, Variable fromAlternative) {
+        Phi phi = new Phi();
+        phi.setReceiver(program.createVariable());
+        Incoming incoming = new Incoming();
+        incoming.setSource(program.basicBlockAt(1));
+        incoming.setValue(fromConsequent);
+        phi.getIncomings().add(incoming);
+        incoming = new Incoming();
+        incoming.setSource(program.basicBlockAt(2));
+        incoming.setValue(fromAlternative);
+        phi.getIncomings().add(incoming);
+        block.getPhis().add(phi);
+        return phi;
+    }
+
+    private void optimize() {
+        MethodHolder method = new MethodHolder("test", ValueType.object("test.Item"),
+                ValueType.object("test.Item"), ValueType.INTEGER, ValueType.INTEGER, ValueType.INTEGER);
+        method.getModifiers().add(ElementModifier.STATIC);
+        method.setProgram(program);
+        new GlobalValueNumbering().optimize(method, program);
+    }
+
+    private static int count(BasicBlock block, Class<? extends Instruction> type) {
+        int count = 0;
+        for (Instruction insn : block.getInstructions()) {
+            if (type.isInstance(insn)) {
+                ++count;
+            }
+        }
+        return count;
+    }
+
+    private static Variable returnedValue(BasicBlock block) {
+        return ((ExitInstruction)block.getLastInstruction()).getValueToReturn();
+    }
+
+    private static PutFieldInstruction putField(Variable instance, Variable value) {
+        PutFieldInstruction insn = new PutFieldInstruction();
+        insn.setInstance(instance);
+        insn.setField(FIELD);
+        insn.setValue(value);
+        return insn;
+    }
+
+    private static GetFieldInstruction getField(Variable instance, Variable receiver) {
+        GetFieldInstruction insn = new GetFieldInstruction();
+        insn.setInstance(instance);
+        insn.setField(FIELD);
+        insn.setFieldType(ValueType.INTEGER);
+        insn.setReceiver(receiver);
+        return insn;
+    }
+
+    private static UnwrapArrayInstruction unwrap(Variable array, Variable receiver, ArrayElementType type) {
+        UnwrapArrayInstruction insn = new UnwrapArrayInstruction(type);
+        insn.setArray(array);
+        insn.setReceiver(receiver);
+        return insn;
+    }
+
+    private PutElementInstruction putElement(Variable array, Variable value, ArrayElementType type) {
+        PutElementInstruction insn = new PutElementInstruction(type);
+        insn.setArray(array);
+        insn.setIndex(otherValue);
+        insn.setValue(value);
+        return insn;
+    }
+
+    private GetElementInstruction getElement(Variable array, Variable receiver, ArrayElementType type) {
+        GetElementInstruction insn = new GetElementInstruction(type);
+        insn.setArray(array);
+        insn.setIndex(otherValue);
+        insn.setReceiver(receiver);
+        return insn;
+    }
+
+    private static BinaryInstruction add(Variable a, Variable b, Variable receiver) {
+        BinaryInstruction insn = new BinaryInstruction(BinaryOperation.ADD, NumericOperandType.INT);
+        insn.setFirstOperand(a);
+        insn.setSecondOperand(b);
+        insn.setReceiver(receiver);
+        return insn;
+    }
+
+    private static BranchingInstruction branch(Variable condition, BasicBlock consequent,
+            BasicBlock alternative) {
+        BranchingInstruction insn = new BranchingInstruction(BranchingCondition.EQUAL);
+        insn.setOperand(condition);
+        insn.setConsequent(consequent);
+        insn.setAlternative(alternative);
+        return insn;
+    }
+
+    private static JumpInstruction jump(BasicBlock target) {
+        JumpInstruction insn = new JumpInstruction();
+        insn.setTarget(target);
+        return insn;
+    }
+
+    private static ExitInstruction exit(Variable value) {
+        ExitInstruction insn = new ExitInstruction();
+        insn.setValueToReturn(value);
+        return insn;
+    }
+}
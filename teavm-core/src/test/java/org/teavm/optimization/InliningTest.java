@@ -0,0 +1,173 @@
+/*
+ *  Copyright 2014 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.optimization;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+import org.teavm.model.*;
+import org.teavm.model.instructions.*;
+
+/**
+ *
+ * @author Alexey Andreev <konsoletyper@gmail.com>
+ */
+public class InliningTest {
+    private static final String ITEM = "test.Item";
+    private static final String CALLER = "test.Caller";
+    private MutableClassHolderSource classSource = new MutableClassHolderSource();
+
+    @Test
+    public void callOnUnknownReceiverGuardedByNullCheck() {
+        MethodHolder caller = createCaller(false);
+        Program program = caller.getProgram();
+        Variable item = program.variableAt(1);
+        Variable result = program.createVariable();
+        BasicBlock block = program.basicBlockAt(0);
+        block.getInstructions().add(invokeConstant(item, result));
+        block.getInstructions().add(exit(result));
+
+        optimize(caller);
+
+        BranchingInstruction nullCheck = (BranchingInstruction)block.getLastInstruction();
+        assertEquals(BranchingCondition.NULL, nullCheck.getCondition());
+        assertSame(item, nullCheck.getOperand());
+        InvokeInstruction call = (InvokeInstruction)nullCheck.getConsequent().getInstructions().get(0);
+        assertEquals(InvocationType.VIRTUAL, call.getType());
+        assertSame(item, call.getInstance());
+        assertFalse(containsInvocation(nullCheck.getAlternative()));
+    }
+
+    @Test
+    public void callOnNewObjectNotGuarded() {
+        MethodHolder caller = createCaller(false);
+        Program program = caller.getProgram();
+        Variable item = program.createVariable();
+        Variable copy = program.createVariable();
+        Variable result = program.createVariable();
+        BasicBlock block = program.basicBlockAt(0);
+        ConstructInstruction construct = new ConstructInstruction();
+        construct.setType(ITEM);
+        construct.setReceiver(item);
+        block.getInstructions().add(construct);
+        AssignInstruction assign = new AssignInstruction();
+        assign.setAssignee(item);
+        assign.setReceiver(copy);
+        block.getInstructions().add(assign);
+        block.getInstructions().add(invokeConstant(copy, result));
+        block.getInstructions().add(exit(result));
+
+        optimize(caller);
+
+        assertFalse(containsNullCheck(program));
+        assertFalse(containsInvocation(program));
+    }
+
+    @Test
+    public void callOnThisNotGuarded() {
+        MethodHolder caller = createCaller(true);
+        Program program = caller.getProgram();
+        Variable result = program.createVariable();
+        BasicBlock block = program.basicBlockAt(0);
+        block.getInstructions().add(invokeConstant(program.variableAt(0), result));
+        block.getInstructions().add(exit(result));
+
+        optimize(caller);
+
+        assertFalse(containsNullCheck(program));
+        assertFalse(containsInvocation(program));
+    }
+
+    private MethodHolder createCaller(boolean instance) {
+        ClassHolder itemClass = new ClassHolder(ITEM);
+        MethodHolder constant = new MethodHolder("constant", ValueType.INTEGER);
+        Program constantProgram = new Program();
+        constantProgram.createVariable();
+        Variable one = constantProgram.createVariable();
+        BasicBlock constantBlock = constantProgram.createBasicBlock();
+        IntegerConstantInstruction oneInsn = new IntegerConstantInstruction();
+        oneInsn.setConstant(1);
+        oneInsn.setReceiver(one);
+        constantBlock.getInstructions().add(oneInsn);
+        constantBlock.getInstructions().add(exit(one));
+        constant.setProgram(constantProgram);
+        itemClass.addMethod(constant);
+        classSource.putClassHolder(itemClass);
+
+        ClassHolder callerClass = new ClassHolder(instance ? ITEM + "Subclass" : CALLER);
+        if (instance) {
+            callerClass.setParent(ITEM);
+        }
+        MethodHolder caller = new MethodHolder("call", ValueType.object(ITEM), ValueType.INTEGER);
+        if (!instance) {
+            caller.getModifiers().add(ElementModifier.STATIC);
+        }
+        Program program = new Program();
+        program.createVariable();
+        program.createVariable();
+        program.createBasicBlock();
+        caller.setProgram(program);
+        callerClass.addMethod(caller);
+        classSource.putClassHolder(callerClass);
+        return caller;
+    }
+
+    private void optimize(MethodHolder method) {
+        Inlining inlining = new Inlining(classSource);
+        inlining.optimize(method, method.getProgram());
+    }
+
+    private static InvokeInstruction invokeConstant(Variable instance, Variable receiver) {
+        InvokeInstruction invoke = new InvokeInstruction();
+        invoke.setType(InvocationType.VIRTUAL);
+        invoke.setMethod(MethodReference.get(ITEM, MethodDescriptor.get("constant", ValueType.INTEGER)));
+        invoke.setInstance(instance);
+        invoke.setReceiver(receiver);
+        return invoke;
+    }
+
+    private static ExitInstruction exit(Variable value) {
+        ExitInstruction exit = new ExitInstruction();
+        exit.setValueToReturn(value);
+        return exit;
+    }
+
+    private static boolean containsInvocation(Program program) {
+        for (int i = 0; i < program.basicBlockCount(); ++i) {
+            if (containsInvocation(program.basicBlockAt(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean containsInvocation(BasicBlock block) {
+        for (Instruction insn : block.getInstructions()) {
+            if (insn instanceof InvokeInstruction) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean containsNullCheck(Program program) {
+        for (int i = 0; i < program.basicBlockCount(); ++i) {
+            if (program.basicBlockAt(i).getLastInstruction() instanceof BranchingInstruction) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
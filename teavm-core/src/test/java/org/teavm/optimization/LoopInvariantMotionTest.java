@@ -0,0 +1,219 @@
+/*
+ *  Copyright 2014 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.optimization;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+import org.teavm.model.*;
+import org.teavm.model.instructions.*;
+
+/**
+ *
+ * @author Alexey Andreev <konsoletyper@gmail.com>
+ */
+public class LoopInvariantMotionTest {
+    private Program program = new Program();
+    private Variable item;
+    private Variable first;
+    private Variable second;
+    private Variable counter;
+    private BasicBlock entry;
+    private BasicBlock head;
+    private BasicBlock body;
+    private BasicBlock exit;
+
+    public LoopInvariantMotionTest() {
+        program.createVariable();
+        item = program.createVariable();
+        first = program.createVariable();
+        second = program.createVariable();
+    }
+
+    @Test
+    public void invariantExpressionMovedToPreheader() {
+        createLoop(true);
+        BinaryInstruction invariant = add(first, second);
+        BinaryInstruction dependent = add(first, counter);
+        body.getInstructions().add(0, invariant);
+        body.getInstructions().add(1, dependent);
+
+        optimize();
+
+        assertSame(entry, invariant.getBasicBlock());
+        assertSame(body, dependent.getBasicBlock());
+        assertTrue(entry.getLastInstruction() instanceof JumpInstruction);
+    }
+
+    @Test
+    public void fieldReadMovedFromHeadOnly() {
+        createLoop(true);
+        GetFieldInstruction headRead = getField("test.Item", "value");
+        GetFieldInstruction bodyRead = getField("test.Item", "other");
+        head.getInstructions().add(0, headRead);
+        body.getInstructions().add(0, bodyRead);
+
+        optimize();
+
+        assertSame(entry, headRead.getBasicBlock());
+        assertSame(body, bodyRead.getBasicBlock());
+    }
+
+    @Test
+    public void fieldReadKeptWhenLoopWritesField() {
+        createLoop(true);
+        GetFieldInstruction read = getField("test.Item", "value");
+        head.getInstructions().add(0, read);
+        PutFieldInstruction write = new PutFieldInstruction();
+        write.setInstance(item);
+        write.setField(FieldReference.get("test.SubItem", "value"));
+        write.setValue(first);
+        body.getInstructions().add(0, write);
+
+        optimize();
+
+        assertSame(head, read.getBasicBlock());
+    }
+
+    @Test
+    public void fieldReadKeptWhenLoopInvokesMethod() {
+        createLoop(true);
+        GetFieldInstruction read = getField("test.Item", "value");
+        head.getInstructions().add(0, read);
+        InvokeInstruction invoke = new InvokeInstruction();
+        invoke.setType(InvocationType.SPECIAL);
+        invoke.setMethod(MethodReference.get("test.Item", MethodDescriptor.get("update", ValueType.VOID)));
+        body.getInstructions().add(0, invoke);
+
+        optimize();
+
+        assertSame(head, read.getBasicBlock());
+    }
+
+    @Test
+    public void preheaderCreatedWhenEntryBranches() {
+        createLoop(false);
+        BinaryInstruction invariant = add(first, second);
+        body.getInstructions().add(0, invariant);
+
+        optimize();
+
+        BasicBlock preheader = invariant.getBasicBlock();
+        assertNotSame(entry, preheader);
+        assertNotSame(body, preheader);
+        assertSame(head, ((JumpInstruction)preheader.getLastInstruction()).getTarget());
+        assertSame(preheader, ((BranchingInstruction)entry.getLastInstruction()).getConsequent());
+        for (Incoming incoming : head.getPhis().get(0).getIncomings()) {
+            assertTrue(incoming.getSource() == preheader || incoming.getSource() == body);
+        }
+    }
+
+    /**
+     * <p>Creates a loop that counts from zero while the counter is not equal to the first parameter.
+     * The entry block either jumps to the loop head or branches to it and to the exit.</p>
+     */
+    private void createLoop(boolean entryJumps) {
+        entry = program.createBasicBlock();
+        head = program.createBasicBlock();
+        body = program.createBasicBlock();
+        exit = program.createBasicBlock();
+
+        Variable zero = program.createVariable();
+        Variable one = program.createVariable();
+        entry.getInstructions().add(constant(0, zero));
+        entry.getInstructions().add(constant(1, one));
+        if (entryJumps) {
+            entry.getInstructions().add(jump(head));
+        } else {
+            entry.getInstructions().add(branch(first, head, exit));
+        }
+
+        counter = program.createVariable();
+        Variable next = program.createVariable();
+        Phi phi = new Phi();
+        phi.setReceiver(counter);
+        Incoming incoming = new Incoming();
+        incoming.setSource(entry);
+        incoming.setValue(zero);
+        phi.getIncomings().add(incoming);
+        incoming = new Incoming();
+        incoming.setSource(body);
+        incoming.setValue(next);
+        phi.getIncomings().add(incoming);
+        head.getPhis().add(phi);
+        BinaryBranchingInstruction condition = new BinaryBranchingInstruction(BinaryBranchingCondition.EQUAL);
+        condition.setFirstOperand(counter);
+        condition.setSecondOperand(first);
+        condition.setConsequent(exit);
+        condition.setAlternative(body);
+        head.getInstructions().add(condition);
+
+        BinaryInstruction increment = new BinaryInstruction(BinaryOperation.ADD, NumericOperandType.INT);
+        increment.setFirstOperand(counter);
+        increment.setSecondOperand(one);
+        increment.setReceiver(next);
+        body.getInstructions().add(increment);
+        body.getInstructions().add(jump(head));
+
+        exit.getInstructions().add(new ExitInstruction());
+    }
+
+    private void optimize() {
+        MethodHolder method = new MethodHolder("test", ValueType.object("test.Item"), ValueType.INTEGER,
+                ValueType.INTEGER, ValueType.VOID);
+        method.getModifiers().add(ElementModifier.STATIC);
+        method.setProgram(program);
+        new LoopInvariantMotion().optimize(method, program);
+    }
+
+    private BinaryInstruction add(Variable a, Variable b) {
+        BinaryInstruction insn = new BinaryInstruction(BinaryOperation.ADD, NumericOperandType.INT);
+        insn.setFirstOperand(a);
+        insn.setSecondOperand(b);
+        insn.setReceiver(program.createVariable());
+        return insn;
+    }
+
+    private GetFieldInstruction getField(String className, String fieldName) {
+        GetFieldInstruction insn = new GetFieldInstruction();
+        insn.setInstance(item);
+        insn.setField(FieldReference.get(className, fieldName));
+        insn.setFieldType(ValueType.INTEGER);
+        insn.setReceiver(program.createVariable());
+        return insn;
+    }
+
+    private static IntegerConstantInstruction constant(int value, Variable receiver) {
+        IntegerConstantInstruction insn = new IntegerConstantInstruction();
+        insn.setConstant(value);
+        insn.setReceiver(receiver);
+        return insn;
+    }
+
+    private static BranchingInstruction branch(Variable condition, BasicBlock consequent,
+            BasicBlock alternative) {
+        BranchingInstruction insn = new BranchingInstruction(BranchingCondition.EQUAL);
+        insn.setOperand(condition);
+        insn.setConsequent(consequent);
+        insn.setAlternative(alternative);
+        return insn;
+    }
+
+    private static JumpInstruction jump(BasicBlock target) {
+        JumpInstruction insn = new JumpInstruction();
+        insn.setTarget(target);
+        return insn;
+    }
+}
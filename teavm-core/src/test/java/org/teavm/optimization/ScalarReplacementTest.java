@@ -0,0 +1,274 @@
+/*
+ *  Copyright 2014 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.optimization;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+import org.teavm.model.*;
+import org.teavm.model.instructions.*;
+
+/**
+ *
+ * @author Alexey Andreev <konsoletyper@gmail.com>
+ */
+public class ScalarReplacementTest {
+    private static final String POINT = "test.Point";
+    private static final String COLORED_POINT = "test.ColoredPoint";
+    private MutableClassHolderSource classSource = new MutableClassHolderSource();
+    private Program program = new Program();
+    private Variable first;
+    private Variable second;
+
+    public ScalarReplacementTest() {
+        ClassHolder object = new ClassHolder("java.lang.Object");
+        object.setParent(null);
+        classSource.putClassHolder(object);
+        ClassHolder point = new ClassHolder(POINT);
+        point.addField(intField("x"));
+        point.addField(intField("y"));
+        classSource.putClassHolder(point);
+        ClassHolder coloredPoint = new ClassHolder(COLORED_POINT);
+        coloredPoint.setParent(POINT);
+        coloredPoint.addField(intField("color"));
+        classSource.putClassHolder(coloredPoint);
+
+        program.createVariable();
+        first = program.createVariable();
+        second = program.createVariable();
+    }
+
+    @Test
+    public void fieldsOfLocalObjectReplacedByVariables() {
+        BasicBlock block = program.createBasicBlock();
+        Variable point = construct(block, POINT);
+        block.getInstructions().add(putField(point, POINT, "x", first));
+        Variable x = getField(block, point, POINT, "x");
+        block.getInstructions().add(exit(x));
+
+        optimize();
+
+        assertEquals(0, count(ConstructInstruction.class));
+        assertEquals(0, count(InvokeInstruction.class));
+        assertEquals(0, count(PutFieldInstruction.class));
+        assertEquals(0, count(GetFieldInstruction.class));
+        assertSame(first, assigneeOf(x));
+    }
+
+    @Test
+    public void unwrittenFieldReadAsDefaultValue() {
+        BasicBlock block = program.createBasicBlock();
+        Variable point = construct(block, POINT);
+        Variable y = getField(block, point, POINT, "y");
+        block.getInstructions().add(exit(y));
+
+        optimize();
+
+        Variable value = assigneeOf(y);
+        IntegerConstantInstruction constant = (IntegerConstantInstruction)definitionOf(value);
+        assertEquals(0, constant.getConstant());
+    }
+
+    @Test
+    public void inheritedFieldResolvedThroughSubclass() {
+        BasicBlock block = program.createBasicBlock();
+        Variable point = construct(block, COLORED_POINT);
+        block.getInstructions().add(putField(point, COLORED_POINT, "x", first));
+        Variable x = getField(block, point, POINT, "x");
+        block.getInstructions().add(exit(x));
+
+        optimize();
+
+        assertEquals(0, count(ConstructInstruction.class));
+        assertSame(first, assigneeOf(x));
+    }
+
+    @Test
+    public void fieldWritesMergedByPhi() {
+        BasicBlock entry = program.createBasicBlock();
+        BasicBlock consequent = program.createBasicBlock();
+        BasicBlock alternative = program.createBasicBlock();
+        BasicBlock exit = program.createBasicBlock();
+        Variable point = construct(entry, POINT);
+        entry.getInstructions().add(branch(first, consequent, alternative));
+        consequent.getInstructions().add(putField(point, POINT, "x", first));
+        consequent.getInstructions().add(jump(exit));
+        alternative.getInstructions().add(putField(point, POINT, "x", second));
+        alternative.getInstructions().add(jump(exit));
+        Variable x = getField(exit, point, POINT, "x");
+        exit.getInstructions().add(exit(x));
+
+        optimize();
+
+        assertEquals(0, count(ConstructInstruction.class));
+        assertEquals(1, exit.getPhis().size());
+        Phi phi = exit.getPhis().get(0);
+        assertSame(phi.getReceiver(), assigneeOf(x));
+        for (Incoming incoming : phi.getIncomings()) {
+            assertSame(incoming.getSource() == consequent ? first : second, incoming.getValue());
+        }
+    }
+
+    @Test
+    public void returnedObjectKept() {
+        BasicBlock block = program.createBasicBlock();
+        Variable point = construct(block, POINT);
+        block.getInstructions().add(putField(point, POINT, "x", first));
+        block.getInstructions().add(exit(point));
+
+        optimize();
+
+        assertEquals(1, count(ConstructInstruction.class));
+        assertEquals(1, count(PutFieldInstruction.class));
+    }
+
+    @Test
+    public void objectStoredToFieldKept() {
+        BasicBlock block = program.createBasicBlock();
+        Variable point = construct(block, POINT);
+        Variable other = construct(block, POINT);
+        block.getInstructions().add(putField(other, POINT, "x", point));
+        block.getInstructions().add(exit(other));
+
+        optimize();
+
+        assertEquals(2, count(ConstructInstruction.class));
+    }
+
+    @Test
+    public void objectMergedWithAnotherKept() {
+        BasicBlock entry = program.createBasicBlock();
+        BasicBlock consequent = program.createBasicBlock();
+        BasicBlock exit = program.createBasicBlock();
+        Variable point = construct(entry, POINT);
+        entry.getInstructions().add(branch(first, consequent, exit));
+        Variable other = construct(consequent, POINT);
+        consequent.getInstructions().add(jump(exit));
+        Phi phi = new Phi();
+        phi.setReceiver(program.createVariable());
+        Incoming incoming = new Incoming();
+        incoming.setSource(entry);
+        incoming.setValue(point);
+        phi.getIncomings().add(incoming);
+        incoming = new Incoming();
+        incoming.setSource(consequent);
+        incoming.setValue(other);
+        phi.getIncomings().add(incoming);
+        exit.getPhis().add(phi);
+        Variable x = getField(exit, phi.getReceiver(), POINT, "x");
+        exit.getInstructions().add(exit(x));
+
+        optimize();
+
+        assertEquals(2, count(ConstructInstruction.class));
+        assertEquals(1, count(GetFieldInstruction.class));
+    }
+
+    private void optimize() {
+        MethodHolder method = new MethodHolder("test", ValueType.INTEGER, ValueType.INTEGER, ValueType.INTEGER);
+        method.getModifiers().add(ElementModifier.STATIC);
+        method.setProgram(program);
+        new ScalarReplacement(classSource).optimize(method, program);
+    }
+
+    private Variable construct(BasicBlock block, String type) {
+        Variable receiver = program.createVariable();
+        ConstructInstruction construct = new ConstructInstruction();
+        construct.setType(type);
+        construct.setReceiver(receiver);
+        block.getInstructions().add(construct);
+        InvokeInstruction init = new InvokeInstruction();
+        init.setType(InvocationType.SPECIAL);
+        init.setMethod(MethodReference.get("java.lang.Object", MethodDescriptor.get("<init>", ValueType.VOID)));
+        init.setInstance(receiver);
+        block.getInstructions().add(init);
+        return receiver;
+    }
+
+    private Variable getField(BasicBlock block, Variable instance, String className, String fieldName) {
+        GetFieldInstruction insn = new GetFieldInstruction();
+        insn.setInstance(instance);
+        insn.setField(FieldReference.get(className, fieldName));
+        insn.setFieldType(ValueType.INTEGER);
+        insn.setReceiver(program.createVariable());
+        block.getInstructions().add(insn);
+        return insn.getReceiver();
+    }
+
+    private int count(Class<? extends Instruction> type) {
+        int count = 0;
+        for (int i = 0; i < program.basicBlockCount(); ++i) {
+            for (Instruction insn : program.basicBlockAt(i).getInstructions()) {
+                if (type.isInstance(insn)) {
+                    ++count;
+                }
+            }
+        }
+        return count;
+    }
+
+    private Instruction definitionOf(Variable var) {
+        for (int i = 0; i < program.basicBlockCount(); ++i) {
+            for (Instruction insn : program.basicBlockAt(i).getInstructions()) {
+                if (insn instanceof AssignInstruction && ((AssignInstruction)insn).getReceiver() == var ||
+                        insn instanceof IntegerConstantInstruction &&
+                        ((IntegerConstantInstruction)insn).getReceiver() == var) {
+                    return insn;
+                }
+            }
+        }
+        return null;
+    }
+
+    private Variable assigneeOf(Variable var) {
+        return ((AssignInstruction)definitionOf(var)).getAssignee();
+    }
+
+    private static FieldHolder intField(String name) {
+        FieldHolder field = new FieldHolder(name);
+        field.setType(ValueType.INTEGER);
+        return field;
+    }
+
+    private static PutFieldInstruction putField(Variable instance, String className, String fieldName,
+            Variable value) {
+        PutFieldInstruction insn = new PutFieldInstruction();
+        insn.setInstance(instance);
+        insn.setField(FieldReference.get(className, fieldName));
+        insn.setValue(value);
+        return insn;
+    }
+
+    private static BranchingInstruction branch(Variable condition, BasicBlock consequent,
+            BasicBlock alternative) {
+        BranchingInstruction insn = new BranchingInstruction(BranchingCondition.EQUAL);
+        insn.setOperand(condition);
+        insn.setConsequent(consequent);
+        insn.setAlternative(alternative);
+        return insn;
+    }
+
+    private static JumpInstruction jump(BasicBlock target) {
+        JumpInstruction insn = new JumpInstruction();
+        insn.setTarget(target);
+        return insn;
+    }
+
+    private static ExitInstruction exit(Variable value) {
+        ExitInstruction insn = new ExitInstruction();
+        insn.setValueToReturn(value);
+        return insn;
+    }
+}
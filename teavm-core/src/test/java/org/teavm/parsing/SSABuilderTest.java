@@ -0,0 +1,238 @@
+/*
+ *  Copyright 2014 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.parsing;
+
+import static org.junit.Assert.*;
+import java.util.HashSet;
+import java.util.Set;
+import org.junit.Test;
+import org.teavm.model.*;
+import org.teavm.model.instructions.*;
+import org.teavm.model.util.DefinitionExtractor;
+
+/**
+ * <p>Programs here are built the way the parser builds them: each variable is a slot of the frame
+ * and may be written many times.</p>
+ *
+ * @author Alexey Andreev <konsoletyper@gmail.com>
+ */
+public class SSABuilderTest {
+    private Program program = new Program();
+    private Variable parameter;
+    private Variable local;
+
+    public SSABuilderTest() {
+        program.createVariable();
+        parameter = program.createVariable();
+        local = program.createVariable();
+    }
+
+    @Test
+    public void redefinitionsRenamed() {
+        BasicBlock block = program.createBasicBlock();
+        IntegerConstantInstruction constant = constant(1, local);
+        BinaryInstruction sum = add(local, parameter, local);
+        block.getInstructions().add(constant);
+        block.getInstructions().add(sum);
+        block.getInstructions().add(exit(local));
+
+        transform(ValueType.INTEGER);
+
+        assertSingleAssignment();
+        assertSame(constant.getReceiver(), sum.getFirstOperand());
+        assertSame(parameter, sum.getSecondOperand());
+        assertSame(sum.getReceiver(), returnedValue(block));
+    }
+
+    @Test
+    public void phiCreatedForDifferentDefinitions() {
+        BasicBlock[] blocks = createDiamond();
+        IntegerConstantInstruction first = constant(1, local);
+        IntegerConstantInstruction second = constant(2, local);
+        blocks[1].getInstructions().add(0, first);
+        blocks[2].getInstructions().add(0, second);
+        blocks[3].getInstructions().add(exit(local));
+
+        transform(ValueType.INTEGER);
+
+        assertSingleAssignment();
+        assertEquals(1, blocks[3].getPhis().size());
+        Phi phi = blocks[3].getPhis().get(0);
+        assertSame(phi.getReceiver(), returnedValue(blocks[3]));
+        assertEquals(2, phi.getIncomings().size());
+        for (Incoming incoming : phi.getIncomings()) {
+            Variable expected = incoming.getSource() == blocks[1] ? first.getReceiver() : second.getReceiver();
+            assertSame(expected, incoming.getValue());
+        }
+    }
+
+    @Test
+    public void noPhiForSameDefinition() {
+        BasicBlock[] blocks = createDiamond();
+        IntegerConstantInstruction constant = constant(1, local);
+        blocks[0].getInstructions().add(0, constant);
+        blocks[3].getInstructions().add(exit(local));
+
+        transform(ValueType.INTEGER);
+
+        assertSingleAssignment();
+        assertEquals(0, blocks[3].getPhis().size());
+        assertSame(constant.getReceiver(), returnedValue(blocks[3]));
+    }
+
+    @Test
+    public void noPhiForSlotDefinedInOneBranch() {
+        BasicBlock[] blocks = createDiamond();
+        IntegerConstantInstruction constant = constant(1, local);
+        blocks[1].getInstructions().add(0, constant);
+        blocks[1].getInstructions().add(1, add(local, local, local));
+        blocks[3].getInstructions().add(exit(parameter));
+
+        transform(ValueType.INTEGER);
+
+        assertSingleAssignment();
+        assertEquals(0, blocks[3].getPhis().size());
+    }
+
+    @Test
+    public void loopVariableGetsPhiAtHead() {
+        BasicBlock entry = program.createBasicBlock();
+        BasicBlock head = program.createBasicBlock();
+        BasicBlock body = program.createBasicBlock();
+        BasicBlock exit = program.createBasicBlock();
+        IntegerConstantInstruction initial = constant(0, local);
+        entry.getInstructions().add(initial);
+        entry.getInstructions().add(jump(head));
+        BinaryBranchingInstruction condition = new BinaryBranchingInstruction(BinaryBranchingCondition.EQUAL);
+        condition.setFirstOperand(local);
+        condition.setSecondOperand(parameter);
+        condition.setConsequent(exit);
+        condition.setAlternative(body);
+        head.getInstructions().add(condition);
+        BinaryInstruction increment = add(local, parameter, local);
+        body.getInstructions().add(increment);
+        body.getInstructions().add(jump(head));
+        exit.getInstructions().add(exit(local));
+
+        transform(ValueType.INTEGER);
+
+        assertSingleAssignment();
+        assertEquals(1, head.getPhis().size());
+        Phi phi = head.getPhis().get(0);
+        for (Incoming incoming : phi.getIncomings()) {
+            Variable expected = incoming.getSource() == entry ? initial.getReceiver() : increment.getReceiver();
+            assertSame(expected, incoming.getValue());
+        }
+        assertSame(phi.getReceiver(), condition.getFirstOperand());
+        assertSame(parameter, condition.getSecondOperand());
+        assertSame(phi.getReceiver(), increment.getFirstOperand());
+        assertSame(phi.getReceiver(), returnedValue(exit));
+    }
+
+    @Test
+    public void parameterAfterLongKeepsItsVariable() {
+        Variable wide = parameter;
+        Variable narrow = local;
+        BasicBlock block = program.createBasicBlock();
+        block.getInstructions().add(exit(narrow));
+
+        transform(ValueType.LONG, ValueType.INTEGER);
+
+        assertSame(narrow, returnedValue(block));
+        assertNotSame(wide, returnedValue(block));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void unreachableBlockRejected() {
+        BasicBlock block = program.createBasicBlock();
+        block.getInstructions().add(exit(parameter));
+        BasicBlock unreachable = program.createBasicBlock();
+        unreachable.getInstructions().add(jump(block));
+
+        transform(ValueType.INTEGER);
+    }
+
+    /**
+     * <p>Creates four blocks, the first one branches on the parameter to the second and the third one,
+     * which both jump to the last one.</p>
+     */
+    private BasicBlock[] createDiamond() {
+        BasicBlock[] blocks = new BasicBlock[4];
+        for (int i = 0; i < blocks.length; ++i) {
+            blocks[i] = program.createBasicBlock();
+        }
+        BranchingInstruction branch = new BranchingInstruction(BranchingCondition.EQUAL);
+        branch.setOperand(parameter);
+        branch.setConsequent(blocks[1]);
+        branch.setAlternative(blocks[2]);
+        blocks[0].getInstructions().add(branch);
+        blocks[1].getInstructions().add(jump(blocks[3]));
+        blocks[2].getInstructions().add(jump(blocks[3]));
+        return blocks;
+    }
+
+    private void transform(ValueType... arguments) {
+        new SSABuilder().transformToSSA(program, arguments);
+    }
+
+    private void assertSingleAssignment() {
+        Set<Variable> defined = new HashSet<>();
+        DefinitionExtractor definitionExtractor = new DefinitionExtractor();
+        for (int i = 0; i < program.basicBlockCount(); ++i) {
+            BasicBlock block = program.basicBlockAt(i);
+            for (Phi phi : block.getPhis()) {
+                assertTrue(defined.add(phi.getReceiver()));
+            }
+            for (Instruction insn : block.getInstructions()) {
+                insn.acceptVisitor(definitionExtractor);
+                for (Variable var : definitionExtractor.getDefinedVariables()) {
+                    assertTrue(defined.add(var));
+                }
+            }
+        }
+    }
+
+    private static Variable returnedValue(BasicBlock block) {
+        return ((ExitInstruction)block.getLastInstruction()).getValueToReturn();
+    }
+
+    private static IntegerConstantInstruction constant(int value, Variable receiver) {
+        IntegerConstantInstruction insn = new IntegerConstantInstruction();
+        insn.setConstant(value);
+        insn.setReceiver(receiver);
+        return insn;
+    }
+
+    private static BinaryInstruction add(Variable a, Variable b, Variable receiver) {
+        BinaryInstruction insn = new BinaryInstruction(BinaryOperation.ADD, NumericOperandType.INT);
+        insn.setFirstOperand(a);
+        insn.setSecondOperand(b);
+        insn.setReceiver(receiver);
+        return insn;
+    }
+
+    private static JumpInstruction jump(BasicBlock target) {
+        JumpInstruction insn = new JumpInstruction();
+        insn.setTarget(target);
+        return insn;
+    }
+
+    private static ExitInstruction exit(Variable value) {
+        ExitInstruction insn = new ExitInstruction();
+        insn.setValueToReturn(value);
+        return insn;
+    }
+}
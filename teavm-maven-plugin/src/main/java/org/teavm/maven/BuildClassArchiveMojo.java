@@ -0,0 +1,138 @@
+/*
+ *  Copyright 2013 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.maven;
+
+import java.io.*;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.*;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Component;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+import org.apache.maven.project.MavenProject;
+import org.teavm.cache.ClassArchive;
+import org.teavm.model.ClassHolder;
+import org.teavm.parsing.ClasspathResourceMapper;
+import org.teavm.resource.ClasspathResourceReader;
+import org.teavm.resource.ResourceClassHolderMapper;
+
+/**
+ * <p>Stores classes of a class library, that substitute JDK classes, to a class archive
+ * in their renamed and parsed form. Builds that use the library load the archive
+ * instead of parsing and renaming these classes again.</p>
+ *
+ * @author Alexey Andreev <konsoletyper@gmail.com>
+ */
+@Mojo(name = "build-class-archive", defaultPhase = LifecyclePhase.PROCESS_CLASSES,
+        requiresDependencyResolution = ResolutionScope.COMPILE,
+        requiresDependencyCollection = ResolutionScope.COMPILE)
+public class BuildClassArchiveMojo extends AbstractMojo {
+    private static Set<String> compileScopes = new HashSet<>(Arrays.asList(
+            Artifact.SCOPE_COMPILE, Artifact.SCOPE_PROVIDED, Artifact.SCOPE_SYSTEM));
+
+    @Component
+    private MavenProject project;
+
+    @Parameter(defaultValue = "${project.build.outputDirectory}")
+    private File classFiles;
+
+    public void setProject(MavenProject project) {
+        this.project = project;
+    }
+
+    public void setClassFiles(File classFiles) {
+        this.classFiles = classFiles;
+    }
+
+    @Override
+    public void execute() throws MojoExecutionException {
+        File archiveFile = new File(classFiles, ClassArchive.RESOURCE_NAME);
+        if (archiveFile.exists() && !archiveFile.delete()) {
+            throw new MojoExecutionException("Could not delete stale class archive " + archiveFile);
+        }
+        ClassLoader classLoader = prepareClassLoader();
+        ClasspathResourceReader reader = new ClasspathResourceReader(classLoader);
+        ClasspathResourceMapper mapper = new ClasspathResourceMapper(classLoader,
+                new ResourceClassHolderMapper(reader));
+        List<String> classNames = new ArrayList<>();
+        findClasses(classFiles, "", classNames);
+        List<ClassHolder> classes = new ArrayList<>();
+        Map<String, Long> checksums = new HashMap<>();
+        for (String className : classNames) {
+            String renamedClass = mapper.renameClass(className);
+            if (renamedClass.equals(className)) {
+                continue;
+            }
+            ClassHolder cls = mapper.map(renamedClass);
+            if (cls != null) {
+                classes.add(cls);
+                checksums.put(renamedClass, getChecksum(className));
+            }
+        }
+        getLog().info("Writing " + classes.size() + " classes to " + archiveFile);
+        archiveFile.getParentFile().mkdirs();
+        try (OutputStream output = new FileOutputStream(archiveFile)) {
+            ClassArchive.write(classes, checksums, output);
+        } catch (IOException | RuntimeException e) {
+            archiveFile.delete();
+            throw new MojoExecutionException("Error writing class archive", e);
+        }
+    }
+
+    private long getChecksum(String className) throws MojoExecutionException {
+        File classFile = new File(classFiles, className.replace('.', '/') + ".class");
+        try (InputStream input = new FileInputStream(classFile)) {
+            return ClassArchive.checksum(input);
+        } catch (IOException e) {
+            throw new MojoExecutionException("Error reading class file " + classFile, e);
+        }
+    }
+
+    private void findClasses(File folder, String prefix, List<String> classNames) {
+        for (File file : folder.listFiles()) {
+            if (file.isDirectory()) {
+                String newPrefix = prefix.isEmpty() ? file.getName() : prefix + "." + file.getName();
+                findClasses(file, newPrefix, classNames);
+            } else if (file.getName().endsWith(".class")) {
+                String className = file.getName().substring(0, file.getName().length() - ".class".length());
+                classNames.add(prefix.isEmpty() ? className : prefix + "." + className);
+            }
+        }
+    }
+
+    private ClassLoader prepareClassLoader() throws MojoExecutionException {
+        try {
+            List<URL> urls = new ArrayList<>();
+            for (Artifact artifact : project.getArtifacts()) {
+                if (!compileScopes.contains(artifact.getScope())) {
+                    continue;
+                }
+                urls.add(artifact.getFile().toURI().toURL());
+            }
+            urls.add(classFiles.toURI().toURL());
+            return new URLClassLoader(urls.toArray(new URL[urls.size()]),
+                    BuildClassArchiveMojo.class.getClassLoader());
+        } catch (MalformedURLException e) {
+            throw new MojoExecutionException("Error gathering classpath information", e);
+        }
+    }
+}
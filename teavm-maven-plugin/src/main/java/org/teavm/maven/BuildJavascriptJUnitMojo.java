@@ -37,6 +37,7 @@ import org.junit.Test;
 import org.teavm.common.FiniteExecutor;
 import org.teavm.common.SimpleFiniteExecutor;
 import org.teavm.common.ThreadPoolFiniteExecutor;
+import org.teavm.dependency.DependencyAnalysisStrategy;
 import org.teavm.javascript.JavascriptBuilder;
 import org.teavm.javascript.JavascriptBuilderFactory;
 import org.teavm.model.*;
@@ -75,6 +76,15 @@ public class BuildJavascriptJUnitMojo extends AbstractMojo {
     @Parameter
     private int numThreads = 1;
 
+    @Parameter
+    private int classCacheSize = 1000;
+
+    @Parameter
+    private boolean typedEmission;
+
+    @Parameter
+    private DependencyAnalysisStrategy dependencyAnalysisStrategy = DependencyAnalysisStrategy.TYPE_PROPAGATION;
+
     public void setProject(MavenProject project) {
         this.project = project;
     }
@@ -99,6 +109,18 @@ public class BuildJavascriptJUnitMojo extends AbstractMojo {
         this.numThreads = numThreads;
     }
 
+    public void setClassCacheSize(int classCacheSize) {
+        this.classCacheSize = classCacheSize;
+    }
+
+    public void setTypedEmission(boolean typedEmission) {
+        this.typedEmission = typedEmission;
+    }
+
+    public void setDependencyAnalysisStrategy(DependencyAnalysisStrategy dependencyAnalysisStrategy) {
+        this.dependencyAnalysisStrategy = dependencyAnalysisStrategy;
+    }
+
     @Override
     public void execute() throws MojoExecutionException, MojoFailureException {
         Runnable finalizer = null;
@@ -112,7 +134,8 @@ public class BuildJavascriptJUnitMojo extends AbstractMojo {
             resourceToFile("org/teavm/maven/junit-support.js", "junit-support.js");
             resourceToFile("org/teavm/maven/junit.css", "junit.css");
             resourceToFile("org/teavm/maven/junit.html", "junit.html");
-            final ClassHolderSource classSource = new ClasspathClassHolderSource(classLoader);
+            final ClasspathClassHolderSource classSource = new ClasspathClassHolderSource(classLoader,
+                    classCacheSize);
             for (String testClass : testClasses) {
                 ClassHolder classHolder = classSource.getClassHolder(testClass);
                 if (classHolder == null) {
@@ -185,6 +208,9 @@ public class BuildJavascriptJUnitMojo extends AbstractMojo {
             }
             executor.complete();
             log.info("Test files successfully generated for " + methodsGenerated + " method(s).");
+            if (classSource.getStatistics() != null) {
+                log.info("Class cache statistics: " + classSource.getStatistics());
+            }
         } catch (IOException e) {
             throw new MojoFailureException("IO error occured generating JavaScript files", e);
         } finally {
@@ -232,12 +258,14 @@ public class BuildJavascriptJUnitMojo extends AbstractMojo {
         builderFactory.setClassLoader(classLoader);
         builderFactory.setClassSource(classSource);
         builderFactory.setExecutor(executor);
+        builderFactory.setDependencyAnalysisStrategy(dependencyAnalysisStrategy);
         JavascriptBuilder builder = builderFactory.create();
         builder.setMinifying(minifying);
+        builder.setTypedEmission(typedEmission);
         File file = new File(outputDir, targetName);
         try (Writer innerWriter = new OutputStreamWriter(new FileOutputStream(file), "UTF-8")) {
-            MethodReference cons = new MethodReference(methodRef.getClassName(),
-                    new MethodDescriptor("<init>", ValueType.VOID));
+            MethodReference cons = MethodReference.get(methodRef.getClassName(),
+                    MethodDescriptor.get("<init>", ValueType.VOID));
             builder.entryPoint("initInstance", cons);
             builder.entryPoint("runTest", methodRef).withValue(0, cons.getClassName());
             builder.exportType("TestClass", cons.getClassName());
@@ -287,7 +315,7 @@ public class BuildJavascriptJUnitMojo extends AbstractMojo {
     private void findTests(ClassHolder cls) {
         for (MethodHolder method : cls.getMethods()) {
             if (method.getAnnotations().get("org.junit.Test") != null) {
-                MethodReference ref = new MethodReference(cls.getName(), method.getDescriptor());
+                MethodReference ref = MethodReference.get(cls.getName(), method.getDescriptor());
                 testMethods.add(ref);
                 List<MethodReference> group = groupedMethods.get(cls.getName());
                 if (group == null) {
@@ -31,6 +31,10 @@ import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.plugins.annotations.ResolutionScope;
 import org.apache.maven.project.MavenProject;
 import org.teavm.common.ThreadPoolFiniteExecutor;
+import org.teavm.daemon.BuildDaemonClient;
+import org.teavm.daemon.BuildRequest;
+import org.teavm.daemon.BuildResponse;
+import org.teavm.dependency.DependencyAnalysisStrategy;
 import org.teavm.javascript.JavascriptBuilder;
 import org.teavm.javascript.JavascriptBuilderFactory;
 import org.teavm.model.MethodDescriptor;
@@ -77,6 +81,27 @@ public class BuildJavascriptMojo extends AbstractMojo {
     @Parameter(required = false)
     private int numThreads = 1;
 
+    @Parameter
+    private boolean pipelined;
+
+    @Parameter
+    private boolean useDaemon;
+
+    @Parameter
+    private DependencyAnalysisStrategy dependencyAnalysisStrategy = DependencyAnalysisStrategy.TYPE_PROPAGATION;
+
+    @Parameter
+    private File reachabilityReport;
+
+    @Parameter
+    private boolean closureScoped;
+
+    @Parameter
+    private boolean runtimeEmbedded;
+
+    @Parameter
+    private boolean typedEmission;
+
     public void setProject(MavenProject project) {
         this.project = project;
     }
@@ -109,37 +134,81 @@ public class BuildJavascriptMojo extends AbstractMojo {
         this.numThreads = numThreads;
     }
 
+    public void setPipelined(boolean pipelined) {
+        this.pipelined = pipelined;
+    }
+
+    public void setUseDaemon(boolean useDaemon) {
+        this.useDaemon = useDaemon;
+    }
+
+    public void setDependencyAnalysisStrategy(DependencyAnalysisStrategy dependencyAnalysisStrategy) {
+        this.dependencyAnalysisStrategy = dependencyAnalysisStrategy;
+    }
+
+    public void setReachabilityReport(File reachabilityReport) {
+        this.reachabilityReport = reachabilityReport;
+    }
+
+    public void setClosureScoped(boolean closureScoped) {
+        this.closureScoped = closureScoped;
+    }
+
+    public void setRuntimeEmbedded(boolean runtimeEmbedded) {
+        this.runtimeEmbedded = runtimeEmbedded;
+    }
+
+    public void setTypedEmission(boolean typedEmission) {
+        this.typedEmission = typedEmission;
+    }
+
     @Override
     public void execute() throws MojoExecutionException {
         Log log = getLog();
         Runnable finalizer = null;
         try {
-            ClassLoader classLoader = prepareClassLoader();
+            List<File> classPath = prepareClassPath();
+            ClassLoader classLoader = prepareClassLoader(classPath);
             log.info("Building JavaScript file");
-            JavascriptBuilderFactory builderFactory = new JavascriptBuilderFactory();
-            builderFactory.setClassLoader(classLoader);
-            builderFactory.setClassSource(new ClasspathClassHolderSource(classLoader));
-            if (numThreads != 1) {
-                int threads = numThreads != 0 ? numThreads : Runtime.getRuntime().availableProcessors();
-                final ThreadPoolFiniteExecutor executor = new ThreadPoolFiniteExecutor(threads);
-                finalizer = new Runnable() {
-                    @Override public void run() {
-                        executor.stop();
+            targetDirectory.mkdirs();
+            if (!useDaemon || reachabilityReport != null || !buildInDaemon(classPath)) {
+                JavascriptBuilderFactory builderFactory = new JavascriptBuilderFactory();
+                builderFactory.setClassLoader(classLoader);
+                builderFactory.setClassSource(new ClasspathClassHolderSource(classLoader));
+                builderFactory.setDependencyAnalysisStrategy(dependencyAnalysisStrategy);
+                if (numThreads != 1) {
+                    int threads = numThreads != 0 ? numThreads : Runtime.getRuntime().availableProcessors();
+                    final ThreadPoolFiniteExecutor executor = new ThreadPoolFiniteExecutor(threads);
+                    finalizer = new Runnable() {
+                        @Override public void run() {
+                            executor.stop();
+                        }
+                    };
+                    builderFactory.setExecutor(executor);
+                }
+                JavascriptBuilder builder = builderFactory.create();
+                builder.setMinifying(minifying);
+                builder.setBytecodeLogging(bytecodeLogging);
+                builder.setPipelined(pipelined);
+                builder.setClosureScoped(closureScoped);
+                builder.setRuntimeEmbedded(runtimeEmbedded);
+                builder.setTypedEmission(typedEmission);
+                builder.setRecordingCauses(reachabilityReport != null);
+                MethodDescriptor mainMethodDesc = MethodDescriptor.get("main", ValueType.arrayOf(
+                        ValueType.object("java.lang.String")), ValueType.VOID);
+                builder.entryPoint("main", MethodReference.get(mainClass, mainMethodDesc))
+                        .withValue(1, "java.lang.String");
+                builder.build(new File(targetDirectory, targetFileName));
+                if (reachabilityReport != null) {
+                    reachabilityReport.getParentFile().mkdirs();
+                    try (Writer writer = new OutputStreamWriter(new FileOutputStream(reachabilityReport), "UTF-8")) {
+                        builder.writeReachabilityReport(writer);
                     }
-                };
-                builderFactory.setExecutor(executor);
+                    log.info("Reachability report written to " + reachabilityReport);
+                }
             }
-            JavascriptBuilder builder = builderFactory.create();
-            builder.setMinifying(minifying);
-            builder.setBytecodeLogging(bytecodeLogging);
-            MethodDescriptor mainMethodDesc = new MethodDescriptor("main", ValueType.arrayOf(
-                    ValueType.object("java.lang.String")), ValueType.VOID);
-            builder.entryPoint("main", new MethodReference(mainClass, mainMethodDesc))
-                    .withValue(1, "java.lang.String");
-            targetDirectory.mkdirs();
-            builder.build(new File(targetDirectory, targetFileName));
             log.info("JavaScript file successfully built");
-            if (!runtimeSuppressed) {
+            if (!runtimeSuppressed && !closureScoped && !runtimeEmbedded) {
                 resourceToFile("org/teavm/javascript/runtime.js", "runtime.js");
             }
             if (mainPageIncluded) {
@@ -148,6 +217,9 @@ public class BuildJavascriptMojo extends AbstractMojo {
                         "org/teavm/maven/main.html"), "UTF-8")) {
                     text = IOUtils.toString(reader).replace("${classes.js}", targetFileName);
                 }
+                if (closureScoped || runtimeEmbedded) {
+                    text = text.replace("<script type=\"text/javascript\" src=\"runtime.js\"></script>", "");
+                }
                 File mainPageFile = new File(targetDirectory, "main.html");
                 try (Writer writer = new OutputStreamWriter(new FileOutputStream(mainPageFile), "UTF-8")) {
                     writer.append(text);
@@ -164,29 +236,68 @@ public class BuildJavascriptMojo extends AbstractMojo {
         }
     }
 
-    private ClassLoader prepareClassLoader() throws MojoExecutionException {
-        try {
-            Log log = getLog();
-            log.info("Preparing classpath for JavaScript generation");
-            List<URL> urls = new ArrayList<>();
-            StringBuilder classpath = new StringBuilder();
-            for (Artifact artifact : project.getArtifacts()) {
-                if (!compileScopes.contains(artifact.getScope())) {
-                    continue;
-                }
-                File file = artifact.getFile();
-                if (classpath.length() > 0) {
-                    classpath.append(':');
-                }
-                classpath.append(file.getPath());
-                urls.add(file.toURI().toURL());
+    private boolean buildInDaemon(List<File> classPath) throws MojoExecutionException {
+        BuildRequest request = new BuildRequest();
+        for (File file : classPath) {
+            request.getClassPath().add(file.getAbsolutePath());
+        }
+        request.setMainClass(mainClass);
+        request.setTargetFile(new File(targetDirectory, targetFileName).getAbsolutePath());
+        request.setMinifying(minifying);
+        request.setPipelined(pipelined);
+        request.setClosureScoped(closureScoped);
+        request.setRuntimeEmbedded(runtimeEmbedded);
+        request.setTypedEmission(typedEmission);
+        request.setBytecodeLogging(bytecodeLogging);
+        request.setDependencyAnalysisStrategy(dependencyAnalysisStrategy);
+        BuildResponse response = new BuildDaemonClient().build(request);
+        if (response == null) {
+            getLog().info("Build daemon is not available, building in-process");
+            return false;
+        }
+        if (!response.getLog().isEmpty()) {
+            System.out.print(response.getLog());
+            System.out.flush();
+        }
+        if (!response.isSuccessful()) {
+            throw new MojoExecutionException("Build daemon failed to build JavaScript file: " +
+                    response.getMessage());
+        }
+        getLog().info("JavaScript file built by build daemon");
+        return true;
+    }
+
+    private List<File> prepareClassPath() {
+        Log log = getLog();
+        log.info("Preparing classpath for JavaScript generation");
+        List<File> files = new ArrayList<>();
+        StringBuilder classpath = new StringBuilder();
+        for (Artifact artifact : project.getArtifacts()) {
+            if (!compileScopes.contains(artifact.getScope())) {
+                continue;
             }
+            File file = artifact.getFile();
             if (classpath.length() > 0) {
                 classpath.append(':');
             }
-            classpath.append(classFiles.getPath());
-            urls.add(classFiles.toURI().toURL());
-            log.info("Using the following classpath for JavaScript generation: " + classpath);
+            classpath.append(file.getPath());
+            files.add(file);
+        }
+        if (classpath.length() > 0) {
+            classpath.append(':');
+        }
+        classpath.append(classFiles.getPath());
+        files.add(classFiles);
+        log.info("Using the following classpath for JavaScript generation: " + classpath);
+        return files;
+    }
+
+    private ClassLoader prepareClassLoader(List<File> classPath) throws MojoExecutionException {
+        try {
+            List<URL> urls = new ArrayList<>();
+            for (File file : classPath) {
+                urls.add(file.toURI().toURL());
+            }
             return new URLClassLoader(urls.toArray(new URL[urls.size()]), BuildJavascriptMojo.class.getClassLoader());
         } catch (MalformedURLException e) {
             throw new MojoExecutionException("Error gathering classpath information", e);
@@ -0,0 +1,261 @@
+/*
+ *  Copyright 2014 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.samples;
+
+import org.teavm.javascript.ni.JS;
+
+/**
+ * <p>Runs a few kernels and prints how long each of them took. The build puts two versions of this
+ * program to <code>target/javascript-benchmark</code>: <code>typed</code> is built with typed emission,
+ * <code>generic</code> is built without it. To compare them on a headless engine, run each version like
+ * this:</p>
+ *
+ * <pre>
+ * node -e "global.window = global; require('vm').runInThisContext(
+ *     require('fs').readFileSync('target/javascript-benchmark/typed/classes.js', 'utf8')); main();"
+ * </pre>
+ *
+ * <p>Each kernel reports the best time of several runs, in milliseconds, along with its result. Results of
+ * both versions must be the same. The <code>fields</code> kernel reads inherited fields of objects whose
+ * fields were written in different order, so it slows down when such objects get different layouts. The
+ * <code>distances</code> kernel repeats field loads and subexpressions, which value numbering eliminates.</p>
+ *
+ * <p>Both versions print the following on Node.js 20 (V8), times vary by a millisecond or two between runs.
+ * A different result of any kernel means the generated code is wrong.</p>
+ *
+ * <pre>
+ * checksum: 5 ms, result 1203533705
+ * matrix: 6 ms, result 739
+ * physics: 21 ms, result -1002
+ * sieve: 22 ms, result 155611
+ * fields: 7 ms, result 1541107542
+ * distances: 13 ms, result -2453668
+ * </pre>
+ *
+ * @author Alexey Andreev <konsoletyper@gmail.com>
+ */
+public class Benchmark {
+    private static final int RUNS = 10;
+
+    public static void main(String[] args) {
+        byte[] data = new byte[1 << 20];
+        for (int i = 0; i < data.length; ++i) {
+            data[i] = (byte)(i * 31 + (i >> 7));
+        }
+        int result = 0;
+        double best = Double.MAX_VALUE;
+        for (int i = 0; i < RUNS; ++i) {
+            double start = now();
+            result = checksum(data, data.length);
+            double time = now() - start;
+            if (time < best) {
+                best = time;
+            }
+        }
+        report("checksum", (int)best, result);
+
+        int size = 120;
+        double[] a = new double[size * size];
+        double[] b = new double[size * size];
+        double[] c = new double[size * size];
+        for (int i = 0; i < a.length; ++i) {
+            a[i] = (i % 17) * 0.25;
+            b[i] = (i % 13) * 0.5;
+        }
+        best = Double.MAX_VALUE;
+        for (int i = 0; i < RUNS; ++i) {
+            double start = now();
+            multiply(a, b, c, size);
+            double time = now() - start;
+            if (time < best) {
+                best = time;
+            }
+        }
+        report("matrix", (int)best, (int)c[size * size / 2 + size / 2]);
+
+        int particles = 10000;
+        float[] x = new float[particles];
+        float[] y = new float[particles];
+        float[] vx = new float[particles];
+        float[] vy = new float[particles];
+        for (int i = 0; i < particles; ++i) {
+            x[i] = i % 100;
+            y[i] = i / 100;
+            vx[i] = (i % 7) - 3;
+            vy[i] = (i % 5) - 2;
+        }
+        best = Double.MAX_VALUE;
+        for (int i = 0; i < RUNS; ++i) {
+            double start = now();
+            for (int j = 0; j < 100; ++j) {
+                step(x, y, vx, vy, particles, 0.01f);
+            }
+            double time = now() - start;
+            if (time < best) {
+                best = time;
+            }
+        }
+        report("physics", (int)best, (int)(x[particles / 2] * 1000));
+
+        byte[] composite = new byte[1 << 21];
+        best = Double.MAX_VALUE;
+        for (int i = 0; i < RUNS; ++i) {
+            double start = now();
+            result = sieve(composite, composite.length);
+            double time = now() - start;
+            if (time < best) {
+                best = time;
+            }
+        }
+        report("sieve", (int)best, result);
+
+        Point[] points = new Point[100000];
+        best = Double.MAX_VALUE;
+        for (int i = 0; i < RUNS; ++i) {
+            double start = now();
+            result = fields(points, points.length);
+            double time = now() - start;
+            if (time < best) {
+                best = time;
+            }
+        }
+        report("fields", (int)best, result);
+
+        best = Double.MAX_VALUE;
+        for (int i = 0; i < RUNS; ++i) {
+            double start = now();
+            result = distances(points, points.length);
+            double time = now() - start;
+            if (time < best) {
+                best = time;
+            }
+        }
+        report("distances", (int)best, result);
+    }
+
+    private static int checksum(byte[] data, int length) {
+        int a = 1;
+        int b = 0;
+        for (int i = 0; i < length; ++i) {
+            a = (a + (data[i] & 0xFF)) % 65521;
+            b = (b + a) % 65521;
+        }
+        return (b << 16) | a;
+    }
+
+    private static void multiply(double[] a, double[] b, double[] c, int size) {
+        for (int i = 0; i < size; ++i) {
+            for (int j = 0; j < size; ++j) {
+                double sum = 0;
+                for (int k = 0; k < size; ++k) {
+                    sum += a[i * size + k] * b[k * size + j];
+                }
+                c[i * size + j] = sum;
+            }
+        }
+    }
+
+    private static void step(float[] x, float[] y, float[] vx, float[] vy, int count, float dt) {
+        for (int i = 0; i < count; ++i) {
+            float ax = -x[i] * 0.5f;
+            float ay = -y[i] * 0.5f - 9.8f;
+            vx[i] += ax * dt;
+            vy[i] += ay * dt;
+            x[i] += vx[i] * dt;
+            y[i] += vy[i] * dt;
+            if (y[i] < 0) {
+                y[i] = -y[i];
+                vy[i] = -vy[i] * 0.9f;
+            }
+        }
+    }
+
+    private static int sieve(byte[] composite, int length) {
+        for (int i = 0; i < length; ++i) {
+            composite[i] = 0;
+        }
+        int count = 0;
+        for (int i = 2; i < length; ++i) {
+            if (composite[i] != 0) {
+                continue;
+            }
+            ++count;
+            for (int j = i * 2; j < length; j += i) {
+                composite[j] = 1;
+            }
+        }
+        return count;
+    }
+
+    private static int fields(Point[] points, int count) {
+        for (int i = 0; i < count; ++i) {
+            ColoredPoint point = new ColoredPoint();
+            if (i % 2 == 0) {
+                point.x = i;
+                point.y = i * 2;
+            } else {
+                point.y = i * 2;
+                point.x = i;
+            }
+            point.color = i % 3;
+            points[i] = point;
+        }
+        int sum = 0;
+        for (int j = 0; j < 10; ++j) {
+            for (int i = 0; i < count; ++i) {
+                Point point = points[i];
+                sum += point.x - point.y + ((ColoredPoint)point).color;
+            }
+        }
+        return sum;
+    }
+
+    private static int distances(Point[] points, int count) {
+        int sum = 0;
+        for (int j = 0; j < 20; ++j) {
+            for (int i = 1; i < count; ++i) {
+                Point p = points[i - 1];
+                Point q = points[i];
+                sum += (p.x - q.x) * (p.x - q.x) + (p.y - q.y) * (p.y - q.y);
+                if (p.x - q.x > p.y - q.y) {
+                    sum ^= (p.x - q.x) * p.y;
+                }
+            }
+        }
+        return sum;
+    }
+
+    private static double now() {
+        return JS.unwrapDouble(JS.invoke(JS.get(JS.getGlobal(), JS.wrap("Date")), JS.wrap("now")));
+    }
+
+    private static void report(String name, int time, int result) {
+        System.out.print(name);
+        System.out.print(": ");
+        System.out.print(time);
+        System.out.print(" ms, result ");
+        System.out.println(result);
+    }
+
+    private static class Point {
+        int x;
+        int y;
+    }
+
+    private static class ColoredPoint extends Point {
+        int color;
+    }
+}